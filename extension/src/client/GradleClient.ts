@@ -354,6 +354,8 @@ export class GradleClient implements vscode.Disposable {
       if (reply) {
         logger.info('Cancel build:', reply.getMessage());
 
+        // The server replies without waiting for the build to stop, so a build
+        // that is still running stays cancelling until its RunBuild call ends
         if (!reply.getBuildRunning() && task) {
           removeCancellingTask(task);
         }
@@ -385,7 +387,11 @@ export class GradleClient implements vscode.Disposable {
         }
       );
       if (reply) {
-        logger.info('Cancel builds:', reply.getMessage());
+        logger.info(
+          'Cancel builds:',
+          reply.getMessage(),
+          `(${reply.getCancelledCount()} builds)`
+        );
       }
     } catch (err) {
       logger.error('Error cancelling builds:', err.details || err.message);
@@ -0,0 +1,36 @@
+package com.github.badsyntax.gradle;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+// Runs at most a given number of tasks at a time on an executor that would start every task at
+// once, like one with a virtual thread per task. Waiting tasks hold their threads and start in the
+// order they were submitted.
+class BoundedExecutor implements Executor {
+  private final Executor executor;
+  private final Semaphore permits;
+
+  BoundedExecutor(Executor executor, int maxRunning) {
+    this.executor = executor;
+    this.permits = new Semaphore(Math.max(1, maxRunning), true);
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    executor.execute(
+        () -> {
+          try {
+            permits.acquire();
+          } catch (InterruptedException e) {
+            // The executor is shutting down before the task could start
+            Thread.currentThread().interrupt();
+            return;
+          }
+          try {
+            task.run();
+          } finally {
+            permits.release();
+          }
+        });
+  }
+}
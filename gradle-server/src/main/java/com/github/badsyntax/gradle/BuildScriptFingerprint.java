@@ -0,0 +1,105 @@
+package com.github.badsyntax.gradle;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Fingerprints the files that configure a build: the build files Gradle reported for its
+// projects, the settings scripts and Gradle properties of the root, everything in its gradle dir,
+// like version catalogs, the wrapper properties and applied scripts, and the sources of buildSrc.
+// Only sizes and modification times are read, and a missing file is fingerprinted as missing, so
+// creating it changes the fingerprint too. The rest of the project is never walked.
+public class BuildScriptFingerprint {
+  private static final List<String> ROOT_FILES =
+      Arrays.asList(
+          "settings.gradle",
+          "settings.gradle.kts",
+          "gradle.properties",
+          "build.gradle",
+          "build.gradle.kts");
+  private static final String GRADLE_DIR = "gradle";
+  private static final String BUILD_SRC = "buildSrc";
+  // Outputs of buildSrc, at any depth as buildSrc can have projects of its own
+  private static final Set<String> BUILD_SRC_EXCLUDED_DIRS =
+      new HashSet<>(Arrays.asList("build", ".gradle"));
+
+  private BuildScriptFingerprint() {}
+
+  public static String of(Path projectDir, Collection<String> buildFiles) throws IOException {
+    Path root = projectDir.toAbsolutePath().normalize();
+    Set<Path> files = new HashSet<>();
+    for (String rootFile : ROOT_FILES) {
+      files.add(root.resolve(rootFile));
+    }
+    for (String buildFile : buildFiles) {
+      files.add(root.resolve(buildFile).normalize());
+    }
+    List<String> entries = new ArrayList<>();
+    for (Path file : files) {
+      entries.add(entry(file));
+    }
+    walk(root.resolve(GRADLE_DIR), Collections.emptySet(), entries);
+    walk(root.resolve(BUILD_SRC), BUILD_SRC_EXCLUDED_DIRS, entries);
+    // Neither the set nor the walk have a stable order
+    Collections.sort(entries);
+    Hasher hasher = Hashing.sha256().newHasher();
+    for (String entry : entries) {
+      hasher.putString(entry, StandardCharsets.UTF_8).putByte((byte) 0);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static String entry(Path file) {
+    try {
+      BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+      return entry(file, attrs);
+    } catch (IOException e) {
+      return file + "\nmissing";
+    }
+  }
+
+  private static String entry(Path file, BasicFileAttributes attrs) {
+    return file + "\n" + attrs.size() + "\n" + attrs.lastModifiedTime().toMillis();
+  }
+
+  private static void walk(Path dir, Set<String> excludedDirs, List<String> entries)
+      throws IOException {
+    if (!Files.isDirectory(dir)) {
+      return;
+    }
+    Files.walkFileTree(
+        dir,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path subDir, BasicFileAttributes attrs) {
+            return !subDir.equals(dir) && excludedDirs.contains(subDir.getFileName().toString())
+                ? FileVisitResult.SKIP_SUBTREE
+                : FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            entries.add(entry(file, attrs));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+}
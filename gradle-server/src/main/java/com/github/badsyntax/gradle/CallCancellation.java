@@ -0,0 +1,137 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Context;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Cancels a build when nobody is waiting for it anymore, because the client cancelled the call,
+// its connection was lost or the call's deadline expired. The context of a call is also cancelled
+// once the call completes, so a binding has to be closed as soon as the build has returned and
+// before the call is completed.
+public class CallCancellation implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(CallCancellation.class.getName());
+
+  public static final String ORPHANED_BUILD_CANCELLATIONS = "orphaned_build_cancellations";
+
+  // How often a build kept running for attached clients checks that they are still attached
+  private static final long MIN_RECHECK_MILLIS = 1000;
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "orphaned-build-canceller");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private static volatile ServerStats serverStats = new ServerStats();
+  private static volatile long graceMillis;
+
+  private final Context context;
+  private final CancellableBuild cancellableBuild;
+  private final BooleanSupplier hasSubscribers;
+  private final Context.CancellationListener listener = this::onCallCancelled;
+  private boolean closed;
+  private boolean keptForSubscribers;
+  private ScheduledFuture<?> pendingCancel;
+
+  private CallCancellation(
+      Context context, CancellableBuild cancellableBuild, BooleanSupplier hasSubscribers) {
+    this.context = context;
+    this.cancellableBuild = cancellableBuild;
+    this.hasSubscribers = hasSubscribers;
+  }
+
+  public static void setServerStats(ServerStats stats) {
+    serverStats = stats;
+  }
+
+  // How long a build that clients can attach to keeps running without any, after its call has
+  // gone, so a client that reconnects can pick it up
+  public static void setGraceMillis(long millis) {
+    graceMillis = millis;
+  }
+
+  // Binds the build to the current call. hasSubscribers is null when no other client can attach
+  // to the build's output, otherwise the build keeps running while any client is attached.
+  public static CallCancellation bind(
+      CancellableBuild cancellableBuild, BooleanSupplier hasSubscribers) {
+    CallCancellation callCancellation =
+        new CallCancellation(Context.current(), cancellableBuild, hasSubscribers);
+    callCancellation.context.addListener(
+        callCancellation.listener, MoreExecutors.directExecutor());
+    return callCancellation;
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    context.removeListener(listener);
+    if (pendingCancel != null) {
+      pendingCancel.cancel(false);
+    }
+  }
+
+  private void onCallCancelled(Context cancelledContext) {
+    String reason;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (cancelledContext.cancellationCause() instanceof TimeoutException) {
+        reason = "its deadline expired";
+      } else if (hasSubscribers == null) {
+        reason = "its call was cancelled";
+      } else {
+        schedule(graceMillis);
+        return;
+      }
+      closed = true;
+    }
+    cancel(reason);
+  }
+
+  private void cancelUnlessAttached() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (hasSubscribers.getAsBoolean()) {
+        if (!keptForSubscribers) {
+          logger.info(
+              "Build {} lost its call, and keeps running for the clients attached to it",
+              cancellableBuild.getCancellationKey());
+          keptForSubscribers = true;
+        }
+        // Checked again, so the build is cancelled once the last client has detached
+        schedule(Math.max(graceMillis, MIN_RECHECK_MILLIS));
+        return;
+      }
+      closed = true;
+    }
+    cancel("its call was cancelled and no client attached to it");
+  }
+
+  private void schedule(long delayMillis) {
+    pendingCancel =
+        scheduler.schedule(this::cancelUnlessAttached, delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // Called once, outside the lock, as cancelling can complete the call from this thread
+  private void cancel(String reason) {
+    context.removeListener(listener);
+    serverStats.increment(ORPHANED_BUILD_CANCELLATIONS);
+    logger.warn("Cancelling build {}, {}", cancellableBuild.getCancellationKey(), reason);
+    cancellableBuild.cancel();
+  }
+}
@@ -0,0 +1,30 @@
+package com.github.badsyntax.gradle;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+// Records whether the handler has closed its call, so that a handler that throws after it has
+// completed or failed the call isn't failed a second time
+class CallObserver<T> extends ForwardingServerCallStreamObserver<T> {
+  private volatile boolean closed;
+
+  CallObserver(ServerCallStreamObserver<T> delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    closed = true;
+    super.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    closed = true;
+    super.onCompleted();
+  }
+
+  // A call that the client has cancelled is closed too
+  boolean isClosed() {
+    return closed || isCancelled();
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.badsyntax.gradle;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.gradle.tooling.CancellationToken;
+import org.gradle.tooling.CancellationTokenSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class CancellableBuild {
+  private static final Logger logger = LoggerFactory.getLogger(CancellableBuild.class.getName());
+
+  private final String cancellationKey;
+  private final String projectDir;
+  private final CancellationTokenSource cancellationTokenSource;
+  private final CompletableFuture<Void> finished = new CompletableFuture<>();
+  private volatile long cancelRequestedNanos;
+  private volatile Runnable cancelListener;
+
+  CancellableBuild(
+      String cancellationKey, String projectDir, CancellationTokenSource cancellationTokenSource) {
+    this.cancellationKey = cancellationKey;
+    this.projectDir = projectDir;
+    this.cancellationTokenSource = cancellationTokenSource;
+  }
+
+  public String getCancellationKey() {
+    return cancellationKey;
+  }
+
+  public String getProjectDir() {
+    return projectDir;
+  }
+
+  public CancellationToken getToken() {
+    return cancellationTokenSource.token();
+  }
+
+  // For operations that don't pass the token to the Tooling API themselves, like a request that
+  // was merged into a coalesced build
+  public void setCancelListener(Runnable cancelListener) {
+    this.cancelListener = cancelListener;
+  }
+
+  // Completes once the Tooling API operation has returned, which is how we know the daemon
+  // has acknowledged the cancellation
+  CompletableFuture<Void> cancel() {
+    cancelRequestedNanos = System.nanoTime();
+    cancellationTokenSource.cancel();
+    Runnable listener = cancelListener;
+    if (listener != null) {
+      listener.run();
+    }
+    return finished;
+  }
+
+  public void finish() {
+    GradleBuildCancellation.unregister(this);
+    if (cancelRequestedNanos != 0) {
+      logger.debug(
+          "Build {} acknowledged cancellation after {}ms",
+          cancellationKey,
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelRequestedNanos));
+    }
+    finished.complete(null);
+  }
+}
@@ -0,0 +1,25 @@
+package com.github.badsyntax.gradle;
+
+public class CancellationResult {
+  private final int cancelledCount;
+  private final int acknowledgedCount;
+  private final long ackMillis;
+
+  public CancellationResult(int cancelledCount, int acknowledgedCount, long ackMillis) {
+    this.cancelledCount = cancelledCount;
+    this.acknowledgedCount = acknowledgedCount;
+    this.ackMillis = ackMillis;
+  }
+
+  public int getCancelledCount() {
+    return cancelledCount;
+  }
+
+  public int getAcknowledgedCount() {
+    return acknowledgedCount;
+  }
+
+  public long getAckMillis() {
+    return ackMillis;
+  }
+}
@@ -0,0 +1,89 @@
+package com.github.badsyntax.gradle;
+
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildController;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.gradle.GradleBuild;
+
+// Runs in the daemon and fetches the projects of the root build and of every included build,
+// so a composite build is configured once instead of once per included build. An included build
+// that fails to configure is recorded and skipped, so it does not hide the rest of the composite.
+public class CompositeBuildAction implements BuildAction<CompositeBuildAction.Result> {
+  private static final long serialVersionUID = 1L;
+
+  @Override
+  public Result execute(BuildController controller) {
+    GradleBuild rootBuild = controller.getBuildModel();
+    Map<String, GradleProject> includedProjects = new LinkedHashMap<>();
+    Map<String, String> failedBuilds = new LinkedHashMap<>();
+    addIncludedBuilds(controller, rootBuild, includedProjects, failedBuilds, new HashSet<>());
+    // A failure of the root build, including cancellation, still fails the whole action
+    return new Result(controller.getModel(GradleProject.class), includedProjects, failedBuilds);
+  }
+
+  private static void addIncludedBuilds(
+      BuildController controller,
+      GradleBuild build,
+      Map<String, GradleProject> includedProjects,
+      Map<String, String> failedBuilds,
+      Set<String> visited) {
+    Iterable<? extends GradleBuild> includedBuilds;
+    try {
+      includedBuilds = build.getIncludedBuilds();
+    } catch (UnsupportedMethodException e) {
+      // Included builds are only available from Gradle 3.3
+      return;
+    }
+    for (GradleBuild includedBuild : includedBuilds) {
+      String rootDir = includedBuild.getBuildIdentifier().getRootDir().getAbsolutePath();
+      if (!visited.add(rootDir)) {
+        continue;
+      }
+      try {
+        includedProjects.put(
+            rootDir, controller.getModel(includedBuild.getRootProject(), GradleProject.class));
+      } catch (RuntimeException e) {
+        failedBuilds.put(rootDir, String.valueOf(e.getMessage()));
+        continue;
+      }
+      addIncludedBuilds(controller, includedBuild, includedProjects, failedBuilds, visited);
+    }
+  }
+
+  public static class Result implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final GradleProject rootProject;
+    private final Map<String, GradleProject> includedProjects;
+    private final Map<String, String> failedBuilds;
+
+    Result(
+        GradleProject rootProject,
+        Map<String, GradleProject> includedProjects,
+        Map<String, String> failedBuilds) {
+      this.rootProject = rootProject;
+      this.includedProjects = includedProjects;
+      this.failedBuilds = failedBuilds;
+    }
+
+    public GradleProject getRootProject() {
+      return rootProject;
+    }
+
+    // Root projects of the included builds, keyed by their root dir
+    public Map<String, GradleProject> getIncludedProjects() {
+      return includedProjects;
+    }
+
+    // Error messages of the included builds that could not be configured, keyed by their root dir
+    public Map<String, String> getFailedBuilds() {
+      return failedBuilds;
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package com.github.badsyntax.gradle;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.configuration.ProjectConfigurationFinishEvent;
+import org.gradle.tooling.events.configuration.ProjectConfigurationOperationResult;
+import org.gradle.tooling.model.ProjectIdentifier;
+
+// Collects how long each project took to configure, and how long each plugin took to apply to
+// it, from the project configuration events of a sync
+public class ConfigurationProfiler {
+  // Most projects apply a long tail of plugins that take no time at all
+  private static final int MAX_PLUGINS_PER_PROJECT = 10;
+
+  private final List<ProjectConfigurationTime> projects = new ArrayList<>();
+  private long firstStartTime = Long.MAX_VALUE;
+  private long lastEndTime = Long.MIN_VALUE;
+
+  public synchronized void onEvent(ProgressEvent event) {
+    if (!(event instanceof ProjectConfigurationFinishEvent)) {
+      return;
+    }
+    ProjectConfigurationFinishEvent finishEvent = (ProjectConfigurationFinishEvent) event;
+    ProjectConfigurationOperationResult result = finishEvent.getResult();
+    ProjectIdentifier project = finishEvent.getDescriptor().getProject();
+    firstStartTime = Math.min(firstStartTime, result.getStartTime());
+    lastEndTime = Math.max(lastEndTime, result.getEndTime());
+
+    List<PluginApplicationTime> plugins = new ArrayList<>();
+    for (ProjectConfigurationOperationResult.PluginApplicationResult pluginResult :
+        result.getPluginApplicationResults()) {
+      plugins.add(
+          PluginApplicationTime.newBuilder()
+              .setPlugin(pluginResult.getPlugin().getDisplayName())
+              .setDurationMillis(pluginResult.getTotalConfigurationTime().toMillis())
+              .build());
+    }
+    plugins.sort(Comparator.comparingLong(PluginApplicationTime::getDurationMillis).reversed());
+    projects.add(
+        ProjectConfigurationTime.newBuilder()
+            .setProjectPath(project.getProjectPath())
+            .setRootDir(project.getBuildIdentifier().getRootDir().getAbsolutePath())
+            .setDurationMillis(result.getEndTime() - result.getStartTime())
+            .addAllPlugins(plugins.subList(0, Math.min(plugins.size(), MAX_PLUGINS_PER_PROJECT)))
+            .build());
+  }
+
+  public synchronized ConfigurationProfile build(String projectDir, String commit) {
+    List<ProjectConfigurationTime> ranked = new ArrayList<>(projects);
+    ranked.sort(Comparator.comparingLong(ProjectConfigurationTime::getDurationMillis).reversed());
+    return ConfigurationProfile.newBuilder()
+        .setProjectDir(projectDir)
+        .setCommit(commit)
+        .setTimestampMillis(System.currentTimeMillis())
+        .setTotalMillis(ranked.isEmpty() ? 0 : lastEndTime - firstStartTime)
+        .addAllProjects(ranked)
+        .build();
+  }
+}
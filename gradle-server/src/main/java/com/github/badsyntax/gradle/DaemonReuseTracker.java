@@ -0,0 +1,121 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import com.google.common.base.Strings;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Remembers the JVM arguments that builds were launched with, per Gradle distribution and user
+// home, to tell when a launch is expected to start a new daemon instead of reusing one. Gradle
+// doesn't report which daemon ran a build, so the counts are what the server expects from the
+// launches it has seen, daemons started before it or stopped since aren't known. Each server
+// has its own tracker, which forgets the daemon keys that haven't been launched for the longest
+// time.
+public class DaemonReuseTracker {
+  private static final Logger logger = LoggerFactory.getLogger(DaemonReuseTracker.class.getName());
+
+  public static final String DAEMON_SPAWNS = "daemon_spawns";
+  public static final String DAEMON_REUSES = "daemon_reuses";
+
+  private static final String WRAPPER_PROPERTIES = "gradle/wrapper/gradle-wrapper.properties";
+  private static final int MAX_ARGUMENTS_PER_DAEMON_KEY = 8;
+  private static final int MAX_DAEMON_KEYS = 64;
+
+  private final ServerStats serverStats;
+  // The canonical JVM arguments launched with, most recent first, for the most recently launched
+  // daemon keys
+  private final Map<String, Deque<List<String>>> launchedArguments =
+      new LinkedHashMap<String, Deque<List<String>>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Deque<List<String>>> eldest) {
+          return size() > MAX_DAEMON_KEYS;
+        }
+      };
+
+  public DaemonReuseTracker(ServerStats serverStats) {
+    this.serverStats = serverStats;
+  }
+
+  public Launch onLaunch(String projectDir, GradleConfig config) {
+    List<String> jvmArguments = JvmArguments.canonicalize(config.getJvmArguments());
+    String daemonKey = getDaemonKey(projectDir, config);
+    List<String> previous;
+    boolean reused;
+    synchronized (launchedArguments) {
+      Deque<List<String>> launched =
+          launchedArguments.computeIfAbsent(daemonKey, key -> new ArrayDeque<>());
+      previous = launched.peekFirst();
+      reused = launched.remove(jvmArguments);
+      launched.addFirst(jvmArguments);
+      if (launched.size() > MAX_ARGUMENTS_PER_DAEMON_KEY) {
+        launched.removeLast();
+      }
+    }
+    if (reused) {
+      serverStats.increment(DAEMON_REUSES);
+      return new Launch(jvmArguments, null);
+    }
+    serverStats.increment(DAEMON_SPAWNS);
+    if (previous == null) {
+      return new Launch(jvmArguments, null);
+    }
+    String warning =
+        String.format(
+            "Gradle will start a new daemon for %s, its JVM arguments changed: %s",
+            projectDir, JvmArguments.describeDifference(previous, jvmArguments));
+    logger.warn(warning);
+    return new Launch(jvmArguments, warning);
+  }
+
+  // The JVM arguments to launch a build with, and why it will start a new daemon if it is expected
+  // to, for the client to show
+  public static class Launch {
+    private final List<String> jvmArguments;
+    private final String warning;
+
+    Launch(List<String> jvmArguments, String warning) {
+      this.jvmArguments = jvmArguments;
+      this.warning = warning;
+    }
+
+    public List<String> getJvmArguments() {
+      return jvmArguments;
+    }
+
+    // Null when the launch is expected to reuse a daemon, or when it is the first one seen
+    public String getWarning() {
+      return warning;
+    }
+  }
+
+  // Builds can only share a daemon when they use the same Gradle distribution and user home
+  public static String getDaemonKey(String projectDir, GradleConfig config) {
+    String distribution = config.getVersion();
+    if (config.getWrapperEnabled() && Strings.isNullOrEmpty(distribution)) {
+      distribution = getWrapperDistribution(Paths.get(projectDir));
+    }
+    return String.join("\n", distribution, config.getUserHome());
+  }
+
+  private static String getWrapperDistribution(Path projectDir) {
+    Properties properties = new Properties();
+    try (InputStream input = Files.newInputStream(projectDir.resolve(WRAPPER_PROPERTIES))) {
+      properties.load(input);
+    } catch (IOException e) {
+      // Without wrapper properties the build can't be grouped with any other build
+      return projectDir.toString();
+    }
+    return properties.getProperty("distributionUrl", projectDir.toString());
+  }
+}
@@ -1,6 +1,7 @@
 package com.github.badsyntax.gradle;
 
 import com.github.badsyntax.gradle.exceptions.GradleWrapperException;
+import com.github.badsyntax.gradle.process.ProcessSampler;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -9,17 +10,44 @@ import java.util.stream.Stream;
 
 public class DaemonStatus {
   private GradleWrapper gradleWrapper;
+  private ProcessSampler processSampler;
 
   //  56783 IDLE     6.4
   //  39762 STOPPED  (other compatible daemons were started ...)
   private static final Pattern STATUS_REGEX =
       Pattern.compile("^\\s+([0-9]+)\\s+([A-Z]+)\\s+([\\p{ASCII}]+)$");
 
-  public DaemonStatus(GradleWrapper gradleWrapper) {
+  public DaemonStatus(GradleWrapper gradleWrapper, ProcessSampler processSampler) {
     this.gradleWrapper = gradleWrapper;
+    this.processSampler = processSampler;
   }
 
+  // Daemons are found in /proc where it can be read, rather than by starting the wrapper
   public synchronized List<DaemonInfo> get() throws GradleWrapperException {
+    List<ProcessSampler.Daemon> daemons = processSampler.findDaemons();
+    if (daemons == null) {
+      return getFromWrapper();
+    }
+    // Like the wrapper, only list the daemons of its version
+    String version = gradleWrapper.getVersion();
+    List<DaemonInfo> daemonStatus = new ArrayList<>();
+    for (ProcessSampler.Daemon daemon : daemons) {
+      if (version == null || version.equals(daemon.getVersion())) {
+        daemonStatus.add(
+            withSample(
+                DaemonInfo.newBuilder()
+                    .setPid(daemon.getPid())
+                    .setInfo(daemon.getVersion())
+                    .setStatus(
+                        daemon.isBusy()
+                            ? DaemonInfo.DaemonStatus.BUSY
+                            : DaemonInfo.DaemonStatus.IDLE)));
+      }
+    }
+    return daemonStatus;
+  }
+
+  private List<DaemonInfo> getFromWrapper() throws GradleWrapperException {
     ArrayList<DaemonInfo> daemonStatus = new ArrayList<>();
     String processOutput = gradleWrapper.exec("--status", "--quiet");
     Stream.of(processOutput.split("\n"))
@@ -31,13 +59,24 @@ public class DaemonStatus {
                 String status = statusMatcher.group(2);
                 String info = statusMatcher.group(3);
                 daemonStatus.add(
-                    DaemonInfo.newBuilder()
-                        .setPid(pid)
-                        .setInfo(info)
-                        .setStatus(DaemonInfo.DaemonStatus.valueOf(status))
-                        .build());
+                    withSample(
+                        DaemonInfo.newBuilder()
+                            .setPid(pid)
+                            .setInfo(info)
+                            .setStatus(DaemonInfo.DaemonStatus.valueOf(status))));
               }
             });
     return daemonStatus;
   }
+
+  private DaemonInfo withSample(DaemonInfo.Builder daemonInfo) {
+    ProcessSampler.Sample sample = processSampler.sample(daemonInfo.getPid());
+    if (sample != null) {
+      daemonInfo
+          .setRssBytes(sample.getRssBytes())
+          .setCpuMillis(sample.getCpuMillis())
+          .setUptimeMillis(sample.getUptimeMillis());
+    }
+    return daemonInfo.build();
+  }
 }
@@ -0,0 +1,68 @@
+package com.github.badsyntax.gradle;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+// Forwards every call to the observer of a server call. Wrappers extend it so that handlers can
+// still use flow control and cancellation through them.
+public abstract class ForwardingServerCallStreamObserver<T> extends ServerCallStreamObserver<T> {
+  protected final ServerCallStreamObserver<T> delegate;
+
+  protected ForwardingServerCallStreamObserver(ServerCallStreamObserver<T> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void onNext(T value) {
+    delegate.onNext(value);
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    delegate.onError(t);
+  }
+
+  @Override
+  public void onCompleted() {
+    delegate.onCompleted();
+  }
+
+  @Override
+  public boolean isReady() {
+    return delegate.isReady();
+  }
+
+  @Override
+  public void setOnReadyHandler(Runnable onReadyHandler) {
+    delegate.setOnReadyHandler(onReadyHandler);
+  }
+
+  @Override
+  public void disableAutoInboundFlowControl() {
+    delegate.disableAutoInboundFlowControl();
+  }
+
+  @Override
+  public void request(int count) {
+    delegate.request(count);
+  }
+
+  @Override
+  public void setMessageCompression(boolean enable) {
+    delegate.setMessageCompression(enable);
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return delegate.isCancelled();
+  }
+
+  @Override
+  public void setOnCancelHandler(Runnable onCancelHandler) {
+    delegate.setOnCancelHandler(onCancelHandler);
+  }
+
+  @Override
+  public void setCompression(String compression) {
+    delegate.setCompression(compression);
+  }
+}
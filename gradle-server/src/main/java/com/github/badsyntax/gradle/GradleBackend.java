@@ -0,0 +1,13 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+
+// Where handlers get their Gradle sessions from. The server uses the Tooling API, and tests
+// and load tests can swap in a backend that doesn't need Gradle daemons.
+public interface GradleBackend {
+  GradleSession connect(String projectDir, GradleConfig config)
+      throws GradleConnectionException;
+
+  // Drops cached connections and distributions, the next connect creates them again
+  default void release() {}
+}
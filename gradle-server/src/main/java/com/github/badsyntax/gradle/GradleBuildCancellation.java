@@ -2,43 +2,142 @@ package com.github.badsyntax.gradle;
 
 import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
 import com.google.common.base.Strings;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import org.gradle.tooling.CancellationToken;
-import org.gradle.tooling.CancellationTokenSource;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 import org.gradle.tooling.GradleConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class GradleBuildCancellation {
-  private static final ConcurrentMap<String, CancellationTokenSource> tokens =
+  private static final Logger logger =
+      LoggerFactory.getLogger(GradleBuildCancellation.class.getName());
+
+  // A key can be shared by several operations, for example when the same task is run twice
+  private static final ConcurrentMap<String, Set<CancellableBuild>> builds =
       new ConcurrentHashMap<>();
 
   private GradleBuildCancellation() {}
 
-  public static CancellationToken buildToken(String cancellationKey) {
-    CancellationTokenSource cancellationTokenSource = GradleConnector.newCancellationTokenSource();
-    tokens.put(cancellationKey, cancellationTokenSource);
-    return cancellationTokenSource.token();
+  public static CancellableBuild register(String cancellationKey, String projectDir) {
+    CancellableBuild build =
+        new CancellableBuild(
+            cancellationKey,
+            normalizeProjectDir(projectDir),
+            GradleConnector.newCancellationTokenSource());
+    builds.compute(
+        cancellationKey,
+        (key, keyBuilds) -> {
+          Set<CancellableBuild> registered =
+              keyBuilds == null ? ConcurrentHashMap.newKeySet() : keyBuilds;
+          registered.add(build);
+          return registered;
+        });
+    return build;
   }
 
-  public static void clearToken(String cancellationKey) {
-    tokens.remove(cancellationKey);
+  static void unregister(CancellableBuild build) {
+    builds.computeIfPresent(
+        build.getCancellationKey(),
+        (key, keyBuilds) -> {
+          keyBuilds.remove(build);
+          return keyBuilds.isEmpty() ? null : keyBuilds;
+        });
   }
 
-  public static void cancelBuild(String cancellationKey) throws GradleCancellationException {
+  public static CancellationResult cancelBuild(String cancellationKey, long ackTimeoutMillis)
+      throws GradleCancellationException {
     if (Strings.isNullOrEmpty(cancellationKey)) {
       throw new GradleCancellationException("No cancellation key specified");
     }
-    CancellationTokenSource cancellationTokenSource = tokens.get(cancellationKey);
-    if (cancellationTokenSource == null) {
+    Set<CancellableBuild> keyBuilds = builds.get(cancellationKey);
+    if (keyBuilds == null || keyBuilds.isEmpty()) {
       throw new GradleCancellationException("Build is not running for key: " + cancellationKey);
-    } else {
-      cancellationTokenSource.cancel();
+    }
+    return cancel(new ArrayList<>(keyBuilds), ackTimeoutMillis);
+  }
+
+  public static CancellationResult cancelBuildsForProject(
+      String projectDir, long ackTimeoutMillis) {
+    String normalizedProjectDir = normalizeProjectDir(projectDir);
+    return cancel(
+        find(build -> build.getProjectDir().equals(normalizedProjectDir)), ackTimeoutMillis);
+  }
+
+  public static CancellationResult cancelBuildsWithKeyPrefix(
+      String cancellationKeyPrefix, long ackTimeoutMillis) {
+    return cancel(
+        find(build -> build.getCancellationKey().startsWith(cancellationKeyPrefix)),
+        ackTimeoutMillis);
+  }
+
+  public static CancellationResult cancelBuilds(long ackTimeoutMillis) {
+    return cancel(find(build -> true), ackTimeoutMillis);
+  }
+
+  private static List<CancellableBuild> find(Predicate<CancellableBuild> predicate) {
+    return builds.values().stream()
+        .flatMap(Collection::stream)
+        .filter(predicate)
+        .collect(Collectors.toList());
+  }
+
+  // Requests cancellation of every build before waiting on any of them, and never stops at the
+  // first failure, so one misbehaving build can't leave the others running
+  private static CancellationResult cancel(List<CancellableBuild> targets, long ackTimeoutMillis) {
+    long startNanos = System.nanoTime();
+    List<CompletableFuture<Void>> pending = new ArrayList<>();
+    for (CancellableBuild build : targets) {
+      try {
+        pending.add(build.cancel());
+      } catch (RuntimeException e) {
+        logger.error("Unable to cancel build {}: {}", build.getCancellationKey(), e.getMessage());
+      }
+    }
+    awaitAcknowledgement(pending, ackTimeoutMillis);
+    int acknowledgedCount = (int) pending.stream().filter(CompletableFuture::isDone).count();
+    long ackMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    if (ackTimeoutMillis > 0 && acknowledgedCount < targets.size()) {
+      logger.warn(
+          "{} of {} builds acknowledged cancellation within {}ms",
+          acknowledgedCount,
+          targets.size(),
+          ackTimeoutMillis);
+    }
+    return new CancellationResult(targets.size(), acknowledgedCount, ackMillis);
+  }
+
+  // Waiting is opt-in, with no timeout the result only counts the builds that had already
+  // finished
+  private static void awaitAcknowledgement(
+      List<CompletableFuture<Void>> pending, long ackTimeoutMillis) {
+    if (pending.isEmpty() || ackTimeoutMillis <= 0) {
+      return;
+    }
+    try {
+      CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0]))
+          .get(ackTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException | TimeoutException e) {
+      // Builds that have not acknowledged yet are reported through the result
     }
   }
 
-  public static void cancelBuilds() throws GradleCancellationException {
-    for (String cancellationKey : tokens.keySet()) {
-      cancelBuild(cancellationKey);
+  private static String normalizeProjectDir(String projectDir) {
+    if (Strings.isNullOrEmpty(projectDir)) {
+      return "";
     }
+    return Paths.get(projectDir).toAbsolutePath().normalize().toString();
   }
 }
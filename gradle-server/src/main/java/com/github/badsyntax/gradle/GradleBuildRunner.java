@@ -2,22 +2,23 @@ package com.github.badsyntax.gradle;
 
 import com.github.badsyntax.gradle.exceptions.GradleBuildRunnerException;
 import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
-import com.google.common.base.Strings;
+import com.github.badsyntax.gradle.trace.Span;
+import com.github.badsyntax.gradle.trace.Tracer;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import org.gradle.tooling.BuildLauncher;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import org.gradle.tooling.CancellationToken;
-import org.gradle.tooling.GradleConnector;
-import org.gradle.tooling.ProjectConnection;
 import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.events.ProgressListener;
 import org.slf4j.Logger;
@@ -37,7 +38,12 @@ public class GradleBuildRunner {
   private OutputStream standardErrorStream;
   private InputStream standardInputStream;
   private ProgressListener progressListener;
+  private ProgressListener testProgressListener;
   private Boolean javaDebugCleanOutputCache;
+  private boolean cancelWithCall;
+  private BooleanSupplier hasSubscribers;
+  private DaemonReuseTracker daemonReuseTracker;
+  private Consumer<String> warningListener;
 
   public GradleBuildRunner(
       String projectDir,
@@ -81,52 +87,92 @@ public class GradleBuildRunner {
     return this;
   }
 
+  // Test events are only requested when a listener is set as they add overhead to test tasks
+  public GradleBuildRunner setTestProgressListener(ProgressListener testProgressListener) {
+    this.testProgressListener = testProgressListener;
+    return this;
+  }
+
+  // Cancels the build when the current call goes away, see CallCancellation
+  public GradleBuildRunner setCancelWithCall(BooleanSupplier hasSubscribers) {
+    this.cancelWithCall = true;
+    this.hasSubscribers = hasSubscribers;
+    return this;
+  }
+
+  // Reports launches that are expected to start a new daemon to the listener, which can be null
+  public GradleBuildRunner setDaemonReuseTracker(
+      DaemonReuseTracker daemonReuseTracker, Consumer<String> warningListener) {
+    this.daemonReuseTracker = daemonReuseTracker;
+    this.warningListener = warningListener;
+    return this;
+  }
+
   public void run() throws GradleConnectionException, IOException, GradleBuildRunnerException {
     if (Boolean.TRUE.equals(args.isEmpty())) {
       throw new GradleBuildRunnerException("No args supplied");
     }
-    GradleConnector gradleConnector = GradleProjectConnector.build(projectDir, gradleConfig);
-    try (ProjectConnection connection = gradleConnector.connect()) {
-      runBuild(connection);
+    CancellableBuild cancellableBuild =
+        GradleBuildCancellation.register(cancellationKey, projectDir);
+    CallCancellation callCancellation =
+        cancelWithCall ? CallCancellation.bind(cancellableBuild, hasSubscribers) : null;
+    try (GradleSession session = GradleProjectConnector.connect(projectDir, gradleConfig)) {
+      runBuild(session, cancellableBuild.getToken());
     } finally {
-      GradleBuildCancellation.clearToken(cancellationKey);
+      if (callCancellation != null) {
+        callCancellation.close();
+      }
+      cancellableBuild.finish();
     }
   }
 
-  private void runBuild(ProjectConnection connection)
-      throws GradleBuildRunnerException, IOException {
+  private void runBuild(GradleSession session, CancellationToken cancellationToken)
+      throws GradleBuildRunnerException {
     Set<OperationType> progressEvents = new HashSet<>();
     progressEvents.add(OperationType.PROJECT_CONFIGURATION);
     progressEvents.add(OperationType.TASK);
     progressEvents.add(OperationType.TRANSFORM);
 
-    CancellationToken cancellationToken = GradleBuildCancellation.buildToken(cancellationKey);
-
     Boolean isDebugging = javaDebugPort != 0;
 
-    BuildLauncher build =
-        connection
-            .newBuild()
-            .withCancellationToken(cancellationToken)
+    GradleOperation build =
+        new GradleOperation()
+            .setCancellationToken(cancellationToken)
             .addProgressListener(progressListener, progressEvents)
             .setStandardOutput(standardOutputStream)
             .setStandardError(standardErrorStream)
+            .setStandardInput(standardInputStream)
             .setColorOutput(colorOutput)
-            .withArguments(buildArguments(isDebugging));
+            .setArguments(buildArguments(isDebugging));
+
+    if (testProgressListener != null) {
+      build.addProgressListener(testProgressListener, EnumSet.of(OperationType.TEST));
+    }
 
-    if (this.standardInputStream != null) {
-      build.setStandardInput(standardInputStream);
+    if (Tracer.isEnabled()) {
+      build.addProgressListener(Tracer::onProgressEvent, progressEvents);
     }
 
     if (Boolean.TRUE.equals(isDebugging)) {
       build.setEnvironmentVariables(buildJavaEnvVarsWithJwdp(javaDebugPort));
     }
 
-    if (!Strings.isNullOrEmpty(gradleConfig.getJvmArguments())) {
-      build.setJvmArguments(gradleConfig.getJvmArguments());
+    build.setJvmArguments(getJvmArguments());
+
+    try (Span span = Tracer.start("runBuild", "build")) {
+      session.runBuild(build);
     }
+  }
 
-    build.run();
+  private List<String> getJvmArguments() {
+    if (daemonReuseTracker == null) {
+      return JvmArguments.canonicalize(gradleConfig.getJvmArguments());
+    }
+    DaemonReuseTracker.Launch launch = daemonReuseTracker.onLaunch(projectDir, gradleConfig);
+    if (launch.getWarning() != null && warningListener != null) {
+      warningListener.accept(launch.getWarning());
+    }
+    return launch.getJvmArguments();
   }
 
   private List<String> buildArguments(Boolean isDebugging) throws GradleBuildRunnerException {
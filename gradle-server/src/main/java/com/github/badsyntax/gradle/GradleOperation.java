@@ -0,0 +1,118 @@
+package com.github.badsyntax.gradle;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.gradle.tooling.CancellationToken;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressListener;
+
+// Describes a build, model request or build action for a GradleSession to run: the arguments it
+// runs with and where its output, input and progress events go
+public class GradleOperation {
+  private CancellationToken cancellationToken;
+  private final Map<ProgressListener, Set<OperationType>> progressListeners =
+      new LinkedHashMap<>();
+  private OutputStream standardOutput;
+  private OutputStream standardError;
+  private InputStream standardInput;
+  private Boolean colorOutput;
+  private List<String> arguments = Collections.emptyList();
+  private List<String> jvmArguments = Collections.emptyList();
+  private Map<String, String> environmentVariables;
+
+  public CancellationToken getCancellationToken() {
+    return cancellationToken;
+  }
+
+  public GradleOperation setCancellationToken(CancellationToken cancellationToken) {
+    this.cancellationToken = cancellationToken;
+    return this;
+  }
+
+  // Keyed by listener, with the types of events it receives
+  public Map<ProgressListener, Set<OperationType>> getProgressListeners() {
+    return progressListeners;
+  }
+
+  public GradleOperation addProgressListener(
+      ProgressListener progressListener, Collection<OperationType> operationTypes) {
+    if (progressListener != null) {
+      progressListeners
+          .computeIfAbsent(progressListener, listener -> EnumSet.noneOf(OperationType.class))
+          .addAll(operationTypes);
+    }
+    return this;
+  }
+
+  public OutputStream getStandardOutput() {
+    return standardOutput;
+  }
+
+  public GradleOperation setStandardOutput(OutputStream standardOutput) {
+    this.standardOutput = standardOutput;
+    return this;
+  }
+
+  public OutputStream getStandardError() {
+    return standardError;
+  }
+
+  public GradleOperation setStandardError(OutputStream standardError) {
+    this.standardError = standardError;
+    return this;
+  }
+
+  public InputStream getStandardInput() {
+    return standardInput;
+  }
+
+  public GradleOperation setStandardInput(InputStream standardInput) {
+    this.standardInput = standardInput;
+    return this;
+  }
+
+  // Null leaves the choice to Gradle
+  public Boolean getColorOutput() {
+    return colorOutput;
+  }
+
+  public GradleOperation setColorOutput(Boolean colorOutput) {
+    this.colorOutput = colorOutput;
+    return this;
+  }
+
+  public List<String> getArguments() {
+    return arguments;
+  }
+
+  public GradleOperation setArguments(List<String> arguments) {
+    this.arguments = arguments;
+    return this;
+  }
+
+  public List<String> getJvmArguments() {
+    return jvmArguments;
+  }
+
+  public GradleOperation setJvmArguments(List<String> jvmArguments) {
+    this.jvmArguments = jvmArguments;
+    return this;
+  }
+
+  // Null inherits the environment of the server
+  public Map<String, String> getEnvironmentVariables() {
+    return environmentVariables;
+  }
+
+  public GradleOperation setEnvironmentVariables(Map<String, String> environmentVariables) {
+    this.environmentVariables = environmentVariables;
+    return this;
+  }
+}
@@ -1,35 +1,83 @@
 package com.github.badsyntax.gradle;
 
 import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.github.badsyntax.gradle.trace.Span;
+import com.github.badsyntax.gradle.trace.Tracer;
 import com.google.common.base.Strings;
 import java.io.File;
 import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.internal.consumer.DefaultGradleConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class GradleProjectConnector {
+  private static final Logger logger =
+      LoggerFactory.getLogger(GradleProjectConnector.class.getName());
+
+  private static volatile int daemonMaxIdleMinutes;
+  private static volatile GradleBackend backend = new ToolingApiBackend();
 
   private GradleProjectConnector() {}
 
-  public static GradleConnector build(String projectDir, GradleConfig config)
-      throws GradleConnectionException {
-    GradleConnector connector =
-        GradleConnector.newConnector().forProjectDirectory(new File(projectDir));
-    setConnectorConfig(connector, projectDir, config);
-    return connector;
+  // Only applies to daemons started by this server, daemons that are already running keep their
+  // own idle timeout
+  public static void setDaemonMaxIdleMinutes(int minutes) {
+    daemonMaxIdleMinutes = minutes;
   }
 
-  private static void setConnectorConfig(
-      GradleConnector gradleConnector, String projectDir, GradleConfig config)
+  public static void setBackend(GradleBackend gradleBackend) {
+    backend = gradleBackend;
+  }
+
+  public static GradleSession connect(String projectDir, GradleConfig config)
       throws GradleConnectionException {
-    if (!Strings.isNullOrEmpty(config.getUserHome())) {
-      gradleConnector.useGradleUserHomeDir(
-          buildGradleUserHomeFile(config.getUserHome(), projectDir));
-    }
     if (!config.getWrapperEnabled() && Strings.isNullOrEmpty(config.getVersion())) {
       throw new GradleConnectionException("Gradle version is required");
     }
+    try (Span span = Tracer.start("connect", "connection")) {
+      return backend.connect(projectDir, config);
+    }
+  }
+
+  // Drops the backend's cached connections, used when the server is idle or stopping
+  public static void release() {
+    backend.release();
+  }
+
+  public static GradleConnector build(String projectDir, GradleConfig config) {
+    GradleConnector connector = GradleConnector.newConnector();
+    configure(connector, projectDir, config);
+    if (daemonMaxIdleMinutes > 0) {
+      setDaemonMaxIdleTime(connector);
+    }
+    return connector;
+  }
+
+  // The idle time can only be set through the Tooling API's internal connector, so daemons keep
+  // Gradle's default idle time when it's not available
+  private static void setDaemonMaxIdleTime(GradleConnector connector) {
+    try {
+      if (connector instanceof DefaultGradleConnector) {
+        ((DefaultGradleConnector) connector)
+            .daemonMaxIdleTime(daemonMaxIdleMinutes, TimeUnit.MINUTES);
+        return;
+      }
+    } catch (LinkageError e) {
+      logger.debug("Tooling API internals are not available: {}", e.toString());
+    }
+    logger.warn("Unable to set the daemon idle time, daemons keep their default idle time");
+    daemonMaxIdleMinutes = 0;
+  }
+
+  static void configure(GradleConnector connector, String projectDir, GradleConfig config) {
+    connector.forProjectDirectory(new File(projectDir));
+    if (!Strings.isNullOrEmpty(config.getUserHome())) {
+      connector.useGradleUserHomeDir(buildGradleUserHomeFile(config.getUserHome(), projectDir));
+    }
     if (!Strings.isNullOrEmpty(config.getVersion())) {
-      gradleConnector.useGradleVersion(config.getVersion());
+      connector.useGradleVersion(config.getVersion());
     }
   }
 
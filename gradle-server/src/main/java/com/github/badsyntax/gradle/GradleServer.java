@@ -1,5 +1,16 @@
 package com.github.badsyntax.gradle;
 
+import com.github.badsyntax.gradle.coalesce.RunBuildCoalescer;
+import com.github.badsyntax.gradle.graph.TaskGraphCache;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import com.github.badsyntax.gradle.index.TaskIndex;
+import com.github.badsyntax.gradle.output.BuildOutputBuffers;
+import com.github.badsyntax.gradle.output.OutputLogStore;
+import com.github.badsyntax.gradle.stats.ServerStats;
+import com.github.badsyntax.gradle.stats.TransferStatsTracerFactory;
+import com.github.badsyntax.gradle.trace.CallTracerFactory;
+import com.github.badsyntax.gradle.trace.Tracer;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import java.io.IOException;
@@ -10,22 +21,112 @@ import org.slf4j.LoggerFactory;
 public class GradleServer {
   private static final Logger logger = LoggerFactory.getLogger(GradleServer.class.getName());
 
-  private final int port;
+  // How long stopping waits for calls and executors once builds have been cancelled and their
+  // connections closed, which only leaves threads that are already returning. The writers of
+  // history and stored output get what is left of it.
+  private static final long TERMINATION_MILLIS = 200;
+
+  private final String address;
   private final Server server;
+  private final BuildHistory buildHistory;
+  private final ConfigurationProfileLog configurationProfileLog;
+  private final OutputLogStore outputLogStore;
+  private final TaskIndex taskIndex = new TaskIndex();
+  private final ServerTransport transport;
+  private final RpcExecutors rpcExecutors;
+  private final RunBuildCoalescer runBuildCoalescer;
+  private final IdleReclaimer idleReclaimer;
+  private final long shutdownBudgetMillis;
 
   public GradleServer(int port) {
     this(ServerBuilder.forPort(port), port);
   }
 
   public GradleServer(ServerBuilder<?> serverBuilder, int port) {
-    this.port = port;
-    server = serverBuilder.addService(new GradleService()).build();
+    this(serverBuilder, new GradleServerOptions().setPort(port));
+  }
+
+  public GradleServer(GradleServerOptions options) {
+    this(ServerTransport.create(options), options);
+  }
+
+  public GradleServer(ServerBuilder<?> serverBuilder, GradleServerOptions options) {
+    this(serverBuilder, "port " + options.getPort(), null, options);
+  }
+
+  private GradleServer(ServerTransport transport, GradleServerOptions options) {
+    this(transport.getServerBuilder(), transport.getAddress(), transport, options);
+  }
+
+  private GradleServer(
+      ServerBuilder<?> serverBuilder,
+      String address,
+      ServerTransport transport,
+      GradleServerOptions options) {
+    this.address = address;
+    this.transport = transport;
+    this.shutdownBudgetMillis = options.getShutdownBudgetMillis();
+    buildHistory = new BuildHistory(options.getHistoryDir(), options.getHistoryMaxBytes());
+    configurationProfileLog =
+        new ConfigurationProfileLog(options.getHistoryDir(), options.getHistoryMaxBytes());
+    outputLogStore = new OutputLogStore(options.getHistoryDir(), options.getOutputStoreBytes());
+    BuildOutputBuffers buildOutputBuffers =
+        new BuildOutputBuffers(options.getOutputBufferBytes(), options.getOutputSpillBytes());
+    rpcExecutors = new RpcExecutors(options);
+    ServerStats serverStats = new ServerStats();
+    boolean isDomainSocket = transport != null && transport.isDomainSocket();
+    MessageCompression messageCompression =
+        new MessageCompression(isDomainSocket ? 0 : options.getCompressMinBytes(), serverStats);
+    TaskGraphCache taskGraphCache = new TaskGraphCache();
+    GradleProjectConnector.setDaemonMaxIdleMinutes(options.getDaemonIdleMinutes());
+    Tracer.setBufferSize(options.getTraceEvents());
+    DaemonReuseTracker daemonReuseTracker = new DaemonReuseTracker(serverStats);
+    CallCancellation.setServerStats(serverStats);
+    CallCancellation.setGraceMillis(options.getOrphanGraceMillis());
+    // Releasing the backend drops the Tooling API's cached distributions and connections, they
+    // are created again by the next build
+    idleReclaimer =
+        new IdleReclaimer(
+            TimeUnit.MINUTES.toMillis(options.getIdleReleaseMinutes()),
+            serverStats,
+            buildOutputBuffers::clear,
+            taskGraphCache::clear,
+            GradleProjectConnector::release);
+    runBuildCoalescer =
+        new RunBuildCoalescer(
+            options.getCoalesceWindowMillis(),
+            buildHistory,
+            daemonReuseTracker,
+            idleReclaimer.wrap(rpcExecutors.getBuildExecutor()));
+    GradleService gradleService =
+        new GradleService(
+            buildHistory,
+            buildOutputBuffers,
+            rpcExecutors,
+            messageCompression,
+            serverStats,
+            idleReclaimer,
+            taskIndex,
+            taskGraphCache,
+            runBuildCoalescer,
+            configurationProfileLog,
+            options.getHistoryDir(),
+            outputLogStore,
+            daemonReuseTracker);
+    server =
+        serverBuilder
+            .addService(gradleService)
+            .addStreamTracerFactory(new TransferStatsTracerFactory(serverStats))
+            .addStreamTracerFactory(new CallTracerFactory())
+            .build();
   }
 
   @SuppressWarnings("java:S106")
   public void start() throws IOException {
     server.start();
-    logger.info("Server started, listening on {}", port);
+    buildHistory.load();
+    idleReclaimer.start();
+    logger.info("Server started, listening on {}", address);
     Runtime.getRuntime()
         .addShutdownHook(
             new Thread() {
@@ -43,10 +144,48 @@ public class GradleServer {
             });
   }
 
+  // Running builds would otherwise keep the calls open until they complete, so they are
+  // cancelled once no new calls are accepted, and whatever hasn't returned within the budget is
+  // cut off by closing the Tooling API connections
   public void stop() throws InterruptedException {
-    if (server != null) {
-      server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
+    long startNanos = System.nanoTime();
+    server.shutdown();
+    idleReclaimer.close();
+    CancellationResult cancellationResult =
+        GradleBuildCancellation.cancelBuilds(shutdownBudgetMillis);
+    GradleProjectConnector.release();
+    server.shutdownNow();
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TERMINATION_MILLIS);
+    if (!server.awaitTermination(remainingMillis(deadlineNanos), TimeUnit.MILLISECONDS)) {
+      logger.warn("Calls were still running after {}ms, stopping anyway", TERMINATION_MILLIS);
+    }
+    rpcExecutors.shutdown(remainingMillis(deadlineNanos));
+    runBuildCoalescer.close();
+    if (cancellationResult.getCancelledCount() > 0) {
+      logger.info(
+          "Cancelled {} builds on shutdown, {} acknowledged within {}ms",
+          cancellationResult.getCancelledCount(),
+          cancellationResult.getAcknowledgedCount(),
+          cancellationResult.getAckMillis());
+    }
+    // Writes that don't fit in the budget carry on in the background, and are lost if the JVM
+    // exits first
+    boolean written = buildHistory.close(remainingMillis(deadlineNanos));
+    written &= configurationProfileLog.close(remainingMillis(deadlineNanos));
+    written &= outputLogStore.close(remainingMillis(deadlineNanos));
+    if (!written) {
+      logger.warn("History and build output were still being written when the server stopped");
     }
+    taskIndex.close();
+    if (transport != null) {
+      transport.close();
+    }
+    logger.info(
+        "Server stopped in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+  }
+
+  private static long remainingMillis(long deadlineNanos) {
+    return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
   }
 
   private void blockUntilShutdown() throws InterruptedException {
@@ -56,11 +195,7 @@ public class GradleServer {
   }
 
   public static void main(String[] args) throws Exception {
-    int port = 8887;
-    if (args.length > 0) {
-      port = Integer.parseInt(args[0]);
-    }
-    GradleServer server = new GradleServer(port);
+    GradleServer server = new GradleServer(GradleServerOptions.parse(args));
     server.start();
     server.blockUntilShutdown();
   }
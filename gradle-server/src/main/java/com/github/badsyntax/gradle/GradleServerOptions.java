@@ -0,0 +1,293 @@
+package com.github.badsyntax.gradle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class GradleServerOptions {
+  private static final int DEFAULT_PORT = 8887;
+  private static final long DEFAULT_HISTORY_MAX_BYTES = 4L * 1024 * 1024;
+  private static final long DEFAULT_OUTPUT_BUFFER_BYTES = 4L * 1024 * 1024;
+  private static final long DEFAULT_OUTPUT_STORE_BYTES = 64L * 1024 * 1024;
+
+  private int port = DEFAULT_PORT;
+  private Path historyDir =
+      Paths.get(System.getProperty("user.home"), ".vscode-gradle", "build-history");
+  private long historyMaxBytes = DEFAULT_HISTORY_MAX_BYTES;
+  private long outputBufferBytes = DEFAULT_OUTPUT_BUFFER_BYTES;
+  private int outputSpillBytes = 0;
+  private long outputStoreBytes = DEFAULT_OUTPUT_STORE_BYTES;
+  private String socket;
+  private RpcExecutors.Mode executorMode = RpcExecutors.Mode.POOL;
+  private int buildThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+  private int controlThreads = 4;
+  // Configuring a build keeps a daemon busy on more than one core
+  private int projectThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  private int compressMinBytes = 8 * 1024;
+  private int idleReleaseMinutes = 30;
+  private int daemonIdleMinutes = 0;
+  private int coalesceWindowMillis = 0;
+  private int traceEvents = 0;
+  private int orphanGraceMillis = 5000;
+  private int shutdownBudgetMillis = 500;
+
+  // The first argument is the port for backwards compatibility with the start scripts,
+  // every other option is passed as --name=value
+  public static GradleServerOptions parse(String[] args) {
+    GradleServerOptions options = new GradleServerOptions();
+    for (int i = 0; i < args.length; i++) {
+      String arg = args[i];
+      if (i == 0 && !arg.startsWith("--")) {
+        options.setPort(Integer.parseInt(arg));
+        continue;
+      }
+      int separator = arg.indexOf('=');
+      if (!arg.startsWith("--") || separator == -1) {
+        throw new IllegalArgumentException("Invalid server option: " + arg);
+      }
+      options.set(arg.substring(2, separator), arg.substring(separator + 1));
+    }
+    return options;
+  }
+
+  private void set(String name, String value) {
+    switch (name) {
+      case "port":
+        setPort(Integer.parseInt(value));
+        break;
+      case "history-dir":
+        setHistoryDir(Paths.get(value));
+        break;
+      case "history-max-bytes":
+        setHistoryMaxBytes(Long.parseLong(value));
+        break;
+      case "output-buffer-bytes":
+        setOutputBufferBytes(Long.parseLong(value));
+        break;
+      case "output-store-bytes":
+        setOutputStoreBytes(Long.parseLong(value));
+        break;
+      case "output-spill-bytes":
+        setOutputSpillBytes(Integer.parseInt(value));
+        break;
+      case "socket":
+        setSocket(value);
+        break;
+      case "executor-mode":
+        setExecutorMode(RpcExecutors.Mode.valueOf(value.toUpperCase()));
+        break;
+      case "build-threads":
+        setBuildThreads(Integer.parseInt(value));
+        break;
+      case "control-threads":
+        setControlThreads(Integer.parseInt(value));
+        break;
+      case "project-threads":
+        setProjectThreads(Integer.parseInt(value));
+        break;
+      case "compress-min-bytes":
+        setCompressMinBytes(Integer.parseInt(value));
+        break;
+      case "idle-release-minutes":
+        setIdleReleaseMinutes(Integer.parseInt(value));
+        break;
+      case "daemon-idle-minutes":
+        setDaemonIdleMinutes(Integer.parseInt(value));
+        break;
+      case "coalesce-window-millis":
+        setCoalesceWindowMillis(Integer.parseInt(value));
+        break;
+      case "trace-events":
+        setTraceEvents(Integer.parseInt(value));
+        break;
+      case "orphan-grace-millis":
+        setOrphanGraceMillis(Integer.parseInt(value));
+        break;
+      case "shutdown-budget-millis":
+        setShutdownBudgetMillis(Integer.parseInt(value));
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown server option: " + name);
+    }
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public GradleServerOptions setPort(int port) {
+    this.port = port;
+    return this;
+  }
+
+  public Path getHistoryDir() {
+    return historyDir;
+  }
+
+  public GradleServerOptions setHistoryDir(Path historyDir) {
+    this.historyDir = historyDir;
+    return this;
+  }
+
+  public long getHistoryMaxBytes() {
+    return historyMaxBytes;
+  }
+
+  public GradleServerOptions setHistoryMaxBytes(long historyMaxBytes) {
+    this.historyMaxBytes = historyMaxBytes;
+    return this;
+  }
+
+  public long getOutputBufferBytes() {
+    return outputBufferBytes;
+  }
+
+  public GradleServerOptions setOutputBufferBytes(long outputBufferBytes) {
+    this.outputBufferBytes = outputBufferBytes;
+    return this;
+  }
+
+  public int getOutputSpillBytes() {
+    return outputSpillBytes;
+  }
+
+  // Output evicted from memory is kept in a memory-mapped file of this size, 0 disables it
+  public GradleServerOptions setOutputSpillBytes(int outputSpillBytes) {
+    this.outputSpillBytes = outputSpillBytes;
+    return this;
+  }
+
+  public long getOutputStoreBytes() {
+    return outputStoreBytes;
+  }
+
+  // Output of completed builds is kept on disk for GetBuildOutput up to this size, 0 disables it
+  public GradleServerOptions setOutputStoreBytes(long outputStoreBytes) {
+    this.outputStoreBytes = outputStoreBytes;
+    return this;
+  }
+
+  public String getSocket() {
+    return socket;
+  }
+
+  // Serve over a Unix domain socket at this path instead of the TCP port, where supported.
+  // Experimental, as it hasn't been measured against TCP through gRPC yet, see CONTRIBUTING.md.
+  public GradleServerOptions setSocket(String socket) {
+    this.socket = socket;
+    return this;
+  }
+
+  public RpcExecutors.Mode getExecutorMode() {
+    return executorMode;
+  }
+
+  // DIRECT runs handlers on the calling thread, which is only meant for tests
+  public GradleServerOptions setExecutorMode(RpcExecutors.Mode executorMode) {
+    this.executorMode = executorMode;
+    return this;
+  }
+
+  public int getBuildThreads() {
+    return buildThreads;
+  }
+
+  public GradleServerOptions setBuildThreads(int buildThreads) {
+    this.buildThreads = buildThreads;
+    return this;
+  }
+
+  public int getControlThreads() {
+    return controlThreads;
+  }
+
+  public GradleServerOptions setControlThreads(int controlThreads) {
+    this.controlThreads = controlThreads;
+    return this;
+  }
+
+  public int getProjectThreads() {
+    return projectThreads;
+  }
+
+  // Caps how many root projects GetBuilds fetches at once across all calls, whatever
+  // parallelism the clients ask for
+  public GradleServerOptions setProjectThreads(int projectThreads) {
+    this.projectThreads = projectThreads;
+    return this;
+  }
+
+  public int getCompressMinBytes() {
+    return compressMinBytes;
+  }
+
+  // Replies of at least this size are compressed when the client accepts it, 0 disables it.
+  // Compression is always disabled on Unix domain sockets, where it costs more than it saves.
+  public GradleServerOptions setCompressMinBytes(int compressMinBytes) {
+    this.compressMinBytes = compressMinBytes;
+    return this;
+  }
+
+  public int getIdleReleaseMinutes() {
+    return idleReleaseMinutes;
+  }
+
+  // Caches and Tooling API connections are released after this many idle minutes, 0 disables it
+  public GradleServerOptions setIdleReleaseMinutes(int idleReleaseMinutes) {
+    this.idleReleaseMinutes = idleReleaseMinutes;
+    return this;
+  }
+
+  public int getDaemonIdleMinutes() {
+    return daemonIdleMinutes;
+  }
+
+  // Daemons started by this server stop themselves after this many idle minutes, 0 keeps the
+  // Gradle default
+  public GradleServerOptions setDaemonIdleMinutes(int daemonIdleMinutes) {
+    this.daemonIdleMinutes = daemonIdleMinutes;
+    return this;
+  }
+
+  public int getCoalesceWindowMillis() {
+    return coalesceWindowMillis;
+  }
+
+  // Compatible RunBuild requests for the same root that arrive within this window are run as one
+  // build, 0 disables it
+  public GradleServerOptions setCoalesceWindowMillis(int coalesceWindowMillis) {
+    this.coalesceWindowMillis = coalesceWindowMillis;
+    return this;
+  }
+
+  public int getTraceEvents() {
+    return traceEvents;
+  }
+
+  // Keeps this many of the most recent spans for ExportTrace, 0 disables tracing
+  public GradleServerOptions setTraceEvents(int traceEvents) {
+    this.traceEvents = traceEvents;
+    return this;
+  }
+
+  public int getOrphanGraceMillis() {
+    return orphanGraceMillis;
+  }
+
+  // A RunBuild whose call is gone is cancelled after this long unless a client has attached to
+  // its output. Builds that can't be attached to are cancelled straight away.
+  public GradleServerOptions setOrphanGraceMillis(int orphanGraceMillis) {
+    this.orphanGraceMillis = orphanGraceMillis;
+    return this;
+  }
+
+  public int getShutdownBudgetMillis() {
+    return shutdownBudgetMillis;
+  }
+
+  // How long stopping the server waits for running builds to acknowledge their cancellation
+  // before it closes their connections
+  public GradleServerOptions setShutdownBudgetMillis(int shutdownBudgetMillis) {
+    this.shutdownBudgetMillis = shutdownBudgetMillis;
+    return this;
+  }
+}
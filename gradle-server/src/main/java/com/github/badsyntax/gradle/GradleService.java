@@ -1,60 +1,389 @@
 package com.github.badsyntax.gradle;
 
+import com.github.badsyntax.gradle.coalesce.RunBuildCoalescer;
+import com.github.badsyntax.gradle.graph.TaskGraphCache;
+import com.github.badsyntax.gradle.handlers.AttachBuildHandler;
 import com.github.badsyntax.gradle.handlers.CancelBuildHandler;
 import com.github.badsyntax.gradle.handlers.CancelBuildsHandler;
+import com.github.badsyntax.gradle.handlers.ContinuousBuildHandler;
+import com.github.badsyntax.gradle.handlers.ExportTraceHandler;
+import com.github.badsyntax.gradle.handlers.FindTasksHandler;
 import com.github.badsyntax.gradle.handlers.GetBuildHandler;
+import com.github.badsyntax.gradle.handlers.GetBuildOutputHandler;
+import com.github.badsyntax.gradle.handlers.GetBuildsHandler;
+import com.github.badsyntax.gradle.handlers.GetConfigurationProfilesHandler;
 import com.github.badsyntax.gradle.handlers.GetDaemonsStatusHandler;
+import com.github.badsyntax.gradle.handlers.GetServerStatsHandler;
+import com.github.badsyntax.gradle.handlers.GetTaskGraphHandler;
 import com.github.badsyntax.gradle.handlers.RunBuildHandler;
+import com.github.badsyntax.gradle.handlers.RunBuildWithInputHandler;
 import com.github.badsyntax.gradle.handlers.StopDaemonHandler;
 import com.github.badsyntax.gradle.handlers.StopDaemonsHandler;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import com.github.badsyntax.gradle.index.TaskIndex;
+import com.github.badsyntax.gradle.output.BuildOutputBuffer;
+import com.github.badsyntax.gradle.output.BuildOutputBuffers;
+import com.github.badsyntax.gradle.output.OutputLogStore;
+import com.github.badsyntax.gradle.process.ProcessSampler;
+import com.github.badsyntax.gradle.stats.ServerStats;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class GradleService extends GradleGrpc.GradleImplBase {
+  private static final Logger logger = LoggerFactory.getLogger(GradleService.class.getName());
+
+  private final BuildHistory buildHistory;
+  private final BuildOutputBuffers buildOutputBuffers;
+  private final RpcExecutors rpcExecutors;
+  private final MessageCompression messageCompression;
+  private final ServerStats serverStats;
+  private final IdleReclaimer idleReclaimer;
+  private final TaskIndex taskIndex;
+  private final TaskGraphCache taskGraphCache;
+  private final RunBuildCoalescer runBuildCoalescer;
+  private final ConfigurationProfileLog configurationProfileLog;
+  private final Path historyDir;
+  private final OutputLogStore outputLogStore;
+  private final DaemonReuseTracker daemonReuseTracker;
+  private final ProcessSampler processSampler = new ProcessSampler();
+
+  public GradleService(
+      BuildHistory buildHistory,
+      BuildOutputBuffers buildOutputBuffers,
+      RpcExecutors rpcExecutors,
+      MessageCompression messageCompression,
+      ServerStats serverStats,
+      IdleReclaimer idleReclaimer,
+      TaskIndex taskIndex,
+      TaskGraphCache taskGraphCache,
+      RunBuildCoalescer runBuildCoalescer,
+      ConfigurationProfileLog configurationProfileLog,
+      Path historyDir,
+      OutputLogStore outputLogStore,
+      DaemonReuseTracker daemonReuseTracker) {
+    this.buildHistory = buildHistory;
+    this.buildOutputBuffers = buildOutputBuffers;
+    this.rpcExecutors = rpcExecutors;
+    this.messageCompression = messageCompression;
+    this.serverStats = serverStats;
+    this.idleReclaimer = idleReclaimer;
+    this.taskIndex = taskIndex;
+    this.taskGraphCache = taskGraphCache;
+    this.runBuildCoalescer = runBuildCoalescer;
+    this.configurationProfileLog = configurationProfileLog;
+    this.historyDir = historyDir;
+    this.outputLogStore = outputLogStore;
+    this.daemonReuseTracker = daemonReuseTracker;
+  }
 
   @Override
   public void getBuild(GetBuildRequest req, StreamObserver<GetBuildReply> responseObserver) {
-    GetBuildHandler getBuildHandler = new GetBuildHandler(req, responseObserver);
-    getBuildHandler.run();
+    execute(
+        rpcExecutors.getBuildExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetBuildHandler getBuildHandler =
+              new GetBuildHandler(
+                  req,
+                  messageCompression.wrap(callObserver),
+                  taskIndex,
+                  configurationProfileLog,
+                  daemonReuseTracker);
+          getBuildHandler.run();
+        });
+  }
+
+  @Override
+  public void getBuilds(GetBuildsRequest req, StreamObserver<GetBuildsReply> responseObserver) {
+    execute(
+        rpcExecutors.getBuildExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetBuildsHandler getBuildsHandler =
+              new GetBuildsHandler(
+                  req,
+                  messageCompression.wrap(callObserver),
+                  taskIndex,
+                  configurationProfileLog,
+                  daemonReuseTracker,
+                  rpcExecutors.getProjectExecutor(),
+                  rpcExecutors.getProjectThreads());
+          getBuildsHandler.run();
+        });
   }
 
   @Override
   public void runBuild(RunBuildRequest req, StreamObserver<RunBuildReply> responseObserver) {
-    RunBuildHandler runBuildHandler = new RunBuildHandler(req, responseObserver);
-    runBuildHandler.run();
+    execute(
+        rpcExecutors.getBuildExecutor(),
+        responseObserver,
+        callObserver -> {
+          BuildOutputBuffer buffer = buildOutputBuffers.open(req.getCancellationKey());
+          StreamObserver<RunBuildReply> trackedObserver = track(buffer, callObserver);
+          if (runBuildCoalescer.isEnabled() && RunBuildCoalescer.canCoalesce(req)) {
+            runBuildCoalescer.run(req, trackedObserver, hasSubscribers(buffer));
+            return;
+          }
+          RunBuildHandler runBuildHandler = new RunBuildHandler(req, trackedObserver, buildHistory);
+          runBuildHandler
+              .setOutputLogStore(outputLogStore)
+              .setHasSubscribers(hasSubscribers(buffer))
+              .setDaemonReuseTracker(daemonReuseTracker)
+              .run();
+        });
+  }
+
+  @Override
+  public StreamObserver<RunBuildInput> runBuildWithInput(
+      StreamObserver<RunBuildReply> responseObserver) {
+    // Replies come from the build and from the inbound stream
+    ServerCallStreamObserver<RunBuildReply> synchronizedObserver =
+        new SynchronizedCallObserver<>((ServerCallStreamObserver<RunBuildReply>) responseObserver);
+    return new RunBuildWithInputHandler(
+        synchronizedObserver,
+        (req, standardInputPipe) ->
+            execute(
+                rpcExecutors.getInputBuildExecutor(),
+                synchronizedObserver,
+                callObserver -> {
+                  try {
+                    BuildOutputBuffer buffer = buildOutputBuffers.open(req.getCancellationKey());
+                    new RunBuildHandler(req, track(buffer, callObserver), buildHistory)
+                        .setStandardInputStream(standardInputPipe)
+                        .setOutputLogStore(outputLogStore)
+                        .setHasSubscribers(hasSubscribers(buffer))
+                        .setDaemonReuseTracker(daemonReuseTracker)
+                        .run();
+                  } finally {
+                    standardInputPipe.close();
+                  }
+                }));
+  }
+
+  @Override
+  public void attachBuild(
+      AttachBuildRequest req, StreamObserver<AttachBuildReply> responseObserver) {
+    OnReadySignal onReadySignal =
+        new OnReadySignal((ServerCallStreamObserver<AttachBuildReply>) responseObserver);
+    execute(
+        rpcExecutors.getStreamExecutor(),
+        responseObserver,
+        callObserver -> {
+          AttachBuildHandler attachBuildHandler =
+              new AttachBuildHandler(
+                      req, messageCompression.wrap(callObserver), buildOutputBuffers)
+                  .setOnReadySignal(onReadySignal);
+          attachBuildHandler.run();
+        });
+  }
+
+  @Override
+  public void getBuildOutput(
+      GetBuildOutputRequest req, StreamObserver<GetBuildOutputReply> responseObserver) {
+    OnReadySignal onReadySignal =
+        new OnReadySignal((ServerCallStreamObserver<GetBuildOutputReply>) responseObserver);
+    execute(
+        rpcExecutors.getStreamExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetBuildOutputHandler getBuildOutputHandler =
+              new GetBuildOutputHandler(req, messageCompression.wrap(callObserver), outputLogStore)
+                  .setOnReadySignal(onReadySignal);
+          getBuildOutputHandler.run();
+        });
+  }
+
+  @Override
+  public void continuousBuild(
+      ContinuousBuildRequest req, StreamObserver<ContinuousBuildReply> responseObserver) {
+    execute(
+        rpcExecutors.getStreamExecutor(),
+        responseObserver,
+        callObserver -> {
+          ContinuousBuildHandler continuousBuildHandler =
+              new ContinuousBuildHandler(
+                  req,
+                  messageCompression.wrap(callObserver),
+                  buildHistory,
+                  rpcExecutors.getBuildExecutor());
+          continuousBuildHandler.setDaemonReuseTracker(daemonReuseTracker).run();
+        });
   }
 
   @Override
   public void cancelBuild(
       CancelBuildRequest req, StreamObserver<CancelBuildReply> responseObserver) {
-    CancelBuildHandler cancelRunBuildHandler = new CancelBuildHandler(req, responseObserver);
-    cancelRunBuildHandler.run();
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          CancelBuildHandler cancelRunBuildHandler = new CancelBuildHandler(req, callObserver);
+          cancelRunBuildHandler.run();
+        });
   }
 
   @Override
   public void cancelBuilds(
       CancelBuildsRequest req, StreamObserver<CancelBuildsReply> responseObserver) {
-    CancelBuildsHandler cancelRunBuildsHandler = new CancelBuildsHandler(responseObserver);
-    cancelRunBuildsHandler.run();
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          CancelBuildsHandler cancelRunBuildsHandler = new CancelBuildsHandler(req, callObserver);
+          cancelRunBuildsHandler.run();
+        });
   }
 
   @Override
   public void getDaemonsStatus(
       GetDaemonsStatusRequest req, StreamObserver<GetDaemonsStatusReply> responseObserver) {
-    GetDaemonsStatusHandler getDaemonsStatusHandler =
-        new GetDaemonsStatusHandler(req, responseObserver);
-    getDaemonsStatusHandler.run();
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetDaemonsStatusHandler getDaemonsStatusHandler =
+              new GetDaemonsStatusHandler(req, callObserver, processSampler);
+          getDaemonsStatusHandler.run();
+        });
   }
 
   @Override
   public void stopDaemons(
       StopDaemonsRequest req, StreamObserver<StopDaemonsReply> responseObserver) {
-    StopDaemonsHandler stopDaemonsHandler = new StopDaemonsHandler(req, responseObserver);
-    stopDaemonsHandler.run();
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          StopDaemonsHandler stopDaemonsHandler = new StopDaemonsHandler(req, callObserver);
+          stopDaemonsHandler.run();
+        });
   }
 
   @Override
   public void stopDaemon(StopDaemonRequest req, StreamObserver<StopDaemonReply> responseObserver) {
-    StopDaemonHandler stopDaemonHandler = new StopDaemonHandler(req, responseObserver);
-    stopDaemonHandler.run();
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          StopDaemonHandler stopDaemonHandler = new StopDaemonHandler(req, callObserver);
+          stopDaemonHandler.run();
+        });
+  }
+
+  @Override
+  public void getServerStats(
+      GetServerStatsRequest req, StreamObserver<GetServerStatsReply> responseObserver) {
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetServerStatsHandler getServerStatsHandler =
+              new GetServerStatsHandler(req, callObserver, serverStats);
+          getServerStatsHandler.run();
+        });
+  }
+
+  @Override
+  public void findTasks(FindTasksRequest req, StreamObserver<FindTasksReply> responseObserver) {
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          FindTasksHandler findTasksHandler = new FindTasksHandler(req, callObserver, taskIndex);
+          findTasksHandler.run();
+        });
+  }
+
+  @Override
+  public void getTaskGraph(
+      GetTaskGraphRequest req, StreamObserver<GetTaskGraphReply> responseObserver) {
+    execute(
+        rpcExecutors.getBuildExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetTaskGraphHandler getTaskGraphHandler =
+              new GetTaskGraphHandler(req, callObserver, taskGraphCache, daemonReuseTracker);
+          getTaskGraphHandler.run();
+        });
+  }
+
+  @Override
+  public void exportTrace(
+      ExportTraceRequest req, StreamObserver<ExportTraceReply> responseObserver) {
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          ExportTraceHandler exportTraceHandler =
+              new ExportTraceHandler(req, callObserver, historyDir);
+          exportTraceHandler.run();
+        });
+  }
+
+  @Override
+  public void getConfigurationProfiles(
+      GetConfigurationProfilesRequest req,
+      StreamObserver<GetConfigurationProfilesReply> responseObserver) {
+    execute(
+        rpcExecutors.getControlExecutor(),
+        responseObserver,
+        callObserver -> {
+          GetConfigurationProfilesHandler getConfigurationProfilesHandler =
+              new GetConfigurationProfilesHandler(req, callObserver, configurationProfileLog);
+          getConfigurationProfilesHandler.run();
+        });
+  }
+
+  // Builds with a cancellation key are buffered so that clients can attach to them
+  private StreamObserver<RunBuildReply> track(
+      BuildOutputBuffer buffer, StreamObserver<RunBuildReply> responseObserver) {
+    StreamObserver<RunBuildReply> compressingObserver = messageCompression.wrap(responseObserver);
+    return buffer == null ? compressingObserver : buffer.track(compressingObserver);
+  }
+
+  // Buffered builds keep running while a client is attached to them
+  private static BooleanSupplier hasSubscribers(BuildOutputBuffer buffer) {
+    return buffer == null ? null : buffer::hasSubscribers;
+  }
+
+  // Runs the handler in its lane, with the call's context so handlers can see the call being
+  // cancelled, and marks the server as busy while it runs
+  private <T> void execute(
+      Executor executor, StreamObserver<T> responseObserver, Consumer<StreamObserver<T>> handler) {
+    CallObserver<T> callObserver =
+        new CallObserver<>((ServerCallStreamObserver<T>) responseObserver);
+    Runnable task =
+        () -> {
+          idleReclaimer.enter();
+          try {
+            handler.accept(callObserver);
+          } catch (RuntimeException e) {
+            // A handler can throw once its call is closed, and then the call can't be failed
+            if (callObserver.isClosed()) {
+              logger.debug("Handler error after the call was closed: {}", e.getMessage());
+            } else {
+              logger.error("Unexpected handler error: {}", e.getMessage());
+              callObserver.onError(ErrorMessageBuilder.build(e));
+            }
+          } finally {
+            idleReclaimer.exit();
+          }
+        };
+    try {
+      executor.execute(Context.current().wrap(task));
+    } catch (RejectedExecutionException e) {
+      logger.warn("Rejected call, the server is shutting down");
+      callObserver.onError(ErrorMessageBuilder.build(e, Status.UNAVAILABLE));
+    }
   }
 }
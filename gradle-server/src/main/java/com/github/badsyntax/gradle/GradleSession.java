@@ -0,0 +1,16 @@
+package com.github.badsyntax.gradle;
+
+import org.gradle.tooling.BuildAction;
+
+// A connection to one Gradle build, opened by a GradleBackend. Handlers describe what to run
+// with a GradleOperation, so they don't depend on how a backend talks to Gradle.
+public interface GradleSession extends AutoCloseable {
+  <T> T getModel(Class<T> modelType, GradleOperation operation);
+
+  <T> T run(BuildAction<T> buildAction, GradleOperation operation);
+
+  void runBuild(GradleOperation operation);
+
+  @Override
+  void close();
+}
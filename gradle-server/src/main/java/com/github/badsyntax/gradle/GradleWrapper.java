@@ -5,13 +5,22 @@ import com.github.badsyntax.gradle.exceptions.ProcessException;
 import com.github.badsyntax.gradle.process.Process;
 import com.github.badsyntax.gradle.process.ProcessOutput;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class GradleWrapper {
   private File projectRoot;
   private static final String GRADLE_WRAPPER_UNIX = "gradlew";
   private static final String GRADLE_WRAPPER_WINDOWS = "gradlew.bat";
+  private static final String WRAPPER_PROPERTIES = "gradle/wrapper/gradle-wrapper.properties";
+  // gradle-6.5.1-bin.zip, gradle-7.0-rc-1-all.zip
+  private static final Pattern DISTRIBUTION_VERSION =
+      Pattern.compile("gradle-(.+)-(?:bin|all)\\.zip$");
 
   public GradleWrapper(File projectRoot) {
     this.projectRoot = projectRoot;
@@ -40,4 +49,20 @@ public class GradleWrapper {
           String.format("Error running gradle wrapper: %s", e.getMessage()));
     }
   }
+
+  // The Gradle version the wrapper runs, or null when the wrapper properties can't tell
+  public String getVersion() {
+    Properties properties = new Properties();
+    try (InputStream input = new FileInputStream(new File(projectRoot, WRAPPER_PROPERTIES))) {
+      properties.load(input);
+    } catch (IOException e) {
+      return null;
+    }
+    String distributionUrl = properties.getProperty("distributionUrl");
+    if (distributionUrl == null) {
+      return null;
+    }
+    Matcher matcher = DISTRIBUTION_VERSION.matcher(distributionUrl);
+    return matcher.find() ? matcher.group(1) : null;
+  }
 }
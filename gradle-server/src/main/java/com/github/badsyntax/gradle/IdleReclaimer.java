@@ -0,0 +1,185 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Releases caches once no call has run for a while. Calls hold a read lock while they run, so
+// caches are only released when nothing is using them, and each cache is rebuilt lazily by the
+// next call that needs it. The memory released is measured once the collector has next run,
+// which is left to the JVM, as the heap in use before the release less the heap in use then.
+public class IdleReclaimer implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(IdleReclaimer.class.getName());
+
+  public static final String IDLE_RECLAIMS = "idle_reclaims";
+  public static final String IDLE_RECLAIMED_BYTES = "idle_reclaimed_bytes";
+
+  private static final long MAX_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+  private final long idleMillis;
+  private final ServerStats serverStats;
+  private final List<Runnable> releasers;
+  private final ReadWriteLock activity = new ReentrantReadWriteLock();
+  private final ScheduledExecutorService scheduler;
+  private final LongSupplier clock;
+  private LongSupplier heapInUse = IdleReclaimer::heapInUse;
+  private LongSupplier collections = IdleReclaimer::collections;
+  private volatile long lastActivityMillis;
+  private volatile boolean reclaimed;
+  // Set by a release that hasn't been measured yet, accessed on the scheduler thread
+  private long heapBeforeBytes = -1;
+  private long collectionsAtRelease;
+
+  // An idle time of 0 disables reclaiming
+  public IdleReclaimer(long idleMillis, ServerStats serverStats, Runnable... releasers) {
+    this(idleMillis, serverStats, System::currentTimeMillis, releasers);
+  }
+
+  IdleReclaimer(
+      long idleMillis, ServerStats serverStats, LongSupplier clock, Runnable... releasers) {
+    this.idleMillis = idleMillis;
+    this.serverStats = serverStats;
+    this.clock = clock;
+    this.releasers = Arrays.asList(releasers);
+    this.lastActivityMillis = clock.getAsLong();
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("idle-reclaimer").setDaemon(true).build());
+  }
+
+  // How the heap is read, for tests
+  IdleReclaimer setHeap(LongSupplier heapInUse, LongSupplier collections) {
+    this.heapInUse = heapInUse;
+    this.collections = collections;
+    return this;
+  }
+
+  public void start() {
+    if (idleMillis <= 0) {
+      return;
+    }
+    long checkIntervalMillis = Math.min(idleMillis, MAX_CHECK_INTERVAL_MILLIS);
+    scheduler.scheduleWithFixedDelay(
+        this::reclaimIfIdle, checkIntervalMillis, checkIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // Called by the thread that runs a call, before and after the call
+  public void enter() {
+    activity.readLock().lock();
+  }
+
+  public void exit() {
+    lastActivityMillis = clock.getAsLong();
+    reclaimed = false;
+    activity.readLock().unlock();
+  }
+
+  // Runs work that outlives the call that started it, like a coalesced build, as if it were a call
+  public Executor wrap(Executor executor) {
+    return task ->
+        executor.execute(
+            () -> {
+              enter();
+              try {
+                task.run();
+              } finally {
+                exit();
+              }
+            });
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+
+  void reclaimIfIdle() {
+    if (reclaimed) {
+      // Under the write lock, so no call has run since the release while it is measured
+      if (activity.writeLock().tryLock()) {
+        try {
+          if (reclaimed) {
+            measureReclaimed();
+          }
+        } finally {
+          activity.writeLock().unlock();
+        }
+      }
+      return;
+    }
+    // A call since the release changed the heap, so the release can't be measured anymore
+    heapBeforeBytes = -1;
+    if (clock.getAsLong() - lastActivityMillis < idleMillis) {
+      return;
+    }
+    // Never waits, a call that is running means the server isn't idle
+    if (!activity.writeLock().tryLock()) {
+      return;
+    }
+    try {
+      reclaim();
+      reclaimed = true;
+    } finally {
+      activity.writeLock().unlock();
+    }
+  }
+
+  private void reclaim() {
+    heapBeforeBytes = heapInUse.getAsLong();
+    collectionsAtRelease = collections.getAsLong();
+    for (Runnable releaser : releasers) {
+      // A releaser that fails doesn't stop the others
+      try {
+        releaser.run();
+      } catch (RuntimeException e) {
+        logger.error("Unable to release idle resources: {}", e.getMessage());
+      }
+    }
+    serverStats.increment(IDLE_RECLAIMS);
+    logger.info(
+        "Idle for {}s, released caches ({}KB heap in use)",
+        TimeUnit.MILLISECONDS.toSeconds(idleMillis),
+        heapBeforeBytes / 1024);
+  }
+
+  // Nothing runs while the server stays idle, so what the collector frees is what was released
+  private void measureReclaimed() {
+    if (heapBeforeBytes < 0 || collections.getAsLong() == collectionsAtRelease) {
+      return;
+    }
+    long heapAfterBytes = heapInUse.getAsLong();
+    long reclaimedBytes = Math.max(0, heapBeforeBytes - heapAfterBytes);
+    heapBeforeBytes = -1;
+    serverStats.add(IDLE_RECLAIMED_BYTES, reclaimedBytes);
+    logger.info(
+        "Reclaimed {}KB while idle ({}KB heap in use)",
+        reclaimedBytes / 1024,
+        heapAfterBytes / 1024);
+  }
+
+  private static long heapInUse() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // Collectors that don't count their collections report -1 and are left out
+  private static long collections() {
+    long count = 0;
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, collector.getCollectionCount());
+    }
+    return count;
+  }
+}
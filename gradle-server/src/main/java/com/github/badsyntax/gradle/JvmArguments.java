@@ -0,0 +1,108 @@
+package com.github.badsyntax.gradle;
+
+import com.google.common.base.Strings;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Turns the JVM arguments of a Gradle config into a canonical list. Gradle only reuses a daemon
+// that was started with the same JVM arguments, so two configs that only differ in whitespace or
+// repeated options would otherwise each start a daemon of their own.
+public class JvmArguments {
+  private static final String[] SIZE_OPTIONS = {"-Xms", "-Xmx", "-Xmn", "-Xss"};
+
+  private JvmArguments() {}
+
+  // Options that the JVM applies once are deduplicated, keeping the last value where the option
+  // first occurred. Nothing is reordered, as some flags only work after another one, like
+  // -XX:+UnlockExperimentalVMOptions before the experimental flags it unlocks.
+  public static List<String> canonicalize(String jvmArguments) {
+    if (Strings.isNullOrEmpty(jvmArguments)) {
+      return Collections.emptyList();
+    }
+    List<String> canonical = new ArrayList<>();
+    Map<String, Integer> keyedPositions = new HashMap<>();
+    for (String argument : tokenize(jvmArguments)) {
+      String key = keyOf(argument);
+      Integer position = key == null ? null : keyedPositions.get(key);
+      if (position != null) {
+        canonical.set(position, argument);
+        continue;
+      }
+      if (key != null) {
+        keyedPositions.put(key, canonical.size());
+      }
+      canonical.add(argument);
+    }
+    return canonical;
+  }
+
+  // Splits on whitespace outside of single or double quotes, and removes the quotes
+  static List<String> tokenize(String jvmArguments) {
+    List<String> tokens = new ArrayList<>();
+    StringBuilder token = new StringBuilder();
+    boolean inToken = false;
+    char quote = 0;
+    for (int i = 0; i < jvmArguments.length(); i++) {
+      char c = jvmArguments.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        } else {
+          token.append(c);
+        }
+      } else if (c == '"' || c == '\'') {
+        quote = c;
+        inToken = true;
+      } else if (Character.isWhitespace(c)) {
+        if (inToken) {
+          tokens.add(token.toString());
+          token.setLength(0);
+          inToken = false;
+        }
+      } else {
+        token.append(c);
+        inToken = true;
+      }
+    }
+    if (inToken) {
+      tokens.add(token.toString());
+    }
+    return tokens;
+  }
+
+  // The differences between two canonical lists, for logging
+  public static String describeDifference(List<String> from, List<String> to) {
+    List<String> added = new ArrayList<>(to);
+    added.removeAll(from);
+    List<String> removed = new ArrayList<>(from);
+    removed.removeAll(to);
+    if (added.isEmpty() && removed.isEmpty()) {
+      return "arguments are in a different order";
+    }
+    return String.format("added %s, removed %s", added, removed);
+  }
+
+  // The option an argument sets, for options that the JVM applies once and where the last
+  // occurrence wins, or null
+  private static String keyOf(String argument) {
+    if (argument.startsWith("-D") && argument.length() > 2) {
+      int equals = argument.indexOf('=');
+      return equals < 0 ? argument : argument.substring(0, equals);
+    }
+    if (argument.startsWith("-XX:")) {
+      // -XX:+Name and -XX:-Name set the same flag
+      String flag = argument.substring(4).replaceFirst("^[+-]", "");
+      int equals = flag.indexOf('=');
+      return "-XX:" + (equals < 0 ? flag : flag.substring(0, equals));
+    }
+    for (String sizeOption : SIZE_OPTIONS) {
+      if (argument.startsWith(sizeOption) && argument.length() > sizeOption.length()) {
+        return sizeOption;
+      }
+    }
+    return null;
+  }
+}
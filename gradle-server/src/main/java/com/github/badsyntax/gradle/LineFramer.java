@@ -0,0 +1,111 @@
+package com.github.badsyntax.gradle;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Splits a stream of output chunks into complete lines, carrying a partial line over to the next
+// chunk. Lines are split on the newline byte, which never occurs inside a multi-byte UTF-8
+// character or an ANSI escape sequence, and a trailing carriage return is removed. Lines longer
+// than the maximum, like a progress bar redrawn with carriage returns, are split at a character
+// boundary so that the partial line can't grow without limit.
+public class LineFramer {
+  public static final int DEFAULT_MAX_LINE_BYTES = 64 * 1024;
+
+  private final int maxLineBytes;
+  private byte[] partialLine = new byte[256];
+  private int partialLength;
+
+  public LineFramer() {
+    this(DEFAULT_MAX_LINE_BYTES);
+  }
+
+  public LineFramer(int maxLineBytes) {
+    this.maxLineBytes = maxLineBytes;
+  }
+
+  public List<String> frame(byte[] bytes) {
+    List<String> lines = new ArrayList<>();
+    int lineStart = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if (bytes[i] != '\n') {
+        continue;
+      }
+      if (partialLength == 0 && i - lineStart <= maxLineBytes) {
+        lines.add(decode(bytes, lineStart, stripCarriageReturn(bytes, lineStart, i - lineStart)));
+      } else {
+        appendPartialLine(bytes, lineStart, i - lineStart);
+        addLine(lines, partialLine, stripCarriageReturn(partialLine, 0, partialLength));
+        partialLength = 0;
+      }
+      lineStart = i + 1;
+    }
+    if (lineStart < bytes.length) {
+      appendPartialLine(bytes, lineStart, bytes.length - lineStart);
+      splitPartialLine(lines);
+    }
+    return lines;
+  }
+
+  // Returns the last line when the output didn't end with a newline
+  public String drain() {
+    if (partialLength == 0) {
+      return null;
+    }
+    String line = decode(partialLine, 0, stripCarriageReturn(partialLine, 0, partialLength));
+    partialLength = 0;
+    return line;
+  }
+
+  private void appendPartialLine(byte[] bytes, int offset, int length) {
+    if (partialLength + length > partialLine.length) {
+      partialLine =
+          Arrays.copyOf(partialLine, Math.max(partialLine.length * 2, partialLength + length));
+    }
+    System.arraycopy(bytes, offset, partialLine, partialLength, length);
+    partialLength += length;
+  }
+
+  // Sends the pieces of the partial line that are already too long. A trailing carriage return
+  // doesn't count, as it is removed if a newline follows it.
+  private void splitPartialLine(List<String> lines) {
+    int start = 0;
+    while (stripCarriageReturn(partialLine, start, partialLength - start) > maxLineBytes) {
+      int end = characterBoundary(partialLine, start);
+      lines.add(decode(partialLine, start, end - start));
+      start = end;
+    }
+    if (start > 0) {
+      System.arraycopy(partialLine, start, partialLine, 0, partialLength - start);
+      partialLength -= start;
+    }
+  }
+
+  private void addLine(List<String> lines, byte[] bytes, int length) {
+    int start = 0;
+    while (length - start > maxLineBytes) {
+      int end = characterBoundary(bytes, start);
+      lines.add(decode(bytes, start, end - start));
+      start = end;
+    }
+    lines.add(decode(bytes, start, length - start));
+  }
+
+  // The end of a piece of at most the maximum length that doesn't split a UTF-8 character
+  private int characterBoundary(byte[] bytes, int start) {
+    int end = start + maxLineBytes;
+    while (end > start && (bytes[end] & 0xC0) == 0x80) {
+      end--;
+    }
+    return end == start ? start + maxLineBytes : end;
+  }
+
+  private static int stripCarriageReturn(byte[] bytes, int offset, int length) {
+    return length > 0 && bytes[offset + length - 1] == '\r' ? length - 1 : length;
+  }
+
+  private static String decode(byte[] bytes, int offset, int length) {
+    return new String(bytes, offset, length, StandardCharsets.UTF_8);
+  }
+}
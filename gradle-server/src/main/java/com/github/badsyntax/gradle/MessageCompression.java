@@ -0,0 +1,64 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import com.google.protobuf.MessageLite;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+// Compresses large replies, like GetBuild trees and batches of build output, and leaves small
+// replies like progress uncompressed. gzip is only used when the client advertises it, otherwise
+// gRPC sends every message uncompressed.
+public class MessageCompression {
+  private static final String COMPRESSION = "gzip";
+
+  private final int minBytes;
+  private final ServerStats serverStats;
+
+  // A minimum size of 0 disables compression
+  public MessageCompression(int minBytes, ServerStats serverStats) {
+    this.minBytes = minBytes;
+    this.serverStats = serverStats;
+  }
+
+  // The wrapper is a server call observer too, so handlers keep flow control and cancellation
+  public <T extends MessageLite> StreamObserver<T> wrap(StreamObserver<T> responseObserver) {
+    if (minBytes <= 0 || !(responseObserver instanceof ServerCallStreamObserver)) {
+      return responseObserver;
+    }
+    return new CompressingStreamObserver<>((ServerCallStreamObserver<T>) responseObserver);
+  }
+
+  private class CompressingStreamObserver<T extends MessageLite>
+      extends ForwardingServerCallStreamObserver<T> {
+    private boolean compressing = true;
+
+    CompressingStreamObserver(ServerCallStreamObserver<T> responseObserver) {
+      super(responseObserver);
+      responseObserver.setCompression(COMPRESSION);
+    }
+
+    @Override
+    public synchronized void onNext(T reply) {
+      // The serialized size is memoized, so it's not computed again when the reply is sent
+      boolean compress = reply.getSerializedSize() >= minBytes;
+      if (compress != compressing) {
+        delegate.setMessageCompression(compress);
+        compressing = compress;
+      }
+      if (compress) {
+        serverStats.increment(ServerStats.COMPRESSED_MESSAGES);
+      }
+      delegate.onNext(reply);
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+      delegate.onError(t);
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+      delegate.onCompleted();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.github.badsyntax.gradle;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+// Lets a handler that runs in a lane wait for its call to be ready for more replies, rather than
+// queueing them all in memory. gRPC only takes a ready handler while the service method runs, so
+// the signal is created there, before the handler is scheduled.
+public class OnReadySignal {
+  // A cancelled call isn't signalled, so waits are bounded
+  private static final long CHECK_MILLIS = 1000;
+
+  private final ServerCallStreamObserver<?> responseObserver;
+  private final Object lock = new Object();
+
+  public OnReadySignal(ServerCallStreamObserver<?> responseObserver) {
+    this.responseObserver = responseObserver;
+    responseObserver.setOnReadyHandler(this::signal);
+  }
+
+  // Returns false when the call was cancelled before it became ready
+  public boolean await() throws InterruptedException {
+    synchronized (lock) {
+      while (!responseObserver.isReady()) {
+        if (responseObserver.isCancelled()) {
+          return false;
+        }
+        lock.wait(CHECK_MILLIS);
+      }
+    }
+    return true;
+  }
+
+  private void signal() {
+    synchronized (lock) {
+      lock.notifyAll();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package com.github.badsyntax.gradle;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Handlers block for as long as their operation runs, so RPCs are split into lanes: a bounded
+// lane for builds, a lane for long-lived streams, and a lane for control calls that must stay
+// responsive however many builds are running
+public class RpcExecutors {
+  private static final Logger logger = LoggerFactory.getLogger(RpcExecutors.class.getName());
+
+  public enum Mode {
+    POOL,
+    VIRTUAL,
+    DIRECT
+  }
+
+  private final Executor controlExecutor;
+  private final Executor buildExecutor;
+  private final Executor inputBuildExecutor;
+  private final Executor streamExecutor;
+  private final Executor projectExecutor;
+  private final int projectThreads;
+  private final List<ExecutorService> executorServices = new ArrayList<>();
+
+  public RpcExecutors(GradleServerOptions options) {
+    projectThreads = Math.max(1, options.getProjectThreads());
+    if (options.getExecutorMode() == Mode.DIRECT) {
+      controlExecutor = MoreExecutors.directExecutor();
+      buildExecutor = MoreExecutors.directExecutor();
+      streamExecutor = MoreExecutors.directExecutor();
+      projectExecutor = MoreExecutors.directExecutor();
+      // The build would otherwise wait for input on the thread that receives it
+      inputBuildExecutor =
+          track(
+              Executors.newCachedThreadPool(
+                  new ThreadFactoryBuilder()
+                      .setNameFormat("rpc-input-build-%d")
+                      .setDaemon(true)
+                      .build()));
+      return;
+    }
+    controlExecutor = track(newFixedThreadPool(options.getControlThreads(), "rpc-control-%d"));
+    // A fixed pool even with virtual threads, as its size is what bounds the daemons in use
+    projectExecutor = track(newFixedThreadPool(projectThreads, "rpc-project-%d"));
+    ExecutorService virtualThreadExecutor =
+        options.getExecutorMode() == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+    if (virtualThreadExecutor != null) {
+      buildExecutor =
+          new BoundedExecutor(track(virtualThreadExecutor), options.getBuildThreads());
+      streamExecutor = virtualThreadExecutor;
+    } else {
+      buildExecutor = track(newFixedThreadPool(options.getBuildThreads(), "rpc-build-%d"));
+      streamExecutor =
+          track(
+              Executors.newCachedThreadPool(
+                  new ThreadFactoryBuilder()
+                      .setNameFormat("rpc-stream-%d")
+                      .setDaemon(true)
+                      .build()));
+    }
+    inputBuildExecutor = buildExecutor;
+  }
+
+  // Cancel, cancel all, daemon status and stop daemon calls
+  public Executor getControlExecutor() {
+    return controlExecutor;
+  }
+
+  // GetBuild, GetBuilds, GetTaskGraph and RunBuild, bounded so that builds queue instead of
+  // starting daemons without limit
+  public Executor getBuildExecutor() {
+    return buildExecutor;
+  }
+
+  // RunBuildWithInput builds, which must never run on the thread that delivers their standard
+  // input. The build lane, except for direct execution.
+  public Executor getInputBuildExecutor() {
+    return inputBuildExecutor;
+  }
+
+  // Streams that mostly wait, like AttachBuild and ContinuousBuild
+  public Executor getStreamExecutor() {
+    return streamExecutor;
+  }
+
+  // The root projects of a GetBuilds call. Kept apart from the build lane, whose thread the
+  // GetBuilds call itself is waiting on, so that a saturated build lane cannot starve it.
+  public Executor getProjectExecutor() {
+    return projectExecutor;
+  }
+
+  public int getProjectThreads() {
+    return projectThreads;
+  }
+
+  // The timeout is shared by all executors rather than applied to each of them
+  public void shutdown(long timeoutMillis) throws InterruptedException {
+    for (ExecutorService executorService : executorServices) {
+      executorService.shutdownNow();
+    }
+    long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    for (ExecutorService executorService : executorServices) {
+      executorService.awaitTermination(
+          Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private ExecutorService track(ExecutorService executorService) {
+    executorServices.add(executorService);
+    return executorService;
+  }
+
+  private static ExecutorService newFixedThreadPool(int threads, String nameFormat) {
+    return Executors.newFixedThreadPool(
+        threads, new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build());
+  }
+
+  // Virtual threads are only available from Java 21, and the server is built for Java 8
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      logger.warn("Virtual threads are not supported by this JVM, using a thread pool instead");
+      return null;
+    }
+  }
+}
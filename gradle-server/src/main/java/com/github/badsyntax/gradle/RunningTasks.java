@@ -0,0 +1,25 @@
+package com.github.badsyntax.gradle;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+// The tasks of a build that have started and not finished yet. The Tooling API doesn't say which
+// task wrote a piece of output, so output is only attributed to a task while it is the only one
+// running. With --parallel, or tasks that use workers, several tasks overlap and their output is
+// left unattributed rather than blamed on the task that started last. Callers synchronize.
+public class RunningTasks {
+  private final Set<String> taskPaths = new LinkedHashSet<>();
+
+  public void started(String taskPath) {
+    taskPaths.add(taskPath);
+  }
+
+  public void finished(String taskPath) {
+    taskPaths.remove(taskPath);
+  }
+
+  // Null when no task or more than one task is running
+  public String getOutputTaskPath() {
+    return taskPaths.size() == 1 ? taskPaths.iterator().next() : null;
+  }
+}
@@ -0,0 +1,114 @@
+package com.github.badsyntax.gradle;
+
+import com.google.common.base.Strings;
+import io.grpc.ServerBuilder;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Serves over a Unix domain socket with Netty's native epoll transport when a socket path is
+// given and epoll is available (Linux), which avoids the loopback TCP stack and port clashes
+// between windows. Everywhere else the server listens on a TCP port.
+public class ServerTransport implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ServerTransport.class.getName());
+
+  private final ServerBuilder<?> serverBuilder;
+  private final String address;
+  private final Path socketPath;
+  private final EventLoopGroup bossEventLoopGroup;
+  private final EventLoopGroup workerEventLoopGroup;
+
+  private ServerTransport(
+      ServerBuilder<?> serverBuilder,
+      String address,
+      Path socketPath,
+      EventLoopGroup bossEventLoopGroup,
+      EventLoopGroup workerEventLoopGroup) {
+    this.serverBuilder = serverBuilder;
+    this.address = address;
+    this.socketPath = socketPath;
+    this.bossEventLoopGroup = bossEventLoopGroup;
+    this.workerEventLoopGroup = workerEventLoopGroup;
+  }
+
+  public static ServerTransport create(GradleServerOptions options) {
+    if (!Strings.isNullOrEmpty(options.getSocket())) {
+      if (Epoll.isAvailable()) {
+        return forDomainSocket(Paths.get(options.getSocket()).toAbsolutePath());
+      }
+      logger.warn(
+          "Unix domain sockets are not available, falling back to TCP: {}",
+          Epoll.unavailabilityCause());
+    }
+    return forPort(options.getPort());
+  }
+
+  private static ServerTransport forPort(int port) {
+    return new ServerTransport(ServerBuilder.forPort(port), "port " + port, null, null, null);
+  }
+
+  private static ServerTransport forDomainSocket(Path socketPath) {
+    try {
+      // A socket file left behind by a server that was killed would fail the bind
+      Files.deleteIfExists(socketPath);
+      if (socketPath.getParent() != null) {
+        Files.createDirectories(socketPath.getParent());
+      }
+    } catch (IOException e) {
+      logger.error("Unable to prepare socket {}: {}", socketPath, e.getMessage());
+    }
+    EventLoopGroup bossEventLoopGroup = new EpollEventLoopGroup(1);
+    EventLoopGroup workerEventLoopGroup = new EpollEventLoopGroup();
+    ServerBuilder<?> serverBuilder =
+        NettyServerBuilder.forAddress(new DomainSocketAddress(socketPath.toString()))
+            .channelType(EpollServerDomainSocketChannel.class)
+            .bossEventLoopGroup(bossEventLoopGroup)
+            .workerEventLoopGroup(workerEventLoopGroup);
+    return new ServerTransport(
+        serverBuilder,
+        "socket " + socketPath,
+        socketPath,
+        bossEventLoopGroup,
+        workerEventLoopGroup);
+  }
+
+  public ServerBuilder<?> getServerBuilder() {
+    return serverBuilder;
+  }
+
+  public String getAddress() {
+    return address;
+  }
+
+  public boolean isDomainSocket() {
+    return socketPath != null;
+  }
+
+  // Netty doesn't own event loop groups passed to the builder, so they are shut down here once
+  // the server has terminated
+  @Override
+  public void close() {
+    if (bossEventLoopGroup != null) {
+      bossEventLoopGroup.shutdownGracefully();
+    }
+    if (workerEventLoopGroup != null) {
+      workerEventLoopGroup.shutdownGracefully();
+    }
+    if (socketPath != null) {
+      try {
+        Files.deleteIfExists(socketPath);
+      } catch (IOException e) {
+        logger.error("Unable to delete socket {}: {}", socketPath, e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package com.github.badsyntax.gradle;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+// Feeds chunks of standard input that arrive over time to a build. The writer never blocks:
+// it asks for the next chunk only once the build has read one, so no more than the capacity is
+// ever buffered, however much input is streamed.
+public class StandardInputPipe extends InputStream {
+  private static final byte[] END_OF_INPUT = new byte[0];
+
+  private final BlockingQueue<byte[]> chunks;
+  private final Runnable onChunkRead;
+  private byte[] chunk;
+  private int position;
+  private boolean isEnded;
+  private volatile boolean isClosed;
+
+  public StandardInputPipe(int capacity, Runnable onChunkRead) {
+    // One more slot for the end of input
+    this.chunks = new LinkedBlockingQueue<>(capacity + 1);
+    this.onChunkRead = onChunkRead;
+  }
+
+  public void write(byte[] bytes) throws IOException {
+    if (isClosed || bytes.length == 0) {
+      return;
+    }
+    if (!chunks.offer(bytes)) {
+      throw new IOException("Standard input was sent faster than it was requested");
+    }
+  }
+
+  // The build reads what is still buffered, then the end of input
+  public void closeInput() {
+    chunks.offer(END_OF_INPUT);
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] single = new byte[1];
+    int count = read(single, 0, 1);
+    return count == -1 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    while (!isEnded && (chunk == null || position == chunk.length)) {
+      if (chunk != null) {
+        chunk = null;
+        onChunkRead.run();
+      }
+      takeChunk();
+    }
+    if (isEnded) {
+      return -1;
+    }
+    int count = Math.min(length, chunk.length - position);
+    System.arraycopy(chunk, position, bytes, offset, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public synchronized int available() {
+    return chunk == null ? 0 : chunk.length - position;
+  }
+
+  // Drops buffered input and ends the stream for a reader that is still waiting, once the build
+  // has finished
+  @Override
+  public void close() {
+    isClosed = true;
+    chunks.clear();
+    chunks.offer(END_OF_INPUT);
+  }
+
+  private void takeChunk() throws IOException {
+    try {
+      byte[] next = chunks.take();
+      if (next == END_OF_INPUT) {
+        isEnded = true;
+      } else {
+        chunk = next;
+        position = 0;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for standard input");
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package com.github.badsyntax.gradle;
+
+import io.grpc.stub.ServerCallStreamObserver;
+
+// Serializes the replies of a call that is answered from more than one thread, like a build that
+// streams its output while the inbound stream fails the call. Replies after the call was closed
+// are dropped.
+public class SynchronizedCallObserver<T> extends ForwardingServerCallStreamObserver<T> {
+  private boolean closed;
+
+  public SynchronizedCallObserver(ServerCallStreamObserver<T> delegate) {
+    super(delegate);
+  }
+
+  @Override
+  public synchronized void onNext(T value) {
+    if (!closed) {
+      super.onNext(value);
+    }
+  }
+
+  @Override
+  public synchronized void onError(Throwable t) {
+    if (!closed) {
+      closed = true;
+      super.onError(t);
+    }
+  }
+
+  @Override
+  public synchronized void onCompleted() {
+    if (!closed) {
+      closed = true;
+      super.onCompleted();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.github.badsyntax.gradle;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.gradle.tooling.Failure;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.test.JvmTestOperationDescriptor;
+import org.gradle.tooling.events.test.TestFailureResult;
+import org.gradle.tooling.events.test.TestFinishEvent;
+import org.gradle.tooling.events.test.TestOperationResult;
+import org.gradle.tooling.events.test.TestSkippedResult;
+
+// Collects test results into batches, flushed when they are full or a short time after the
+// first result, so that large test suites don't produce a message per test
+public abstract class TestResultBatcher implements ProgressListener {
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final long MAX_BATCH_DELAY_MILLIS = 1000;
+  private static final int MAX_FAILURE_MESSAGE_LENGTH = 8192;
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "test-result-batcher");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private List<TestResult> batch = new ArrayList<>();
+  private ScheduledFuture<?> scheduledFlush;
+
+  @Override
+  public void statusChanged(ProgressEvent event) {
+    if (!(event instanceof TestFinishEvent)) {
+      return;
+    }
+    TestFinishEvent finishEvent = (TestFinishEvent) event;
+    if (!(finishEvent.getDescriptor() instanceof JvmTestOperationDescriptor)) {
+      return;
+    }
+    JvmTestOperationDescriptor descriptor =
+        (JvmTestOperationDescriptor) finishEvent.getDescriptor();
+    TestOperationResult result = finishEvent.getResult();
+    // Suites and classes are only interesting when they fail outside of a test method
+    if (descriptor.getMethodName() == null && !(result instanceof TestFailureResult)) {
+      return;
+    }
+    add(buildTestResult(descriptor, result));
+  }
+
+  private synchronized void add(TestResult testResult) {
+    batch.add(testResult);
+    if (batch.size() >= MAX_BATCH_SIZE) {
+      flush();
+    } else if (scheduledFlush == null) {
+      scheduledFlush =
+          scheduler.schedule(this::flush, MAX_BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public synchronized void flush() {
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<TestResult> results = batch;
+    batch = new ArrayList<>();
+    onBatch(results);
+  }
+
+  public abstract void onBatch(List<TestResult> results);
+
+  private static TestResult buildTestResult(
+      JvmTestOperationDescriptor descriptor, TestOperationResult result) {
+    TestResult.Builder testResult =
+        TestResult.newBuilder()
+            .setDisplayName(descriptor.getDisplayName())
+            .setDurationMillis(result.getEndTime() - result.getStartTime());
+    if (descriptor.getClassName() != null) {
+      testResult.setClassName(descriptor.getClassName());
+    }
+    if (descriptor.getMethodName() != null) {
+      testResult.setMethodName(descriptor.getMethodName());
+    }
+    if (result instanceof TestFailureResult) {
+      testResult
+          .setOutcome(TestResult.Outcome.FAILURE)
+          .setFailureMessage(getFailureMessage((TestFailureResult) result));
+    } else if (result instanceof TestSkippedResult) {
+      testResult.setOutcome(TestResult.Outcome.SKIPPED);
+    } else {
+      testResult.setOutcome(TestResult.Outcome.SUCCESS);
+    }
+    return testResult.build();
+  }
+
+  private static String getFailureMessage(TestFailureResult result) {
+    for (Failure failure : result.getFailures()) {
+      String message =
+          failure.getMessage() != null ? failure.getMessage() : failure.getDescription();
+      if (message != null) {
+        return message.length() > MAX_FAILURE_MESSAGE_LENGTH
+            ? message.substring(0, MAX_FAILURE_MESSAGE_LENGTH)
+            : message;
+      }
+    }
+    return "";
+  }
+}
@@ -0,0 +1,101 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import java.util.Map;
+import java.util.Set;
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.ConfigurableLauncher;
+import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.internal.consumer.ConnectorServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ToolingApiBackend implements GradleBackend {
+  private static final Logger logger = LoggerFactory.getLogger(ToolingApiBackend.class.getName());
+
+  private static volatile boolean connectorServicesAvailable = true;
+
+  @Override
+  public GradleSession connect(String projectDir, GradleConfig config)
+      throws GradleConnectionException {
+    return new ToolingApiSession(GradleProjectConnector.build(projectDir, config).connect());
+  }
+
+  // ConnectorServices is internal to the Tooling API, so if the bundled Tooling API doesn't have
+  // it the caches are kept until the server exits
+  @Override
+  public void release() {
+    if (!connectorServicesAvailable) {
+      return;
+    }
+    try {
+      ConnectorServices.reset();
+    } catch (LinkageError e) {
+      connectorServicesAvailable = false;
+      logger.warn("Unable to release Tooling API connections: {}", e.toString());
+    }
+  }
+
+  private static class ToolingApiSession implements GradleSession {
+    private final ProjectConnection connection;
+
+    ToolingApiSession(ProjectConnection connection) {
+      this.connection = connection;
+    }
+
+    @Override
+    public <T> T getModel(Class<T> modelType, GradleOperation operation) {
+      return configure(connection.model(modelType), operation).get();
+    }
+
+    @Override
+    public <T> T run(BuildAction<T> buildAction, GradleOperation operation) {
+      return configure(connection.action(buildAction), operation).run();
+    }
+
+    @Override
+    public void runBuild(GradleOperation operation) {
+      configure(connection.newBuild(), operation).run();
+    }
+
+    @Override
+    public void close() {
+      connection.close();
+    }
+
+    private static <T extends ConfigurableLauncher<T>> T configure(
+        T launcher, GradleOperation operation) {
+      if (operation.getCancellationToken() != null) {
+        launcher.withCancellationToken(operation.getCancellationToken());
+      }
+      for (Map.Entry<ProgressListener, Set<OperationType>> listener :
+          operation.getProgressListeners().entrySet()) {
+        launcher.addProgressListener(listener.getKey(), listener.getValue());
+      }
+      if (operation.getStandardOutput() != null) {
+        launcher.setStandardOutput(operation.getStandardOutput());
+      }
+      if (operation.getStandardError() != null) {
+        launcher.setStandardError(operation.getStandardError());
+      }
+      if (operation.getStandardInput() != null) {
+        launcher.setStandardInput(operation.getStandardInput());
+      }
+      if (operation.getColorOutput() != null) {
+        launcher.setColorOutput(operation.getColorOutput());
+      }
+      if (!operation.getArguments().isEmpty()) {
+        launcher.withArguments(operation.getArguments());
+      }
+      if (!operation.getJvmArguments().isEmpty()) {
+        launcher.setJvmArguments(operation.getJvmArguments());
+      }
+      if (operation.getEnvironmentVariables() != null) {
+        launcher.setEnvironmentVariables(operation.getEnvironmentVariables());
+      }
+      return launcher;
+    }
+  }
+}
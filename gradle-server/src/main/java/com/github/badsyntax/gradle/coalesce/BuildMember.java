@@ -0,0 +1,191 @@
+package com.github.badsyntax.gradle.coalesce;
+
+import com.github.badsyntax.gradle.BuildEstimate;
+import com.github.badsyntax.gradle.CallCancellation;
+import com.github.badsyntax.gradle.CancellableBuild;
+import com.github.badsyntax.gradle.Cancelled;
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.Progress;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.RunBuildResult;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.github.badsyntax.gradle.history.BuildOutcome;
+import com.github.badsyntax.gradle.history.BuildTracker;
+import com.google.protobuf.ByteString;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// One RunBuild request merged into a coalesced build. Replies are only sent while the member is
+// attached, and the coalesced build serializes every call on its own lock.
+class BuildMember {
+  private final RunBuildRequest req;
+  private final StreamObserver<RunBuildReply> responseObserver;
+  private final BuildTracker buildTracker;
+  private volatile boolean completed;
+  private final List<TaskSelector> taskSelectors = new ArrayList<>();
+  // Requested tasks that ran without failing
+  private final Set<String> succeededArgs = new HashSet<>();
+  private boolean hasFailedTask;
+  private CancellableBuild cancellableBuild;
+  private CallCancellation callCancellation;
+
+  BuildMember(
+      RunBuildRequest req,
+      StreamObserver<RunBuildReply> responseObserver,
+      BuildHistory buildHistory) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.buildTracker = new BuildTracker(buildHistory, req.getProjectDir(), req.getArgsList());
+    for (String arg : req.getArgsList()) {
+      taskSelectors.add(new TaskSelector(arg));
+    }
+  }
+
+  RunBuildRequest getRequest() {
+    return req;
+  }
+
+  BuildTracker getBuildTracker() {
+    return buildTracker;
+  }
+
+  void setCancellableBuild(CancellableBuild cancellableBuild) {
+    this.cancellableBuild = cancellableBuild;
+  }
+
+  void setCallCancellation(CallCancellation callCancellation) {
+    this.callCancellation = callCancellation;
+  }
+
+  boolean isAttached() {
+    return !completed;
+  }
+
+  boolean owns(String taskPath) {
+    for (TaskSelector taskSelector : taskSelectors) {
+      if (taskSelector.matches(taskPath)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  void onOwnedTaskFinished(String taskPath, boolean failed) {
+    if (failed) {
+      hasFailedTask = true;
+      return;
+    }
+    for (TaskSelector taskSelector : taskSelectors) {
+      if (taskSelector.matches(taskPath)) {
+        succeededArgs.add(taskSelector.getArg());
+      }
+    }
+  }
+
+  // A member of a failed build still succeeds when every task it asked for ran successfully
+  boolean hasSucceeded() {
+    return !hasFailedTask && succeededArgs.containsAll(req.getArgsList());
+  }
+
+  void replyWithProgress(String message) {
+    responseObserver.onNext(
+        RunBuildReply.newBuilder().setProgress(Progress.newBuilder().setMessage(message)).build());
+  }
+
+  void replyWithEstimate(BuildEstimate estimate) {
+    responseObserver.onNext(RunBuildReply.newBuilder().setEstimate(estimate).build());
+  }
+
+  void replyWithWarning(String warning) {
+    responseObserver.onNext(
+        RunBuildReply.newBuilder()
+            .setProgress(Progress.newBuilder().setMessage(warning).setWarning(true))
+            .build());
+  }
+
+  boolean isLineFramed() {
+    return req.getLineFramedOutput();
+  }
+
+  void replyWithLines(Output.OutputType outputType, List<String> lines, String taskPath) {
+    Output.Builder output = Output.newBuilder().setOutputType(outputType).addAllLines(lines);
+    if (taskPath != null) {
+      output.setTaskPath(taskPath);
+    }
+    responseObserver.onNext(RunBuildReply.newBuilder().setOutput(output).build());
+  }
+
+  // The bytes as Gradle wrote them, like a RunBuild that isn't coalesced sends them
+  void replyWithOutput(Output.OutputType outputType, ByteString outputBytes) {
+    responseObserver.onNext(
+        RunBuildReply.newBuilder()
+            .setOutput(Output.newBuilder().setOutputType(outputType).setOutputBytes(outputBytes))
+            .build());
+  }
+
+  // A member is detached even when its call can't be completed, as when it is already closed
+  void completeWithSuccess() {
+    try {
+      releaseCall();
+      buildTracker.finish(BuildOutcome.SUCCESS);
+      responseObserver.onNext(
+          RunBuildReply.newBuilder()
+              .setRunBuildResult(RunBuildResult.newBuilder().setMessage("Successfully run build"))
+              .build());
+      responseObserver.onCompleted();
+    } finally {
+      complete();
+    }
+  }
+
+  void completeWithCancelled(String message) {
+    try {
+      releaseCall();
+      buildTracker.finish(BuildOutcome.CANCELLED);
+      responseObserver.onNext(
+          RunBuildReply.newBuilder()
+              .setCancelled(
+                  Cancelled.newBuilder().setMessage(message).setProjectDir(req.getProjectDir()))
+              .build());
+      responseObserver.onCompleted();
+    } finally {
+      complete();
+    }
+  }
+
+  void completeWithError(Exception e, boolean buildFailed) {
+    try {
+      releaseCall();
+      if (buildFailed) {
+        buildTracker.finish(BuildOutcome.FAILED);
+      }
+      responseObserver.onError(ErrorMessageBuilder.build(e));
+    } finally {
+      complete();
+    }
+  }
+
+  // Completing the call cancels its context, which must not cancel the member. Estimates are
+  // stopped under the coalesced build's lock, so none is sent after the result.
+  private void releaseCall() {
+    buildTracker.stop();
+    if (callCancellation != null) {
+      callCancellation.close();
+    }
+  }
+
+  private void complete() {
+    try {
+      if (cancellableBuild != null) {
+        cancellableBuild.finish();
+      }
+    } finally {
+      completed = true;
+    }
+  }
+}
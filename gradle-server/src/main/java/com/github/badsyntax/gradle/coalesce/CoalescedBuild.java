@@ -0,0 +1,290 @@
+package com.github.badsyntax.gradle.coalesce;
+
+import com.github.badsyntax.gradle.BuildEstimate;
+import com.github.badsyntax.gradle.ByteBufferOutputStream;
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.GradleBuildCancellation;
+import com.github.badsyntax.gradle.GradleBuildRunner;
+import com.github.badsyntax.gradle.LineFramer;
+import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.RunningTasks;
+import com.github.badsyntax.gradle.exceptions.GradleBuildRunnerException;
+import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.google.protobuf.ByteString;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.BuildException;
+import org.gradle.tooling.UnsupportedVersionException;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.task.TaskFailureResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskStartEvent;
+import org.gradle.tooling.exceptions.UnsupportedBuildArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Runs the tasks of several RunBuild requests in one build, so the root is configured once.
+// Progress and output of a task go to the members that asked for it, and everything else,
+// like configuration output and shared dependencies, goes to every member. Members that asked for
+// line framed output are sent lines, the others are sent the output as Gradle wrote it.
+class CoalescedBuild {
+  private static final Logger logger = LoggerFactory.getLogger(CoalescedBuild.class.getName());
+
+  private static final AtomicLong buildCount = new AtomicLong();
+
+  private final String cancellationKey = "coalesced-build-" + buildCount.incrementAndGet();
+  private final DaemonReuseTracker daemonReuseTracker;
+  private final List<BuildMember> members = new ArrayList<>();
+  private final LineFramer standardOutputFramer = new LineFramer();
+  private final LineFramer standardErrorFramer = new LineFramer();
+  private final RunningTasks runningTasks = new RunningTasks();
+  private boolean isRunning;
+  private boolean isFinished;
+
+  CoalescedBuild(DaemonReuseTracker daemonReuseTracker) {
+    this.daemonReuseTracker = daemonReuseTracker;
+  }
+
+  synchronized void add(BuildMember member) {
+    members.add(member);
+  }
+
+  // Detaches a cancelled member. The build itself is only cancelled with its last member, as the
+  // other members still need it.
+  void cancel(BuildMember member) {
+    boolean isLastMember;
+    synchronized (this) {
+      if (!member.isAttached()) {
+        return;
+      }
+      try {
+        member.completeWithCancelled("Build cancelled");
+      } catch (RuntimeException e) {
+        logger.warn("Unable to complete a cancelled coalesced request: {}", e.getMessage());
+      }
+      isLastMember = isRunning && getAttachedMembers().isEmpty();
+    }
+    if (isLastMember) {
+      try {
+        GradleBuildCancellation.cancelBuild(cancellationKey, 0);
+      } catch (GradleCancellationException e) {
+        // The build has already finished
+      }
+    }
+  }
+
+  // Every member is completed once the build returns, whatever it threw
+  void run() {
+    try {
+      runBuild();
+    } catch (RuntimeException e) {
+      logger.error("Unexpected coalesced build error: {}", e.getMessage());
+      complete(member -> member.completeWithError(e, false));
+    } finally {
+      fail(new IllegalStateException("The coalesced build ended without a result"));
+    }
+  }
+
+  // Completes the members that are still attached, when the build could not be started or has
+  // finished
+  void fail(Exception e) {
+    synchronized (this) {
+      isFinished = true;
+    }
+    complete(member -> member.completeWithError(e, false));
+  }
+
+  synchronized boolean isFinished() {
+    return isFinished;
+  }
+
+  private void runBuild() {
+    List<BuildMember> attachedMembers;
+    synchronized (this) {
+      attachedMembers = getAttachedMembers();
+      if (attachedMembers.isEmpty()) {
+        return;
+      }
+      isRunning = true;
+      for (BuildMember member : attachedMembers) {
+        member.getBuildTracker().start(estimate -> onEstimate(member, estimate));
+      }
+    }
+    RunBuildRequest req = attachedMembers.get(0).getRequest();
+    List<String> args = mergeArgs(attachedMembers);
+    logger.info("Running {} requests as one build: {}", attachedMembers.size(), args);
+    GradleBuildRunner gradleRunner =
+        new GradleBuildRunner(
+            req.getProjectDir(),
+            args,
+            req.getGradleConfig(),
+            cancellationKey,
+            req.getShowOutputColors(),
+            0,
+            false);
+    gradleRunner
+        .setProgressListener(this::onProgress)
+        .setStandardOutputStream(newOutputStream(Output.OutputType.STDOUT, standardOutputFramer))
+        .setStandardErrorStream(newOutputStream(Output.OutputType.STDERR, standardErrorFramer))
+        .setDaemonReuseTracker(daemonReuseTracker, this::onWarning);
+
+    try {
+      runAndFlush(gradleRunner);
+      complete(BuildMember::completeWithSuccess);
+    } catch (BuildCancelledException e) {
+      complete(member -> member.completeWithCancelled(e.getMessage()));
+    } catch (BuildException e) {
+      logger.error(e.getMessage());
+      complete(
+          member -> {
+            if (member.hasSucceeded()) {
+              member.completeWithSuccess();
+            } else {
+              member.completeWithError(e, true);
+            }
+          });
+    } catch (GradleConnectionException
+        | UnsupportedVersionException
+        | UnsupportedBuildArgumentException
+        | IllegalStateException
+        | IOException
+        | GradleBuildRunnerException e) {
+      logger.error(e.getMessage());
+      complete(member -> member.completeWithError(e, false));
+    }
+  }
+
+  // Every requested task is run once, and with --continue a failing task only stops the tasks
+  // that depend on it, as it would have done in the separate builds
+  private static List<String> mergeArgs(List<BuildMember> members) {
+    Set<String> args = new LinkedHashSet<>();
+    for (BuildMember member : members) {
+      args.addAll(member.getRequest().getArgsList());
+    }
+    if (members.size() > 1) {
+      args.add("--continue");
+    }
+    return new ArrayList<>(args);
+  }
+
+  private void runAndFlush(GradleBuildRunner gradleRunner)
+      throws GradleConnectionException, IOException, GradleBuildRunnerException {
+    try {
+      gradleRunner.run();
+    } finally {
+      synchronized (this) {
+        replyWithLastLine(Output.OutputType.STDOUT, standardOutputFramer.drain());
+        replyWithLastLine(Output.OutputType.STDERR, standardErrorFramer.drain());
+      }
+    }
+  }
+
+  // A member that can't be completed must not keep the others from being completed
+  private synchronized void complete(Consumer<BuildMember> completion) {
+    for (BuildMember member : getAttachedMembers()) {
+      try {
+        completion.accept(member);
+      } catch (RuntimeException e) {
+        logger.warn("Unable to complete a coalesced request: {}", e.getMessage());
+      }
+    }
+  }
+
+  // Every member is sent the estimate of its own tasks, as they would have run on their own
+  private synchronized void onEstimate(BuildMember member, BuildEstimate estimate) {
+    if (member.isAttached() && !member.getBuildTracker().isStopped()) {
+      member.replyWithEstimate(estimate);
+    }
+  }
+
+  private synchronized void onWarning(String warning) {
+    for (BuildMember member : getAttachedMembers()) {
+      member.replyWithWarning(warning);
+    }
+  }
+
+  private synchronized void onProgress(ProgressEvent event) {
+    String taskPath = null;
+    if (event instanceof TaskStartEvent) {
+      taskPath = ((TaskStartEvent) event).getDescriptor().getTaskPath();
+      runningTasks.started(taskPath);
+    } else if (event instanceof TaskFinishEvent) {
+      taskPath = ((TaskFinishEvent) event).getDescriptor().getTaskPath();
+      onTaskFinished((TaskFinishEvent) event);
+    }
+    for (BuildMember member : getRecipients(taskPath)) {
+      member.replyWithProgress(event.getDisplayName());
+    }
+  }
+
+  private void onTaskFinished(TaskFinishEvent event) {
+    String taskPath = event.getDescriptor().getTaskPath();
+    runningTasks.finished(taskPath);
+    boolean failed = event.getResult() instanceof TaskFailureResult;
+    long durationMillis = event.getResult().getEndTime() - event.getResult().getStartTime();
+    for (BuildMember member : getRecipients(taskPath)) {
+      member.getBuildTracker().onTaskFinished(taskPath, durationMillis);
+      if (member.owns(taskPath)) {
+        member.onOwnedTaskFinished(taskPath, failed);
+      }
+    }
+  }
+
+  private ByteBufferOutputStream newOutputStream(Output.OutputType outputType, LineFramer framer) {
+    return new ByteBufferOutputStream() {
+      @Override
+      public void onFlush(byte[] bytes) {
+        ByteString outputBytes = ByteString.copyFrom(bytes);
+        synchronized (CoalescedBuild.this) {
+          String taskPath = runningTasks.getOutputTaskPath();
+          List<String> lines = framer.frame(bytes);
+          for (BuildMember member : getRecipients(taskPath)) {
+            if (!member.isLineFramed()) {
+              member.replyWithOutput(outputType, outputBytes);
+            } else if (!lines.isEmpty()) {
+              member.replyWithLines(outputType, lines, taskPath);
+            }
+          }
+        }
+      }
+    };
+  }
+
+  // Only framed members are sent the last line, the others had it with the bytes it came in
+  private void replyWithLastLine(Output.OutputType outputType, String line) {
+    if (line == null) {
+      return;
+    }
+    String taskPath = runningTasks.getOutputTaskPath();
+    for (BuildMember member : getRecipients(taskPath)) {
+      if (member.isLineFramed()) {
+        member.replyWithLines(outputType, Collections.singletonList(line), taskPath);
+      }
+    }
+  }
+
+  // The members that asked for the task, or every member when the task is shared. Tasks of a
+  // cancelled member keep going to that member only, which means nowhere.
+  private List<BuildMember> getRecipients(String taskPath) {
+    if (taskPath == null || members.stream().noneMatch(member -> member.owns(taskPath))) {
+      return getAttachedMembers();
+    }
+    return members.stream()
+        .filter(member -> member.isAttached() && member.owns(taskPath))
+        .collect(Collectors.toList());
+  }
+
+  private List<BuildMember> getAttachedMembers() {
+    return members.stream().filter(BuildMember::isAttached).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,152 @@
+package com.github.badsyntax.gradle.coalesce;
+
+import com.github.badsyntax.gradle.CallCancellation;
+import com.github.badsyntax.gradle.CancellableBuild;
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.GradleBuildCancellation;
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.JvmArguments;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.grpc.stub.StreamObserver;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+// Merges RunBuild requests for the same root that arrive within a short window into one build.
+// The first request schedules the build to start once the window closes and later requests join
+// it. A request returns as soon as it has joined, and its call is completed by the build, which
+// runs in the build lane like any other build. Each request keeps its cancellation key, and
+// cancelling it detaches it from the build.
+public class RunBuildCoalescer implements AutoCloseable {
+  private final long windowMillis;
+  private final BuildHistory buildHistory;
+  private final DaemonReuseTracker daemonReuseTracker;
+  private final Executor buildExecutor;
+  // Builds that are still accepting requests, by root and launcher settings
+  private final Map<String, CoalescedBuild> openBuilds = new HashMap<>();
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("build-coalescer").setDaemon(true).build());
+
+  public RunBuildCoalescer(
+      long windowMillis,
+      BuildHistory buildHistory,
+      DaemonReuseTracker daemonReuseTracker,
+      Executor buildExecutor) {
+    this.windowMillis = windowMillis;
+    this.buildHistory = buildHistory;
+    this.daemonReuseTracker = daemonReuseTracker;
+    this.buildExecutor = buildExecutor;
+  }
+
+  public boolean isEnabled() {
+    return windowMillis > 0;
+  }
+
+  // Requests with their own launcher settings, like a debug port, standard input, test events or
+  // diagnostics, are run on their own, and so are requests with flags, which would apply to every
+  // request
+  public static boolean canCoalesce(RunBuildRequest req) {
+    return req.getJavaDebugPort() == 0
+        && req.getInput().isEmpty()
+        && !req.getStreamTestResults()
+        && !req.getExtractDiagnostics()
+        && req.getArgsCount() > 0
+        && req.getArgsList().stream().noneMatch(arg -> arg.startsWith("-"));
+  }
+
+  // hasSubscribers is passed on to CallCancellation, which detaches the member when its call is
+  // gone
+  public void run(
+      RunBuildRequest req,
+      StreamObserver<RunBuildReply> responseObserver,
+      BooleanSupplier hasSubscribers) {
+    BuildMember member = new BuildMember(req, responseObserver, buildHistory);
+    CancellableBuild cancellableBuild =
+        GradleBuildCancellation.register(req.getCancellationKey(), req.getProjectDir());
+    member.setCancellableBuild(cancellableBuild);
+
+    String key = getKey(req);
+    CoalescedBuild build;
+    boolean isFirst = false;
+    synchronized (openBuilds) {
+      build = openBuilds.get(key);
+      if (build == null) {
+        build = new CoalescedBuild(daemonReuseTracker);
+        openBuilds.put(key, build);
+        isFirst = true;
+      }
+      build.add(member);
+    }
+    CoalescedBuild memberBuild = build;
+    cancellableBuild.setCancelListener(() -> memberBuild.cancel(member));
+    member.setCallCancellation(CallCancellation.bind(cancellableBuild, hasSubscribers));
+
+    if (isFirst) {
+      schedule(key, build);
+    }
+  }
+
+  // The builds that haven't started are failed, the build lane stops the running ones
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+    List<CoalescedBuild> unstartedBuilds;
+    synchronized (openBuilds) {
+      unstartedBuilds = new ArrayList<>(openBuilds.values());
+      openBuilds.clear();
+    }
+    for (CoalescedBuild build : unstartedBuilds) {
+      build.fail(new RejectedExecutionException("The server is shutting down"));
+    }
+  }
+
+  private void schedule(String key, CoalescedBuild build) {
+    try {
+      scheduler.schedule(() -> start(key, build), windowMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      closeWindow(key, build);
+      build.fail(new RejectedExecutionException("The server is shutting down", e));
+    }
+  }
+
+  private void start(String key, CoalescedBuild build) {
+    closeWindow(key, build);
+    try {
+      buildExecutor.execute(build::run);
+    } catch (RejectedExecutionException e) {
+      build.fail(new RejectedExecutionException("The server is shutting down", e));
+    }
+  }
+
+  private void closeWindow(String key, CoalescedBuild build) {
+    synchronized (openBuilds) {
+      openBuilds.remove(key, build);
+    }
+  }
+
+  // Requests share a build when they would have used the same daemon and output settings. The
+  // JVM arguments are compared like the daemons compare them, in their canonical form.
+  private static String getKey(RunBuildRequest req) {
+    GradleConfig config = req.getGradleConfig();
+    return String.join(
+        "\n",
+        Paths.get(req.getProjectDir()).toAbsolutePath().normalize().toString(),
+        config.getVersion(),
+        String.valueOf(config.getWrapperEnabled()),
+        config.getUserHome(),
+        String.join("\0", JvmArguments.canonicalize(config.getJvmArguments())),
+        String.valueOf(req.getShowOutputColors()));
+  }
+}
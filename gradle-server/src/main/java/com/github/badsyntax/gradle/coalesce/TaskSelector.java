@@ -0,0 +1,78 @@
+package com.github.badsyntax.gradle.coalesce;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// A task argument, matched against task paths like Gradle selects tasks: an absolute path, a path
+// relative to the root project, or a name that selects the task in every project. Every name in
+// the path can be abbreviated by camel case, so "cT" selects compileTest and ":s:cT" selects
+// :sub:compileTest. Gradle fails the build when an abbreviation selects more than one task, so
+// an argument can match tasks here that Gradle wouldn't have run for it.
+class TaskSelector {
+  // The same boundaries as Gradle's NameMatcher, the start of a lower case word or an upper case
+  // letter with the lower case letters that follow it
+  private static final Pattern BOUNDARY =
+      Pattern.compile(
+          "((^|\\p{Punct})\\p{javaLowerCase}+)|(\\p{javaUpperCase}\\p{javaLowerCase}*)");
+  private static final String WORD_REST = "[\\p{javaLowerCase}\\p{Digit}]*";
+
+  private final String arg;
+  private final boolean isPath;
+  private final List<Pattern> names = new ArrayList<>();
+
+  TaskSelector(String arg) {
+    this.arg = arg;
+    this.isPath = arg.contains(":");
+    for (String name : split(arg)) {
+      names.add(abbreviation(name));
+    }
+  }
+
+  String getArg() {
+    return arg;
+  }
+
+  boolean matches(String taskPath) {
+    String[] pathNames = split(taskPath);
+    if (!isPath) {
+      return pathNames.length > 0 && matches(names.get(0), pathNames[pathNames.length - 1]);
+    }
+    if (pathNames.length != names.size()) {
+      return false;
+    }
+    for (int i = 0; i < pathNames.length; i++) {
+      if (!matches(names.get(i), pathNames[i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(Pattern name, String candidate) {
+    return name.matcher(candidate).matches();
+  }
+
+  private static String[] split(String path) {
+    return (path.startsWith(":") ? path.substring(1) : path).split(":", -1);
+  }
+
+  // Matches the name itself, or a name it abbreviates
+  private static Pattern abbreviation(String name) {
+    Matcher matcher = BOUNDARY.matcher(name);
+    StringBuilder pattern = new StringBuilder();
+    int position = 0;
+    while (matcher.find()) {
+      if (matcher.start() > position) {
+        pattern.append(Pattern.quote(name.substring(position, matcher.start())));
+      }
+      pattern.append(Pattern.quote(matcher.group())).append(WORD_REST);
+      position = matcher.end();
+    }
+    if (position < name.length()) {
+      pattern.append(Pattern.quote(name.substring(position)));
+    }
+    return Pattern.compile(pattern.toString());
+  }
+}
@@ -0,0 +1,297 @@
+package com.github.badsyntax.gradle.diagnostics;
+
+import com.github.badsyntax.gradle.Diagnostic;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Finds javac, kotlinc, Gradle and test failure diagnostics in one output stream as it is
+// written. Every byte goes through the keyword automaton once, and only the lines it flags, plus
+// a few lines following a diagnostic, are decoded and parsed. Memory is bounded by the longest
+// line that is kept, longer lines are parsed from their start.
+public class DiagnosticExtractor {
+  private static final int MAX_LINE_BYTES = 4096;
+  private static final int MAX_MESSAGE_LINES = 20;
+
+  private static final int JAVAC_ERROR = 1;
+  private static final int JAVAC_WARNING = 1 << 1;
+  private static final int KOTLIN_ERROR = 1 << 2;
+  private static final int KOTLIN_WARNING = 1 << 3;
+  private static final int GRADLE_FAILURE = 1 << 4;
+  private static final int GRADLE_WHERE = 1 << 5;
+  private static final int TEST_FAILED = 1 << 6;
+  private static final int GRADLE_DEPRECATION = 1 << 7;
+
+  // In the order of the bits above. Line starts are matched with the newline before them.
+  private static final KeywordAutomaton AUTOMATON =
+      new KeywordAutomaton(
+          Arrays.asList(
+              ": error: ",
+              ": warning: ",
+              "\ne: ",
+              "\nw: ",
+              "* What went wrong:",
+              "* Where:",
+              " FAILED",
+              "Deprecated Gradle features were used"));
+
+  private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;?]*[A-Za-z]");
+  private static final Pattern KOTLIN_LOCATION =
+      Pattern.compile("^(?:file://)?(.+?\\.kts?)(?::(\\d+):(\\d+)|: \\((\\d+), (\\d+)\\):)? (.*)$");
+  private static final Pattern GRADLE_WHERE_LOCATION =
+      Pattern.compile("^(?:Build|Settings|Script) file '(.+)' line: (\\d+)");
+  private static final Pattern TEST_LOCATION = Pattern.compile(" at (\\S+\\.\\w+):(\\d+)\\)?$");
+
+  private enum Pending {
+    NONE,
+    // A javac diagnostic, waiting for the source line and the caret line that give its column
+    JAVAC,
+    GRADLE_WHERE,
+    GRADLE_FAILURE,
+    // A failed test, waiting for the exception line below it
+    TEST
+  }
+
+  private final Emitter emitter;
+  private int state = AUTOMATON.next(AUTOMATON.start(), (byte) '\n');
+  private final byte[] line = new byte[MAX_LINE_BYTES];
+  private int lineLength;
+  private int lineMatches;
+
+  private Pending pending = Pending.NONE;
+  private Diagnostic.Builder pendingDiagnostic;
+  private int pendingLines;
+  private String whereFile;
+  private int whereLine;
+
+  public interface Emitter {
+    void emit(Diagnostic.Builder diagnostic);
+  }
+
+  public DiagnosticExtractor(Emitter emitter) {
+    this.emitter = emitter;
+  }
+
+  public void write(byte[] bytes) {
+    int automatonState = state;
+    int matched = lineMatches;
+    int lineStart = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      automatonState = AUTOMATON.next(automatonState, bytes[i]);
+      if (automatonState < 0) {
+        matched |= AUTOMATON.matches(automatonState);
+      }
+      if (bytes[i] == '\n') {
+        append(bytes, lineStart, i);
+        lineMatches = matched;
+        onLine();
+        matched = 0;
+        lineLength = 0;
+        lineStart = i + 1;
+      }
+    }
+    append(bytes, lineStart, bytes.length);
+    state = automatonState;
+    lineMatches = matched;
+  }
+
+  // Parses the last line, which has no newline, and emits what is still pending
+  public void finish() {
+    if (lineLength > 0) {
+      onLine();
+      lineLength = 0;
+      lineMatches = 0;
+    }
+    emitPending();
+  }
+
+  private void onLine() {
+    if (pending != Pending.NONE && continuePending()) {
+      return;
+    }
+    if (lineMatches == 0) {
+      return;
+    }
+    String text = decode();
+    if ((lineMatches & (JAVAC_ERROR | JAVAC_WARNING)) != 0) {
+      onJavac(text);
+    } else if ((lineMatches & (KOTLIN_ERROR | KOTLIN_WARNING)) != 0
+        && (text.startsWith("e: ") || text.startsWith("w: "))) {
+      onKotlin(text);
+    } else if ((lineMatches & GRADLE_FAILURE) != 0 && text.startsWith("* What went wrong:")) {
+      pending = Pending.GRADLE_FAILURE;
+      pendingDiagnostic = null;
+      pendingLines = 0;
+    } else if ((lineMatches & GRADLE_WHERE) != 0 && text.startsWith("* Where:")) {
+      pending = Pending.GRADLE_WHERE;
+    } else if ((lineMatches & TEST_FAILED) != 0
+        && text.endsWith(" FAILED")
+        && text.contains(" > ")) {
+      pending = Pending.TEST;
+      pendingDiagnostic = diagnostic(Diagnostic.Severity.ERROR, "test", text.trim());
+    } else if ((lineMatches & GRADLE_DEPRECATION) != 0) {
+      emitter.emit(diagnostic(Diagnostic.Severity.WARNING, "gradle", text.trim()));
+    }
+  }
+
+  // Returns true when the line belongs to the pending diagnostic
+  private boolean continuePending() {
+    switch (pending) {
+      case JAVAC:
+        int caret = caretColumn();
+        if (caret > 0) {
+          pendingDiagnostic.setColumn(caret);
+          emitPending();
+          return true;
+        }
+        if (pendingLines++ == 0 && lineMatches == 0) {
+          return true;
+        }
+        emitPending();
+        return false;
+      case GRADLE_WHERE:
+        Matcher where = GRADLE_WHERE_LOCATION.matcher(decode().trim());
+        if (where.find()) {
+          whereFile = where.group(1);
+          whereLine = Integer.parseInt(where.group(2));
+        }
+        pending = Pending.NONE;
+        return true;
+      case GRADLE_FAILURE:
+        String text = decode().trim();
+        if (text.isEmpty()) {
+          if (pendingDiagnostic != null) {
+            emitPending();
+          }
+          return true;
+        }
+        if (pendingDiagnostic == null) {
+          pendingDiagnostic = diagnostic(Diagnostic.Severity.ERROR, "gradle", text);
+          if (whereFile != null) {
+            pendingDiagnostic.setFile(whereFile).setLine(whereLine);
+            whereFile = null;
+          }
+        } else if (pendingLines < MAX_MESSAGE_LINES) {
+          pendingDiagnostic.setMessage(pendingDiagnostic.getMessage() + "\n" + text);
+        }
+        pendingLines++;
+        return true;
+      case TEST:
+        if (lineLength > 0 && (line[0] == ' ' || line[0] == '\t')) {
+          String exception = decode().trim();
+          pendingDiagnostic.setMessage(pendingDiagnostic.getMessage() + "\n" + exception);
+          Matcher location = TEST_LOCATION.matcher(exception);
+          if (location.find()) {
+            pendingDiagnostic
+                .setFile(location.group(1))
+                .setLine(Integer.parseInt(location.group(2)));
+          }
+          emitPending();
+          return true;
+        }
+        emitPending();
+        return false;
+      default:
+        return false;
+    }
+  }
+
+  private void onJavac(String text) {
+    boolean error = (lineMatches & JAVAC_ERROR) != 0;
+    String keyword = error ? ": error: " : ": warning: ";
+    int keywordIndex = text.indexOf(keyword);
+    if (keywordIndex < 0) {
+      return;
+    }
+    Diagnostic.Builder diagnostic =
+        diagnostic(
+            error ? Diagnostic.Severity.ERROR : Diagnostic.Severity.WARNING,
+            "javac",
+            text.substring(keywordIndex + keyword.length()));
+    String location = text.substring(0, keywordIndex);
+    int lineIndex = location.lastIndexOf(':');
+    if (lineIndex > 0 && isNumber(location.substring(lineIndex + 1))) {
+      diagnostic
+          .setFile(location.substring(0, lineIndex))
+          .setLine(Integer.parseInt(location.substring(lineIndex + 1)));
+    } else {
+      diagnostic.setFile(location);
+    }
+    pending = Pending.JAVAC;
+    pendingDiagnostic = diagnostic;
+    pendingLines = 0;
+  }
+
+  private void onKotlin(String text) {
+    Diagnostic.Severity severity =
+        text.startsWith("e: ") ? Diagnostic.Severity.ERROR : Diagnostic.Severity.WARNING;
+    String rest = text.substring(3);
+    Matcher location = KOTLIN_LOCATION.matcher(rest);
+    if (!location.find()) {
+      emitter.emit(diagnostic(severity, "kotlinc", rest));
+      return;
+    }
+    Diagnostic.Builder diagnostic =
+        diagnostic(severity, "kotlinc", location.group(6)).setFile(location.group(1));
+    String lineNumber = location.group(2) != null ? location.group(2) : location.group(4);
+    String column = location.group(3) != null ? location.group(3) : location.group(5);
+    if (lineNumber != null) {
+      diagnostic.setLine(Integer.parseInt(lineNumber)).setColumn(Integer.parseInt(column));
+    }
+    emitter.emit(diagnostic);
+  }
+
+  private void emitPending() {
+    if (pendingDiagnostic != null) {
+      emitter.emit(pendingDiagnostic);
+    }
+    pending = Pending.NONE;
+    pendingDiagnostic = null;
+  }
+
+  // The column of a caret line, which is blank apart from the caret under the error, or 0
+  private int caretColumn() {
+    int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+    for (int i = 0; i < length; i++) {
+      if (line[i] == '^') {
+        return i == length - 1 ? i + 1 : 0;
+      }
+      if (line[i] != ' ' && line[i] != '\t') {
+        return 0;
+      }
+    }
+    return 0;
+  }
+
+  private void append(byte[] bytes, int start, int end) {
+    int length = Math.min(end - start, MAX_LINE_BYTES - lineLength);
+    if (length > 0) {
+      System.arraycopy(bytes, start, line, lineLength, length);
+      lineLength += length;
+    }
+  }
+
+  private String decode() {
+    int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+    String text = new String(line, 0, length, StandardCharsets.UTF_8);
+    return text.indexOf('\u001B') < 0 ? text : ANSI_ESCAPE.matcher(text).replaceAll("");
+  }
+
+  private static Diagnostic.Builder diagnostic(
+      Diagnostic.Severity severity, String source, String message) {
+    return Diagnostic.newBuilder().setSeverity(severity).setSource(source).setMessage(message);
+  }
+
+  private static boolean isNumber(String value) {
+    if (value.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (!Character.isDigit(value.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
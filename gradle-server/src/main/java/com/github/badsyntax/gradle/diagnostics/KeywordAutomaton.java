@@ -0,0 +1,102 @@
+package com.github.badsyntax.gradle.diagnostics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+// An Aho-Corasick automaton over bytes that finds any number of keywords in a single pass. The
+// transitions are a dense table, so each byte of input costs one array read however many
+// keywords there are. A state is the offset of its row in the table, and is negative when a
+// keyword ends at it.
+public class KeywordAutomaton {
+  private static final int ALPHABET = 256;
+
+  private static final int OFFSET_MASK = Integer.MAX_VALUE;
+
+  // transitions[offset + byte] is the next state
+  private final int[] transitions;
+  // Bit i is set when keyword i ends at the state, including keywords that are suffixes
+  private final int[] matches;
+
+  public KeywordAutomaton(List<String> keywords) {
+    if (keywords.size() > Integer.SIZE) {
+      throw new IllegalArgumentException("At most 32 keywords are supported");
+    }
+    List<int[]> trie = new ArrayList<>();
+    List<Integer> trieMatches = new ArrayList<>();
+    trie.add(newNode());
+    trieMatches.add(0);
+    for (int k = 0; k < keywords.size(); k++) {
+      int state = 0;
+      for (byte b : keywords.get(k).getBytes(StandardCharsets.UTF_8)) {
+        int next = trie.get(state)[b & 0xff];
+        if (next < 0) {
+          next = trie.size();
+          trie.get(state)[b & 0xff] = next;
+          trie.add(newNode());
+          trieMatches.add(0);
+        }
+        state = next;
+      }
+      trieMatches.set(state, trieMatches.get(state) | 1 << k);
+    }
+
+    int states = trie.size();
+    transitions = new int[states * ALPHABET];
+    matches = new int[states];
+    int[] failure = new int[states];
+    for (int state = 0; state < states; state++) {
+      matches[state] = trieMatches.get(state);
+    }
+    // Breadth first, so the failure state of a node is complete before its children need it
+    Deque<Integer> queue = new ArrayDeque<>();
+    for (int b = 0; b < ALPHABET; b++) {
+      int next = trie.get(0)[b];
+      transitions[b] = Math.max(next, 0);
+      if (next > 0) {
+        queue.add(next);
+      }
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      matches[state] |= matches[failure[state]];
+      for (int b = 0; b < ALPHABET; b++) {
+        int next = trie.get(state)[b];
+        if (next > 0) {
+          failure[next] = transitions[failure[state] * ALPHABET + b];
+          transitions[state * ALPHABET + b] = next;
+          queue.add(next);
+        } else {
+          transitions[state * ALPHABET + b] = transitions[failure[state] * ALPHABET + b];
+        }
+      }
+    }
+    for (int i = 0; i < transitions.length; i++) {
+      int next = transitions[i];
+      transitions[i] = matches[next] != 0 ? next * ALPHABET | ~OFFSET_MASK : next * ALPHABET;
+    }
+  }
+
+  // The state before any input
+  public int start() {
+    return 0;
+  }
+
+  public int next(int state, byte b) {
+    return transitions[(state & OFFSET_MASK) + (b & 0xff)];
+  }
+
+  // The keywords that end at the state, as a bit set of keyword indexes
+  public int matches(int state) {
+    return state < 0 ? matches[(state & OFFSET_MASK) / ALPHABET] : 0;
+  }
+
+  private static int[] newNode() {
+    int[] node = new int[ALPHABET];
+    Arrays.fill(node, -1);
+    return node;
+  }
+}
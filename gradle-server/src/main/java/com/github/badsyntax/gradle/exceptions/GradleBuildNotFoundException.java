@@ -0,0 +1,9 @@
+package com.github.badsyntax.gradle.exceptions;
+
+public class GradleBuildNotFoundException extends Exception {
+  private static final long serialVersionUID = 1L;
+
+  public GradleBuildNotFoundException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,70 @@
+package com.github.badsyntax.gradle.graph;
+
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.JvmArguments;
+import com.github.badsyntax.gradle.TaskGraph;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Task graphs by root project, requested tasks and Gradle config. An entry should only be served
+// while the fingerprint of its build files is unchanged, see BuildScriptFingerprint.
+public class TaskGraphCache {
+  private static final int MAX_ENTRIES = 64;
+
+  private final Map<String, Entry> entries =
+      new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      };
+
+  public synchronized Entry get(String key) {
+    return entries.get(key);
+  }
+
+  public synchronized void put(String key, Entry entry) {
+    entries.put(key, entry);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public static String key(String projectDir, List<String> tasks, GradleConfig config) {
+    return String.join(
+        "\n",
+        Paths.get(projectDir).toAbsolutePath().normalize().toString(),
+        String.join(" ", tasks),
+        config.getVersion(),
+        config.getUserHome(),
+        String.join(" ", JvmArguments.canonicalize(config.getJvmArguments())));
+  }
+
+  public static class Entry {
+    private final TaskGraph graph;
+    private final List<String> buildFiles;
+    private final String fingerprint;
+
+    public Entry(TaskGraph graph, List<String> buildFiles, String fingerprint) {
+      this.graph = graph;
+      this.buildFiles = buildFiles;
+      this.fingerprint = fingerprint;
+    }
+
+    public TaskGraph getGraph() {
+      return graph;
+    }
+
+    // The build files Gradle reported when the graph was computed
+    public List<String> getBuildFiles() {
+      return buildFiles;
+    }
+
+    public String getFingerprint() {
+      return fingerprint;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package com.github.badsyntax.gradle.graph;
+
+import com.github.badsyntax.gradle.TaskGraph;
+import com.github.badsyntax.gradle.TaskNode;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The task graph of a dry run, as written by an init script once Gradle has calculated it. A dry
+// run doesn't start its tasks, so it reports no task events and the graph has to be read in the
+// daemon. The script also lists the build file of every project, which the cache fingerprints
+// before serving the graph again. Only the root build writes a report, so the tasks of included
+// builds are left out.
+//
+// The report has one tab separated line per entry: "input", path for build files, and "task",
+// path, dependency paths for tasks in execution order.
+public class TaskGraphReport {
+  public static final String OUTPUT_PROPERTY = "vscodeGradle.taskGraphFile";
+
+  private static final String INPUT = "input";
+  private static final String TASK = "task";
+
+  // Task dependencies are reported from Gradle 4.10, older versions only give the execution order
+  private static final String INIT_SCRIPT =
+      String.join(
+          "\n",
+          "def outputPath =",
+          "    gradle.startParameter.projectProperties.get('" + OUTPUT_PROPERTY + "')",
+          "if (outputPath != null && gradle.parent == null) {",
+          "  gradle.taskGraph.whenReady { graph ->",
+          "    def lines = []",
+          "    gradle.rootProject.allprojects.each { project ->",
+          "      lines << '" + INPUT + "\\t' + project.buildFile.absolutePath",
+          "    }",
+          "    graph.allTasks.each { task ->",
+          "      def dependencies = []",
+          "      try {",
+          "        dependencies = graph.getDependencies(task).collect { it.path }",
+          "      } catch (MissingMethodException ignored) {",
+          "      }",
+          "      lines << (['" + TASK + "', task.path] + dependencies).join('\\t')",
+          "    }",
+          "    new File(outputPath).write(lines.join('\\n') + '\\n', 'UTF-8')",
+          "  }",
+          "}",
+          "");
+
+  private final TaskGraph graph;
+  private final List<String> buildFiles;
+
+  TaskGraphReport(TaskGraph graph, List<String> buildFiles) {
+    this.graph = graph;
+    this.buildFiles = buildFiles;
+  }
+
+  public TaskGraph getGraph() {
+    return graph;
+  }
+
+  public List<String> getBuildFiles() {
+    return buildFiles;
+  }
+
+  public static void writeInitScript(Path file) throws IOException {
+    Files.write(file, INIT_SCRIPT.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static TaskGraphReport read(Path file) throws IOException {
+    List<String> buildFiles = new ArrayList<>();
+    List<String[]> tasks = new ArrayList<>();
+    Map<String, Integer> indexes = new HashMap<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      String[] fields = line.split("\t");
+      if (fields.length >= 2 && fields[0].equals(INPUT)) {
+        buildFiles.add(fields[1]);
+      } else if (fields.length >= 2 && fields[0].equals(TASK)) {
+        if (indexes.putIfAbsent(fields[1], indexes.size()) == null) {
+          tasks.add(fields);
+        }
+      }
+    }
+    TaskGraph.Builder graph = TaskGraph.newBuilder();
+    for (String[] fields : tasks) {
+      TaskNode.Builder node = TaskNode.newBuilder().setPath(fields[1]);
+      // Dependencies outside the graph, like tasks of included builds, are left out
+      for (String dependency : Arrays.asList(fields).subList(2, fields.length)) {
+        Integer index = indexes.get(dependency);
+        if (index != null) {
+          node.addDependencies(index);
+        }
+      }
+      graph.addTasks(node);
+    }
+    return new TaskGraphReport(graph.build(), buildFiles);
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.AttachBuildReply;
+import com.github.badsyntax.gradle.AttachBuildRequest;
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.OnReadySignal;
+import com.github.badsyntax.gradle.exceptions.GradleBuildNotFoundException;
+import com.github.badsyntax.gradle.output.BuildOutputBuffer;
+import com.github.badsyntax.gradle.output.BuildOutputBuffers;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AttachBuildHandler {
+  private static final Logger logger = LoggerFactory.getLogger(AttachBuildHandler.class.getName());
+
+  private AttachBuildRequest req;
+  private StreamObserver<AttachBuildReply> responseObserver;
+  private BuildOutputBuffers buildOutputBuffers;
+  private OnReadySignal onReadySignal;
+
+  public AttachBuildHandler(
+      AttachBuildRequest req,
+      StreamObserver<AttachBuildReply> responseObserver,
+      BuildOutputBuffers buildOutputBuffers) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.buildOutputBuffers = buildOutputBuffers;
+  }
+
+  // Without a signal, replies are sent as fast as the buffer is read
+  public AttachBuildHandler setOnReadySignal(OnReadySignal onReadySignal) {
+    this.onReadySignal = onReadySignal;
+    return this;
+  }
+
+  public void run() {
+    BuildOutputBuffer buffer = buildOutputBuffers.get(req.getCancellationKey());
+    if (buffer == null) {
+      GradleBuildNotFoundException e =
+          new GradleBuildNotFoundException(
+              "No build output found for key: " + req.getCancellationKey());
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e, Status.NOT_FOUND));
+      return;
+    }
+    // Subscribed first, so a call that is already cancelled detaches it straight away
+    buffer.subscribe(responseObserver);
+    Context.current()
+        .addListener(context -> buffer.detach(responseObserver), MoreExecutors.directExecutor());
+    buffer.drain(req.getFromOffset(), responseObserver, onReadySignal);
+  }
+}
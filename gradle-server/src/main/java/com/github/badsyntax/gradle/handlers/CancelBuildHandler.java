@@ -2,6 +2,7 @@ package com.github.badsyntax.gradle.handlers;
 
 import com.github.badsyntax.gradle.CancelBuildReply;
 import com.github.badsyntax.gradle.CancelBuildRequest;
+import com.github.badsyntax.gradle.CancellationResult;
 import com.github.badsyntax.gradle.GradleBuildCancellation;
 import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
 import io.grpc.stub.StreamObserver;
@@ -22,8 +23,9 @@ public class CancelBuildHandler {
 
   public void run() {
     try {
-      GradleBuildCancellation.cancelBuild(req.getCancellationKey());
-      replyWithCancelledSuccess();
+      CancellationResult result =
+          GradleBuildCancellation.cancelBuild(req.getCancellationKey(), req.getAckTimeoutMillis());
+      replyWithCancelledSuccess(result);
     } catch (GradleCancellationException e) {
       logger.error(e.getMessage());
       replyWithCancelError(e);
@@ -32,11 +34,14 @@ public class CancelBuildHandler {
     }
   }
 
-  private void replyWithCancelledSuccess() {
+  private void replyWithCancelledSuccess(CancellationResult result) {
     responseObserver.onNext(
         CancelBuildReply.newBuilder()
             .setMessage("Cancel build requested")
-            .setBuildRunning(true)
+            .setBuildRunning(result.getAcknowledgedCount() < result.getCancelledCount())
+            .setCancelledCount(result.getCancelledCount())
+            .setAcknowledgedCount(result.getAcknowledgedCount())
+            .setAckMillis(result.getAckMillis())
             .build());
   }
 
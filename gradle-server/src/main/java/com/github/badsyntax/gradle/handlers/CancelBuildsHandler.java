@@ -1,39 +1,49 @@
 package com.github.badsyntax.gradle.handlers;
 
 import com.github.badsyntax.gradle.CancelBuildsReply;
+import com.github.badsyntax.gradle.CancelBuildsRequest;
+import com.github.badsyntax.gradle.CancellationResult;
 import com.github.badsyntax.gradle.GradleBuildCancellation;
-import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
+import com.google.common.base.Strings;
 import io.grpc.stub.StreamObserver;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 public class CancelBuildsHandler {
-  private static final Logger logger = LoggerFactory.getLogger(CancelBuildsHandler.class.getName());
-
+  private CancelBuildsRequest req;
   private StreamObserver<CancelBuildsReply> responseObserver;
 
-  public CancelBuildsHandler(StreamObserver<CancelBuildsReply> responseObserver) {
+  public CancelBuildsHandler(
+      CancelBuildsRequest req, StreamObserver<CancelBuildsReply> responseObserver) {
+    this.req = req;
     this.responseObserver = responseObserver;
   }
 
   public void run() {
     try {
-      GradleBuildCancellation.cancelBuilds();
-      replyWithCancelledSuccess();
-    } catch (GradleCancellationException e) {
-      logger.error(e.getMessage());
-      replyWithCancelError(e);
+      replyWithCancelledSuccess(cancelBuilds());
     } finally {
       responseObserver.onCompleted();
     }
   }
 
-  private void replyWithCancelledSuccess() {
-    responseObserver.onNext(
-        CancelBuildsReply.newBuilder().setMessage("Cancel builds requested").build());
+  private CancellationResult cancelBuilds() {
+    long ackTimeoutMillis = req.getAckTimeoutMillis();
+    if (!Strings.isNullOrEmpty(req.getProjectDir())) {
+      return GradleBuildCancellation.cancelBuildsForProject(req.getProjectDir(), ackTimeoutMillis);
+    }
+    if (!Strings.isNullOrEmpty(req.getCancellationKeyPrefix())) {
+      return GradleBuildCancellation.cancelBuildsWithKeyPrefix(
+          req.getCancellationKeyPrefix(), ackTimeoutMillis);
+    }
+    return GradleBuildCancellation.cancelBuilds(ackTimeoutMillis);
   }
 
-  private void replyWithCancelError(Exception e) {
-    responseObserver.onNext(CancelBuildsReply.newBuilder().setMessage(e.getMessage()).build());
+  private void replyWithCancelledSuccess(CancellationResult result) {
+    responseObserver.onNext(
+        CancelBuildsReply.newBuilder()
+            .setMessage("Cancel builds requested")
+            .setCancelledCount(result.getCancelledCount())
+            .setAcknowledgedCount(result.getAcknowledgedCount())
+            .setAckMillis(result.getAckMillis())
+            .build());
   }
 }
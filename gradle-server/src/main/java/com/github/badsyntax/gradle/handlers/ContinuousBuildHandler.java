@@ -0,0 +1,192 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.ContinuousBuildReply;
+import com.github.badsyntax.gradle.ContinuousBuildRequest;
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.GradleBuildCancellation;
+import com.github.badsyntax.gradle.IterationFinished;
+import com.github.badsyntax.gradle.IterationStarted;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.github.badsyntax.gradle.watch.ProjectWatcher;
+import com.google.common.base.Strings;
+import io.grpc.Context;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Runs a build, then re-runs it whenever the project changes, until the client cancels the call
+public class ContinuousBuildHandler {
+  private static final Logger logger =
+      LoggerFactory.getLogger(ContinuousBuildHandler.class.getName());
+
+  private static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+  private static final long CANCELLATION_CHECK_MILLIS = 500;
+
+  private ContinuousBuildRequest req;
+  private StreamObserver<ContinuousBuildReply> responseObserver;
+  private BuildHistory buildHistory;
+  private Executor buildExecutor;
+  private DaemonReuseTracker daemonReuseTracker;
+  private RunBuildRequest runBuildRequest;
+  private int iterationCount;
+  // Iterations superseded by later changes, or by the call ending, before they started are
+  // skipped
+  private volatile int latestIteration;
+
+  public ContinuousBuildHandler(
+      ContinuousBuildRequest req,
+      StreamObserver<ContinuousBuildReply> responseObserver,
+      BuildHistory buildHistory,
+      Executor buildExecutor) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.buildHistory = buildHistory;
+    this.buildExecutor = buildExecutor;
+    this.runBuildRequest = withCancellationKey(req.getRunBuildRequest());
+  }
+
+  public ContinuousBuildHandler setDaemonReuseTracker(DaemonReuseTracker daemonReuseTracker) {
+    this.daemonReuseTracker = daemonReuseTracker;
+    return this;
+  }
+
+  public void run() {
+    long debounceMillis =
+        req.getDebounceMillis() > 0 ? req.getDebounceMillis() : DEFAULT_DEBOUNCE_MILLIS;
+    Context context = Context.current();
+    try (ProjectWatcher watcher = new ProjectWatcher(Paths.get(runBuildRequest.getProjectDir()))) {
+      logger.info(
+          "Watching {} directories of {}",
+          watcher.getWatchedDirectoryCount(),
+          runBuildRequest.getProjectDir());
+      CompletableFuture<Void> iteration =
+          startIteration(CompletableFuture.completedFuture(null), Collections.emptyList());
+      while (!context.isCancelled()) {
+        Set<String> changedPaths =
+            watcher.awaitChanges(debounceMillis, CANCELLATION_CHECK_MILLIS, context::isCancelled);
+        if (!changedPaths.isEmpty()) {
+          cancelIteration(iteration);
+          iteration = startIteration(iteration, changedPaths);
+        }
+      }
+      cancelIteration(iteration);
+    } catch (IOException e) {
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // Iterations run in the build lane like any other build, one at a time, so the next one is
+  // queued behind the previous one instead of waiting for it to stop
+  private CompletableFuture<Void> startIteration(
+      CompletableFuture<Void> previous, Collection<String> changedPaths) {
+    int iteration = ++iterationCount;
+    latestIteration = iteration;
+    Runnable task =
+        Context.current()
+            .wrap(
+                () -> {
+                  if (iteration != latestIteration || Context.current().isCancelled()) {
+                    return;
+                  }
+                  reply(
+                      ContinuousBuildReply.newBuilder()
+                          .setIterationStarted(
+                              IterationStarted.newBuilder()
+                                  .setIteration(iteration)
+                                  .addAllChangedPaths(changedPaths))
+                          .build());
+                  RunBuildHandler runBuildHandler =
+                      new RunBuildHandler(
+                          runBuildRequest, new IterationStreamObserver(iteration), buildHistory);
+                  runBuildHandler.setDaemonReuseTracker(daemonReuseTracker).run();
+                });
+    return previous.handle((result, e) -> null).thenRunAsync(task, buildExecutor);
+  }
+
+  private void cancelIteration(CompletableFuture<Void> iteration) {
+    if (iteration.isDone()) {
+      return;
+    }
+    try {
+      GradleBuildCancellation.cancelBuild(runBuildRequest.getCancellationKey(), 0);
+    } catch (GradleCancellationException e) {
+      // The iteration has not started its build yet, or has just finished it
+      logger.debug(e.getMessage());
+    }
+  }
+
+  private void reply(ContinuousBuildReply reply) {
+    synchronized (responseObserver) {
+      try {
+        responseObserver.onNext(reply);
+      } catch (RuntimeException e) {
+        // The client has gone away, the watch loop stops once the call is cancelled
+        logger.debug("Unable to send continuous build reply: {}", e.getMessage());
+      }
+    }
+  }
+
+  private static RunBuildRequest withCancellationKey(RunBuildRequest runBuildRequest) {
+    if (!Strings.isNullOrEmpty(runBuildRequest.getCancellationKey())) {
+      return runBuildRequest;
+    }
+    return runBuildRequest
+        .toBuilder()
+        .setCancellationKey("continuous-" + UUID.randomUUID())
+        .build();
+  }
+
+  // Forwards the replies of one iteration, and reports its end without closing the stream
+  private class IterationStreamObserver implements StreamObserver<RunBuildReply> {
+    private final int iteration;
+    private boolean cancelled;
+
+    IterationStreamObserver(int iteration) {
+      this.iteration = iteration;
+    }
+
+    @Override
+    public void onNext(RunBuildReply reply) {
+      if (reply.hasCancelled()) {
+        cancelled = true;
+      }
+      reply(ContinuousBuildReply.newBuilder().setRunBuildReply(reply).build());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      replyWithFinished(false, t.getMessage());
+    }
+
+    @Override
+    public void onCompleted() {
+      replyWithFinished(!cancelled, cancelled ? "Build cancelled" : "Successfully run build");
+    }
+
+    private void replyWithFinished(boolean success, String message) {
+      reply(
+          ContinuousBuildReply.newBuilder()
+              .setIterationFinished(
+                  IterationFinished.newBuilder()
+                      .setIteration(iteration)
+                      .setSuccess(success)
+                      .setMessage(Strings.nullToEmpty(message)))
+              .build());
+    }
+  }
+}
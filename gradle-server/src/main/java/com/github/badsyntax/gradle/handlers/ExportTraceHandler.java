@@ -0,0 +1,89 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.ExportTraceReply;
+import com.github.badsyntax.gradle.ExportTraceRequest;
+import com.github.badsyntax.gradle.trace.ChromeTraceWriter;
+import com.github.badsyntax.gradle.trace.TraceEvent;
+import com.github.badsyntax.gradle.trace.Tracer;
+import com.google.common.base.Strings;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class ExportTraceHandler {
+  private static final Logger logger = LoggerFactory.getLogger(ExportTraceHandler.class.getName());
+
+  private ExportTraceRequest req;
+  private StreamObserver<ExportTraceReply> responseObserver;
+  private Path historyDir;
+
+  public ExportTraceHandler(
+      ExportTraceRequest req, StreamObserver<ExportTraceReply> responseObserver, Path historyDir) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.historyDir = historyDir;
+  }
+
+  public void run() {
+    if (!Tracer.isEnabled()) {
+      responseObserver.onError(
+          ErrorMessageBuilder.build(
+              new IllegalStateException("Tracing is disabled, enable it with --trace-events"),
+              Status.FAILED_PRECONDITION));
+      return;
+    }
+    Path file;
+    try {
+      file = getTraceFile();
+    } catch (IllegalArgumentException e) {
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e, Status.INVALID_ARGUMENT));
+      return;
+    }
+    List<TraceEvent> events = Tracer.snapshot();
+    try {
+      ChromeTraceWriter.write(file, events);
+    } catch (IOException e) {
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e));
+      return;
+    }
+    responseObserver.onNext(
+        ExportTraceReply.newBuilder()
+            .setPath(file.toAbsolutePath().toString())
+            .setEvents(events.size())
+            .setDroppedEvents(Tracer.getDroppedEvents())
+            .build());
+    responseObserver.onCompleted();
+  }
+
+  // Traces are only written inside the history dir, whatever path the client sends
+  private Path getTraceFile() {
+    Path dir = historyDir.toAbsolutePath().normalize();
+    if (Strings.isNullOrEmpty(req.getPath())) {
+      return dir.resolve("trace-" + System.currentTimeMillis() + ".json");
+    }
+    Path path;
+    try {
+      path = Paths.get(req.getPath());
+    } catch (InvalidPathException e) {
+      throw new IllegalArgumentException("Invalid trace path: " + req.getPath(), e);
+    }
+    if (path.isAbsolute()) {
+      throw new IllegalArgumentException("The trace path must be relative: " + req.getPath());
+    }
+    Path file = dir.resolve(path).normalize();
+    if (!file.startsWith(dir) || file.equals(dir)) {
+      throw new IllegalArgumentException(
+          "The trace path must be inside the history dir: " + req.getPath());
+    }
+    return file;
+  }
+}
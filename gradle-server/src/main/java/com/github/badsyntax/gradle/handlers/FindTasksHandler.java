@@ -0,0 +1,47 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.FindTasksReply;
+import com.github.badsyntax.gradle.FindTasksRequest;
+import com.github.badsyntax.gradle.TaskMatch;
+import com.github.badsyntax.gradle.index.ScoredTask;
+import com.github.badsyntax.gradle.index.TaskIndex;
+import io.grpc.stub.StreamObserver;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class FindTasksHandler {
+  private static final int DEFAULT_LIMIT = 50;
+  private static final int MAX_LIMIT = 1000;
+
+  private FindTasksRequest req;
+  private StreamObserver<FindTasksReply> responseObserver;
+  private TaskIndex taskIndex;
+
+  public FindTasksHandler(
+      FindTasksRequest req, StreamObserver<FindTasksReply> responseObserver, TaskIndex taskIndex) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.taskIndex = taskIndex;
+  }
+
+  public void run() {
+    int limit = req.getLimit() > 0 ? Math.min(req.getLimit(), MAX_LIMIT) : DEFAULT_LIMIT;
+    long startNanos = System.nanoTime();
+    List<ScoredTask> matches = taskIndex.find(req.getQuery(), limit, req.getProjectDir());
+    long searchMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+    FindTasksReply.Builder reply =
+        FindTasksReply.newBuilder()
+            .setIndexedTasks(taskIndex.getTaskCount())
+            .setIndexBytes(taskIndex.getMemoryBytes())
+            .setSearchMicros(searchMicros);
+    for (ScoredTask match : matches) {
+      reply.addMatches(
+          TaskMatch.newBuilder()
+              .setProjectDir(match.getProjectDir())
+              .setTask(match.getTask())
+              .setScore(match.getScore()));
+    }
+    responseObserver.onNext(reply.build());
+    responseObserver.onCompleted();
+  }
+}
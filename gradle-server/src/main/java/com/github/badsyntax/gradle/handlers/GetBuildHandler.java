@@ -1,7 +1,13 @@
 package com.github.badsyntax.gradle.handlers;
 
 import com.github.badsyntax.gradle.ByteBufferOutputStream;
+import com.github.badsyntax.gradle.CallCancellation;
+import com.github.badsyntax.gradle.CancellableBuild;
 import com.github.badsyntax.gradle.Cancelled;
+import com.github.badsyntax.gradle.CompositeBuildAction;
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.github.badsyntax.gradle.ConfigurationProfiler;
+import com.github.badsyntax.gradle.DaemonReuseTracker;
 import com.github.badsyntax.gradle.Environment;
 import com.github.badsyntax.gradle.ErrorMessageBuilder;
 import com.github.badsyntax.gradle.GetBuildReply;
@@ -10,25 +16,36 @@ import com.github.badsyntax.gradle.GetBuildResult;
 import com.github.badsyntax.gradle.GradleBuild;
 import com.github.badsyntax.gradle.GradleBuildCancellation;
 import com.github.badsyntax.gradle.GradleEnvironment;
+import com.github.badsyntax.gradle.GradleOperation;
 import com.github.badsyntax.gradle.GradleProject;
 import com.github.badsyntax.gradle.GradleProjectConnector;
+import com.github.badsyntax.gradle.GradleSession;
 import com.github.badsyntax.gradle.GradleTask;
+import com.github.badsyntax.gradle.IncludedBuild;
 import com.github.badsyntax.gradle.JavaEnvironment;
 import com.github.badsyntax.gradle.Output;
 import com.github.badsyntax.gradle.Progress;
 import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import com.github.badsyntax.gradle.history.GitHead;
+import com.github.badsyntax.gradle.index.TaskIndex;
+import com.github.badsyntax.gradle.trace.Span;
+import com.github.badsyntax.gradle.trace.Tracer;
 import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.gradle.internal.service.ServiceCreationException;
 import org.gradle.tooling.BuildCancelledException;
 import org.gradle.tooling.CancellationToken;
-import org.gradle.tooling.GradleConnector;
-import org.gradle.tooling.ModelBuilder;
-import org.gradle.tooling.ProjectConnection;
+import org.gradle.tooling.UnsupportedVersionException;
 import org.gradle.tooling.events.OperationType;
 import org.gradle.tooling.events.ProgressEvent;
 import org.gradle.tooling.events.ProgressListener;
@@ -41,15 +58,36 @@ public class GetBuildHandler {
 
   private GetBuildRequest req;
   private StreamObserver<GetBuildReply> responseObserver;
+  private TaskIndex taskIndex;
+  private ConfigurationProfileLog configurationProfileLog;
+  private DaemonReuseTracker daemonReuseTracker;
+  private final ConfigurationProfiler configurationProfiler = new ConfigurationProfiler();
   private ProgressListener progressListener;
   private ByteBufferOutputStream standardOutputListener;
   private ByteBufferOutputStream standardErrorListener;
+  // Build file paths are shared by every task of a project, so they can be sent once per build
+  private Map<String, Integer> buildFileIndexes;
+  // Every model is fetched with the same arguments, so all of them can use the same daemon
+  private List<String> jvmArguments;
 
-  public GetBuildHandler(GetBuildRequest req, StreamObserver<GetBuildReply> responseObserver) {
+  public GetBuildHandler(
+      GetBuildRequest req,
+      StreamObserver<GetBuildReply> responseObserver,
+      TaskIndex taskIndex,
+      ConfigurationProfileLog configurationProfileLog,
+      DaemonReuseTracker daemonReuseTracker) {
     this.req = req;
     this.responseObserver = responseObserver;
+    this.taskIndex = taskIndex;
+    this.configurationProfileLog = configurationProfileLog;
+    this.daemonReuseTracker = daemonReuseTracker;
+    if (req.getCompactBuildFiles()) {
+      this.buildFileIndexes = new LinkedHashMap<>();
+    }
     this.progressListener =
         (ProgressEvent event) -> {
+          configurationProfiler.onEvent(event);
+          Tracer.onProgressEvent(event);
           synchronized (GetBuildHandler.class) {
             replyWithProgress(event);
           }
@@ -75,93 +113,152 @@ public class GetBuildHandler {
   }
 
   public void run() {
-    GradleConnector gradleConnector;
-    try {
-      gradleConnector = GradleProjectConnector.build(req.getProjectDir(), req.getGradleConfig());
-    } catch (GradleConnectionException e) {
-      logger.error(e.getMessage());
-      responseObserver.onError(ErrorMessageBuilder.build(e));
-      return;
+    DaemonReuseTracker.Launch launch =
+        daemonReuseTracker.onLaunch(req.getProjectDir(), req.getGradleConfig());
+    jvmArguments = launch.getJvmArguments();
+    if (launch.getWarning() != null) {
+      replyWithWarning(launch.getWarning());
     }
-
-    try (ProjectConnection connection = gradleConnector.connect()) {
-      replyWithBuildEnvironment(buildEnvironment(connection));
-      org.gradle.tooling.model.GradleProject gradleProject = getGradleProject(connection);
-      replyWithProject(getProjectData(gradleProject, gradleProject));
+    CancellableBuild cancellableBuild =
+        GradleBuildCancellation.register(req.getCancellationKey(), req.getProjectDir());
+    try (GradleSession session =
+        GradleProjectConnector.connect(req.getProjectDir(), req.getGradleConfig())) {
+      CancellationToken cancellationToken = cancellableBuild.getToken();
+      GradleBuild gradleBuild;
+      // Released before the call completes, see CallCancellation
+      try (CallCancellation callCancellation = CallCancellation.bind(cancellableBuild, null)) {
+        replyWithBuildEnvironment(buildEnvironment(session, cancellationToken));
+        gradleBuild = getBuild(session, cancellationToken);
+      }
+      replyWithBuild(gradleBuild, getConfigurationProfile());
+      taskIndex.updateLater(req.getProjectDir(), gradleBuild);
     } catch (BuildCancelledException e) {
       replyWithCancelled(e);
-    } catch (ServiceCreationException
+    } catch (GradleConnectionException
+        | ServiceCreationException
         | IOException
         | IllegalStateException
         | org.gradle.tooling.GradleConnectionException e) {
       logger.error(e.getMessage());
       replyWithError(e);
     } finally {
-      GradleBuildCancellation.clearToken(req.getCancellationKey());
+      cancellableBuild.finish();
     }
   }
 
-  private Environment buildEnvironment(ProjectConnection connection) {
-    ModelBuilder<BuildEnvironment> buildEnvironment = connection.model(BuildEnvironment.class);
-
+  private Environment buildEnvironment(
+      GradleSession session, CancellationToken cancellationToken) {
     Set<OperationType> progressEvents = new HashSet<>();
     progressEvents.add(OperationType.GENERIC);
 
-    CancellationToken cancellationToken =
-        GradleBuildCancellation.buildToken(req.getCancellationKey());
+    GradleOperation operation =
+        new GradleOperation()
+            .setCancellationToken(cancellationToken)
+            .addProgressListener(progressListener, progressEvents)
+            .setStandardOutput(standardOutputListener)
+            .setStandardError(standardErrorListener)
+            .setJvmArguments(jvmArguments);
 
-    buildEnvironment
-        .withCancellationToken(cancellationToken)
-        .addProgressListener(progressListener, progressEvents)
-        .setStandardOutput(standardOutputListener)
-        .setStandardError(standardErrorListener);
-
-    try {
-      BuildEnvironment environment = buildEnvironment.get();
-      org.gradle.tooling.model.build.GradleEnvironment gradleEnvironment = environment.getGradle();
-      org.gradle.tooling.model.build.JavaEnvironment javaEnvironment = environment.getJava();
-      return Environment.newBuilder()
-          .setGradleEnvironment(
-              GradleEnvironment.newBuilder()
-                  .setGradleUserHome(gradleEnvironment.getGradleUserHome().getAbsolutePath())
-                  .setGradleVersion(gradleEnvironment.getGradleVersion()))
-          .setJavaEnvironment(
-              JavaEnvironment.newBuilder()
-                  .setJavaHome(javaEnvironment.getJavaHome().getAbsolutePath())
-                  .addAllJvmArgs(javaEnvironment.getJvmArguments()))
-          .build();
-    } finally {
-      GradleBuildCancellation.clearToken(req.getCancellationKey());
+    BuildEnvironment environment;
+    try (Span span = Tracer.start("buildEnvironment", "model")) {
+      environment = session.getModel(BuildEnvironment.class, operation);
     }
+    org.gradle.tooling.model.build.GradleEnvironment gradleEnvironment = environment.getGradle();
+    org.gradle.tooling.model.build.JavaEnvironment javaEnvironment = environment.getJava();
+    return Environment.newBuilder()
+        .setGradleEnvironment(
+            GradleEnvironment.newBuilder()
+                .setGradleUserHome(gradleEnvironment.getGradleUserHome().getAbsolutePath())
+                .setGradleVersion(gradleEnvironment.getGradleVersion()))
+        .setJavaEnvironment(
+            JavaEnvironment.newBuilder()
+                .setJavaHome(javaEnvironment.getJavaHome().getAbsolutePath())
+                .addAllJvmArgs(javaEnvironment.getJvmArguments()))
+        .build();
   }
 
-  private org.gradle.tooling.model.GradleProject getGradleProject(ProjectConnection connection)
+  private GradleBuild getBuild(GradleSession session, CancellationToken cancellationToken)
       throws IOException {
+    GradleBuild.Builder build = GradleBuild.newBuilder();
+    CompositeBuildAction.Result compositeBuild = null;
+    if (req.getIncludeCompositeBuilds()) {
+      try {
+        compositeBuild = getCompositeBuild(session, cancellationToken);
+      } catch (UnsupportedVersionException e) {
+        logger.warn("Unable to get included builds: {}", e.getMessage());
+        build.setIncludedBuildsError(Strings.nullToEmpty(e.getMessage()));
+      }
+    }
+    if (compositeBuild == null) {
+      org.gradle.tooling.model.GradleProject gradleProject =
+          getGradleProject(session, cancellationToken);
+      try (Span span = Tracer.start("getProjectData", "model")) {
+        build.setProject(getProjectData(gradleProject, gradleProject));
+      }
+    } else {
+      try (Span span = Tracer.start("getProjectData", "model")) {
+        org.gradle.tooling.model.GradleProject rootProject = compositeBuild.getRootProject();
+        build.setProject(getProjectData(rootProject, rootProject));
+        compositeBuild
+            .getIncludedProjects()
+            .forEach(
+                (projectDir, includedProject) ->
+                    build.addIncludedBuilds(
+                        IncludedBuild.newBuilder()
+                            .setProjectDir(projectDir)
+                            .setName(includedProject.getName())
+                            .setProject(getProjectData(includedProject, includedProject))));
+        compositeBuild
+            .getFailedBuilds()
+            .forEach(
+                (projectDir, message) -> {
+                  logger.warn("Unable to get included build {}: {}", projectDir, message);
+                  build.addIncludedBuilds(
+                      IncludedBuild.newBuilder()
+                          .setProjectDir(projectDir)
+                          .setName(new File(projectDir).getName())
+                          .setError(Strings.nullToEmpty(message)));
+                });
+      }
+    }
+    if (buildFileIndexes != null) {
+      build.addAllBuildFiles(buildFileIndexes.keySet());
+    }
+    return build.build();
+  }
+
+  private CompositeBuildAction.Result getCompositeBuild(
+      GradleSession session, CancellationToken cancellationToken) {
+    Set<OperationType> progressEvents = new HashSet<>();
+    progressEvents.add(OperationType.PROJECT_CONFIGURATION);
 
-    ModelBuilder<org.gradle.tooling.model.GradleProject> projectBuilder =
-        connection.model(org.gradle.tooling.model.GradleProject.class);
+    try (Span span = Tracer.start("getCompositeBuild", "model")) {
+      return session.run(
+          new CompositeBuildAction(), buildOperation(cancellationToken, progressEvents));
+    }
+  }
 
+  private org.gradle.tooling.model.GradleProject getGradleProject(
+      GradleSession session, CancellationToken cancellationToken) throws IOException {
     Set<OperationType> progressEvents = new HashSet<>();
     progressEvents.add(OperationType.PROJECT_CONFIGURATION);
 
-    CancellationToken cancellationToken =
-        GradleBuildCancellation.buildToken(req.getCancellationKey());
+    try (Span span = Tracer.start("getGradleProject", "model")) {
+      return session.getModel(
+          org.gradle.tooling.model.GradleProject.class,
+          buildOperation(cancellationToken, progressEvents));
+    }
+  }
 
-    projectBuilder
-        .withCancellationToken(cancellationToken)
+  private GradleOperation buildOperation(
+      CancellationToken cancellationToken, Set<OperationType> progressEvents) {
+    return new GradleOperation()
+        .setCancellationToken(cancellationToken)
         .addProgressListener(progressListener, progressEvents)
         .setStandardOutput(standardOutputListener)
         .setStandardError(standardErrorListener)
-        .setColorOutput(req.getShowOutputColors());
-    if (!Strings.isNullOrEmpty(req.getGradleConfig().getJvmArguments())) {
-      projectBuilder.setJvmArguments(req.getGradleConfig().getJvmArguments());
-    }
-
-    try {
-      return projectBuilder.get();
-    } finally {
-      GradleBuildCancellation.clearToken(req.getCancellationKey());
-    }
+        .setColorOutput(req.getShowOutputColors())
+        .setJvmArguments(jvmArguments);
   }
 
   private GradleProject getProjectData(
@@ -181,9 +278,15 @@ public class GetBuildHandler {
                       .setProject(task.getProject().getName())
                       .setName(task.getName())
                       .setPath(task.getPath())
-                      .setBuildFile(
-                          task.getProject().getBuildScript().getSourceFile().getAbsolutePath())
                       .setRootProject(rootGradleProject.getName());
+              String buildFile =
+                  task.getProject().getBuildScript().getSourceFile().getAbsolutePath();
+              if (buildFileIndexes == null) {
+                gradleTask.setBuildFile(buildFile);
+              } else {
+                gradleTask.setBuildFileIndex(
+                    buildFileIndexes.computeIfAbsent(buildFile, path -> buildFileIndexes.size()));
+              }
               if (task.getDescription() != null) {
                 gradleTask.setDescription(task.getDescription());
               }
@@ -195,12 +298,24 @@ public class GetBuildHandler {
     return project.build();
   }
 
-  private void replyWithProject(GradleProject gradleProject) {
+  // Profiles are only kept when the Gradle version reports project configuration times
+  private ConfigurationProfile getConfigurationProfile() {
+    ConfigurationProfile profile =
+        configurationProfiler.build(
+            req.getProjectDir(), GitHead.read(Paths.get(req.getProjectDir())));
+    if (profile.getProjectsCount() > 0) {
+      configurationProfileLog.record(profile);
+    }
+    return profile;
+  }
+
+  private void replyWithBuild(GradleBuild gradleBuild, ConfigurationProfile profile) {
     responseObserver.onNext(
         GetBuildReply.newBuilder()
             .setGetBuildResult(
                 GetBuildResult.newBuilder()
-                    .setBuild(GradleBuild.newBuilder().setProject(gradleProject)))
+                    .setBuild(gradleBuild)
+                    .setConfigurationProfile(profile))
             .build());
     responseObserver.onCompleted();
   }
@@ -231,6 +346,13 @@ public class GetBuildHandler {
             .build());
   }
 
+  private void replyWithWarning(String warning) {
+    responseObserver.onNext(
+        GetBuildReply.newBuilder()
+            .setProgress(Progress.newBuilder().setMessage(warning).setWarning(true))
+            .build());
+  }
+
   private void replyWithStandardOutput(byte[] bytes) {
     ByteString byteString = ByteString.copyFrom(bytes);
     responseObserver.onNext(
@@ -0,0 +1,135 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.GetBuildOutputReply;
+import com.github.badsyntax.gradle.GetBuildOutputRequest;
+import com.github.badsyntax.gradle.OnReadySignal;
+import com.github.badsyntax.gradle.OutputLine;
+import com.github.badsyntax.gradle.exceptions.GradleBuildNotFoundException;
+import com.github.badsyntax.gradle.output.OutputLog;
+import com.github.badsyntax.gradle.output.OutputLogStore;
+import com.google.common.base.Strings;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class GetBuildOutputHandler {
+  private static final Logger logger =
+      LoggerFactory.getLogger(GetBuildOutputHandler.class.getName());
+
+  private static final int LINES_PER_REPLY = 256;
+
+  private GetBuildOutputRequest req;
+  private StreamObserver<GetBuildOutputReply> responseObserver;
+  private OutputLogStore outputLogStore;
+  private OnReadySignal onReadySignal;
+
+  public GetBuildOutputHandler(
+      GetBuildOutputRequest req,
+      StreamObserver<GetBuildOutputReply> responseObserver,
+      OutputLogStore outputLogStore) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.outputLogStore = outputLogStore;
+  }
+
+  // Without a signal, replies are sent as fast as the log is read
+  public GetBuildOutputHandler setOnReadySignal(OnReadySignal onReadySignal) {
+    this.onReadySignal = onReadySignal;
+    return this;
+  }
+
+  public void run() {
+    Pattern pattern;
+    try {
+      pattern = Strings.isNullOrEmpty(req.getPattern()) ? null : Pattern.compile(req.getPattern());
+    } catch (PatternSyntaxException e) {
+      responseObserver.onError(ErrorMessageBuilder.build(e, Status.INVALID_ARGUMENT));
+      return;
+    }
+    try (OutputLog outputLog = outputLogStore.open(req.getCancellationKey())) {
+      if (outputLog == null) {
+        throw new GradleBuildNotFoundException(
+            "No stored build output found for key: " + req.getCancellationKey());
+      }
+      replyWithLines(outputLog, pattern);
+    } catch (GradleBuildNotFoundException e) {
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e, Status.NOT_FOUND));
+    } catch (IOException e) {
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e));
+    }
+  }
+
+  private void replyWithLines(OutputLog outputLog, Pattern pattern) throws IOException {
+    int maxLines = req.getMaxLines() > 0 ? req.getMaxLines() : Integer.MAX_VALUE;
+    List<OutputLine> batch = new ArrayList<>(LINES_PER_REPLY);
+    int[] sent = {0};
+    boolean[] stopped = {false};
+    outputLog.read(
+        req.getFromLine(),
+        req.getToLine(),
+        taskFilter(),
+        pattern,
+        line -> {
+          batch.add(line);
+          if (batch.size() == LINES_PER_REPLY && !reply(outputLog, batch)) {
+            stopped[0] = true;
+            return false;
+          }
+          return ++sent[0] < maxLines && !Context.current().isCancelled();
+        });
+    if (stopped[0] || Context.current().isCancelled()) {
+      return;
+    }
+    if ((!batch.isEmpty() || sent[0] == 0) && !reply(outputLog, batch)) {
+      return;
+    }
+    responseObserver.onCompleted();
+  }
+
+  // Waits for the client to take more replies, returns false when the call is gone
+  private boolean reply(OutputLog outputLog, List<OutputLine> batch) {
+    if (onReadySignal != null) {
+      try {
+        if (!onReadySignal.await()) {
+          return false;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    responseObserver.onNext(
+        GetBuildOutputReply.newBuilder()
+            .addAllLines(batch)
+            .setTotalLines(outputLog.getLineCount())
+            .build());
+    batch.clear();
+    return true;
+  }
+
+  // Tasks are matched by path, or by name in any project
+  private Predicate<String> taskFilter() {
+    if (req.getTasksCount() == 0) {
+      return null;
+    }
+    return taskPath -> {
+      for (String task : req.getTasksList()) {
+        if (taskPath.equals(task) || taskPath.endsWith(":" + task)) {
+          return true;
+        }
+      }
+      return false;
+    };
+  }
+}
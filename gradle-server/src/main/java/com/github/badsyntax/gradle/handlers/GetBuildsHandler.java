@@ -0,0 +1,197 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.GetBuildReply;
+import com.github.badsyntax.gradle.GetBuildRequest;
+import com.github.badsyntax.gradle.GetBuildsReply;
+import com.github.badsyntax.gradle.GetBuildsRequest;
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.JvmArguments;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import com.github.badsyntax.gradle.index.TaskIndex;
+import com.google.common.base.Strings;
+import io.grpc.Context;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Fetches the builds of several root projects on one stream. Roots that can share a daemon are
+// fetched one after the other in the same lane, so that the daemon is reused instead of a new
+// daemon being started for every concurrent request, while lanes run in parallel.
+public class GetBuildsHandler {
+  private static final Logger logger = LoggerFactory.getLogger(GetBuildsHandler.class.getName());
+
+  private GetBuildsRequest req;
+  private StreamObserver<GetBuildsReply> responseObserver;
+  private TaskIndex taskIndex;
+  private ConfigurationProfileLog configurationProfileLog;
+  private DaemonReuseTracker daemonReuseTracker;
+  private Executor projectExecutor;
+  private int maxParallelism;
+
+  public GetBuildsHandler(
+      GetBuildsRequest req,
+      StreamObserver<GetBuildsReply> responseObserver,
+      TaskIndex taskIndex,
+      ConfigurationProfileLog configurationProfileLog,
+      DaemonReuseTracker daemonReuseTracker,
+      Executor projectExecutor,
+      int maxParallelism) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.taskIndex = taskIndex;
+    this.configurationProfileLog = configurationProfileLog;
+    this.daemonReuseTracker = daemonReuseTracker;
+    this.projectExecutor = projectExecutor;
+    this.maxParallelism = maxParallelism;
+  }
+
+  public void run() {
+    List<GetBuildRequest> builds = req.getBuildsList();
+    if (builds.isEmpty()) {
+      responseObserver.onCompleted();
+      return;
+    }
+    int parallelism = Math.min(builds.size(), getMaxParallelism());
+    List<List<GetBuildRequest>> lanes = buildLanes(builds, parallelism);
+    logger.info(
+        "Getting {} builds in {} lanes with a parallelism of {}",
+        builds.size(),
+        lanes.size(),
+        parallelism);
+
+    Context context = Context.current();
+    CountDownLatch remainingLanes = new CountDownLatch(lanes.size());
+    for (List<GetBuildRequest> lane : lanes) {
+      // Lanes run with the call's context, so their builds are cancelled with the call
+      Runnable runLane =
+          context.wrap(
+              () -> {
+                try {
+                  for (GetBuildRequest build : lane) {
+                    if (context.isCancelled()) {
+                      return;
+                    }
+                    GetBuildHandler getBuildHandler =
+                        new GetBuildHandler(
+                            build,
+                            new ProjectStreamObserver(build.getProjectDir()),
+                            taskIndex,
+                            configurationProfileLog,
+                            daemonReuseTracker);
+                    getBuildHandler.run();
+                  }
+                } finally {
+                  remainingLanes.countDown();
+                }
+              });
+      try {
+        projectExecutor.execute(runLane);
+      } catch (RejectedExecutionException e) {
+        // The server is shutting down
+        remainingLanes.countDown();
+      }
+    }
+    try {
+      remainingLanes.await();
+      synchronized (responseObserver) {
+        responseObserver.onCompleted();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // The client can ask for less parallelism than the server allows, but never for more
+  private int getMaxParallelism() {
+    if (req.getMaxParallelism() > 0) {
+      return Math.min(req.getMaxParallelism(), maxParallelism);
+    }
+    return maxParallelism;
+  }
+
+  // Splits the roots into at most parallelism lanes, grouped by daemon compatibility. When there
+  // are more groups than lanes whole groups share a lane, otherwise every group gets a lane and
+  // larger groups get a share of the remaining lanes so all threads are kept busy.
+  static List<List<GetBuildRequest>> buildLanes(List<GetBuildRequest> builds, int parallelism) {
+    Map<String, List<GetBuildRequest>> groups = new LinkedHashMap<>();
+    for (GetBuildRequest build : builds) {
+      groups.computeIfAbsent(getDaemonKey(build), key -> new ArrayList<>()).add(build);
+    }
+    List<List<GetBuildRequest>> lanes = new ArrayList<>();
+    if (groups.size() >= parallelism) {
+      for (int i = 0; i < parallelism; i++) {
+        lanes.add(new ArrayList<>());
+      }
+      for (List<GetBuildRequest> group : groups.values()) {
+        lanes.stream().min(Comparator.comparingInt(List::size)).get().addAll(group);
+      }
+      return lanes;
+    }
+    int spareLanes = parallelism - groups.size();
+    for (List<GetBuildRequest> group : groups.values()) {
+      int laneCount = 1 + Math.min(group.size() - 1, spareLanes * group.size() / builds.size());
+      List<List<GetBuildRequest>> groupLanes = new ArrayList<>();
+      for (int i = 0; i < laneCount; i++) {
+        groupLanes.add(new ArrayList<>());
+      }
+      for (int i = 0; i < group.size(); i++) {
+        groupLanes.get(i % laneCount).add(group.get(i));
+      }
+      lanes.addAll(groupLanes);
+    }
+    return lanes;
+  }
+
+  // Builds can only share a daemon when they use the same Gradle distribution, user home and
+  // JVM arguments
+  private static String getDaemonKey(GetBuildRequest build) {
+    GradleConfig config = build.getGradleConfig();
+    return String.join(
+        "\n",
+        DaemonReuseTracker.getDaemonKey(build.getProjectDir(), config),
+        String.join(" ", JvmArguments.canonicalize(config.getJvmArguments())));
+  }
+
+  // Tags the replies of one root with its project dir, and keeps the shared stream open when a
+  // root completes or fails
+  private class ProjectStreamObserver implements StreamObserver<GetBuildReply> {
+    private final String projectDir;
+
+    ProjectStreamObserver(String projectDir) {
+      this.projectDir = projectDir;
+    }
+
+    @Override
+    public void onNext(GetBuildReply reply) {
+      synchronized (responseObserver) {
+        responseObserver.onNext(
+            GetBuildsReply.newBuilder().setProjectDir(projectDir).setReply(reply).build());
+      }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      synchronized (responseObserver) {
+        responseObserver.onNext(
+            GetBuildsReply.newBuilder()
+                .setProjectDir(projectDir)
+                .setError(Strings.nullToEmpty(t.getMessage()))
+                .build());
+      }
+    }
+
+    @Override
+    public void onCompleted() {
+      // The whole stream is completed once every root has been fetched
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.GetConfigurationProfilesReply;
+import com.github.badsyntax.gradle.GetConfigurationProfilesRequest;
+import com.github.badsyntax.gradle.history.ConfigurationProfileComparator;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import com.google.common.base.Strings;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Replies with the saved configuration profiles of a project, and compares the latest profiles
+// at two commits
+public class GetConfigurationProfilesHandler {
+  private static final Logger logger =
+      LoggerFactory.getLogger(GetConfigurationProfilesHandler.class.getName());
+
+  private GetConfigurationProfilesRequest req;
+  private StreamObserver<GetConfigurationProfilesReply> responseObserver;
+  private ConfigurationProfileLog configurationProfileLog;
+
+  public GetConfigurationProfilesHandler(
+      GetConfigurationProfilesRequest req,
+      StreamObserver<GetConfigurationProfilesReply> responseObserver,
+      ConfigurationProfileLog configurationProfileLog) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.configurationProfileLog = configurationProfileLog;
+  }
+
+  public void run() {
+    List<ConfigurationProfile> profiles;
+    try {
+      profiles = configurationProfileLog.read(req.getProjectDir());
+    } catch (IOException e) {
+      logger.error(e.getMessage());
+      responseObserver.onError(ErrorMessageBuilder.build(e));
+      return;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      responseObserver.onError(ErrorMessageBuilder.build(e, Status.CANCELLED));
+      return;
+    }
+    GetConfigurationProfilesReply.Builder reply =
+        GetConfigurationProfilesReply.newBuilder().addAllProfiles(profiles);
+    if (profiles.isEmpty()) {
+      replyWith(reply);
+      return;
+    }
+    ConfigurationProfile head =
+        Strings.isNullOrEmpty(req.getHeadCommit())
+            ? profiles.get(profiles.size() - 1)
+            : ConfigurationProfileComparator.findLatest(profiles, req.getHeadCommit());
+    if (head == null) {
+      replyWithNotFound(req.getHeadCommit());
+      return;
+    }
+    ConfigurationProfile base =
+        Strings.isNullOrEmpty(req.getBaseCommit())
+            ? ConfigurationProfileComparator.findLatestBefore(profiles, head.getCommit())
+            : ConfigurationProfileComparator.findLatest(profiles, req.getBaseCommit());
+    if (base == null && !Strings.isNullOrEmpty(req.getBaseCommit())) {
+      replyWithNotFound(req.getBaseCommit());
+      return;
+    }
+    if (base != null) {
+      reply.setComparison(ConfigurationProfileComparator.compare(base, head));
+    }
+    replyWith(reply);
+  }
+
+  private void replyWith(GetConfigurationProfilesReply.Builder reply) {
+    responseObserver.onNext(reply.build());
+    responseObserver.onCompleted();
+  }
+
+  private void replyWithNotFound(String commit) {
+    responseObserver.onError(
+        ErrorMessageBuilder.build(
+            new IllegalArgumentException("No configuration profile was saved at " + commit),
+            Status.NOT_FOUND));
+  }
+}
@@ -7,6 +7,7 @@ import com.github.badsyntax.gradle.GetDaemonsStatusReply;
 import com.github.badsyntax.gradle.GetDaemonsStatusRequest;
 import com.github.badsyntax.gradle.GradleWrapper;
 import com.github.badsyntax.gradle.exceptions.GradleWrapperException;
+import com.github.badsyntax.gradle.process.ProcessSampler;
 import io.grpc.stub.StreamObserver;
 import java.io.File;
 import java.util.List;
@@ -19,17 +20,21 @@ public class GetDaemonsStatusHandler {
 
   private GetDaemonsStatusRequest req;
   private StreamObserver<GetDaemonsStatusReply> responseObserver;
+  private ProcessSampler processSampler;
 
   public GetDaemonsStatusHandler(
-      GetDaemonsStatusRequest req, StreamObserver<GetDaemonsStatusReply> responseObserver) {
+      GetDaemonsStatusRequest req,
+      StreamObserver<GetDaemonsStatusReply> responseObserver,
+      ProcessSampler processSampler) {
     this.req = req;
     this.responseObserver = responseObserver;
+    this.processSampler = processSampler;
   }
 
   public synchronized void run() {
     File projectRoot = new File(req.getProjectDir());
     GradleWrapper gradleWrapper = new GradleWrapper(projectRoot);
-    DaemonStatus daemonStatus = new DaemonStatus(gradleWrapper);
+    DaemonStatus daemonStatus = new DaemonStatus(gradleWrapper, processSampler);
     try {
       List<DaemonInfo> status = daemonStatus.get();
       replyWithSuccess(status);
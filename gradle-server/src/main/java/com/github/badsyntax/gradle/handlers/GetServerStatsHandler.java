@@ -0,0 +1,27 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.GetServerStatsReply;
+import com.github.badsyntax.gradle.GetServerStatsRequest;
+import com.github.badsyntax.gradle.stats.ServerStats;
+import io.grpc.stub.StreamObserver;
+
+public class GetServerStatsHandler {
+  private GetServerStatsRequest req;
+  private StreamObserver<GetServerStatsReply> responseObserver;
+  private ServerStats serverStats;
+
+  public GetServerStatsHandler(
+      GetServerStatsRequest req,
+      StreamObserver<GetServerStatsReply> responseObserver,
+      ServerStats serverStats) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.serverStats = serverStats;
+  }
+
+  public void run() {
+    responseObserver.onNext(
+        GetServerStatsReply.newBuilder().putAllCounters(serverStats.snapshot()).build());
+    responseObserver.onCompleted();
+  }
+}
@@ -0,0 +1,149 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.BuildScriptFingerprint;
+import com.github.badsyntax.gradle.Cancelled;
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.GetTaskGraphReply;
+import com.github.badsyntax.gradle.GetTaskGraphRequest;
+import com.github.badsyntax.gradle.GradleBuildRunner;
+import com.github.badsyntax.gradle.TaskGraph;
+import com.github.badsyntax.gradle.exceptions.GradleBuildRunnerException;
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.github.badsyntax.gradle.graph.TaskGraphCache;
+import com.github.badsyntax.gradle.graph.TaskGraphReport;
+import io.grpc.stub.StreamObserver;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.BuildException;
+import org.gradle.tooling.UnsupportedVersionException;
+import org.gradle.tooling.exceptions.UnsupportedBuildArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Computes the task execution plan with a dry run, which calculates the task graph without
+// executing any task. An init script writes the graph to a report once it is ready, see
+// TaskGraphReport, rather than parsing the dry run output.
+public class GetTaskGraphHandler {
+  private static final Logger logger = LoggerFactory.getLogger(GetTaskGraphHandler.class.getName());
+
+  private static final String DRY_RUN = "--dry-run";
+  private static final String INIT_SCRIPT = "--init-script";
+
+  private GetTaskGraphRequest req;
+  private StreamObserver<GetTaskGraphReply> responseObserver;
+  private TaskGraphCache taskGraphCache;
+  private DaemonReuseTracker daemonReuseTracker;
+
+  public GetTaskGraphHandler(
+      GetTaskGraphRequest req,
+      StreamObserver<GetTaskGraphReply> responseObserver,
+      TaskGraphCache taskGraphCache,
+      DaemonReuseTracker daemonReuseTracker) {
+    this.req = req;
+    this.responseObserver = responseObserver;
+    this.taskGraphCache = taskGraphCache;
+    this.daemonReuseTracker = daemonReuseTracker;
+  }
+
+  public void run() {
+    try {
+      if (req.getTasksList().isEmpty()) {
+        throw new GradleBuildRunnerException("No tasks supplied");
+      }
+      Path projectDir = Paths.get(req.getProjectDir());
+      String key =
+          TaskGraphCache.key(req.getProjectDir(), req.getTasksList(), req.getGradleConfig());
+      TaskGraphCache.Entry cachedEntry = taskGraphCache.get(key);
+      if (cachedEntry != null
+          && cachedEntry
+              .getFingerprint()
+              .equals(BuildScriptFingerprint.of(projectDir, cachedEntry.getBuildFiles()))) {
+        replyWithGraph(cachedEntry.getGraph(), true);
+        return;
+      }
+      TaskGraphReport report = computeGraph();
+      // Taken after the dry run, as only Gradle knows which build files the projects use
+      String fingerprint = BuildScriptFingerprint.of(projectDir, report.getBuildFiles());
+      taskGraphCache.put(
+          key, new TaskGraphCache.Entry(report.getGraph(), report.getBuildFiles(), fingerprint));
+      replyWithGraph(report.getGraph(), false);
+    } catch (BuildCancelledException e) {
+      replyWithCancelled(e);
+    } catch (BuildException
+        | GradleConnectionException
+        | UnsupportedVersionException
+        | UnsupportedBuildArgumentException
+        | IllegalStateException
+        | IOException
+        | GradleBuildRunnerException e) {
+      logger.error(e.getMessage());
+      replyWithError(e);
+    }
+  }
+
+  private TaskGraphReport computeGraph()
+      throws GradleConnectionException, IOException, GradleBuildRunnerException {
+    Path reportDir = Files.createTempDirectory("task-graph");
+    try {
+      Path initScript = reportDir.resolve("task-graph.gradle");
+      Path reportFile = reportDir.resolve("task-graph.txt");
+      TaskGraphReport.writeInitScript(initScript);
+      List<String> args = new ArrayList<>(req.getTasksList());
+      args.add(DRY_RUN);
+      args.add(INIT_SCRIPT);
+      args.add(initScript.toString());
+      args.add("-P" + TaskGraphReport.OUTPUT_PROPERTY + "=" + reportFile);
+      GradleBuildRunner gradleRunner =
+          new GradleBuildRunner(
+              req.getProjectDir(),
+              args,
+              req.getGradleConfig(),
+              req.getCancellationKey(),
+              false,
+              0,
+              false);
+      // The reply has no room for progress, the warning is only logged
+      gradleRunner.setDaemonReuseTracker(daemonReuseTracker, null);
+      // Nothing can attach to a dry run, so it is cancelled as soon as its call is
+      gradleRunner.setCancelWithCall(null);
+      gradleRunner.run();
+      if (!Files.exists(reportFile)) {
+        throw new GradleBuildRunnerException("The dry run did not report a task graph");
+      }
+      return TaskGraphReport.read(reportFile);
+    } finally {
+      for (File file : reportDir.toFile().listFiles()) {
+        Files.deleteIfExists(file.toPath());
+      }
+      Files.deleteIfExists(reportDir);
+    }
+  }
+
+  private void replyWithGraph(TaskGraph graph, boolean cached) {
+    responseObserver.onNext(
+        GetTaskGraphReply.newBuilder().setGraph(graph).setCached(cached).build());
+    responseObserver.onCompleted();
+  }
+
+  private void replyWithCancelled(BuildCancelledException e) {
+    responseObserver.onNext(
+        GetTaskGraphReply.newBuilder()
+            .setCancelled(
+                Cancelled.newBuilder()
+                    .setMessage(e.getMessage())
+                    .setProjectDir(req.getProjectDir()))
+            .build());
+    responseObserver.onCompleted();
+  }
+
+  private void replyWithError(Exception e) {
+    responseObserver.onError(ErrorMessageBuilder.build(e));
+  }
+}
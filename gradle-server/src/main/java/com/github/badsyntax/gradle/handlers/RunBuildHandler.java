@@ -1,26 +1,49 @@
 package com.github.badsyntax.gradle.handlers;
 
+import com.github.badsyntax.gradle.BuildEstimate;
 import com.github.badsyntax.gradle.ByteBufferOutputStream;
 import com.github.badsyntax.gradle.Cancelled;
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.Diagnostic;
+import com.github.badsyntax.gradle.Diagnostics;
 import com.github.badsyntax.gradle.ErrorMessageBuilder;
 import com.github.badsyntax.gradle.GradleBuildRunner;
+import com.github.badsyntax.gradle.LineFramer;
 import com.github.badsyntax.gradle.Output;
 import com.github.badsyntax.gradle.Progress;
 import com.github.badsyntax.gradle.RunBuildReply;
 import com.github.badsyntax.gradle.RunBuildRequest;
 import com.github.badsyntax.gradle.RunBuildResult;
+import com.github.badsyntax.gradle.RunningTasks;
+import com.github.badsyntax.gradle.TestResult;
+import com.github.badsyntax.gradle.TestResultBatcher;
+import com.github.badsyntax.gradle.TestResults;
+import com.github.badsyntax.gradle.diagnostics.DiagnosticExtractor;
 import com.github.badsyntax.gradle.exceptions.GradleBuildRunnerException;
 import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.github.badsyntax.gradle.history.BuildOutcome;
+import com.github.badsyntax.gradle.history.BuildTracker;
+import com.github.badsyntax.gradle.output.OutputLogStore;
+import com.github.badsyntax.gradle.output.OutputLogWriter;
 import com.google.common.base.Strings;
 import com.google.protobuf.ByteString;
 import io.grpc.stub.StreamObserver;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
 import org.gradle.tooling.BuildCancelledException;
 import org.gradle.tooling.BuildException;
 import org.gradle.tooling.UnsupportedVersionException;
 import org.gradle.tooling.events.ProgressEvent;
 import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationResult;
+import org.gradle.tooling.events.task.TaskStartEvent;
 import org.gradle.tooling.exceptions.UnsupportedBuildArgumentException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,34 +56,103 @@ public class RunBuildHandler {
   private ProgressListener progressListener;
   private ByteBufferOutputStream standardOutputListener;
   private ByteBufferOutputStream standardErrorListener;
+  private BuildTracker buildTracker;
+  private TestResultBatcher testResultBatcher;
+  private LineFramer standardOutputFramer;
+  private LineFramer standardErrorFramer;
+  private InputStream standardInputStream;
+  private OutputLogStore outputLogStore;
+  private OutputLogWriter outputLog;
+  private BooleanSupplier hasSubscribers;
+  private DaemonReuseTracker daemonReuseTracker;
+  private DiagnosticExtractor standardOutputDiagnostics;
+  private DiagnosticExtractor standardErrorDiagnostics;
+  // Diagnostics found in the output that is being flushed, under the build's lock
+  private final List<Diagnostic> diagnostics = new ArrayList<>();
+  private final RunningTasks runningTasks = new RunningTasks();
+  // Guards the running tasks, the line framers and the diagnostic extractors. Replies are sent
+  // under the class lock, which every build shares, so the work on this build's output, like
+  // scanning it for diagnostics, happens outside of it.
+  private final Object lock = new Object();
 
-  public RunBuildHandler(RunBuildRequest req, StreamObserver<RunBuildReply> responseObserver) {
+  public RunBuildHandler(
+      RunBuildRequest req,
+      StreamObserver<RunBuildReply> responseObserver,
+      BuildHistory buildHistory) {
     this.req = req;
     this.responseObserver = responseObserver;
+    this.buildTracker = new BuildTracker(buildHistory, req.getProjectDir(), req.getArgsList());
+    if (req.getLineFramedOutput()) {
+      this.standardOutputFramer = new LineFramer();
+      this.standardErrorFramer = new LineFramer();
+    }
+    if (req.getExtractDiagnostics()) {
+      this.standardOutputDiagnostics = new DiagnosticExtractor(this::onDiagnostic);
+      this.standardErrorDiagnostics = new DiagnosticExtractor(this::onDiagnostic);
+    }
     this.progressListener =
         (ProgressEvent event) -> {
           synchronized (RunBuildHandler.class) {
             replyWithProgress(event);
           }
+          synchronized (lock) {
+            if (event instanceof TaskStartEvent) {
+              runningTasks.started(((TaskStartEvent) event).getDescriptor().getTaskPath());
+            } else if (event instanceof TaskFinishEvent) {
+              onTaskFinished((TaskFinishEvent) event);
+            }
+          }
         };
     this.standardOutputListener =
         new ByteBufferOutputStream() {
           @Override
           public void onFlush(byte[] bytes) {
-            synchronized (RunBuildHandler.class) {
-              replyWithStandardOutput(bytes);
-            }
+            onOutput(
+                Output.OutputType.STDOUT, standardOutputFramer, standardOutputDiagnostics, bytes);
           }
         };
     this.standardErrorListener =
         new ByteBufferOutputStream() {
           @Override
           public void onFlush(byte[] bytes) {
-            synchronized (RunBuildHandler.class) {
-              replyWithStandardError(bytes);
-            }
+            onOutput(
+                Output.OutputType.STDERR, standardErrorFramer, standardErrorDiagnostics, bytes);
           }
         };
+    if (req.getStreamTestResults()) {
+      this.testResultBatcher =
+          new TestResultBatcher() {
+            @Override
+            public void onBatch(List<TestResult> results) {
+              synchronized (RunBuildHandler.class) {
+                replyWithTestResults(results);
+              }
+            }
+          };
+    }
+  }
+
+  // Standard input that is streamed while the build runs, instead of the input of the request
+  public RunBuildHandler setStandardInputStream(InputStream standardInputStream) {
+    this.standardInputStream = standardInputStream;
+    return this;
+  }
+
+  // Keeps the output of the build for GetBuildOutput once it has finished
+  public RunBuildHandler setOutputLogStore(OutputLogStore outputLogStore) {
+    this.outputLogStore = outputLogStore;
+    return this;
+  }
+
+  // Lets the build keep running without its call while clients are attached to its output
+  public RunBuildHandler setHasSubscribers(BooleanSupplier hasSubscribers) {
+    this.hasSubscribers = hasSubscribers;
+    return this;
+  }
+
+  public RunBuildHandler setDaemonReuseTracker(DaemonReuseTracker daemonReuseTracker) {
+    this.daemonReuseTracker = daemonReuseTracker;
+    return this;
   }
 
   public void run() {
@@ -76,21 +168,42 @@ public class RunBuildHandler {
     gradleRunner
         .setProgressListener(progressListener)
         .setStandardOutputStream(standardOutputListener)
-        .setStandardErrorStream(standardErrorListener);
+        .setStandardErrorStream(standardErrorListener)
+        .setTestProgressListener(testResultBatcher);
 
-    if (!Strings.isNullOrEmpty(req.getInput())) {
+    if (standardInputStream != null) {
+      gradleRunner.setStandardInputStream(standardInputStream);
+    } else if (!Strings.isNullOrEmpty(req.getInput())) {
       gradleRunner.setStandardInputStream(new ByteArrayInputStream(req.getInput().getBytes()));
     }
 
+    if (outputLogStore != null) {
+      outputLog = outputLogStore.create(req.getCancellationKey());
+    }
+    gradleRunner.setCancelWithCall(hasSubscribers);
+    gradleRunner.setDaemonReuseTracker(
+        daemonReuseTracker,
+        warning -> {
+          synchronized (RunBuildHandler.class) {
+            replyWithWarning(warning);
+          }
+        });
+    buildTracker.start(this::onEstimate);
+
     try {
-      gradleRunner.run();
+      runAndFlush(gradleRunner);
+      buildTracker.finish(BuildOutcome.SUCCESS);
       replyWithSuccess();
       responseObserver.onCompleted();
     } catch (BuildCancelledException e) {
+      buildTracker.finish(BuildOutcome.CANCELLED);
       replyWithCancelled(e);
       responseObserver.onCompleted();
+    } catch (BuildException e) {
+      buildTracker.finish(BuildOutcome.FAILED);
+      logger.error(e.getMessage());
+      replyWithError(e);
     } catch (GradleConnectionException
-        | BuildException
         | UnsupportedVersionException
         | UnsupportedBuildArgumentException
         | IllegalStateException
@@ -101,6 +214,50 @@ public class RunBuildHandler {
     }
   }
 
+  // Sends what is still batched or buffered before the build result
+  private void runAndFlush(GradleBuildRunner gradleRunner)
+      throws GradleConnectionException, IOException, GradleBuildRunnerException {
+    try {
+      gradleRunner.run();
+    } finally {
+      // Under the reply lock, so an estimate being sent has been sent once this returns
+      synchronized (RunBuildHandler.class) {
+        buildTracker.stop();
+      }
+      if (testResultBatcher != null) {
+        testResultBatcher.flush();
+      }
+      if (standardOutputFramer != null) {
+        String taskPath;
+        String standardOutputLine;
+        String standardErrorLine;
+        synchronized (lock) {
+          taskPath = runningTasks.getOutputTaskPath();
+          standardOutputLine = standardOutputFramer.drain();
+          standardErrorLine = standardErrorFramer.drain();
+        }
+        synchronized (RunBuildHandler.class) {
+          replyWithLastLine(Output.OutputType.STDOUT, standardOutputLine, taskPath);
+          replyWithLastLine(Output.OutputType.STDERR, standardErrorLine, taskPath);
+        }
+      }
+      if (standardOutputDiagnostics != null) {
+        List<Diagnostic> found;
+        synchronized (lock) {
+          standardOutputDiagnostics.finish();
+          standardErrorDiagnostics.finish();
+          found = drainDiagnostics();
+        }
+        synchronized (RunBuildHandler.class) {
+          replyWithDiagnostics(found);
+        }
+      }
+      if (outputLog != null) {
+        outputLog.close();
+      }
+    }
+  }
+
   public void replyWithCancelled(BuildCancelledException e) {
     responseObserver.onNext(
         RunBuildReply.newBuilder()
@@ -122,6 +279,91 @@ public class RunBuildHandler {
             .build());
   }
 
+  private void onTaskFinished(TaskFinishEvent event) {
+    runningTasks.finished(event.getDescriptor().getTaskPath());
+    TaskOperationResult result = event.getResult();
+    buildTracker.onTaskFinished(
+        event.getDescriptor().getTaskPath(), result.getEndTime() - result.getStartTime());
+  }
+
+  private void onOutput(
+      Output.OutputType outputType,
+      LineFramer framer,
+      DiagnosticExtractor extractor,
+      byte[] bytes) {
+    String taskPath;
+    List<String> lines = null;
+    List<Diagnostic> found;
+    synchronized (lock) {
+      taskPath = runningTasks.getOutputTaskPath();
+      if (framer != null) {
+        lines = framer.frame(bytes);
+      }
+      found = extractDiagnostics(extractor, bytes);
+    }
+    // The writer has a lock of its own
+    if (outputLog != null) {
+      outputLog.write(outputType, bytes, taskPath);
+    }
+    ByteString outputBytes = lines == null ? ByteString.copyFrom(bytes) : null;
+    synchronized (RunBuildHandler.class) {
+      if (lines != null) {
+        replyWithLines(outputType, lines, taskPath);
+      } else {
+        replyWithOutput(outputType, outputBytes);
+      }
+      replyWithDiagnostics(found);
+    }
+  }
+
+  // Called under the build's lock, like onDiagnostic
+  private List<Diagnostic> extractDiagnostics(DiagnosticExtractor extractor, byte[] bytes) {
+    if (extractor == null) {
+      return Collections.emptyList();
+    }
+    extractor.write(bytes);
+    return drainDiagnostics();
+  }
+
+  private List<Diagnostic> drainDiagnostics() {
+    List<Diagnostic> found = new ArrayList<>(diagnostics);
+    diagnostics.clear();
+    return found;
+  }
+
+  private void onDiagnostic(Diagnostic.Builder diagnostic) {
+    String taskPath = runningTasks.getOutputTaskPath();
+    if (taskPath != null) {
+      diagnostic.setTaskPath(taskPath);
+    }
+    diagnostics.add(diagnostic.build());
+  }
+
+  private void replyWithDiagnostics(List<Diagnostic> found) {
+    if (found.isEmpty()) {
+      return;
+    }
+    responseObserver.onNext(
+        RunBuildReply.newBuilder()
+            .setDiagnostics(Diagnostics.newBuilder().addAllDiagnostics(found))
+            .build());
+  }
+
+  private void onEstimate(BuildEstimate estimate) {
+    synchronized (RunBuildHandler.class) {
+      if (!buildTracker.isStopped()) {
+        responseObserver.onNext(RunBuildReply.newBuilder().setEstimate(estimate).build());
+      }
+    }
+  }
+
+  private void replyWithTestResults(List<TestResult> results) {
+    responseObserver.onNext(
+        RunBuildReply.newBuilder()
+            .setTestResults(TestResults.newBuilder().addAllResults(results))
+            .build());
+  }
+
   private void replyWithProgress(ProgressEvent progressEvent) {
     responseObserver.onNext(
         RunBuildReply.newBuilder()
@@ -129,25 +371,34 @@ public class RunBuildHandler {
             .build());
   }
 
-  private void replyWithStandardOutput(byte[] bytes) {
-    ByteString byteString = ByteString.copyFrom(bytes);
+  private void replyWithWarning(String warning) {
     responseObserver.onNext(
         RunBuildReply.newBuilder()
-            .setOutput(
-                Output.newBuilder()
-                    .setOutputType(Output.OutputType.STDOUT)
-                    .setOutputBytes(byteString))
+            .setProgress(Progress.newBuilder().setMessage(warning).setWarning(true))
             .build());
   }
 
-  private void replyWithStandardError(byte[] bytes) {
-    ByteString byteString = ByteString.copyFrom(bytes);
+  private void replyWithLines(Output.OutputType outputType, List<String> lines, String taskPath) {
+    if (lines.isEmpty()) {
+      return;
+    }
+    Output.Builder output = Output.newBuilder().setOutputType(outputType).addAllLines(lines);
+    if (taskPath != null) {
+      output.setTaskPath(taskPath);
+    }
+    responseObserver.onNext(RunBuildReply.newBuilder().setOutput(output).build());
+  }
+
+  private void replyWithLastLine(Output.OutputType outputType, String line, String taskPath) {
+    if (line != null) {
+      replyWithLines(outputType, Collections.singletonList(line), taskPath);
+    }
+  }
+
+  private void replyWithOutput(Output.OutputType outputType, ByteString outputBytes) {
     responseObserver.onNext(
         RunBuildReply.newBuilder()
-            .setOutput(
-                Output.newBuilder()
-                    .setOutputType(Output.OutputType.STDERR)
-                    .setOutputBytes(byteString))
+            .setOutput(Output.newBuilder().setOutputType(outputType).setOutputBytes(outputBytes))
             .build());
   }
 }
@@ -0,0 +1,107 @@
+package com.github.badsyntax.gradle.handlers;
+
+import com.github.badsyntax.gradle.ErrorMessageBuilder;
+import com.github.badsyntax.gradle.RunBuildInput;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.StandardInputPipe;
+import com.github.badsyntax.gradle.exceptions.GradleBuildRunnerException;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.function.BiConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Receives the build request and then standard input for a RunBuild. Inbound flow control is
+// manual, so a client streaming a large input is held back until the build has read what was
+// already sent, and a client that sends more than it was asked for fails the call. The build
+// replies from its own thread while input is received, so the response observer must be
+// synchronized.
+public class RunBuildWithInputHandler implements StreamObserver<RunBuildInput> {
+  private static final Logger logger =
+      LoggerFactory.getLogger(RunBuildWithInputHandler.class.getName());
+
+  private static final int MAX_BUFFERED_CHUNKS = 8;
+
+  private ServerCallStreamObserver<RunBuildReply> responseObserver;
+  private BiConsumer<RunBuildRequest, StandardInputPipe> buildStarter;
+  private StandardInputPipe standardInputPipe;
+
+  // The build starter runs the build with the pipe as its standard input, and closes the pipe
+  // once the build has finished
+  public RunBuildWithInputHandler(
+      ServerCallStreamObserver<RunBuildReply> responseObserver,
+      BiConsumer<RunBuildRequest, StandardInputPipe> buildStarter) {
+    this.responseObserver = responseObserver;
+    this.buildStarter = buildStarter;
+    responseObserver.disableAutoInboundFlowControl();
+    responseObserver.request(1);
+  }
+
+  @Override
+  public void onNext(RunBuildInput input) {
+    if (standardInputPipe == null) {
+      start(input);
+      return;
+    }
+    switch (input.getKindCase()) {
+      case STANDARD_INPUT:
+        write(input.getStandardInput().toByteArray());
+        break;
+      case CLOSE_STANDARD_INPUT:
+        standardInputPipe.closeInput();
+        break;
+      default:
+        responseObserver.request(1);
+        break;
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    if (standardInputPipe != null) {
+      standardInputPipe.closeInput();
+    }
+  }
+
+  @Override
+  public void onCompleted() {
+    if (standardInputPipe != null) {
+      standardInputPipe.closeInput();
+    } else {
+      replyWithError(new GradleBuildRunnerException("No build request was sent"));
+    }
+  }
+
+  private void start(RunBuildInput input) {
+    if (input.getKindCase() != RunBuildInput.KindCase.RUN_BUILD_REQUEST) {
+      replyWithError(new GradleBuildRunnerException("The first message must be a build request"));
+      return;
+    }
+    standardInputPipe =
+        new StandardInputPipe(MAX_BUFFERED_CHUNKS, () -> responseObserver.request(1));
+    responseObserver.request(MAX_BUFFERED_CHUNKS);
+    buildStarter.accept(input.getRunBuildRequest(), standardInputPipe);
+  }
+
+  private void write(byte[] bytes) {
+    if (bytes.length == 0) {
+      responseObserver.request(1);
+      return;
+    }
+    try {
+      standardInputPipe.write(bytes);
+    } catch (IOException e) {
+      logger.error(e.getMessage());
+      // Failing the call cancels the build, which is left without the rest of its input
+      standardInputPipe.close();
+      responseObserver.onError(ErrorMessageBuilder.build(e, Status.RESOURCE_EXHAUSTED));
+    }
+  }
+
+  private void replyWithError(Exception e) {
+    responseObserver.onError(ErrorMessageBuilder.build(e, Status.INVALID_ARGUMENT));
+  }
+}
@@ -0,0 +1,207 @@
+package com.github.badsyntax.gradle.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class BuildHistory implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(BuildHistory.class.getName());
+
+  private static final String HISTORY_FILE = "build-history.bin";
+  private static final int MAGIC = 0x47424831;
+  private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+  private final Path historyFile;
+  private final long maxBytes;
+  private final ConcurrentMap<String, BuildHistoryEntry> entries = new ConcurrentHashMap<>();
+  private final ExecutorService writer =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "build-history");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Only accessed from the writer thread
+  private long fileSize;
+
+  public BuildHistory(Path historyDir, long maxBytes) {
+    this.historyFile = historyDir.resolve(HISTORY_FILE);
+    this.maxBytes = maxBytes;
+  }
+
+  public static String key(String projectDir, List<String> args) {
+    return projectDir + '\u0000' + String.join("\u0000", args);
+  }
+
+  // Loading happens on the writer thread, lookups made before it finishes simply return no
+  // history rather than delaying the build. Records are applied on the same thread, so the ones
+  // made while loading are merged after the older records in the file.
+  public void load() {
+    writer.execute(this::readHistory);
+  }
+
+  public BuildHistoryEntry lookup(String projectDir, List<String> args) {
+    return entries.get(key(projectDir, args));
+  }
+
+  public void record(BuildRecord record) {
+    writer.execute(
+        () -> {
+          apply(record);
+          append(record);
+        });
+  }
+
+  private void apply(BuildRecord record) {
+    if (record.getOutcome() != BuildOutcome.SUCCESS) {
+      return;
+    }
+    entries.merge(
+        record.getKey(),
+        BuildHistoryEntry.of(record),
+        (existing, ignored) -> existing.merge(record));
+  }
+
+  private void readHistory() {
+    if (!Files.exists(historyFile)) {
+      return;
+    }
+    long validBytes = 0;
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(historyFile)))) {
+      if (input.readInt() != MAGIC) {
+        logger.warn("Discarding unrecognised build history file {}", historyFile);
+        Files.delete(historyFile);
+        return;
+      }
+      validBytes = Integer.BYTES;
+      while (true) {
+        int length = input.readInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+          break;
+        }
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        apply(BuildRecord.read(new DataInputStream(new ByteArrayInputStream(payload))));
+        validBytes += Integer.BYTES + length;
+      }
+    } catch (EOFException e) {
+      // Reached the end of the file, or a record that was only partially written
+    } catch (IOException | RuntimeException e) {
+      logger.error("Unable to read build history: {}", e.getMessage());
+    }
+    truncate(validBytes);
+  }
+
+  private void truncate(long validBytes) {
+    try (FileChannel channel = FileChannel.open(historyFile, StandardOpenOption.WRITE)) {
+      if (channel.size() > validBytes) {
+        logger.warn("Truncating corrupt build history at byte {}", validBytes);
+        channel.truncate(validBytes);
+      }
+      fileSize = validBytes;
+    } catch (IOException e) {
+      logger.error("Unable to truncate build history: {}", e.getMessage());
+    }
+  }
+
+  private void append(BuildRecord record) {
+    try {
+      byte[] payload = record.toByteArray();
+      Files.createDirectories(historyFile.getParent());
+      boolean isNewFile = !Files.exists(historyFile) || fileSize == 0;
+      try (DataOutputStream output =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  Files.newOutputStream(
+                      historyFile,
+                      StandardOpenOption.CREATE,
+                      isNewFile
+                          ? StandardOpenOption.TRUNCATE_EXISTING
+                          : StandardOpenOption.APPEND)))) {
+        if (isNewFile) {
+          output.writeInt(MAGIC);
+          fileSize = Integer.BYTES;
+        }
+        output.writeInt(payload.length);
+        output.write(payload);
+      }
+      fileSize += Integer.BYTES + payload.length;
+      if (fileSize > maxBytes) {
+        compact();
+      }
+    } catch (IOException e) {
+      logger.error("Unable to write build history: {}", e.getMessage());
+    }
+  }
+
+  // Rewrites the history as one aggregated record per project/args, most recent first, dropping
+  // the least recently run entries once half of the size budget is used
+  private void compact() throws IOException {
+    List<BuildHistoryEntry> snapshot = new ArrayList<>(entries.values());
+    snapshot.sort(Comparator.comparingLong(BuildHistoryEntry::getLastRunMillis).reversed());
+    Path compactedFile = historyFile.resolveSibling(HISTORY_FILE + ".tmp");
+    long budget = maxBytes / 2;
+    long size = Integer.BYTES;
+    int dropped = 0;
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(compactedFile)))) {
+      output.writeInt(MAGIC);
+      for (BuildHistoryEntry entry : snapshot) {
+        BuildRecord record = entry.toRecord();
+        byte[] payload = record.toByteArray();
+        if (size + Integer.BYTES + payload.length > budget) {
+          entries.remove(record.getKey(), entry);
+          dropped++;
+          continue;
+        }
+        output.writeInt(payload.length);
+        output.write(payload);
+        size += Integer.BYTES + payload.length;
+      }
+    }
+    Files.move(
+        compactedFile,
+        historyFile,
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    logger.debug(
+        "Compacted build history from {} to {} bytes, dropped {} entries",
+        fileSize,
+        size,
+        dropped);
+    fileSize = size;
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    close(5000);
+  }
+
+  // Returns false when entries were still queued after the timeout, they are written by the
+  // writer thread while it lives
+  public boolean close(long timeoutMillis) throws InterruptedException {
+    writer.shutdown();
+    return writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.badsyntax.gradle.history;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BuildHistoryEntry {
+  // Weight given to the latest run when smoothing durations
+  private static final double SMOOTHING = 0.3;
+
+  private final String projectDir;
+  private final List<String> args;
+  private final long durationMillis;
+  private final Map<String, Long> taskDurations;
+  private final long totalTaskMillis;
+  private final int runs;
+  private final long lastRunMillis;
+
+  private BuildHistoryEntry(
+      String projectDir,
+      List<String> args,
+      long durationMillis,
+      Map<String, Long> taskDurations,
+      int runs,
+      long lastRunMillis) {
+    this.projectDir = projectDir;
+    this.args = args;
+    this.durationMillis = durationMillis;
+    this.taskDurations = Collections.unmodifiableMap(taskDurations);
+    this.totalTaskMillis = taskDurations.values().stream().mapToLong(Long::longValue).sum();
+    this.runs = runs;
+    this.lastRunMillis = lastRunMillis;
+  }
+
+  static BuildHistoryEntry of(BuildRecord record) {
+    return new BuildHistoryEntry(
+        record.getProjectDir(),
+        record.getArgs(),
+        record.getDurationMillis(),
+        new HashMap<>(record.getTaskDurations()),
+        record.getRuns(),
+        record.getStartTimeMillis());
+  }
+
+  BuildHistoryEntry merge(BuildRecord record) {
+    Map<String, Long> mergedTaskDurations = new HashMap<>(taskDurations);
+    record
+        .getTaskDurations()
+        .forEach((path, duration) -> mergedTaskDurations.merge(path, duration, this::smooth));
+    return new BuildHistoryEntry(
+        projectDir,
+        args,
+        smooth(durationMillis, record.getDurationMillis()),
+        mergedTaskDurations,
+        runs + record.getRuns(),
+        Math.max(lastRunMillis, record.getStartTimeMillis()));
+  }
+
+  BuildRecord toRecord() {
+    return new BuildRecord(
+        projectDir,
+        args,
+        BuildOutcome.SUCCESS,
+        lastRunMillis,
+        durationMillis,
+        runs,
+        taskDurations);
+  }
+
+  private long smooth(long previous, long latest) {
+    return Math.round(previous + SMOOTHING * (latest - previous));
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public Long getTaskDuration(String taskPath) {
+    return taskDurations.get(taskPath);
+  }
+
+  public long getTotalTaskMillis() {
+    return totalTaskMillis;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public long getLastRunMillis() {
+    return lastRunMillis;
+  }
+}
@@ -0,0 +1,7 @@
+package com.github.badsyntax.gradle.history;
+
+public enum BuildOutcome {
+  SUCCESS,
+  FAILED,
+  CANCELLED
+}
@@ -0,0 +1,111 @@
+package com.github.badsyntax.gradle.history;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class BuildRecord {
+  private final String projectDir;
+  private final List<String> args;
+  private final BuildOutcome outcome;
+  private final long startTimeMillis;
+  private final long durationMillis;
+  private final int runs;
+  private final Map<String, Long> taskDurations;
+
+  public BuildRecord(
+      String projectDir,
+      List<String> args,
+      BuildOutcome outcome,
+      long startTimeMillis,
+      long durationMillis,
+      int runs,
+      Map<String, Long> taskDurations) {
+    this.projectDir = projectDir;
+    this.args = Collections.unmodifiableList(new ArrayList<>(args));
+    this.outcome = outcome;
+    this.startTimeMillis = startTimeMillis;
+    this.durationMillis = durationMillis;
+    this.runs = runs;
+    this.taskDurations = Collections.unmodifiableMap(new LinkedHashMap<>(taskDurations));
+  }
+
+  public String getProjectDir() {
+    return projectDir;
+  }
+
+  public List<String> getArgs() {
+    return args;
+  }
+
+  public BuildOutcome getOutcome() {
+    return outcome;
+  }
+
+  public long getStartTimeMillis() {
+    return startTimeMillis;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public int getRuns() {
+    return runs;
+  }
+
+  public Map<String, Long> getTaskDurations() {
+    return taskDurations;
+  }
+
+  public String getKey() {
+    return BuildHistory.key(projectDir, args);
+  }
+
+  public byte[] toByteArray() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream output = new DataOutputStream(bytes)) {
+      output.writeUTF(projectDir);
+      output.writeInt(args.size());
+      for (String arg : args) {
+        output.writeUTF(arg);
+      }
+      output.writeByte(outcome.ordinal());
+      output.writeLong(startTimeMillis);
+      output.writeLong(durationMillis);
+      output.writeInt(runs);
+      output.writeInt(taskDurations.size());
+      for (Map.Entry<String, Long> taskDuration : taskDurations.entrySet()) {
+        output.writeUTF(taskDuration.getKey());
+        output.writeLong(taskDuration.getValue());
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  public static BuildRecord read(DataInput input) throws IOException {
+    String projectDir = input.readUTF();
+    int argCount = input.readInt();
+    List<String> args = new ArrayList<>(argCount);
+    for (int i = 0; i < argCount; i++) {
+      args.add(input.readUTF());
+    }
+    BuildOutcome outcome = BuildOutcome.values()[input.readByte()];
+    long startTimeMillis = input.readLong();
+    long durationMillis = input.readLong();
+    int runs = input.readInt();
+    int taskCount = input.readInt();
+    Map<String, Long> taskDurations = new LinkedHashMap<>();
+    for (int i = 0; i < taskCount; i++) {
+      taskDurations.put(input.readUTF(), input.readLong());
+    }
+    return new BuildRecord(
+        projectDir, args, outcome, startTimeMillis, durationMillis, runs, taskDurations);
+  }
+}
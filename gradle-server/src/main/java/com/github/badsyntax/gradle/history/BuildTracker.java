@@ -0,0 +1,121 @@
+package com.github.badsyntax.gradle.history;
+
+import com.github.badsyntax.gradle.BuildEstimate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+public class BuildTracker {
+  private static final long ESTIMATE_INTERVAL_MILLIS = 500;
+  private static final int MAX_PERCENT = 99;
+
+  private static final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "build-estimates");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  private final BuildHistory buildHistory;
+  private final BuildHistoryEntry entry;
+  private final String projectDir;
+  private final List<String> args;
+  private final LongSupplier clock;
+  private final long startTimeMillis;
+  private final Map<String, Long> taskDurations = new LinkedHashMap<>();
+  private long completedTaskMillis;
+  private ScheduledFuture<?> estimates;
+  private volatile boolean stopped;
+
+  public BuildTracker(BuildHistory buildHistory, String projectDir, List<String> args) {
+    this(buildHistory, projectDir, args, System::currentTimeMillis);
+  }
+
+  BuildTracker(
+      BuildHistory buildHistory, String projectDir, List<String> args, LongSupplier clock) {
+    this.buildHistory = buildHistory;
+    this.entry = buildHistory.lookup(projectDir, args);
+    this.projectDir = projectDir;
+    this.args = args;
+    this.clock = clock;
+    this.startTimeMillis = clock.getAsLong();
+  }
+
+  // Sends an estimate on a timer rather than on progress events, as a long running task can go
+  // a long while without any. Nothing is sent for builds without history.
+  public synchronized void start(Consumer<BuildEstimate> onEstimate) {
+    if (entry == null || entry.getDurationMillis() <= 0 || stopped) {
+      return;
+    }
+    estimates =
+        scheduler.scheduleAtFixedRate(
+            () -> onEstimate.accept(estimate()),
+            ESTIMATE_INTERVAL_MILLIS,
+            ESTIMATE_INTERVAL_MILLIS,
+            TimeUnit.MILLISECONDS);
+  }
+
+  // An estimate that is already being sent can still arrive after this returns, so callers
+  // check isStopped() under the lock they send replies with
+  public synchronized void stop() {
+    stopped = true;
+    if (estimates != null) {
+      estimates.cancel(false);
+    }
+  }
+
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  public synchronized void onTaskFinished(String taskPath, long durationMillis) {
+    taskDurations.put(taskPath, durationMillis);
+    if (entry != null) {
+      Long expectedMillis = entry.getTaskDuration(taskPath);
+      if (expectedMillis != null) {
+        completedTaskMillis += expectedMillis;
+      }
+    }
+  }
+
+  // Returns null when there is no history for this build
+  public synchronized BuildEstimate estimate() {
+    if (entry == null || entry.getDurationMillis() <= 0) {
+      return null;
+    }
+    long elapsedMillis = clock.getAsLong() - startTimeMillis;
+    double fraction = (double) elapsedMillis / entry.getDurationMillis();
+    if (entry.getTotalTaskMillis() > 0) {
+      // Up-to-date tasks finish much faster than their history, so prefer task progress when
+      // it is ahead of the wall clock
+      fraction = Math.max(fraction, (double) completedTaskMillis / entry.getTotalTaskMillis());
+    }
+    int percent = (int) Math.min(MAX_PERCENT, Math.floor(fraction * 100));
+    long remainingMillis = Math.max(0, Math.round(entry.getDurationMillis() * (1 - fraction)));
+    return BuildEstimate.newBuilder()
+        .setElapsedMillis(elapsedMillis)
+        .setRemainingMillis(remainingMillis)
+        .setPercent(percent)
+        .setSampleRuns(entry.getRuns())
+        .build();
+  }
+
+  public synchronized void finish(BuildOutcome outcome) {
+    buildHistory.record(
+        new BuildRecord(
+            projectDir,
+            args,
+            outcome,
+            startTimeMillis,
+            clock.getAsLong() - startTimeMillis,
+            1,
+            taskDurations));
+  }
+}
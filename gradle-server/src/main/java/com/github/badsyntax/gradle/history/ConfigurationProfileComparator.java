@@ -0,0 +1,76 @@
+package com.github.badsyntax.gradle.history;
+
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.github.badsyntax.gradle.ConfigurationProfileComparison;
+import com.github.badsyntax.gradle.ProjectConfigurationDelta;
+import com.github.badsyntax.gradle.ProjectConfigurationTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares the configuration profiles of a project at two commits, to find the projects that
+// made a sync slower. Projects are matched by build and path, and one that was only configured
+// at one of the commits counts as 0 at the other.
+public class ConfigurationProfileComparator {
+  private ConfigurationProfileComparator() {}
+
+  // The latest profile taken at the commit, which can be abbreviated, or null
+  public static ConfigurationProfile findLatest(
+      List<ConfigurationProfile> profiles, String commit) {
+    for (int i = profiles.size() - 1; i >= 0; i--) {
+      if (matches(profiles.get(i).getCommit(), commit)) {
+        return profiles.get(i);
+      }
+    }
+    return null;
+  }
+
+  // The latest profile taken at any commit but the given one, or null
+  public static ConfigurationProfile findLatestBefore(
+      List<ConfigurationProfile> profiles, String commit) {
+    for (int i = profiles.size() - 1; i >= 0; i--) {
+      if (!profiles.get(i).getCommit().equals(commit)) {
+        return profiles.get(i);
+      }
+    }
+    return null;
+  }
+
+  public static ConfigurationProfileComparison compare(
+      ConfigurationProfile base, ConfigurationProfile head) {
+    Map<String, ProjectConfigurationDelta.Builder> deltas = new LinkedHashMap<>();
+    for (ProjectConfigurationTime project : head.getProjectsList()) {
+      delta(deltas, project).setHeadMillis(project.getDurationMillis());
+    }
+    for (ProjectConfigurationTime project : base.getProjectsList()) {
+      delta(deltas, project).setBaseMillis(project.getDurationMillis());
+    }
+    List<ProjectConfigurationDelta> projects = new ArrayList<>();
+    for (ProjectConfigurationDelta.Builder delta : deltas.values()) {
+      projects.add(delta.setDeltaMillis(delta.getHeadMillis() - delta.getBaseMillis()).build());
+    }
+    projects.sort(Comparator.comparingLong(ProjectConfigurationDelta::getDeltaMillis).reversed());
+    return ConfigurationProfileComparison.newBuilder()
+        .setBase(base)
+        .setHead(head)
+        .setTotalDeltaMillis(head.getTotalMillis() - base.getTotalMillis())
+        .addAllProjects(projects)
+        .build();
+  }
+
+  private static ProjectConfigurationDelta.Builder delta(
+      Map<String, ProjectConfigurationDelta.Builder> deltas, ProjectConfigurationTime project) {
+    return deltas.computeIfAbsent(
+        project.getRootDir() + "\n" + project.getProjectPath(),
+        key ->
+            ProjectConfigurationDelta.newBuilder()
+                .setProjectPath(project.getProjectPath())
+                .setRootDir(project.getRootDir()));
+  }
+
+  private static boolean matches(String commit, String requested) {
+    return !requested.isEmpty() && commit.startsWith(requested);
+  }
+}
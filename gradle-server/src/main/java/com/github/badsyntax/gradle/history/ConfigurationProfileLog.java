@@ -0,0 +1,124 @@
+package com.github.badsyntax.gradle.history;
+
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.google.protobuf.InvalidProtocolBufferException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Appends the configuration profile of every sync, with the commit it was taken at, so a
+// regression in sync time can be traced to a project and a commit. Profiles are written as
+// length-delimited ConfigurationProfile messages, and once the file is full it replaces the
+// previous file, so at most twice the size budget is kept.
+public class ConfigurationProfileLog implements AutoCloseable {
+  private static final Logger logger =
+      LoggerFactory.getLogger(ConfigurationProfileLog.class.getName());
+
+  private static final String PROFILE_FILE = "configuration-profiles.bin";
+  private static final String PREVIOUS_PROFILE_FILE = "configuration-profiles.1.bin";
+
+  private final Path profileFile;
+  private final long maxBytes;
+  private final ExecutorService writer =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "configuration-profiles");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public ConfigurationProfileLog(Path historyDir, long maxBytes) {
+    this.profileFile = historyDir.resolve(PROFILE_FILE);
+    this.maxBytes = maxBytes;
+  }
+
+  public void record(ConfigurationProfile profile) {
+    writer.execute(() -> append(profile));
+  }
+
+  // The saved profiles of a project, oldest first. Read by the writer, so profiles that were
+  // recorded before are included and a profile is never read while it is being written.
+  public List<ConfigurationProfile> read(String projectDir)
+      throws IOException, InterruptedException {
+    Path normalizedDir = normalize(projectDir);
+    try {
+      return writer.submit(() -> readProfiles(normalizedDir)).get();
+    } catch (ExecutionException e) {
+      throw new IOException("Unable to read configuration profiles", e.getCause());
+    }
+  }
+
+  private List<ConfigurationProfile> readProfiles(Path projectDir) throws IOException {
+    List<ConfigurationProfile> profiles = new ArrayList<>();
+    readProfiles(profileFile.resolveSibling(PREVIOUS_PROFILE_FILE), projectDir, profiles);
+    readProfiles(profileFile, projectDir, profiles);
+    return profiles;
+  }
+
+  private static void readProfiles(
+      Path file, Path projectDir, List<ConfigurationProfile> profiles) throws IOException {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (InputStream input = new BufferedInputStream(Files.newInputStream(file))) {
+      ConfigurationProfile profile;
+      while ((profile = ConfigurationProfile.parseDelimitedFrom(input)) != null) {
+        if (normalize(profile.getProjectDir()).equals(projectDir)) {
+          profiles.add(profile);
+        }
+      }
+    } catch (InvalidProtocolBufferException e) {
+      // A profile that was cut short, like by the server being killed, ends the file
+      logger.warn("Skipping the rest of {}: {}", file, e.getMessage());
+    }
+  }
+
+  private static Path normalize(String projectDir) {
+    return Paths.get(projectDir).toAbsolutePath().normalize();
+  }
+
+  private void append(ConfigurationProfile profile) {
+    try {
+      Files.createDirectories(profileFile.getParent());
+      if (Files.exists(profileFile) && Files.size(profileFile) > maxBytes) {
+        Files.move(
+            profileFile,
+            profileFile.resolveSibling(PREVIOUS_PROFILE_FILE),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+      try (OutputStream output =
+          new BufferedOutputStream(
+              Files.newOutputStream(
+                  profileFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+        profile.writeDelimitedTo(output);
+      }
+    } catch (IOException e) {
+      logger.error("Unable to write configuration profile: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    close(5000);
+  }
+
+  public boolean close(long timeoutMillis) throws InterruptedException {
+    writer.shutdown();
+    return writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,77 @@
+package com.github.badsyntax.gradle.history;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+// Reads the commit that is checked out straight from the .git dir, so no git executable is
+// needed. Worktrees and submodules, where .git is a file pointing at the real dir, are followed.
+public class GitHead {
+  private static final String REF_PREFIX = "ref: ";
+  private static final String GIT_DIR_PREFIX = "gitdir: ";
+
+  private GitHead() {}
+
+  // Returns an empty string when the project is not in a git repository
+  public static String read(Path projectDir) {
+    try {
+      Path gitDir = findGitDir(projectDir.toAbsolutePath().normalize());
+      if (gitDir == null) {
+        return "";
+      }
+      String head = readFirstLine(gitDir.resolve("HEAD"));
+      if (!head.startsWith(REF_PREFIX)) {
+        return head;
+      }
+      return resolveRef(gitDir, head.substring(REF_PREFIX.length()).trim());
+    } catch (IOException e) {
+      return "";
+    }
+  }
+
+  private static Path findGitDir(Path projectDir) throws IOException {
+    for (Path dir = projectDir; dir != null; dir = dir.getParent()) {
+      Path git = dir.resolve(".git");
+      if (Files.isDirectory(git)) {
+        return git;
+      }
+      if (Files.isRegularFile(git)) {
+        String line = readFirstLine(git);
+        if (line.startsWith(GIT_DIR_PREFIX)) {
+          return dir.resolve(line.substring(GIT_DIR_PREFIX.length()).trim()).normalize();
+        }
+      }
+    }
+    return null;
+  }
+
+  private static String resolveRef(Path gitDir, String ref) throws IOException {
+    // Linked worktrees keep their HEAD in their own dir, and refs in the common dir
+    Path commonDir = gitDir;
+    Path commonDirFile = gitDir.resolve("commondir");
+    if (Files.isRegularFile(commonDirFile)) {
+      commonDir = gitDir.resolve(readFirstLine(commonDirFile)).normalize();
+    }
+    Path refFile = commonDir.resolve(ref);
+    if (Files.isRegularFile(refFile)) {
+      return readFirstLine(refFile);
+    }
+    Path packedRefs = commonDir.resolve("packed-refs");
+    if (Files.isRegularFile(packedRefs)) {
+      for (String line : Files.readAllLines(packedRefs, StandardCharsets.UTF_8)) {
+        if (line.endsWith(" " + ref)) {
+          return line.substring(0, line.indexOf(' '));
+        }
+      }
+    }
+    // A branch without commits
+    return "";
+  }
+
+  private static String readFirstLine(Path file) throws IOException {
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    return lines.isEmpty() ? "" : lines.get(0).trim();
+  }
+}
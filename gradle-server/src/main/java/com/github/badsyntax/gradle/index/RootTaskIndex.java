@@ -0,0 +1,276 @@
+package com.github.badsyntax.gradle.index;
+
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleProject;
+import com.github.badsyntax.gradle.GradleTask;
+import com.github.badsyntax.gradle.IncludedBuild;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+// An immutable index of the tasks of one root project, replaced as a whole when the root is
+// synced again, so searches never need a lock. Names are kept sorted for prefix lookups, and
+// trigrams of names, paths, groups and descriptions narrow substring searches down to a few
+// candidates.
+class RootTaskIndex {
+  private static final int EXACT_NAME_SCORE = 1000;
+  private static final int EXACT_PATH_SCORE = 900;
+  private static final int NAME_PREFIX_SCORE = 800;
+  private static final int NAME_SUBSTRING_SCORE = 600;
+  private static final int PATH_SUBSTRING_SCORE = 500;
+  private static final int TEXT_SUBSTRING_SCORE = 300;
+  private static final int MAX_FUZZY_SCORE = 200;
+
+  private static final int TRIGRAM_LENGTH = 3;
+  private static final int[] NO_POSTINGS = new int[0];
+
+  private final String projectDir;
+  private final List<String> buildFiles;
+  private final GradleTask[] tasks;
+  private final String[] names;
+  private final String[] paths;
+  private final String[] texts;
+  private final int[] byName;
+  private final Map<Long, int[]> trigrams;
+  private final long memoryBytes;
+
+  RootTaskIndex(String projectDir, GradleBuild build) {
+    this.projectDir = projectDir;
+    this.buildFiles = build.getBuildFilesList();
+    List<GradleTask> taskList = new ArrayList<>();
+    collectTasks(build.getProject(), taskList);
+    for (IncludedBuild includedBuild : build.getIncludedBuildsList()) {
+      collectTasks(includedBuild.getProject(), taskList);
+    }
+    tasks = taskList.toArray(new GradleTask[0]);
+    names = new String[tasks.length];
+    paths = new String[tasks.length];
+    texts = new String[tasks.length];
+    for (int i = 0; i < tasks.length; i++) {
+      names[i] = tasks[i].getName().toLowerCase(Locale.ROOT);
+      paths[i] = tasks[i].getPath().toLowerCase(Locale.ROOT);
+      String text = tasks[i].getGroup() + "\n" + tasks[i].getDescription();
+      texts[i] = text.toLowerCase(Locale.ROOT);
+    }
+    byName =
+        IntStream.range(0, tasks.length)
+            .boxed()
+            .sorted(Comparator.comparing(i -> names[i]))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    trigrams = buildTrigrams();
+    memoryBytes = estimateMemoryBytes();
+  }
+
+  String getProjectDir() {
+    return projectDir;
+  }
+
+  int getTaskCount() {
+    return tasks.length;
+  }
+
+  long getMemoryBytes() {
+    return memoryBytes;
+  }
+
+  // Adds the best score of every matching task to the results
+  void search(String query, int limit, List<ScoredTask> results) {
+    Map<Integer, Integer> scores = new HashMap<>();
+    addPrefixMatches(query, scores);
+    addSubstringMatches(query, scores);
+    if (scores.size() < limit) {
+      addFuzzyMatches(query, scores);
+    }
+    scores.forEach((i, score) -> results.add(new ScoredTask(projectDir, getTask(i), score)));
+  }
+
+  private void addPrefixMatches(String query, Map<Integer, Integer> scores) {
+    int low = 0;
+    int high = byName.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (names[byName[middle]].compareTo(query) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    for (int i = low; i < byName.length && names[byName[i]].startsWith(query); i++) {
+      int task = byName[i];
+      boolean exact = names[task].length() == query.length();
+      score(scores, task, exact ? EXACT_NAME_SCORE : NAME_PREFIX_SCORE);
+    }
+  }
+
+  private void addSubstringMatches(String query, Map<Integer, Integer> scores) {
+    if (query.length() < TRIGRAM_LENGTH) {
+      // Too short for trigrams, a scan of the short strings is still cheap
+      for (int i = 0; i < tasks.length; i++) {
+        scoreSubstring(query, i, scores);
+      }
+      return;
+    }
+    for (int candidate : findTrigramCandidates(query)) {
+      scoreSubstring(query, candidate, scores);
+    }
+  }
+
+  private void scoreSubstring(String query, int task, Map<Integer, Integer> scores) {
+    if (paths[task].equals(query) || paths[task].endsWith(":" + query)) {
+      score(scores, task, EXACT_PATH_SCORE);
+    } else if (names[task].contains(query)) {
+      score(scores, task, NAME_SUBSTRING_SCORE);
+    } else if (paths[task].contains(query)) {
+      score(scores, task, PATH_SUBSTRING_SCORE);
+    } else if (texts[task].contains(query)) {
+      score(scores, task, TEXT_SUBSTRING_SCORE);
+    }
+  }
+
+  // Intersects the postings of every trigram of the query, starting with the rarest
+  private int[] findTrigramCandidates(String query) {
+    Set<Long> queryTrigrams = trigramsOf(query);
+    List<int[]> postings = new ArrayList<>();
+    for (Long trigram : queryTrigrams) {
+      int[] trigramPostings = trigrams.getOrDefault(trigram, NO_POSTINGS);
+      if (trigramPostings.length == 0) {
+        return NO_POSTINGS;
+      }
+      postings.add(trigramPostings);
+    }
+    postings.sort(Comparator.comparingInt(list -> list.length));
+    int[] candidates = postings.get(0);
+    for (int i = 1; i < postings.size() && candidates.length > 0; i++) {
+      candidates = intersect(candidates, postings.get(i));
+    }
+    return candidates;
+  }
+
+  // Matches the query as a subsequence of the name, so "cJ" finds "compileJava"
+  private void addFuzzyMatches(String query, Map<Integer, Integer> scores) {
+    if (query.length() < 2) {
+      return;
+    }
+    for (int i = 0; i < tasks.length; i++) {
+      if (scores.containsKey(i)) {
+        continue;
+      }
+      int gaps = subsequenceGaps(query, names[i]);
+      if (gaps >= 0) {
+        score(scores, i, Math.max(1, MAX_FUZZY_SCORE - gaps * 10));
+      }
+    }
+  }
+
+  private GradleTask getTask(int i) {
+    GradleTask task = tasks[i];
+    if (!task.getBuildFile().isEmpty() || buildFiles.isEmpty()) {
+      return task;
+    }
+    return task
+        .toBuilder()
+        .setBuildFile(buildFiles.get(task.getBuildFileIndex()))
+        .clearBuildFileIndex()
+        .build();
+  }
+
+  private Map<Long, int[]> buildTrigrams() {
+    Map<Long, int[]> postings = new HashMap<>();
+    Map<Long, Integer> sizes = new HashMap<>();
+    for (int i = 0; i < tasks.length; i++) {
+      for (Long trigram : trigramsOf(names[i] + "\n" + paths[i] + "\n" + texts[i])) {
+        int size = sizes.getOrDefault(trigram, 0);
+        int[] list = postings.get(trigram);
+        if (list == null) {
+          list = new int[4];
+        } else if (size == list.length) {
+          list = Arrays.copyOf(list, size * 2);
+        }
+        list[size] = i;
+        postings.put(trigram, list);
+        sizes.put(trigram, size + 1);
+      }
+    }
+    postings.replaceAll((trigram, list) -> Arrays.copyOf(list, sizes.get(trigram)));
+    return postings;
+  }
+
+  private long estimateMemoryBytes() {
+    long bytes = 0;
+    for (int i = 0; i < tasks.length; i++) {
+      bytes += tasks[i].getSerializedSize() * 2L + 64;
+      bytes += stringBytes(names[i]) + stringBytes(paths[i]) + stringBytes(texts[i]);
+    }
+    bytes += tasks.length * (8L * 4 + 4);
+    for (int[] list : trigrams.values()) {
+      bytes += 64 + 16 + list.length * 4L;
+    }
+    return bytes;
+  }
+
+  private static void collectTasks(GradleProject project, List<GradleTask> tasks) {
+    tasks.addAll(project.getTasksList());
+    for (GradleProject child : project.getProjectsList()) {
+      collectTasks(child, tasks);
+    }
+  }
+
+  private static void score(Map<Integer, Integer> scores, int task, int score) {
+    scores.merge(task, score, Math::max);
+  }
+
+  private static Set<Long> trigramsOf(String text) {
+    Set<Long> result = new HashSet<>();
+    for (int i = 0; i + TRIGRAM_LENGTH <= text.length(); i++) {
+      result.add(
+          ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+    }
+    return result;
+  }
+
+  private static int[] intersect(int[] a, int[] b) {
+    int[] result = new int[Math.min(a.length, b.length)];
+    int size = 0;
+    int i = 0;
+    int j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        result[size++] = a[i];
+        i++;
+        j++;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  // Returns the number of skipped characters, or -1 when the query is not a subsequence
+  private static int subsequenceGaps(String query, String name) {
+    int gaps = 0;
+    int position = 0;
+    for (int i = 0; i < query.length(); i++) {
+      int found = name.indexOf(query.charAt(i), position);
+      if (found == -1) {
+        return -1;
+      }
+      gaps += found - position;
+      position = found + 1;
+    }
+    return gaps;
+  }
+
+  private static long stringBytes(String value) {
+    return 40 + value.length() * 2L;
+  }
+}
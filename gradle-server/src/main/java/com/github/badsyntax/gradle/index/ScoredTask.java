@@ -0,0 +1,27 @@
+package com.github.badsyntax.gradle.index;
+
+import com.github.badsyntax.gradle.GradleTask;
+
+public class ScoredTask {
+  private final String projectDir;
+  private final GradleTask task;
+  private final int score;
+
+  ScoredTask(String projectDir, GradleTask task, int score) {
+    this.projectDir = projectDir;
+    this.task = task;
+    this.score = score;
+  }
+
+  public String getProjectDir() {
+    return projectDir;
+  }
+
+  public GradleTask getTask() {
+    return task;
+  }
+
+  public int getScore() {
+    return score;
+  }
+}
@@ -0,0 +1,156 @@
+package com.github.badsyntax.gradle.index;
+
+import com.github.badsyntax.gradle.GradleBuild;
+import com.google.common.base.Strings;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Indexes the tasks of every root project synced with GetBuild, one root at a time. Indexing
+// happens on its own thread so it never delays a sync, and only the most recent build of a root
+// is indexed when several are waiting. Roots that were deleted, or that haven't been synced or
+// searched for the longest time once there are more than maxRoots, are evicted.
+public class TaskIndex implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(TaskIndex.class.getName());
+
+  private static final int DEFAULT_MAX_ROOTS = 32;
+
+  private static final Comparator<ScoredTask> RANKING =
+      Comparator.comparingInt(ScoredTask::getScore)
+          .reversed()
+          .thenComparingInt(scoredTask -> scoredTask.getTask().getName().length())
+          .thenComparing(scoredTask -> scoredTask.getTask().getPath());
+
+  private final ConcurrentMap<String, RootTaskIndex> roots = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, GradleBuild> pendingBuilds = new ConcurrentHashMap<>();
+  // When a root was last synced or searched, on a counter rather than the clock
+  private final ConcurrentMap<String, Long> lastUsed = new ConcurrentHashMap<>();
+  private final AtomicLong useCounter = new AtomicLong();
+  private final int maxRoots;
+  private final ExecutorService indexer =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "task-index");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public TaskIndex() {
+    this(DEFAULT_MAX_ROOTS);
+  }
+
+  public TaskIndex(int maxRoots) {
+    this.maxRoots = maxRoots;
+  }
+
+  // Indexes the build on the indexing thread, failures are logged and leave the previous index
+  public void updateLater(String projectDir, GradleBuild build) {
+    String normalizedProjectDir = normalizeProjectDir(projectDir);
+    if (pendingBuilds.put(normalizedProjectDir, build) != null) {
+      return;
+    }
+    try {
+      indexer.execute(() -> indexPending(normalizedProjectDir));
+    } catch (RejectedExecutionException e) {
+      pendingBuilds.remove(normalizedProjectDir);
+    }
+  }
+
+  void update(String projectDir, GradleBuild build) {
+    long startNanos = System.nanoTime();
+    RootTaskIndex index = new RootTaskIndex(normalizeProjectDir(projectDir), build);
+    roots.put(index.getProjectDir(), index);
+    touch(index.getProjectDir());
+    evict();
+    logger.info(
+        "Indexed {} tasks of {} in {}ms ({}KB)",
+        index.getTaskCount(),
+        index.getProjectDir(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+        index.getMemoryBytes() / 1024);
+  }
+
+  public List<ScoredTask> find(String query, int limit, String projectDir) {
+    String normalizedQuery = query.trim().toLowerCase(Locale.ROOT);
+    if (normalizedQuery.isEmpty() || limit <= 0) {
+      return Collections.emptyList();
+    }
+    Collection<RootTaskIndex> searched;
+    if (Strings.isNullOrEmpty(projectDir)) {
+      searched = roots.values();
+    } else {
+      String normalizedProjectDir = normalizeProjectDir(projectDir);
+      RootTaskIndex index = roots.get(normalizedProjectDir);
+      if (index != null) {
+        touch(normalizedProjectDir);
+      }
+      searched =
+          index == null ? Collections.<RootTaskIndex>emptyList() : Collections.singleton(index);
+    }
+    List<ScoredTask> results = new ArrayList<>();
+    for (RootTaskIndex index : searched) {
+      index.search(normalizedQuery, limit, results);
+    }
+    results.sort(RANKING);
+    return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+  }
+
+  public int getTaskCount() {
+    return roots.values().stream().mapToInt(RootTaskIndex::getTaskCount).sum();
+  }
+
+  // An estimate of the heap used by the index, including the indexed tasks
+  public long getMemoryBytes() {
+    return roots.values().stream().mapToLong(RootTaskIndex::getMemoryBytes).sum();
+  }
+
+  @Override
+  public void close() {
+    indexer.shutdownNow();
+  }
+
+  private void indexPending(String projectDir) {
+    GradleBuild build = pendingBuilds.remove(projectDir);
+    try {
+      update(projectDir, build);
+    } catch (RuntimeException e) {
+      logger.error("Unable to index the tasks of {}: {}", projectDir, e.getMessage(), e);
+    }
+  }
+
+  private void touch(String projectDir) {
+    lastUsed.put(projectDir, useCounter.incrementAndGet());
+  }
+
+  // Only called on the indexing thread, or by tests
+  private void evict() {
+    roots.keySet().removeIf(projectDir -> !Files.isDirectory(Paths.get(projectDir)));
+    while (roots.size() > maxRoots) {
+      String leastRecentlyUsed =
+          roots.keySet().stream()
+              .min(Comparator.comparingLong(projectDir -> lastUsed.getOrDefault(projectDir, 0L)))
+              .get();
+      roots.remove(leastRecentlyUsed);
+      logger.debug("Evicted the task index of {}", leastRecentlyUsed);
+    }
+    lastUsed.keySet().retainAll(roots.keySet());
+  }
+
+  private static String normalizeProjectDir(String projectDir) {
+    return Paths.get(projectDir).toAbsolutePath().normalize().toString();
+  }
+}
@@ -0,0 +1,52 @@
+package com.github.badsyntax.gradle.output;
+
+import com.github.badsyntax.gradle.RunBuildReply;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class BufferingStreamObserver implements StreamObserver<RunBuildReply> {
+  private static final Logger logger =
+      LoggerFactory.getLogger(BufferingStreamObserver.class.getName());
+
+  private final StreamObserver<RunBuildReply> responseObserver;
+  private final BuildOutputBuffer buffer;
+  private volatile boolean detached;
+
+  BufferingStreamObserver(
+      StreamObserver<RunBuildReply> responseObserver, BuildOutputBuffer buffer) {
+    this.responseObserver = responseObserver;
+    this.buffer = buffer;
+  }
+
+  @Override
+  public void onNext(RunBuildReply reply) {
+    buffer.append(reply);
+    if (detached) {
+      return;
+    }
+    try {
+      responseObserver.onNext(reply);
+    } catch (RuntimeException e) {
+      // The client went away, keep the build running so it can re-attach with AttachBuild
+      logger.warn("Lost the RunBuild stream, output is still buffered: {}", e.getMessage());
+      detached = true;
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    buffer.fail(t);
+    if (!detached) {
+      responseObserver.onError(t);
+    }
+  }
+
+  @Override
+  public void onCompleted() {
+    buffer.complete();
+    if (!detached) {
+      responseObserver.onCompleted();
+    }
+  }
+}
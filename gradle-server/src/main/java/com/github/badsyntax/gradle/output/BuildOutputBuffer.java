@@ -0,0 +1,210 @@
+package com.github.badsyntax.gradle.output;
+
+import com.github.badsyntax.gradle.AttachBuildReply;
+import com.github.badsyntax.gradle.OnReadySignal;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.google.protobuf.InvalidProtocolBufferException;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Keeps the replies of a single build so that clients can re-attach after the original stream
+// was lost. The build only appends replies and wakes the subscribers, each subscriber is sent
+// them on its own call's thread, at the pace the client reads them. A subscriber that falls far
+// behind reads from the spill file, and misses the replies that the spill ring has overwritten.
+public class BuildOutputBuffer {
+  private static final Logger logger = LoggerFactory.getLogger(BuildOutputBuffer.class.getName());
+  private static final int REPLAY_BATCH_SIZE = 256;
+
+  private final String cancellationKey;
+  private final long maxMemoryBytes;
+  private int spillBytes;
+  private final ArrayDeque<Entry> memory = new ArrayDeque<>();
+  private final List<StreamObserver<AttachBuildReply>> subscribers = new ArrayList<>();
+  private SpillFile spillFile;
+  private long memoryBytes;
+  private long nextOffset;
+  private boolean completed;
+  private Throwable error;
+
+  BuildOutputBuffer(String cancellationKey, long maxMemoryBytes, int spillBytes) {
+    this.cancellationKey = cancellationKey;
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.spillBytes = spillBytes;
+  }
+
+  public String getCancellationKey() {
+    return cancellationKey;
+  }
+
+  // Returns an observer that records every reply before forwarding it to the original stream
+  public StreamObserver<RunBuildReply> track(StreamObserver<RunBuildReply> responseObserver) {
+    return new BufferingStreamObserver(responseObserver, this);
+  }
+
+  public synchronized void append(RunBuildReply reply) {
+    if (completed) {
+      return;
+    }
+    Entry entry = new Entry(nextOffset++, reply);
+    memory.addLast(entry);
+    memoryBytes += entry.size;
+    while (memoryBytes > maxMemoryBytes && memory.size() > 1) {
+      Entry evicted = memory.removeFirst();
+      memoryBytes -= evicted.size;
+      spill(evicted);
+    }
+    if (!subscribers.isEmpty()) {
+      notifyAll();
+    }
+  }
+
+  public synchronized void complete() {
+    completed = true;
+    notifyAll();
+  }
+
+  public synchronized void fail(Throwable t) {
+    error = t;
+    completed = true;
+    notifyAll();
+  }
+
+  public synchronized boolean isCompleted() {
+    return completed;
+  }
+
+  // Counts the subscriber as attached, which keeps the build running without its call, until it
+  // is detached or has been sent the result
+  public synchronized void subscribe(StreamObserver<AttachBuildReply> subscriber) {
+    subscribers.add(subscriber);
+  }
+
+  // Sends the replies from the offset on, then the result, on the calling thread. Replies are read
+  // in batches without holding the lock, and every reply waits for the client to be ready, so
+  // neither a large replay nor a slow client holds up the build.
+  public void drain(
+      long fromOffset, StreamObserver<AttachBuildReply> subscriber, OnReadySignal onReadySignal) {
+    long cursor = fromOffset;
+    try {
+      while (true) {
+        List<Entry> batch = await(cursor, subscriber);
+        if (batch == null) {
+          return;
+        }
+        if (batch.isEmpty()) {
+          if (error != null) {
+            subscriber.onError(error);
+          } else {
+            subscriber.onCompleted();
+          }
+          return;
+        }
+        for (Entry entry : batch) {
+          if (onReadySignal != null && !onReadySignal.await()) {
+            return;
+          }
+          subscriber.onNext(
+              AttachBuildReply.newBuilder().setOffset(entry.offset).setReply(entry.reply).build());
+        }
+        cursor = batch.get(batch.size() - 1).offset + 1;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      logger.debug("Removing subscriber of {}: {}", cancellationKey, e.getMessage());
+    } finally {
+      detach(subscriber);
+    }
+  }
+
+  public synchronized void detach(StreamObserver<AttachBuildReply> subscriber) {
+    subscribers.remove(subscriber);
+    notifyAll();
+  }
+
+  public synchronized boolean hasSubscribers() {
+    return !subscribers.isEmpty();
+  }
+
+  synchronized void close() {
+    if (spillFile != null) {
+      spillFile.close();
+      spillFile = null;
+    }
+    memory.clear();
+    memoryBytes = 0;
+  }
+
+  // The replies from the offset on once there are any, empty once the build has finished and they
+  // have all been read, or null once the subscriber is detached
+  private synchronized List<Entry> await(
+      long fromOffset, StreamObserver<AttachBuildReply> subscriber) throws InterruptedException {
+    while (subscribers.contains(subscriber)) {
+      List<Entry> batch = read(fromOffset);
+      if (!batch.isEmpty() || completed) {
+        return batch;
+      }
+      wait();
+    }
+    return null;
+  }
+
+  private List<Entry> read(long fromOffset) {
+    List<Entry> batch = new ArrayList<>();
+    if (spillFile != null && (memory.isEmpty() || fromOffset < memory.peekFirst().offset)) {
+      for (Map.Entry<Long, byte[]> record :
+          spillFile.read(fromOffset, REPLAY_BATCH_SIZE).entrySet()) {
+        try {
+          batch.add(new Entry(record.getKey(), RunBuildReply.parseFrom(record.getValue())));
+        } catch (InvalidProtocolBufferException e) {
+          logger.error("Unable to read spilled output of {}: {}", cancellationKey, e.getMessage());
+        }
+      }
+      if (!batch.isEmpty()) {
+        return batch;
+      }
+    }
+    for (Entry entry : memory) {
+      if (batch.size() == REPLAY_BATCH_SIZE) {
+        break;
+      }
+      if (entry.offset >= fromOffset) {
+        batch.add(entry);
+      }
+    }
+    return batch;
+  }
+
+  private void spill(Entry entry) {
+    if (spillBytes <= 0) {
+      return;
+    }
+    try {
+      if (spillFile == null) {
+        spillFile = new SpillFile(spillBytes);
+      }
+      spillFile.write(entry.offset, entry.reply.toByteArray());
+    } catch (IOException e) {
+      logger.error("Unable to spill output of {}: {}", cancellationKey, e.getMessage());
+      spillBytes = 0;
+    }
+  }
+
+  private static class Entry {
+    private final long offset;
+    private final RunBuildReply reply;
+    private final int size;
+
+    Entry(long offset, RunBuildReply reply) {
+      this.offset = offset;
+      this.reply = reply;
+      this.size = reply.getSerializedSize();
+    }
+  }
+}
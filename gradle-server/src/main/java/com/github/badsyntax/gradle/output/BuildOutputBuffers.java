@@ -0,0 +1,81 @@
+package com.github.badsyntax.gradle.output;
+
+import com.google.common.base.Strings;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// The buffers of running and recently completed builds. A key can be shared by several builds,
+// like the same task run twice, so buffers are kept per build and a key resolves to the newest
+// build started with it.
+public class BuildOutputBuffers {
+  // Completed builds are kept so that a client reconnecting just after a build finished can
+  // still read its output and result
+  private static final int MAX_COMPLETED_BUFFERS = 16;
+
+  private final long maxMemoryBytes;
+  private final int spillBytes;
+  // By build, in the order the builds started
+  private final Map<Long, BuildOutputBuffer> buffers = new LinkedHashMap<>();
+  private long nextBuildId;
+
+  public BuildOutputBuffers(long maxMemoryBytes, int spillBytes) {
+    this.maxMemoryBytes = maxMemoryBytes;
+    this.spillBytes = spillBytes;
+  }
+
+  // Returns the buffer of a new build, or null for a build without a key, which can't be attached
+  // to. Completed builds with the same key can't be attached to anymore and are dropped, running
+  // ones keep their buffers for the clients already attached to them.
+  public synchronized BuildOutputBuffer open(String cancellationKey) {
+    if (Strings.isNullOrEmpty(cancellationKey)) {
+      return null;
+    }
+    Iterator<BuildOutputBuffer> iterator = buffers.values().iterator();
+    while (iterator.hasNext()) {
+      BuildOutputBuffer buffer = iterator.next();
+      if (buffer.getCancellationKey().equals(cancellationKey) && buffer.isCompleted()) {
+        buffer.close();
+        iterator.remove();
+      }
+    }
+    BuildOutputBuffer buffer = new BuildOutputBuffer(cancellationKey, maxMemoryBytes, spillBytes);
+    buffers.put(nextBuildId++, buffer);
+    evictCompleted();
+    return buffer;
+  }
+
+  public synchronized BuildOutputBuffer get(String cancellationKey) {
+    BuildOutputBuffer newest = null;
+    for (BuildOutputBuffer buffer : buffers.values()) {
+      if (buffer.getCancellationKey().equals(cancellationKey)) {
+        newest = buffer;
+      }
+    }
+    return newest;
+  }
+
+  public synchronized void clear() {
+    Iterator<BuildOutputBuffer> iterator = buffers.values().iterator();
+    while (iterator.hasNext()) {
+      BuildOutputBuffer buffer = iterator.next();
+      if (buffer.isCompleted()) {
+        buffer.close();
+        iterator.remove();
+      }
+    }
+  }
+
+  private void evictCompleted() {
+    long completedCount = buffers.values().stream().filter(BuildOutputBuffer::isCompleted).count();
+    Iterator<BuildOutputBuffer> iterator = buffers.values().iterator();
+    while (completedCount > MAX_COMPLETED_BUFFERS && iterator.hasNext()) {
+      BuildOutputBuffer buffer = iterator.next();
+      if (buffer.isCompleted()) {
+        buffer.close();
+        iterator.remove();
+        completedCount--;
+      }
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package com.github.badsyntax.gradle.output;
+
+import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.OutputLine;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// The stored output of a completed build. Queries only decompress the blocks that hold lines
+// of the requested tasks and line range. The log is held open, so it can still be read after the
+// store has evicted the build.
+public class OutputLog implements Closeable {
+  private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;?]*[A-Za-z]");
+
+  private final Path logFile;
+  private final FileChannel channel;
+  private final OutputLogIndex index;
+
+  OutputLog(Path logFile, OutputLogIndex index) throws IOException {
+    this.logFile = logFile;
+    this.channel = FileChannel.open(logFile, StandardOpenOption.READ);
+    this.index = index;
+  }
+
+  public interface LineVisitor {
+    // Returns false to stop reading
+    boolean visit(OutputLine line);
+  }
+
+  public int getLineCount() {
+    return index.lineCount;
+  }
+
+  // Visits the lines in [fromLine, toLine) that were written by a task accepted by the task
+  // filter and that contain a match of the pattern. A null filter or pattern accepts all lines.
+  public void read(
+      int fromLine, int toLine, Predicate<String> taskFilter, Pattern pattern, LineVisitor visitor)
+      throws IOException {
+    int endLine = toLine <= 0 ? index.lineCount : Math.min(toLine, index.lineCount);
+    List<int[]> ranges = lineRanges(Math.max(0, fromLine), endLine, taskFilter);
+    if (ranges.isEmpty()) {
+      return;
+    }
+    int loadedBlock = -1;
+    byte[] blockBytes = null;
+    for (int[] range : ranges) {
+      for (int line = range[0]; line < range[1]; line++) {
+        int blockIndex = index.blockOf(line);
+        OutputLogIndex.Block block = index.blocks.get(blockIndex);
+        if (blockIndex != loadedBlock) {
+          blockBytes = readBlock(block);
+          loadedBlock = blockIndex;
+        }
+        int i = line - block.firstLine;
+        int start = block.lineStarts[i];
+        // Every stored line ends with a newline, and output from Windows with a carriage return
+        int end = block.lineStarts[i + 1] - 1;
+        if (end > start && blockBytes[end - 1] == '\r') {
+          end--;
+        }
+        String text = new String(blockBytes, start, end - start, StandardCharsets.UTF_8);
+        if (pattern != null && !pattern.matcher(withoutEscapes(text)).find()) {
+          continue;
+        }
+        String taskPath = index.taskOf(line);
+        OutputLine.Builder outputLine =
+            OutputLine.newBuilder()
+                .setLine(line)
+                .setOutputType(
+                    block.standardError[i] ? Output.OutputType.STDERR : Output.OutputType.STDOUT)
+                .setText(text);
+        if (taskPath != null) {
+          outputLine.setTaskPath(taskPath);
+        }
+        if (!visitor.visit(outputLine.build())) {
+          return;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static String withoutEscapes(String text) {
+    return text.indexOf('\u001B') < 0 ? text : ANSI_ESCAPE.matcher(text).replaceAll("");
+  }
+
+  // Ranges of lines to read, in line order
+  private List<int[]> lineRanges(int fromLine, int endLine, Predicate<String> taskFilter) {
+    List<int[]> ranges = new ArrayList<>();
+    if (fromLine >= endLine) {
+      return ranges;
+    }
+    if (taskFilter == null) {
+      ranges.add(new int[] {fromLine, endLine});
+      return ranges;
+    }
+    for (OutputLogIndex.TaskRange taskRange : index.taskRanges) {
+      int start = Math.max(fromLine, taskRange.firstLine);
+      int end = Math.min(endLine, taskRange.endLine);
+      if (start < end && taskFilter.test(taskRange.taskPath)) {
+        ranges.add(new int[] {start, end});
+      }
+    }
+    return ranges;
+  }
+
+  private byte[] readBlock(OutputLogIndex.Block block) throws IOException {
+    ByteBuffer compressed = ByteBuffer.allocate(block.compressedLength);
+    long position = block.fileOffset;
+    while (compressed.hasRemaining()) {
+      int read = channel.read(compressed, position + compressed.position());
+      if (read < 0) {
+        throw new IOException("Stored build output is truncated: " + logFile);
+      }
+    }
+    byte[] bytes = new byte[block.lineStarts[block.lineCount()]];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed.array());
+      int inflated = 0;
+      while (inflated < bytes.length && !inflater.finished()) {
+        inflated += inflater.inflate(bytes, inflated, bytes.length - inflated);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Stored build output is corrupt: " + logFile, e);
+    } finally {
+      inflater.end();
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,186 @@
+package com.github.badsyntax.gradle.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Where every line of a stored build output is: the compressed block it is in, its offset in
+// the uncompressed block, which stream it came from, and the task it was written by. Line
+// lengths are varints, so the index costs a byte or two per line.
+class OutputLogIndex {
+  private static final int MAGIC = 0x474f4c31;
+
+  final List<Block> blocks = new ArrayList<>();
+  // Sorted by first line and disjoint, lines outside of any range were written between tasks
+  final List<TaskRange> taskRanges = new ArrayList<>();
+  int lineCount;
+
+  static class Block {
+    final long fileOffset;
+    final int compressedLength;
+    final int firstLine;
+    // lineStarts[i] is the offset of line i in the uncompressed block, the last entry is its size
+    final int[] lineStarts;
+    final boolean[] standardError;
+
+    Block(
+        long fileOffset,
+        int compressedLength,
+        int firstLine,
+        int[] lineStarts,
+        boolean[] standardError) {
+      this.fileOffset = fileOffset;
+      this.compressedLength = compressedLength;
+      this.firstLine = firstLine;
+      this.lineStarts = lineStarts;
+      this.standardError = standardError;
+    }
+
+    int lineCount() {
+      return standardError.length;
+    }
+  }
+
+  static class TaskRange {
+    final String taskPath;
+    final int firstLine;
+    int endLine;
+
+    TaskRange(String taskPath, int firstLine, int endLine) {
+      this.taskPath = taskPath;
+      this.firstLine = firstLine;
+      this.endLine = endLine;
+    }
+  }
+
+  void addBlock(Block block) {
+    blocks.add(block);
+    lineCount = block.firstLine + block.lineCount();
+  }
+
+  void addLine(int line, String taskPath) {
+    if (taskPath == null) {
+      return;
+    }
+    TaskRange last = taskRanges.isEmpty() ? null : taskRanges.get(taskRanges.size() - 1);
+    if (last != null && last.endLine == line && last.taskPath.equals(taskPath)) {
+      last.endLine = line + 1;
+    } else {
+      taskRanges.add(new TaskRange(taskPath, line, line + 1));
+    }
+  }
+
+  // The task of a line, or null when no task was running
+  String taskOf(int line) {
+    int low = 0;
+    int high = taskRanges.size() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      TaskRange range = taskRanges.get(middle);
+      if (line < range.firstLine) {
+        high = middle - 1;
+      } else if (line >= range.endLine) {
+        low = middle + 1;
+      } else {
+        return range.taskPath;
+      }
+    }
+    return null;
+  }
+
+  // The block that holds a line, as an index into blocks
+  int blockOf(int line) {
+    int low = 0;
+    int high = blocks.size() - 1;
+    while (low < high) {
+      int middle = (low + high + 1) >>> 1;
+      if (blocks.get(middle).firstLine <= line) {
+        low = middle;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return low;
+  }
+
+  void writeTo(Path file) throws IOException {
+    try (DataOutputStream output =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(blocks.size());
+      for (Block block : blocks) {
+        output.writeLong(block.fileOffset);
+        output.writeInt(block.compressedLength);
+        output.writeInt(block.firstLine);
+        output.writeInt(block.lineCount());
+        for (int i = 0; i < block.lineCount(); i++) {
+          int length = block.lineStarts[i + 1] - block.lineStarts[i];
+          writeVarint(output, length << 1 | (block.standardError[i] ? 1 : 0));
+        }
+      }
+      output.writeInt(taskRanges.size());
+      for (TaskRange range : taskRanges) {
+        output.writeUTF(range.taskPath);
+        output.writeInt(range.firstLine);
+        output.writeInt(range.endLine);
+      }
+    }
+  }
+
+  static OutputLogIndex readFrom(Path file) throws IOException {
+    OutputLogIndex index = new OutputLogIndex();
+    try (DataInputStream input =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+      if (input.readInt() != MAGIC) {
+        throw new IOException("Not a build output index: " + file);
+      }
+      int blockCount = input.readInt();
+      for (int b = 0; b < blockCount; b++) {
+        long fileOffset = input.readLong();
+        int compressedLength = input.readInt();
+        int firstLine = input.readInt();
+        int lineCount = input.readInt();
+        int[] lineStarts = new int[lineCount + 1];
+        boolean[] standardError = new boolean[lineCount];
+        for (int i = 0; i < lineCount; i++) {
+          int value = readVarint(input);
+          lineStarts[i + 1] = lineStarts[i] + (value >>> 1);
+          standardError[i] = (value & 1) == 1;
+        }
+        index.addBlock(
+            new Block(fileOffset, compressedLength, firstLine, lineStarts, standardError));
+      }
+      int rangeCount = input.readInt();
+      for (int r = 0; r < rangeCount; r++) {
+        index.taskRanges.add(new TaskRange(input.readUTF(), input.readInt(), input.readInt()));
+      }
+    }
+    return index;
+  }
+
+  private static void writeVarint(DataOutputStream output, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      output.writeByte((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    output.writeByte(value);
+  }
+
+  private static int readVarint(DataInputStream input) throws IOException {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = input.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in build output index");
+  }
+}
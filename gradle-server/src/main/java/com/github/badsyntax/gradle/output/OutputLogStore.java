@@ -0,0 +1,198 @@
+package com.github.badsyntax.gradle.output;
+
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Keeps the output of completed builds on disk, so a failure can be found after the build's
+// stream is gone. Every build is stored as a log of compressed blocks and an index, named after
+// its cancellation key and start time. The oldest builds are deleted once the store is over its
+// size budget, and all writes happen on one thread. Blocks waiting for that thread are bounded, a
+// build whose output can't be queued isn't stored.
+public class OutputLogStore implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(OutputLogStore.class.getName());
+
+  private static final String STORE_DIR = "build-output";
+  private static final String LOG_SUFFIX = ".log";
+  private static final String INDEX_SUFFIX = ".idx";
+  private static final int KEY_PREFIX_LENGTH = 16;
+  private static final long MAX_PENDING_BYTES = 32 * 1024 * 1024;
+
+  private final Path storeDir;
+  private final long maxBytes;
+  private final long maxPendingBytes;
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private final AtomicLong sequence = new AtomicLong();
+  private final ExecutorService writer =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "build-output-store");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Only accessed from the writer thread, -1 until the existing store has been measured
+  private long storeBytes = -1;
+
+  public OutputLogStore(Path historyDir, long maxBytes) {
+    this(historyDir, maxBytes, MAX_PENDING_BYTES);
+  }
+
+  OutputLogStore(Path historyDir, long maxBytes, long maxPendingBytes) {
+    this.storeDir = historyDir.resolve(STORE_DIR);
+    this.maxBytes = maxBytes;
+    this.maxPendingBytes = maxPendingBytes;
+  }
+
+  // Returns null when the store is disabled or the build can't be looked up later
+  public OutputLogWriter create(String cancellationKey) {
+    if (maxBytes <= 0 || Strings.isNullOrEmpty(cancellationKey)) {
+      return null;
+    }
+    try {
+      Files.createDirectories(storeDir);
+    } catch (IOException e) {
+      logger.error("Unable to create the build output store: {}", e.getMessage());
+      return null;
+    }
+    String name =
+        String.format(
+            "%s-%013d-%04d",
+            prefix(cancellationKey),
+            System.currentTimeMillis(),
+            sequence.getAndIncrement() % 10000);
+    return new OutputLogWriter(
+        this, storeDir.resolve(name + LOG_SUFFIX), storeDir.resolve(name + INDEX_SUFFIX));
+  }
+
+  // The most recent completed build with the key, or null when none is stored
+  public OutputLog open(String cancellationKey) throws IOException {
+    String prefix = prefix(cancellationKey) + "-";
+    File[] indexes =
+        storeDir
+            .toFile()
+            .listFiles(
+                (dir, name) -> name.startsWith(prefix) && name.endsWith(INDEX_SUFFIX));
+    if (indexes == null || indexes.length == 0) {
+      return null;
+    }
+    File latest = Arrays.stream(indexes).max(Comparator.comparing(File::getName)).get();
+    try {
+      // The log is opened before it is read, so the build can be evicted while it is read
+      return new OutputLog(logFileOf(latest).toPath(), OutputLogIndex.readFrom(latest.toPath()));
+    } catch (NoSuchFileException e) {
+      // Evicted since it was listed, older builds are evicted first so none is left
+      return null;
+    }
+  }
+
+  // Returns false when the task can't be queued, the store is closed or too far behind
+  boolean execute(Runnable task) {
+    return execute(task, 0);
+  }
+
+  boolean execute(Runnable task, long bytes) {
+    if (pendingBytes.addAndGet(bytes) > maxPendingBytes) {
+      pendingBytes.addAndGet(-bytes);
+      return false;
+    }
+    try {
+      writer.execute(
+          () -> {
+            try {
+              task.run();
+            } finally {
+              pendingBytes.addAndGet(-bytes);
+            }
+          });
+      return true;
+    } catch (RejectedExecutionException e) {
+      pendingBytes.addAndGet(-bytes);
+      return false;
+    }
+  }
+
+  // Called on the writer thread when a build has been stored
+  void onStored(long bytes) {
+    if (storeBytes < 0) {
+      storeBytes = sizeOf(list(LOG_SUFFIX)) + sizeOf(list(INDEX_SUFFIX));
+    } else {
+      storeBytes += bytes;
+    }
+    if (storeBytes <= maxBytes) {
+      return;
+    }
+    File[] indexes = list(INDEX_SUFFIX);
+    // Names start with the key, so order by the start time that follows it
+    Arrays.sort(
+        indexes, Comparator.comparing(file -> file.getName().substring(KEY_PREFIX_LENGTH + 1)));
+    // The index goes first, so a build stops being readable before its log is deleted. The most
+    // recent build is kept even when it is over the budget on its own.
+    for (int i = 0; i < indexes.length - 1 && storeBytes > maxBytes; i++) {
+      storeBytes -= delete(indexes[i]);
+      storeBytes -= delete(logFileOf(indexes[i]));
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    close(5000);
+  }
+
+  // Stops taking builds and waits up to the timeout for the queued blocks, returns false when
+  // some were left to the writer thread
+  public boolean close(long timeoutMillis) throws InterruptedException {
+    writer.shutdown();
+    return writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  private File[] list(String suffix) {
+    File[] files = storeDir.toFile().listFiles((dir, name) -> name.endsWith(suffix));
+    return files == null ? new File[0] : files;
+  }
+
+  private File logFileOf(File indexFile) {
+    String name = indexFile.getName();
+    return new File(
+        indexFile.getParentFile(),
+        name.substring(0, name.length() - INDEX_SUFFIX.length()) + LOG_SUFFIX);
+  }
+
+  private static long delete(File file) {
+    long bytes = file.length();
+    if (file.exists() && !file.delete()) {
+      logger.warn("Unable to delete stored build output {}", file);
+      return 0;
+    }
+    return bytes;
+  }
+
+  private static long sizeOf(File[] files) {
+    long bytes = 0;
+    for (File file : files) {
+      bytes += file.length();
+    }
+    return bytes;
+  }
+
+  private static String prefix(String cancellationKey) {
+    return Hashing.sha256()
+        .hashString(cancellationKey, StandardCharsets.UTF_8)
+        .toString()
+        .substring(0, KEY_PREFIX_LENGTH);
+  }
+}
@@ -0,0 +1,194 @@
+package com.github.badsyntax.gradle.output;
+
+import com.github.badsyntax.gradle.Output;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Stores the output of one build as it runs. Output is split into lines, every line is blamed
+// on the task that was running when it started, and lines are gathered into blocks that are
+// compressed and appended on the store's writer thread, so the build only pays for the copy.
+// The index is written when the build finishes, which is when the output becomes readable.
+public class OutputLogWriter implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(OutputLogWriter.class.getName());
+
+  private static final int BLOCK_BYTES = 64 * 1024;
+  // Lines without a newline, like progress bars redrawn with \r, are cut at this length
+  private static final int MAX_LINE_BYTES = 16 * 1024;
+
+  private final OutputLogStore store;
+  private final Path logFile;
+  private final Path indexFile;
+
+  // Accessed by the build, under this writer's lock
+  private final ByteArrayOutputStream[] partialLines = {
+    new ByteArrayOutputStream(), new ByteArrayOutputStream()
+  };
+  private final String[] partialLineTasks = new String[2];
+  private ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_BYTES);
+  private int[] blockLineStarts = new int[256];
+  private boolean[] blockStandardError = new boolean[256];
+  private String[] blockTasks = new String[256];
+  private int blockLines;
+  private boolean closed;
+  // Set when the store fell behind, the rest of the output is dropped and the log deleted
+  private boolean dropped;
+
+  // Accessed on the store's writer thread only
+  private final OutputLogIndex index = new OutputLogIndex();
+  private OutputStream logOutput;
+  private long logBytes;
+  private boolean failed;
+
+  OutputLogWriter(OutputLogStore store, Path logFile, Path indexFile) {
+    this.store = store;
+    this.logFile = logFile;
+    this.indexFile = indexFile;
+  }
+
+  public synchronized void write(Output.OutputType outputType, byte[] bytes, String taskPath) {
+    if (closed || dropped) {
+      return;
+    }
+    int stream = outputType == Output.OutputType.STDERR ? 1 : 0;
+    ByteArrayOutputStream partialLine = partialLines[stream];
+    int lineStart = 0;
+    for (int i = 0; i < bytes.length; i++) {
+      if (partialLine.size() == 0 && i == lineStart) {
+        partialLineTasks[stream] = taskPath;
+      }
+      boolean newline = bytes[i] == '\n';
+      if (newline || partialLine.size() + i + 1 - lineStart >= MAX_LINE_BYTES) {
+        partialLine.write(bytes, lineStart, i - lineStart + (newline ? 0 : 1));
+        addLine(partialLine, stream == 1, partialLineTasks[stream]);
+        lineStart = i + 1;
+      }
+    }
+    partialLine.write(bytes, lineStart, bytes.length - lineStart);
+  }
+
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (int stream = 0; stream < partialLines.length; stream++) {
+      if (partialLines[stream].size() > 0) {
+        addLine(partialLines[stream], stream == 1, partialLineTasks[stream]);
+      }
+    }
+    flushBlock();
+    boolean stored = !dropped;
+    if (!store.execute(() -> finish(stored))) {
+      logger.warn("Unable to store build output in {}, the store is closed", logFile);
+    }
+  }
+
+  private void addLine(ByteArrayOutputStream line, boolean standardError, String taskPath) {
+    if (dropped) {
+      line.reset();
+      return;
+    }
+    if (blockLines == blockStandardError.length) {
+      blockLineStarts = Arrays.copyOf(blockLineStarts, blockLineStarts.length * 2);
+      blockStandardError = Arrays.copyOf(blockStandardError, blockLineStarts.length);
+      blockTasks = Arrays.copyOf(blockTasks, blockLineStarts.length);
+    }
+    blockLineStarts[blockLines] = block.size();
+    blockStandardError[blockLines] = standardError;
+    blockTasks[blockLines] = taskPath;
+    blockLines++;
+    byte[] lineBytes = line.toByteArray();
+    block.write(lineBytes, 0, lineBytes.length);
+    block.write('\n');
+    line.reset();
+    if (block.size() >= BLOCK_BYTES) {
+      flushBlock();
+    }
+  }
+
+  private void flushBlock() {
+    if (blockLines == 0 || dropped) {
+      return;
+    }
+    byte[] bytes = block.toByteArray();
+    int[] lineStarts = Arrays.copyOf(blockLineStarts, blockLines + 1);
+    lineStarts[blockLines] = bytes.length;
+    boolean[] standardError = Arrays.copyOf(blockStandardError, blockLines);
+    String[] tasks = Arrays.copyOf(blockTasks, blockLines);
+    if (!store.execute(() -> appendBlock(bytes, lineStarts, standardError, tasks), bytes.length)) {
+      logger.warn("Not storing the build output in {}, the store is behind", logFile);
+      dropped = true;
+    }
+    block = new ByteArrayOutputStream(BLOCK_BYTES);
+    blockLines = 0;
+  }
+
+  private void appendBlock(
+      byte[] bytes, int[] lineStarts, boolean[] standardError, String[] tasks) {
+    if (failed) {
+      return;
+    }
+    try {
+      if (logOutput == null) {
+        logOutput = Files.newOutputStream(logFile);
+      }
+      byte[] compressed = compress(bytes);
+      logOutput.write(compressed);
+      int firstLine = index.lineCount;
+      index.addBlock(
+          new OutputLogIndex.Block(
+              logBytes, compressed.length, firstLine, lineStarts, standardError));
+      for (int i = 0; i < tasks.length; i++) {
+        index.addLine(firstLine + i, tasks[i]);
+      }
+      logBytes += compressed.length;
+    } catch (IOException e) {
+      logger.error("Unable to store build output in {}: {}", logFile, e.getMessage());
+      failed = true;
+    }
+  }
+
+  private void finish(boolean stored) {
+    try {
+      if (logOutput != null) {
+        logOutput.close();
+      }
+      if (failed || !stored) {
+        Files.deleteIfExists(logFile);
+        return;
+      }
+      if (logOutput == null) {
+        Files.createFile(logFile);
+      }
+      index.writeTo(indexFile);
+    } catch (IOException e) {
+      logger.error("Unable to store build output in {}: {}", logFile, e.getMessage());
+      return;
+    }
+    store.onStored(logBytes + indexFile.toFile().length());
+  }
+
+  private static byte[] compress(byte[] bytes) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(bytes);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        compressed.write(buffer, 0, deflater.deflate(buffer));
+      }
+      return compressed.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+}
@@ -0,0 +1,130 @@
+package com.github.badsyntax.gradle.output;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// A fixed size ring of serialized replies in a memory-mapped file. Once full, the oldest records
+// are overwritten. Callers synchronize access, and must not use the file once it is closed.
+class SpillFile implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(SpillFile.class.getName());
+
+  private final Path path;
+  // Typed as ByteBuffer so that duplicate() links against the Java 8 signature. Null once
+  // unmapped, as touching an unmapped buffer crashes the JVM.
+  private ByteBuffer mappedBuffer;
+  private final int capacity;
+  // offset -> {position, length}
+  private final TreeMap<Long, int[]> index = new TreeMap<>();
+  private int writePosition;
+
+  SpillFile(int capacity) throws IOException {
+    this.capacity = capacity;
+    this.path = Files.createTempFile("gradle-build-output", ".spill");
+    try (FileChannel channel =
+        FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      this.mappedBuffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+  }
+
+  void write(long offset, byte[] bytes) {
+    if (mappedBuffer == null || bytes.length > capacity) {
+      return;
+    }
+    if (writePosition + bytes.length > capacity) {
+      // Wrapping skips the tail of the file, so the oldest records stored there are dropped
+      while (!index.isEmpty() && index.firstEntry().getValue()[0] >= writePosition) {
+        index.pollFirstEntry();
+      }
+      writePosition = 0;
+    }
+    int start = writePosition;
+    int end = start + bytes.length;
+    while (!index.isEmpty()) {
+      int[] oldest = index.firstEntry().getValue();
+      if (oldest[0] >= end || oldest[0] + oldest[1] <= start) {
+        break;
+      }
+      index.pollFirstEntry();
+    }
+    ByteBuffer target = mappedBuffer.duplicate();
+    ((Buffer) target).position(start);
+    target.put(bytes);
+    index.put(offset, new int[] {start, bytes.length});
+    writePosition = end;
+  }
+
+  long firstOffset() {
+    return index.isEmpty() ? -1 : index.firstKey();
+  }
+
+  // Returns records keyed by offset, in offset order
+  Map<Long, byte[]> read(long fromOffset, int maxRecords) {
+    Map<Long, byte[]> records = new LinkedHashMap<>();
+    if (mappedBuffer == null) {
+      return records;
+    }
+    for (Map.Entry<Long, int[]> entry : index.tailMap(fromOffset, true).entrySet()) {
+      if (records.size() == maxRecords) {
+        break;
+      }
+      int[] location = entry.getValue();
+      byte[] bytes = new byte[location[1]];
+      ByteBuffer source = mappedBuffer.duplicate();
+      ((Buffer) source).position(location[0]);
+      source.get(bytes);
+      records.put(entry.getKey(), bytes);
+    }
+    return records;
+  }
+
+  @Override
+  public void close() {
+    index.clear();
+    if (mappedBuffer != null) {
+      unmap(mappedBuffer);
+      mappedBuffer = null;
+    }
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      // Windows won't delete a file that is still mapped
+      logger.debug("Unable to delete spill file {}: {}", path, e.getMessage());
+      path.toFile().deleteOnExit();
+    }
+  }
+
+  // A mapping is otherwise only released when the buffer is garbage collected. There is no public
+  // API for this, so Unsafe.invokeCleaner is used from Java 9, and the buffer's cleaner on Java 8.
+  private static void unmap(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      logger.debug("Unable to unmap spill file, it is released once collected: {}", e.getMessage());
+    }
+  }
+}
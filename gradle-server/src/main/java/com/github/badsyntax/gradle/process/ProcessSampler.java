@@ -0,0 +1,305 @@
+package com.github.badsyntax.gradle.process;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Finds Gradle daemons and samples memory, CPU time and uptime of processes by reading /proc, so
+// no process is started to look them up. Samples are cached for a short time, as a daemons view
+// refreshes often and asks for the same pids every time. Processes can't be listed or sampled on
+// other platforms.
+public class ProcessSampler {
+  private static final Logger logger = LoggerFactory.getLogger(ProcessSampler.class.getName());
+
+  private static final long TTL_MILLIS = 2000;
+  // Fields of /proc/<pid>/stat, counted from the state field that follows the command name
+  private static final int UTIME_FIELD = 11;
+  private static final int STIME_FIELD = 12;
+  private static final int STARTTIME_FIELD = 19;
+  // The kernel reports times in USER_HZ ticks, and passes their rate to every process in its
+  // auxiliary vector. 100 is the rate on most architectures, used when the vector can't be read.
+  private static final long AT_CLKTCK = 17;
+  private static final long DEFAULT_TICKS_PER_SECOND = 100;
+
+  private static final String DAEMON_MAIN_CLASS =
+      "org.gradle.launcher.daemon.bootstrap.GradleDaemon";
+  // States of /proc/net/tcp entries
+  private static final String TCP_ESTABLISHED = "01";
+  private static final String TCP_LISTEN = "0A";
+
+  private final Path procDir;
+  private final boolean enabled;
+  private final long ticksPerSecond;
+  private final Map<String, Sample> samples = new HashMap<>();
+
+  public ProcessSampler() {
+    this(Paths.get("/proc"));
+  }
+
+  ProcessSampler(Path procDir) {
+    this.procDir = procDir;
+    this.enabled = Files.isReadable(procDir.resolve("uptime"));
+    this.ticksPerSecond = enabled ? readTicksPerSecond(procDir) : DEFAULT_TICKS_PER_SECOND;
+  }
+
+  public static class Daemon {
+    private final String pid;
+    private final String version;
+    private final boolean busy;
+
+    Daemon(String pid, String version, boolean busy) {
+      this.pid = pid;
+      this.version = version;
+      this.busy = busy;
+    }
+
+    public String getPid() {
+      return pid;
+    }
+
+    public String getVersion() {
+      return version;
+    }
+
+    // A client is connected to the daemon, which it only is while it runs a build
+    public boolean isBusy() {
+      return busy;
+    }
+  }
+
+  public static class Sample {
+    private final long sampledAt;
+    private final long rssBytes;
+    private final long cpuMillis;
+    private final long uptimeMillis;
+
+    Sample(long sampledAt, long rssBytes, long cpuMillis, long uptimeMillis) {
+      this.sampledAt = sampledAt;
+      this.rssBytes = rssBytes;
+      this.cpuMillis = cpuMillis;
+      this.uptimeMillis = uptimeMillis;
+    }
+
+    public long getRssBytes() {
+      return rssBytes;
+    }
+
+    public long getCpuMillis() {
+      return cpuMillis;
+    }
+
+    public long getUptimeMillis() {
+      return uptimeMillis;
+    }
+  }
+
+  // Returns null when the process doesn't exist or can't be sampled
+  public synchronized Sample sample(String pid) {
+    if (!enabled || !isPid(pid)) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    evictExpired(now);
+    Sample sample = samples.get(pid);
+    if (sample == null) {
+      sample = read(pid, now);
+      if (sample != null) {
+        samples.put(pid, sample);
+      }
+    }
+    return sample;
+  }
+
+  // The Gradle daemons of this user, found by their main class and sorted by pid, or null when
+  // processes can't be listed
+  public List<Daemon> findDaemons() {
+    if (!enabled) {
+      return null;
+    }
+    List<Daemon> daemons = new ArrayList<>();
+    try (DirectoryStream<Path> processDirs = Files.newDirectoryStream(procDir)) {
+      UserPrincipal user = Files.getOwner(procDir.resolve("self"));
+      for (Path processDir : processDirs) {
+        String pid = processDir.getFileName().toString();
+        if (!isPid(pid)) {
+          continue;
+        }
+        try {
+          if (!user.equals(Files.getOwner(processDir))) {
+            continue;
+          }
+          List<String> args = readCmdline(processDir);
+          int mainClass = args.indexOf(DAEMON_MAIN_CLASS);
+          if (mainClass < 0) {
+            continue;
+          }
+          // The daemon is started with its Gradle version as the first argument
+          String version = mainClass + 1 < args.size() ? args.get(mainClass + 1) : "";
+          daemons.add(new Daemon(pid, version, isBusy(processDir)));
+        } catch (IOException e) {
+          // The process has exited
+        }
+      }
+    } catch (IOException e) {
+      logger.warn("Unable to list processes: {}", e.getMessage());
+      return null;
+    }
+    daemons.sort((a, b) -> Long.compare(Long.parseLong(a.pid), Long.parseLong(b.pid)));
+    return daemons;
+  }
+
+  private static List<String> readCmdline(Path processDir) throws IOException {
+    String cmdline =
+        new String(Files.readAllBytes(processDir.resolve("cmdline")), StandardCharsets.UTF_8);
+    return Arrays.asList(cmdline.split("\0"));
+  }
+
+  // A daemon listens on a loopback port, and a client stays connected to it for a whole build
+  private static boolean isBusy(Path processDir) throws IOException {
+    Set<String> sockets = new HashSet<>();
+    try (DirectoryStream<Path> fds = Files.newDirectoryStream(processDir.resolve("fd"))) {
+      for (Path fd : fds) {
+        String target = Files.readSymbolicLink(fd).toString();
+        if (target.startsWith("socket:[") && target.endsWith("]")) {
+          sockets.add(target.substring("socket:[".length(), target.length() - 1));
+        }
+      }
+    }
+    List<String[]> entries = new ArrayList<>();
+    for (String file : new String[] {"tcp", "tcp6"}) {
+      Path table = processDir.resolve("net").resolve(file);
+      if (!Files.isReadable(table)) {
+        continue;
+      }
+      List<String> lines = Files.readAllLines(table, StandardCharsets.UTF_8);
+      // The first line is a header
+      for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+        // sl local_address rem_address st tx_queue:rx_queue tr:tm->when retrnsmt uid timeout inode
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length > 9 && sockets.contains(fields[9])) {
+          entries.add(fields);
+        }
+      }
+    }
+    Set<String> listeningPorts = new HashSet<>();
+    for (String[] fields : entries) {
+      if (fields[3].equals(TCP_LISTEN)) {
+        listeningPorts.add(port(fields[1]));
+      }
+    }
+    for (String[] fields : entries) {
+      if (fields[3].equals(TCP_ESTABLISHED) && listeningPorts.contains(port(fields[1]))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Addresses are hex, like 0100007F:A3F1
+  private static String port(String address) {
+    return address.substring(address.lastIndexOf(':') + 1);
+  }
+
+  private Sample read(String pid, long now) {
+    Path processDir = procDir.resolve(pid);
+    try {
+      String stat =
+          new String(Files.readAllBytes(processDir.resolve("stat")), StandardCharsets.UTF_8);
+      // The command name is in parentheses and may contain spaces, the fields follow the last one
+      String[] fields = stat.substring(stat.lastIndexOf(')') + 2).trim().split(" ");
+      long cpuTicks = Long.parseLong(fields[UTIME_FIELD]) + Long.parseLong(fields[STIME_FIELD]);
+      long startTicks = Long.parseLong(fields[STARTTIME_FIELD]);
+      String uptime =
+          new String(Files.readAllBytes(procDir.resolve("uptime")), StandardCharsets.UTF_8);
+      long systemUptimeMillis =
+          (long) (Double.parseDouble(uptime.substring(0, uptime.indexOf(' '))) * 1000);
+      return new Sample(
+          now,
+          readRssBytes(processDir),
+          toMillis(cpuTicks),
+          Math.max(0, systemUptimeMillis - toMillis(startTicks)));
+    } catch (IOException e) {
+      // The process has exited
+      return null;
+    } catch (RuntimeException e) {
+      logger.warn("Unable to sample process {}: {}", pid, e.getMessage());
+      return null;
+    }
+  }
+
+  private long toMillis(long ticks) {
+    return ticks * 1000 / ticksPerSecond;
+  }
+
+  // Reads AT_CLKTCK from the auxiliary vector of this process, pairs of native longs that end
+  // with a 0 type. A 32 bit JVM writes ints, which a 64 bit reading would pair up wrongly.
+  private static long readTicksPerSecond(Path procDir) {
+    try {
+      ByteBuffer auxv =
+          ByteBuffer.wrap(Files.readAllBytes(procDir.resolve("self").resolve("auxv")))
+              .order(ByteOrder.nativeOrder());
+      boolean is64Bit = !"32".equals(System.getProperty("sun.arch.data.model"));
+      while (auxv.remaining() >= (is64Bit ? 16 : 8)) {
+        long type = is64Bit ? auxv.getLong() : auxv.getInt();
+        long value = is64Bit ? auxv.getLong() : auxv.getInt();
+        if (type == 0) {
+          break;
+        }
+        if (type == AT_CLKTCK && value > 0) {
+          return value;
+        }
+      }
+    } catch (IOException e) {
+      logger.debug("Unable to read the clock tick rate: {}", e.getMessage());
+    }
+    return DEFAULT_TICKS_PER_SECOND;
+  }
+
+  private static long readRssBytes(Path processDir) throws IOException {
+    for (String line : Files.readAllLines(processDir.resolve("status"), StandardCharsets.UTF_8)) {
+      // VmRSS:	    1796 kB
+      if (line.startsWith("VmRSS:")) {
+        String value = line.substring("VmRSS:".length()).trim();
+        return Long.parseLong(value.substring(0, value.indexOf(' '))) * 1024;
+      }
+    }
+    return 0;
+  }
+
+  private void evictExpired(long now) {
+    Iterator<Sample> iterator = samples.values().iterator();
+    while (iterator.hasNext()) {
+      if (now - iterator.next().sampledAt >= TTL_MILLIS) {
+        iterator.remove();
+      }
+    }
+  }
+
+  private static boolean isPid(String pid) {
+    if (pid.isEmpty()) {
+      return false;
+    }
+    for (int i = 0; i < pid.length(); i++) {
+      if (!Character.isDigit(pid.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,39 @@
+package com.github.badsyntax.gradle.stats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Named counters reported by GetServerStats
+public class ServerStats {
+  public static final String OUTBOUND_WIRE_BYTES = "outbound_wire_bytes";
+  public static final String OUTBOUND_UNCOMPRESSED_BYTES = "outbound_uncompressed_bytes";
+  public static final String COMPRESSION_SAVED_BYTES = "compression_saved_bytes";
+  public static final String COMPRESSED_MESSAGES = "compressed_messages";
+
+  private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+  public void add(String name, long delta) {
+    counters.computeIfAbsent(name, key -> new AtomicLong()).addAndGet(delta);
+  }
+
+  public void increment(String name) {
+    add(name, 1);
+  }
+
+  public long get(String name) {
+    AtomicLong counter = counters.get(name);
+    return counter == null ? 0 : counter.get();
+  }
+
+  public Map<String, Long> snapshot() {
+    Map<String, Long> snapshot = new TreeMap<>();
+    counters.forEach((name, counter) -> snapshot.put(name, counter.get()));
+    snapshot.put(
+        COMPRESSION_SAVED_BYTES,
+        get(OUTBOUND_UNCOMPRESSED_BYTES) - get(OUTBOUND_WIRE_BYTES));
+    return snapshot;
+  }
+}
@@ -0,0 +1,29 @@
+package com.github.badsyntax.gradle.stats;
+
+import io.grpc.Metadata;
+import io.grpc.ServerStreamTracer;
+
+// Counts the bytes sent before and after compression, the wire size only differs from the
+// uncompressed size for messages that were compressed
+public class TransferStatsTracerFactory extends ServerStreamTracer.Factory {
+  private final ServerStats serverStats;
+
+  public TransferStatsTracerFactory(ServerStats serverStats) {
+    this.serverStats = serverStats;
+  }
+
+  @Override
+  public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+    return new ServerStreamTracer() {
+      @Override
+      public void outboundWireSize(long bytes) {
+        serverStats.add(ServerStats.OUTBOUND_WIRE_BYTES, bytes);
+      }
+
+      @Override
+      public void outboundUncompressedSize(long bytes) {
+        serverStats.add(ServerStats.OUTBOUND_UNCOMPRESSED_BYTES, bytes);
+      }
+    };
+  }
+}
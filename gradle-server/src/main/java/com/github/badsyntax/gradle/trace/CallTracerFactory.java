@@ -0,0 +1,25 @@
+package com.github.badsyntax.gradle.trace;
+
+import io.grpc.Metadata;
+import io.grpc.ServerStreamTracer;
+import io.grpc.Status;
+
+// Records a span for every call, from the headers arriving to the stream closing, so time spent
+// queued for a lane shows up before the handler's own spans
+public class CallTracerFactory extends ServerStreamTracer.Factory {
+  private static final ServerStreamTracer NOOP_TRACER = new ServerStreamTracer() {};
+
+  @Override
+  public ServerStreamTracer newServerStreamTracer(String fullMethodName, Metadata headers) {
+    if (!Tracer.isEnabled()) {
+      return NOOP_TRACER;
+    }
+    Span span = Tracer.startCall(fullMethodName);
+    return new ServerStreamTracer() {
+      @Override
+      public void streamClosed(Status status) {
+        span.close();
+      }
+    };
+  }
+}
@@ -0,0 +1,97 @@
+package com.github.badsyntax.gradle.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Writes spans in the Chrome trace-event format, which chrome://tracing, Perfetto and
+// speedscope open. Server threads, calls and Gradle operations are shown as three processes.
+public class ChromeTraceWriter {
+  private ChromeTraceWriter() {}
+
+  public static void write(Path file, List<TraceEvent> events) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+      writeProcessName(writer, Tracer.SERVER_PROCESS_ID, "gradle-server");
+      writer.write(",\n");
+      writeProcessName(writer, Tracer.CALL_PROCESS_ID, "calls");
+      writer.write(",\n");
+      writeProcessName(writer, Tracer.GRADLE_PROCESS_ID, "gradle operations");
+      Set<String> namedThreads = new HashSet<>();
+      for (TraceEvent event : events) {
+        if (namedThreads.add(event.getProcessId() + ":" + event.getThreadId())) {
+          writer.write(",\n");
+          writeThreadName(writer, event);
+        }
+        writer.write(",\n");
+        writeEvent(writer, event);
+      }
+      writer.write("\n]}\n");
+    }
+  }
+
+  private static void writeProcessName(Writer writer, int processId, String name)
+      throws IOException {
+    writer.write("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":");
+    writer.write(Integer.toString(processId));
+    writer.write(",\"args\":{\"name\":");
+    writeString(writer, name);
+    writer.write("}}");
+  }
+
+  private static void writeThreadName(Writer writer, TraceEvent event) throws IOException {
+    writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":");
+    writer.write(Integer.toString(event.getProcessId()));
+    writer.write(",\"tid\":");
+    writer.write(Long.toString(event.getThreadId()));
+    writer.write(",\"args\":{\"name\":");
+    writeString(writer, event.getThreadName());
+    writer.write("}}");
+  }
+
+  private static void writeEvent(Writer writer, TraceEvent event) throws IOException {
+    writer.write("{\"name\":");
+    writeString(writer, event.getName());
+    writer.write(",\"cat\":");
+    writeString(writer, event.getCategory());
+    writer.write(",\"ph\":\"X\",\"ts\":");
+    writer.write(Long.toString(event.getStartMicros()));
+    writer.write(",\"dur\":");
+    writer.write(Long.toString(event.getDurationMicros()));
+    writer.write(",\"pid\":");
+    writer.write(Integer.toString(event.getProcessId()));
+    writer.write(",\"tid\":");
+    writer.write(Long.toString(event.getThreadId()));
+    if (event.getParent() != null) {
+      writer.write(",\"args\":{\"parent\":");
+      writeString(writer, event.getParent());
+      writer.write("}");
+    }
+    writer.write("}");
+  }
+
+  private static void writeString(Writer writer, String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(String.format("\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+}
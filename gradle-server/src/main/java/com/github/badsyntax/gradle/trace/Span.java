@@ -0,0 +1,47 @@
+package com.github.badsyntax.gradle.trace;
+
+// A span that is recorded when it is closed. Spans are only created while tracing is enabled,
+// otherwise the shared no-op span is returned so an untraced call costs a single field read.
+public class Span implements AutoCloseable {
+  static final Span NOOP = new Span(null, null, 0, false);
+
+  private final String name;
+  private final String category;
+  private final long startMicros;
+  // Spans that are closed on another thread, like calls, are laid out in lanes instead
+  private final boolean onThread;
+  private final long threadId;
+  private final String threadName;
+
+  Span(String name, String category, long startMicros, boolean onThread) {
+    this.name = name;
+    this.category = category;
+    this.startMicros = startMicros;
+    this.onThread = onThread;
+    Thread thread = Thread.currentThread();
+    this.threadId = onThread ? thread.getId() : 0;
+    this.threadName = onThread ? thread.getName() : null;
+  }
+
+  @Override
+  public void close() {
+    if (this == NOOP) {
+      return;
+    }
+    long endMicros = Tracer.nowMicros();
+    if (onThread) {
+      Tracer.record(
+          new TraceEvent(
+              name,
+              category,
+              startMicros,
+              endMicros - startMicros,
+              Tracer.SERVER_PROCESS_ID,
+              threadId,
+              threadName,
+              null));
+    } else {
+      Tracer.recordInLane(Tracer.CALL_PROCESS_ID, name, category, startMicros, endMicros, null);
+    }
+  }
+}
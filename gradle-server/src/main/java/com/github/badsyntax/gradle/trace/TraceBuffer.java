@@ -0,0 +1,39 @@
+package com.github.badsyntax.gradle.trace;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Keeps the most recent spans, overwriting the oldest once full, so a long-running server holds
+// a fixed amount of trace data. Adding a span takes no lock.
+public class TraceBuffer {
+  private final AtomicReferenceArray<TraceEvent> events;
+  private final AtomicLong added = new AtomicLong();
+
+  public TraceBuffer(int capacity) {
+    this.events = new AtomicReferenceArray<>(capacity);
+  }
+
+  public void add(TraceEvent event) {
+    events.set((int) (added.getAndIncrement() % events.length()), event);
+  }
+
+  // Spans in start order
+  public List<TraceEvent> snapshot() {
+    List<TraceEvent> snapshot = new ArrayList<>(events.length());
+    for (int i = 0; i < events.length(); i++) {
+      TraceEvent event = events.get(i);
+      if (event != null) {
+        snapshot.add(event);
+      }
+    }
+    snapshot.sort(Comparator.comparingLong(TraceEvent::getStartMicros));
+    return snapshot;
+  }
+
+  public long getDroppedEvents() {
+    return Math.max(0, added.get() - events.length());
+  }
+}
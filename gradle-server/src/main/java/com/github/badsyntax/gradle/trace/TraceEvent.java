@@ -0,0 +1,66 @@
+package com.github.badsyntax.gradle.trace;
+
+// A finished span. Times are microseconds since the epoch, as Gradle operation times are
+// wall-clock times and both kinds of span share one timeline.
+public class TraceEvent {
+  private final String name;
+  private final String category;
+  private final long startMicros;
+  private final long durationMicros;
+  private final int processId;
+  private final long threadId;
+  private final String threadName;
+  private final String parent;
+
+  public TraceEvent(
+      String name,
+      String category,
+      long startMicros,
+      long durationMicros,
+      int processId,
+      long threadId,
+      String threadName,
+      String parent) {
+    this.name = name;
+    this.category = category;
+    this.startMicros = startMicros;
+    this.durationMicros = durationMicros;
+    this.processId = processId;
+    this.threadId = threadId;
+    this.threadName = threadName;
+    this.parent = parent;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getCategory() {
+    return category;
+  }
+
+  public long getStartMicros() {
+    return startMicros;
+  }
+
+  public long getDurationMicros() {
+    return durationMicros;
+  }
+
+  public int getProcessId() {
+    return processId;
+  }
+
+  public long getThreadId() {
+    return threadId;
+  }
+
+  public String getThreadName() {
+    return threadName;
+  }
+
+  // The display name of the enclosing Gradle operation, null for server spans
+  public String getParent() {
+    return parent;
+  }
+}
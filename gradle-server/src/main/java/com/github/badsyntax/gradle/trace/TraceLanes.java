@@ -0,0 +1,56 @@
+package com.github.badsyntax.gradle.trace;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// Lays out spans that overlap without nesting, like tasks of a parallel build, on separate
+// rows. Trace viewers nest spans of a row by time, so a span goes on the first row where it is
+// either disjoint from or nested with every recent span. Gradle reports an operation after its
+// children, so a parent joins the row of its first child.
+public class TraceLanes {
+  private static final int MAX_LANES = 64;
+  private static final int RECENT_SPANS_PER_LANE = 32;
+
+  private final List<Deque<long[]>> lanes = new ArrayList<>();
+
+  public synchronized int place(long startMicros, long endMicros) {
+    for (int lane = 0; lane < lanes.size(); lane++) {
+      if (fits(lanes.get(lane), startMicros, endMicros)) {
+        return add(lane, startMicros, endMicros);
+      }
+    }
+    if (lanes.size() < MAX_LANES) {
+      lanes.add(new ArrayDeque<>());
+      return add(lanes.size() - 1, startMicros, endMicros);
+    }
+    // Very wide builds share the last row, which the viewer draws as best it can
+    return add(MAX_LANES - 1, startMicros, endMicros);
+  }
+
+  public synchronized void clear() {
+    lanes.clear();
+  }
+
+  private int add(int lane, long startMicros, long endMicros) {
+    Deque<long[]> spans = lanes.get(lane);
+    if (spans.size() == RECENT_SPANS_PER_LANE) {
+      spans.removeFirst();
+    }
+    spans.addLast(new long[] {startMicros, endMicros});
+    return lane;
+  }
+
+  private static boolean fits(Deque<long[]> spans, long startMicros, long endMicros) {
+    for (long[] span : spans) {
+      boolean disjoint = endMicros <= span[0] || startMicros >= span[1];
+      boolean inside = startMicros >= span[0] && endMicros <= span[1];
+      boolean around = startMicros <= span[0] && endMicros >= span[1];
+      if (!disjoint && !inside && !around) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
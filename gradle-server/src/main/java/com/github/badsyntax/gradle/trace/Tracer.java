@@ -0,0 +1,129 @@
+package com.github.badsyntax.gradle.trace;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.gradle.tooling.events.FinishEvent;
+import org.gradle.tooling.events.OperationDescriptor;
+import org.gradle.tooling.events.OperationResult;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.configuration.ProjectConfigurationFinishEvent;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.test.TestFinishEvent;
+import org.gradle.tooling.events.transform.TransformFinishEvent;
+
+// Records server spans (calls and handler phases) and the Gradle operations reported by progress
+// events on one timeline, for export as a Chrome trace. Tracing is off unless a buffer size is
+// configured, and every entry point returns straight away when it is off.
+public class Tracer {
+  static final int SERVER_PROCESS_ID = 1;
+  static final int CALL_PROCESS_ID = 2;
+  static final int GRADLE_PROCESS_ID = 3;
+
+  private static final long EPOCH_MICROS_AT_START =
+      TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+  private static final long NANOS_AT_START = System.nanoTime();
+
+  private static volatile TraceBuffer buffer;
+  private static final TraceLanes callLanes = new TraceLanes();
+  private static final TraceLanes gradleLanes = new TraceLanes();
+
+  private Tracer() {}
+
+  // 0 turns tracing off and drops the recorded spans
+  public static void setBufferSize(int events) {
+    buffer = events > 0 ? new TraceBuffer(events) : null;
+    callLanes.clear();
+    gradleLanes.clear();
+  }
+
+  public static boolean isEnabled() {
+    return buffer != null;
+  }
+
+  // A handler phase, recorded on the thread that starts it, which must also close it
+  public static Span start(String name, String category) {
+    return buffer == null ? Span.NOOP : new Span(name, category, nowMicros(), true);
+  }
+
+  // A call, which can be closed on a different thread than it was started on
+  public static Span startCall(String fullMethodName) {
+    return buffer == null ? Span.NOOP : new Span(fullMethodName, "rpc", nowMicros(), false);
+  }
+
+  // Progress listeners pass every event, only finished operations are recorded
+  public static void onProgressEvent(ProgressEvent event) {
+    if (buffer == null || !(event instanceof FinishEvent)) {
+      return;
+    }
+    OperationResult result = ((FinishEvent) event).getResult();
+    OperationDescriptor descriptor = event.getDescriptor();
+    OperationDescriptor parent = descriptor.getParent();
+    recordInLane(
+        GRADLE_PROCESS_ID,
+        descriptor.getDisplayName(),
+        category(event),
+        TimeUnit.MILLISECONDS.toMicros(result.getStartTime()),
+        TimeUnit.MILLISECONDS.toMicros(result.getEndTime()),
+        parent == null ? null : parent.getDisplayName());
+  }
+
+  public static List<TraceEvent> snapshot() {
+    TraceBuffer traceBuffer = buffer;
+    return traceBuffer == null ? Collections.emptyList() : traceBuffer.snapshot();
+  }
+
+  public static long getDroppedEvents() {
+    TraceBuffer traceBuffer = buffer;
+    return traceBuffer == null ? 0 : traceBuffer.getDroppedEvents();
+  }
+
+  static long nowMicros() {
+    return EPOCH_MICROS_AT_START
+        + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - NANOS_AT_START);
+  }
+
+  static void record(TraceEvent event) {
+    TraceBuffer traceBuffer = buffer;
+    if (traceBuffer != null) {
+      traceBuffer.add(event);
+    }
+  }
+
+  static void recordInLane(
+      int processId,
+      String name,
+      String category,
+      long startMicros,
+      long endMicros,
+      String parent) {
+    TraceLanes lanes = processId == CALL_PROCESS_ID ? callLanes : gradleLanes;
+    int lane = lanes.place(startMicros, endMicros);
+    record(
+        new TraceEvent(
+            name,
+            category,
+            startMicros,
+            endMicros - startMicros,
+            processId,
+            lane + 1L,
+            "lane " + (lane + 1),
+            parent));
+  }
+
+  private static String category(ProgressEvent event) {
+    if (event instanceof TaskFinishEvent) {
+      return "task";
+    }
+    if (event instanceof ProjectConfigurationFinishEvent) {
+      return "configuration";
+    }
+    if (event instanceof TransformFinishEvent) {
+      return "transform";
+    }
+    if (event instanceof TestFinishEvent) {
+      return "test";
+    }
+    return "operation";
+  }
+}
@@ -0,0 +1,174 @@
+package com.github.badsyntax.gradle.watch;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Watches every directory of a project except build outputs and tool directories. The tree is
+// walked once, after that only directories created while watching are walked, and changed paths
+// are taken straight from the watch events. Output dirs are only excluded where a project puts
+// them, so a source package named build is still watched.
+public class ProjectWatcher implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ProjectWatcher.class.getName());
+
+  private static final Set<String> TOOL_DIRS =
+      new HashSet<>(Arrays.asList(".gradle", ".git", ".idea", "node_modules"));
+  private static final Set<String> OUTPUT_DIRS = new HashSet<>(Arrays.asList("build", "out"));
+  private static final List<String> PROJECT_FILES =
+      Arrays.asList("build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts");
+
+  private final Path root;
+  private final WatchService watchService;
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+
+  public ProjectWatcher(Path root) throws IOException {
+    this.root = root.toAbsolutePath().normalize();
+    this.watchService = this.root.getFileSystem().newWatchService();
+    registerAll(this.root);
+  }
+
+  // Waits up to the timeout for a change, then returns every change that is already queued, as
+  // paths relative to the project dir
+  public Set<String> poll(long timeoutMillis) throws InterruptedException {
+    Set<String> changedPaths = new LinkedHashSet<>();
+    WatchKey key = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    while (key != null) {
+      collect(key, changedPaths);
+      key = watchService.poll();
+    }
+    return changedPaths;
+  }
+
+  // Waits for a burst of changes to settle, that is until nothing has changed for the debounce
+  // time, and returns all of them. Returns an empty set once stopped.
+  public Set<String> awaitChanges(
+      long debounceMillis, long stopCheckMillis, BooleanSupplier stopped)
+      throws InterruptedException {
+    Set<String> changedPaths = new LinkedHashSet<>();
+    while (!stopped.getAsBoolean()) {
+      Set<String> changes = poll(changedPaths.isEmpty() ? stopCheckMillis : debounceMillis);
+      if (!changes.isEmpty()) {
+        changedPaths.addAll(changes);
+      } else if (!changedPaths.isEmpty()) {
+        return changedPaths;
+      }
+    }
+    return Collections.emptySet();
+  }
+
+  public int getWatchedDirectoryCount() {
+    return directories.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    directories.clear();
+    watchService.close();
+  }
+
+  private void collect(WatchKey key, Set<String> changedPaths) {
+    Path dir = directories.get(key);
+    if (dir == null) {
+      key.cancel();
+      return;
+    }
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        // Events were dropped, report the directory itself as changed
+        changedPaths.add(relativize(dir));
+        continue;
+      }
+      Path path = dir.resolve((Path) event.context());
+      if (isExcluded(path)) {
+        continue;
+      }
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+          && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+        try {
+          registerAll(path);
+        } catch (IOException e) {
+          logger.warn("Unable to watch {}: {}", path, e.getMessage());
+        }
+      }
+      changedPaths.add(relativize(path));
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  private void registerAll(Path start) throws IOException {
+    Files.walkFileTree(
+        start,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(root) && isExcluded(dir)) {
+              return FileVisitResult.SKIP_SUBTREE;
+            }
+            try {
+              WatchKey key =
+                  dir.register(
+                      watchService,
+                      StandardWatchEventKinds.ENTRY_CREATE,
+                      StandardWatchEventKinds.ENTRY_DELETE,
+                      StandardWatchEventKinds.ENTRY_MODIFY);
+              directories.put(key, dir);
+            } catch (IOException e) {
+              logger.warn("Unable to watch {}: {}", dir, e.getMessage());
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private boolean isExcluded(Path path) {
+    String name = path.getFileName().toString();
+    if (TOOL_DIRS.contains(name)) {
+      return true;
+    }
+    return OUTPUT_DIRS.contains(name) && isProjectDir(path.getParent());
+  }
+
+  private boolean isProjectDir(Path dir) {
+    if (dir.equals(root)) {
+      return true;
+    }
+    for (String projectFile : PROJECT_FILES) {
+      if (Files.isRegularFile(dir.resolve(projectFile))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String relativize(Path path) {
+    String relativePath = root.relativize(path).toString();
+    return relativePath.isEmpty() ? "." : relativePath;
+  }
+}
@@ -0,0 +1,51 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class BoundedExecutorTest {
+  // Starts every task at once, like a virtual thread per task executor
+  private final ExecutorService unboundedExecutor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    unboundedExecutor.shutdownNow();
+  }
+
+  @Test
+  public void execute_shouldRunAtMostTheBoundAtATime() throws InterruptedException {
+    BoundedExecutor boundedExecutor = new BoundedExecutor(unboundedExecutor, 2);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch finished = new CountDownLatch(6);
+    for (int i = 0; i < 6; i++) {
+      boundedExecutor.execute(
+          () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            finished.countDown();
+          });
+    }
+
+    Thread.sleep(200);
+    assertEquals(2, running.get());
+    release.countDown();
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+    assertEquals(2, maxRunning.get());
+  }
+}
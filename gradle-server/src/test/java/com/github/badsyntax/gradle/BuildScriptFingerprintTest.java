@@ -0,0 +1,94 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildScriptFingerprintTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path projectDir;
+  private List<String> buildFiles;
+
+  @Before
+  public void setUp() throws IOException {
+    projectDir = temporaryFolder.newFolder("project").toPath();
+    write("settings.gradle", "include 'app'");
+    write("build.gradle", "");
+    write("app/build.gradle", "apply plugin: 'java'");
+    buildFiles =
+        Arrays.asList(
+            projectDir.resolve("build.gradle").toString(),
+            projectDir.resolve("app/build.gradle").toString());
+  }
+
+  private void write(String path, String content) throws IOException {
+    Path file = projectDir.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String fingerprint() throws IOException {
+    return BuildScriptFingerprint.of(projectDir, buildFiles);
+  }
+
+  @Test
+  public void of_shouldChangeWhenAReportedBuildFileChanges() throws IOException {
+    String fingerprint = fingerprint();
+    assertEquals(fingerprint, fingerprint());
+    write("app/build.gradle", "apply plugin: 'java-library'");
+    assertNotEquals(fingerprint, fingerprint());
+  }
+
+  @Test
+  public void of_shouldChangeWhenARootInputChanges() throws IOException {
+    String fingerprint = fingerprint();
+    write("settings.gradle", "include 'app', 'lib'");
+    String withSettings = fingerprint();
+    assertNotEquals(fingerprint, withSettings);
+    // Missing files are fingerprinted too, so creating them is a change
+    write("gradle.properties", "org.gradle.parallel=true");
+    String withProperties = fingerprint();
+    assertNotEquals(withSettings, withProperties);
+    write("gradle/libs.versions.toml", "[versions]");
+    assertNotEquals(withProperties, fingerprint());
+  }
+
+  @Test
+  public void of_shouldChangeWhenBuildSrcSourcesChange() throws IOException {
+    write("buildSrc/src/main/java/Plugin.java", "class Plugin {}");
+    String fingerprint = fingerprint();
+    write("buildSrc/src/main/java/Plugin.java", "class Plugin { }");
+    assertNotEquals(fingerprint, fingerprint());
+  }
+
+  @Test
+  public void of_shouldIgnoreSourcesAndOutputs() throws IOException {
+    String fingerprint = fingerprint();
+    write("app/src/main/java/Main.java", "class Main {}");
+    write("app/build/classes/Main.class", "");
+    write("buildSrc/build/classes/Plugin.class", "");
+    write("buildSrc/.gradle/file-hashes.bin", "");
+    // Only reported build files count, a project can't add one without changing settings
+    write("docs/build.gradle", "");
+    assertEquals(fingerprint, fingerprint());
+  }
+
+  @Test
+  public void of_shouldOnlyUseTheRootInputsWithoutReportedBuildFiles() throws IOException {
+    String fingerprint = BuildScriptFingerprint.of(projectDir, Collections.emptyList());
+    write("app/build.gradle", "apply plugin: 'java-library'");
+    assertEquals(fingerprint, BuildScriptFingerprint.of(projectDir, Collections.emptyList()));
+  }
+}
@@ -0,0 +1,95 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import io.grpc.Context;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallCancellationTest {
+  private static final long GRACE_MILLIS = 100;
+
+  private final ServerStats serverStats = new ServerStats();
+  private final CountDownLatch cancelled = new CountDownLatch(1);
+  private CancellableBuild build;
+  private Context.CancellableContext context;
+
+  @Before
+  public void setUp() {
+    CallCancellation.setServerStats(serverStats);
+    CallCancellation.setGraceMillis(GRACE_MILLIS);
+    build = GradleBuildCancellation.register("orphan", "/project");
+    build.setCancelListener(cancelled::countDown);
+    context = Context.current().withCancellation();
+  }
+
+  @After
+  public void tearDown() {
+    CallCancellation.setServerStats(new ServerStats());
+    CallCancellation.setGraceMillis(0);
+    build.finish();
+  }
+
+  private CallCancellation bind(BooleanSupplier hasSubscribers) {
+    Context previous = context.attach();
+    try {
+      return CallCancellation.bind(build, hasSubscribers);
+    } finally {
+      context.detach(previous);
+    }
+  }
+
+  @Test
+  public void bind_shouldCancelTheBuildWithItsCall() throws InterruptedException {
+    bind(null);
+    context.cancel(null);
+
+    assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    assertTrue(build.getToken().isCancellationRequested());
+    assertEquals(1, serverStats.get(CallCancellation.ORPHANED_BUILD_CANCELLATIONS));
+  }
+
+  @Test
+  public void bind_shouldCancelOnceTheGraceExpiresWithoutAClient() throws InterruptedException {
+    bind(() -> false);
+    long start = System.nanoTime();
+    context.cancel(null);
+
+    assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= GRACE_MILLIS);
+    assertEquals(1, serverStats.get(CallCancellation.ORPHANED_BUILD_CANCELLATIONS));
+  }
+
+  @Test
+  public void bind_shouldCancelOnceTheLastAttachedClientDetaches() throws InterruptedException {
+    AtomicBoolean attached = new AtomicBoolean(true);
+    bind(attached::get);
+    context.cancel(null);
+
+    assertFalse(cancelled.await(GRACE_MILLIS * 5, TimeUnit.MILLISECONDS));
+    assertFalse(build.getToken().isCancellationRequested());
+
+    attached.set(false);
+
+    assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+    assertEquals(1, serverStats.get(CallCancellation.ORPHANED_BUILD_CANCELLATIONS));
+  }
+
+  @Test
+  public void close_shouldKeepTheBuildWhenItReturnsWithinTheGrace() throws InterruptedException {
+    CallCancellation callCancellation = bind(() -> false);
+    context.cancel(null);
+    callCancellation.close();
+
+    assertFalse(cancelled.await(GRACE_MILLIS * 5, TimeUnit.MILLISECONDS));
+    assertEquals(0, serverStats.get(CallCancellation.ORPHANED_BUILD_CANCELLATIONS));
+  }
+}
@@ -0,0 +1,54 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class CallObserverTest {
+  private final FakeServerCallStreamObserver<String> call = new FakeServerCallStreamObserver<>();
+  private final CallObserver<String> callObserver = new CallObserver<>(call);
+
+  @Test
+  public void isClosed_shouldBeFalseWhileCallIsOpen() {
+    callObserver.onNext("reply");
+    assertFalse(callObserver.isClosed());
+    assertEquals(1, call.getValues().size());
+  }
+
+  @Test
+  public void isClosed_shouldBeTrueOnceCompleted() {
+    callObserver.onCompleted();
+    assertTrue(callObserver.isClosed());
+    assertTrue(call.isCompleted());
+  }
+
+  @Test
+  public void isClosed_shouldBeTrueOnceFailed() {
+    RuntimeException error = new RuntimeException("failed");
+    callObserver.onError(error);
+    assertTrue(callObserver.isClosed());
+    assertSame(error, call.getError());
+  }
+
+  @Test
+  public void isClosed_shouldBeTrueOnceCancelled() {
+    call.cancel();
+    assertTrue(callObserver.isClosed());
+  }
+
+  @Test
+  public void shouldForwardFlowControlAndCancellation() {
+    Runnable onReady = () -> {};
+    Runnable onCancel = () -> {};
+    callObserver.setOnReadyHandler(onReady);
+    callObserver.setOnCancelHandler(onCancel);
+    call.setReady(false);
+
+    assertFalse(callObserver.isReady());
+    assertSame(onReady, call.getOnReadyHandler());
+    assertSame(onCancel, call.getOnCancelHandler());
+  }
+}
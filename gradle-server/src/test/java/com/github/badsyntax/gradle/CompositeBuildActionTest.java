@@ -0,0 +1,158 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.gradle.tooling.BuildController;
+import org.gradle.tooling.model.BuildIdentifier;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.UnsupportedMethodException;
+import org.gradle.tooling.model.gradle.BasicGradleProject;
+import org.gradle.tooling.model.gradle.GradleBuild;
+import org.junit.Test;
+
+public class CompositeBuildActionTest {
+  private final GradleProject rootProject = project("root");
+  private final Map<Object, Object> nestedModels = new HashMap<>();
+  private final List<String> nestedRequests = new ArrayList<>();
+
+  private static GradleProject project(String name) {
+    Map<String, Object> values = new HashMap<>();
+    values.put("getName", name);
+    return FakeGradleBackend.bean(GradleProject.class, values);
+  }
+
+  private static String rootDir(String name) {
+    return new File("/builds", name).getAbsolutePath();
+  }
+
+  private static GradleBuild build(String name, GradleBuild... includedBuilds) {
+    Map<String, Object> identifier = new HashMap<>();
+    identifier.put("getRootDir", new File(rootDir(name)));
+    Map<String, Object> rootProject = new HashMap<>();
+    rootProject.put("getName", name);
+    Map<String, Object> values = new HashMap<>();
+    values.put("getBuildIdentifier", FakeGradleBackend.bean(BuildIdentifier.class, identifier));
+    values.put("getRootProject", FakeGradleBackend.bean(BasicGradleProject.class, rootProject));
+    values.put(
+        "getIncludedBuilds", FakeGradleBackend.domainObjectSet(Arrays.asList(includedBuilds)));
+    return FakeGradleBackend.bean(GradleBuild.class, values);
+  }
+
+  // Included builds answer with a project of their own name, unless a model or failure was set
+  private BuildController controller(GradleBuild rootBuild) {
+    return (BuildController)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {BuildController.class},
+            (proxy, method, args) -> {
+              if (method.getName().equals("getBuildModel")) {
+                return rootBuild;
+              }
+              Object model = args.length == 1 ? rootProject : nestedModel(args[0]);
+              if (model instanceof RuntimeException) {
+                throw (RuntimeException) model;
+              }
+              return model;
+            });
+  }
+
+  private Object nestedModel(Object target) {
+    String name = ((BasicGradleProject) target).getName();
+    nestedRequests.add(name);
+    return nestedModels.containsKey(name) ? nestedModels.get(name) : project(name);
+  }
+
+  @Test
+  public void execute_shouldFetchIncludedBuildsRecursively() {
+    GradleBuild rootBuild = build("root", build("a", build("c")), build("b"));
+
+    CompositeBuildAction.Result result = new CompositeBuildAction().execute(controller(rootBuild));
+
+    assertSame(rootProject, result.getRootProject());
+    assertEquals(
+        Arrays.asList(rootDir("a"), rootDir("c"), rootDir("b")),
+        new ArrayList<>(result.getIncludedProjects().keySet()));
+    assertEquals("c", result.getIncludedProjects().get(rootDir("c")).getName());
+    assertTrue(result.getFailedBuilds().isEmpty());
+  }
+
+  @Test
+  public void execute_shouldFetchSharedIncludedBuildOnce() {
+    GradleBuild shared = build("shared");
+    GradleBuild rootBuild = build("root", build("a", shared), build("b", shared));
+
+    CompositeBuildAction.Result result = new CompositeBuildAction().execute(controller(rootBuild));
+
+    assertEquals(Arrays.asList("a", "shared", "b"), nestedRequests);
+    assertEquals(3, result.getIncludedProjects().size());
+  }
+
+  @Test
+  public void execute_shouldRecordFailingIncludedBuild() {
+    nestedModels.put("b", new IllegalStateException("Could not compile settings file"));
+    GradleBuild rootBuild = build("root", build("a"), build("b", build("c")), build("d"));
+
+    CompositeBuildAction.Result result = new CompositeBuildAction().execute(controller(rootBuild));
+
+    assertSame(rootProject, result.getRootProject());
+    assertEquals(
+        Arrays.asList(rootDir("a"), rootDir("d")),
+        new ArrayList<>(result.getIncludedProjects().keySet()));
+    assertEquals("Could not compile settings file", result.getFailedBuilds().get(rootDir("b")));
+    // The builds included by a failed build are not reachable
+    assertEquals(Arrays.asList("a", "b", "d"), nestedRequests);
+  }
+
+  @Test
+  public void execute_shouldFailWhenRootBuildFails() {
+    GradleBuild rootBuild = build("root", build("a"));
+    BuildController controller =
+        (BuildController)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {BuildController.class},
+                (proxy, method, args) -> {
+                  if (method.getName().equals("getBuildModel")) {
+                    return rootBuild;
+                  }
+                  if (args.length == 1) {
+                    throw new IllegalStateException("Build cancelled");
+                  }
+                  return nestedModel(args[0]);
+                });
+
+    try {
+      new CompositeBuildAction().execute(controller);
+      fail("Expected the root build failure to fail the action");
+    } catch (IllegalStateException e) {
+      assertEquals("Build cancelled", e.getMessage());
+    }
+  }
+
+  @Test
+  public void execute_shouldSkipIncludedBuildsOnOldGradleVersions() {
+    GradleBuild rootBuild =
+        (GradleBuild)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {GradleBuild.class},
+                (proxy, method, args) -> {
+                  throw new UnsupportedMethodException("getIncludedBuilds is not supported");
+                });
+
+    CompositeBuildAction.Result result = new CompositeBuildAction().execute(controller(rootBuild));
+
+    assertSame(rootProject, result.getRootProject());
+    assertTrue(result.getIncludedProjects().isEmpty());
+  }
+}
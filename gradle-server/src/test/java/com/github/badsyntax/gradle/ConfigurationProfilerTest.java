@@ -0,0 +1,102 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.gradle.tooling.events.PluginIdentifier;
+import org.gradle.tooling.events.configuration.ProjectConfigurationFinishEvent;
+import org.gradle.tooling.events.configuration.ProjectConfigurationOperationDescriptor;
+import org.gradle.tooling.events.configuration.ProjectConfigurationOperationResult;
+import org.gradle.tooling.model.BuildIdentifier;
+import org.gradle.tooling.model.ProjectIdentifier;
+import org.junit.Test;
+
+public class ConfigurationProfilerTest {
+  private static final File ROOT_DIR = new File("/project").getAbsoluteFile();
+
+  private static ProjectConfigurationFinishEvent event(
+      String projectPath, long startTime, long endTime, String... plugins) {
+    List<ProjectConfigurationOperationResult.PluginApplicationResult> pluginResults =
+        new ArrayList<>();
+    for (int i = 0; i < plugins.length; i++) {
+      Map<String, Object> plugin = new HashMap<>();
+      plugin.put("getDisplayName", plugins[i]);
+      Map<String, Object> pluginResult = new HashMap<>();
+      pluginResult.put("getPlugin", FakeGradleBackend.bean(PluginIdentifier.class, plugin));
+      pluginResult.put("getTotalConfigurationTime", Duration.ofMillis(i + 1));
+      pluginResults.add(
+          FakeGradleBackend.bean(
+              ProjectConfigurationOperationResult.PluginApplicationResult.class, pluginResult));
+    }
+    Map<String, Object> buildIdentifier = new HashMap<>();
+    buildIdentifier.put("getRootDir", ROOT_DIR);
+    Map<String, Object> project = new HashMap<>();
+    project.put("getProjectPath", projectPath);
+    project.put(
+        "getBuildIdentifier", FakeGradleBackend.bean(BuildIdentifier.class, buildIdentifier));
+    Map<String, Object> descriptor = new HashMap<>();
+    descriptor.put("getProject", FakeGradleBackend.bean(ProjectIdentifier.class, project));
+    Map<String, Object> result = new HashMap<>();
+    result.put("getStartTime", startTime);
+    result.put("getEndTime", endTime);
+    result.put("getPluginApplicationResults", pluginResults);
+    Map<String, Object> event = new HashMap<>();
+    event.put(
+        "getDescriptor",
+        FakeGradleBackend.bean(ProjectConfigurationOperationDescriptor.class, descriptor));
+    event.put(
+        "getResult", FakeGradleBackend.bean(ProjectConfigurationOperationResult.class, result));
+    return FakeGradleBackend.bean(ProjectConfigurationFinishEvent.class, event);
+  }
+
+  @Test
+  public void build_shouldRankProjectsBySlowestFirst() {
+    ConfigurationProfiler profiler = new ConfigurationProfiler();
+    profiler.onEvent(event(":", 100, 150));
+    profiler.onEvent(event(":app", 150, 400));
+    profiler.onEvent(event(":lib", 160, 200));
+
+    ConfigurationProfile profile = profiler.build("/project", "abc");
+    assertEquals("/project", profile.getProjectDir());
+    assertEquals("abc", profile.getCommit());
+    assertEquals(300, profile.getTotalMillis());
+    assertEquals(
+        Arrays.asList(":app", ":", ":lib"),
+        profile.getProjectsList().stream()
+            .map(ProjectConfigurationTime::getProjectPath)
+            .collect(Collectors.toList()));
+    assertEquals(250, profile.getProjects(0).getDurationMillis());
+    assertEquals(ROOT_DIR.getAbsolutePath(), profile.getProjects(0).getRootDir());
+  }
+
+  @Test
+  public void build_shouldKeepTheSlowestPluginsOfAProject() {
+    ConfigurationProfiler profiler = new ConfigurationProfiler();
+    String[] plugins = new String[12];
+    for (int i = 0; i < plugins.length; i++) {
+      plugins[i] = "plugin" + i;
+    }
+    profiler.onEvent(event(":app", 0, 100, plugins));
+
+    List<PluginApplicationTime> pluginTimes =
+        profiler.build("/project", "").getProjects(0).getPluginsList();
+    assertEquals(10, pluginTimes.size());
+    assertEquals("plugin11", pluginTimes.get(0).getPlugin());
+    assertEquals(12, pluginTimes.get(0).getDurationMillis());
+    assertEquals("plugin2", pluginTimes.get(9).getPlugin());
+  }
+
+  @Test
+  public void build_shouldReportNothingWithoutConfigurationEvents() {
+    ConfigurationProfile profile = new ConfigurationProfiler().build("/project", "");
+    assertEquals(0, profile.getTotalMillis());
+    assertEquals(0, profile.getProjectsCount());
+  }
+}
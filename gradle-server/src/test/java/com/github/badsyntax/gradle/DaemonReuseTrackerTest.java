@@ -0,0 +1,62 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import org.junit.Test;
+
+public class DaemonReuseTrackerTest {
+  private static final String PROJECT_DIR = "/project";
+
+  private static GradleConfig config(String jvmArguments) {
+    return GradleConfig.newBuilder().setVersion("6.4").setJvmArguments(jvmArguments).build();
+  }
+
+  @Test
+  public void onLaunch_shouldCountSpawnsAndReuses() {
+    ServerStats serverStats = new ServerStats();
+    DaemonReuseTracker tracker = new DaemonReuseTracker(serverStats);
+
+    assertNull(tracker.onLaunch(PROJECT_DIR, config("-Xmx1g")).getWarning());
+    assertNull(tracker.onLaunch(PROJECT_DIR, config(" -Xmx1g ")).getWarning());
+    assertEquals(1, serverStats.get(DaemonReuseTracker.DAEMON_SPAWNS));
+    assertEquals(1, serverStats.get(DaemonReuseTracker.DAEMON_REUSES));
+  }
+
+  @Test
+  public void onLaunch_shouldWarnWhenTheArgumentsChange() {
+    DaemonReuseTracker tracker = new DaemonReuseTracker(new ServerStats());
+    tracker.onLaunch(PROJECT_DIR, config("-Xmx1g"));
+
+    DaemonReuseTracker.Launch launch = tracker.onLaunch(PROJECT_DIR, config("-Xmx2g"));
+    assertNotNull(launch.getWarning());
+    assertEquals(
+        "Gradle will start a new daemon for /project, its JVM arguments changed: "
+            + "added [-Xmx2g], removed [-Xmx1g]",
+        launch.getWarning());
+    // Switching back reuses the daemon that was started first
+    assertNull(tracker.onLaunch(PROJECT_DIR, config("-Xmx1g")).getWarning());
+  }
+
+  @Test
+  public void onLaunch_shouldTrackEachServerOnItsOwn() {
+    DaemonReuseTracker tracker = new DaemonReuseTracker(new ServerStats());
+    tracker.onLaunch(PROJECT_DIR, config("-Xmx1g"));
+
+    DaemonReuseTracker otherTracker = new DaemonReuseTracker(new ServerStats());
+    assertNull(otherTracker.onLaunch(PROJECT_DIR, config("-Xmx2g")).getWarning());
+  }
+
+  @Test
+  public void onLaunch_shouldForgetTheLeastRecentlyLaunchedDaemonKeys() {
+    DaemonReuseTracker tracker = new DaemonReuseTracker(new ServerStats());
+    tracker.onLaunch(PROJECT_DIR, config("-Xmx1g"));
+    for (int i = 0; i < 64; i++) {
+      tracker.onLaunch(PROJECT_DIR, config("-Xmx1g").toBuilder().setVersion("7." + i).build());
+    }
+    // The first key was evicted, so its previous launch is no longer known
+    assertNull(tracker.onLaunch(PROJECT_DIR, config("-Xmx2g")).getWarning());
+  }
+}
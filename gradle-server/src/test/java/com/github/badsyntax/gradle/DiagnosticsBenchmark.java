@@ -0,0 +1,167 @@
+package com.github.badsyntax.gradle;
+
+import com.github.badsyntax.gradle.diagnostics.DiagnosticExtractor;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+// Compares diagnostic extraction with the keyword automaton against decoding every line and
+// matching it with one regex per diagnostic kind, and against only copying the output. The
+// default is 100MB, the output size the extractor's overhead is budgeted for. Run with
+// ./gradlew :gradle-server:diagnosticsBenchmark [-Pargs="megabytes iterations chunkBytes"]
+@SuppressWarnings("java:S106")
+public class DiagnosticsBenchmark {
+  private static final int WARMUP_ITERATIONS = 3;
+  // One in this many lines is part of a diagnostic
+  private static final int DIAGNOSTIC_EVERY_LINES = 500;
+
+  private static final List<Pattern> LINE_PATTERNS =
+      Arrays.asList(
+          Pattern.compile("^(.+):(\\d+): (error|warning): (.*)$"),
+          Pattern.compile(
+              "^[ew]: (?:file://)?(.+?\\.kts?)(?::(\\d+):(\\d+)|: \\((\\d+), (\\d+)\\):) "),
+          Pattern.compile("^\\* What went wrong:"),
+          Pattern.compile("^\\* Where:"),
+          Pattern.compile("^(.+) > (.+) FAILED$"),
+          Pattern.compile("Deprecated Gradle features were used"));
+  private static final Pattern ANSI_ESCAPE = Pattern.compile("\u001B\\[[0-9;?]*[A-Za-z]");
+
+  private final byte[] output;
+  private final int iterations;
+  private final int chunkBytes;
+
+  DiagnosticsBenchmark(int megabytes, int iterations, int chunkBytes) {
+    this.output = generateOutput(megabytes * 1024 * 1024);
+    this.iterations = iterations;
+    this.chunkBytes = chunkBytes;
+  }
+
+  public static void main(String[] args) {
+    DiagnosticsBenchmark benchmark =
+        new DiagnosticsBenchmark(
+            args.length > 0 ? Integer.parseInt(args[0]) : 100,
+            args.length > 1 ? Integer.parseInt(args[1]) : 5,
+            args.length > 2 ? Integer.parseInt(args[2]) : 8192);
+    System.out.printf(
+        "%d MB of output in chunks of %d bytes, %d iterations%n",
+        benchmark.output.length / (1024 * 1024), benchmark.chunkBytes, benchmark.iterations);
+    System.out.printf("%-10s %12s %14s%n", "", "MB/s", "diagnostics");
+    benchmark.run("copy", benchmark::copy);
+    benchmark.run("automaton", benchmark::extract);
+    benchmark.run("regex", benchmark::matchLines);
+  }
+
+  private interface Scan {
+    int scan();
+  }
+
+  private void run(String name, Scan scan) {
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      scan.scan();
+    }
+    long start = System.nanoTime();
+    int found = 0;
+    for (int i = 0; i < iterations; i++) {
+      found = scan.scan();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    double megabytes = (double) output.length * iterations / (1024 * 1024);
+    System.out.printf("%-10s %12.1f %14d%n", name, megabytes / seconds, found);
+  }
+
+  // The cost of handing the output over in chunks, which every scan pays
+  private int copy() {
+    byte[] last = null;
+    for (int offset = 0; offset < output.length; offset += chunkBytes) {
+      last = Arrays.copyOfRange(output, offset, Math.min(output.length, offset + chunkBytes));
+    }
+    return last == null ? 0 : last[0] & 0;
+  }
+
+  private int extract() {
+    int[] found = {0};
+    DiagnosticExtractor extractor = new DiagnosticExtractor(diagnostic -> found[0]++);
+    for (int offset = 0; offset < output.length; offset += chunkBytes) {
+      extractor.write(
+          Arrays.copyOfRange(output, offset, Math.min(output.length, offset + chunkBytes)));
+    }
+    extractor.finish();
+    return found[0];
+  }
+
+  private int matchLines() {
+    int found = 0;
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    for (int offset = 0; offset < output.length; offset += chunkBytes) {
+      byte[] chunk =
+          Arrays.copyOfRange(output, offset, Math.min(output.length, offset + chunkBytes));
+      for (byte b : chunk) {
+        if (b != '\n') {
+          line.write(b);
+          continue;
+        }
+        String text = ANSI_ESCAPE.matcher(line.toString()).replaceAll("");
+        line.reset();
+        for (Pattern pattern : LINE_PATTERNS) {
+          if (pattern.matcher(text).find()) {
+            found++;
+            break;
+          }
+        }
+      }
+    }
+    return found;
+  }
+
+  private static byte[] generateOutput(int bytes) {
+    Random random = new Random(1);
+    StringBuilder text = new StringBuilder(bytes + 256);
+    int lineNumber = 0;
+    while (text.length() < bytes) {
+      if (++lineNumber % DIAGNOSTIC_EVERY_LINES == 0) {
+        appendDiagnostic(text, random.nextInt(4), lineNumber);
+      } else if (lineNumber % 20 == 0) {
+        text.append("\u001B[1m> Task :module")
+            .append(lineNumber % 37)
+            .append(":compileJava\u001B[m\n");
+      } else {
+        text.append("    [main] INFO com.example.Service - processed request ")
+            .append(random.nextInt(1000000))
+            .append(" in ")
+            .append(random.nextInt(500))
+            .append("ms: status=ok, items=")
+            .append(random.nextInt(100))
+            .append('\n');
+      }
+    }
+    return text.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void appendDiagnostic(StringBuilder text, int kind, int lineNumber) {
+    switch (kind) {
+      case 0:
+        text.append("/src/main/java/com/example/Service.java:")
+            .append(lineNumber % 400)
+            .append(": error: cannot find symbol\n        helper.run();\n              ^\n");
+        break;
+      case 1:
+        text.append("w: file:///src/main/kotlin/Util.kt:")
+            .append(lineNumber % 90)
+            .append(":7 Parameter 'x' is never used\n");
+        break;
+      case 2:
+        text.append("ServiceTest > handlesRequest")
+            .append(lineNumber)
+            .append(" FAILED\n    java.lang.AssertionError at ServiceTest.java:")
+            .append(lineNumber % 200)
+            .append('\n');
+        break;
+      default:
+        text.append("* What went wrong:\nExecution failed for task ':app:compileJava'.\n")
+            .append("> Compilation failed; see the compiler error output for details.\n\n");
+    }
+  }
+}
@@ -0,0 +1,537 @@
+package com.github.badsyntax.gradle;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.gradle.tooling.BuildAction;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.BuildLauncher;
+import org.gradle.tooling.CancellationToken;
+import org.gradle.tooling.GradleConnectionException;
+import org.gradle.tooling.UnsupportedVersionException;
+import org.gradle.tooling.events.OperationDescriptor;
+import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressEvent;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.events.configuration.ProjectConfigurationFinishEvent;
+import org.gradle.tooling.events.configuration.ProjectConfigurationOperationDescriptor;
+import org.gradle.tooling.events.configuration.ProjectConfigurationOperationResult;
+import org.gradle.tooling.events.task.TaskFinishEvent;
+import org.gradle.tooling.events.task.TaskOperationDescriptor;
+import org.gradle.tooling.events.task.TaskStartEvent;
+import org.gradle.tooling.events.task.TaskSuccessResult;
+import org.gradle.tooling.model.BuildIdentifier;
+import org.gradle.tooling.model.DomainObjectSet;
+import org.gradle.tooling.model.GradleProject;
+import org.gradle.tooling.model.GradleTask;
+import org.gradle.tooling.model.ProjectIdentifier;
+import org.gradle.tooling.model.build.BuildEnvironment;
+import org.gradle.tooling.model.build.GradleEnvironment;
+import org.gradle.tooling.model.build.JavaEnvironment;
+import org.gradle.tooling.model.gradle.GradleScript;
+
+// An in-memory Gradle for tests and load tests. Every project has the same shape, and builds take
+// a fixed time while writing output and progress events at fixed rates, so runs are repeatable
+// and need no daemons, distributions or network. Tests can replace the build with their own and
+// check the operations the server ran. Tooling API models and events are implemented with
+// dynamic proxies, which only answer the calls the server makes.
+public class FakeGradleBackend implements GradleBackend {
+  private static final long TICK_MILLIS = 10;
+  private static final byte[] OUTPUT_LINE =
+      "> Fake output of a task that is running\n".getBytes(StandardCharsets.UTF_8);
+
+  private int projects = 10;
+  private int tasksPerProject = 20;
+  private long configurationMillis = 100;
+  private long buildMillis = 200;
+  private long outputBytesPerSecond = 64 * 1024;
+  private long progressEventsPerSecond = 100;
+  private volatile Build build;
+  private volatile Map<String, String> failedIncludedBuilds;
+  private final List<Invocation> invocations = new CopyOnWriteArrayList<>();
+
+  public FakeGradleBackend setProjects(int projects) {
+    this.projects = projects;
+    return this;
+  }
+
+  public FakeGradleBackend setTasksPerProject(int tasksPerProject) {
+    this.tasksPerProject = tasksPerProject;
+    return this;
+  }
+
+  // Spread evenly over the projects of a GetBuild
+  public FakeGradleBackend setConfigurationMillis(long configurationMillis) {
+    this.configurationMillis = configurationMillis;
+    return this;
+  }
+
+  // Spread evenly over the requested tasks of a RunBuild
+  public FakeGradleBackend setBuildMillis(long buildMillis) {
+    this.buildMillis = buildMillis;
+    return this;
+  }
+
+  public FakeGradleBackend setOutputBytesPerSecond(long outputBytesPerSecond) {
+    this.outputBytesPerSecond = outputBytesPerSecond;
+    return this;
+  }
+
+  public FakeGradleBackend setProgressEventsPerSecond(long progressEventsPerSecond) {
+    this.progressEventsPerSecond = progressEventsPerSecond;
+    return this;
+  }
+
+  // Runs instead of the timed build, for tests that need a build to write particular output,
+  // fail or wait for cancellation
+  public FakeGradleBackend setBuild(Build build) {
+    this.build = build;
+    return this;
+  }
+
+  // Answers the composite build action with a root build whose included builds all failed, keyed
+  // by their root dir. Without it, build actions are unsupported as on old Gradle versions.
+  public FakeGradleBackend setFailedIncludedBuilds(Map<String, String> failedIncludedBuilds) {
+    this.failedIncludedBuilds = failedIncludedBuilds;
+    return this;
+  }
+
+  public interface Build {
+    void run(GradleOperation operation) throws Exception;
+  }
+
+  // A build for tests that runs until it is cancelled
+  public static void awaitCancellation(GradleOperation operation) throws InterruptedException {
+    while (!operation.getCancellationToken().isCancellationRequested()) {
+      sleep(TICK_MILLIS);
+    }
+    throw new BuildCancelledException("Build cancelled");
+  }
+
+  // A build, model request or build action that was run, and how the server configured it
+  public static class Invocation {
+    private final String projectDir;
+    private final GradleConfig gradleConfig;
+    private final Class<?> type;
+    private final GradleOperation operation;
+
+    Invocation(
+        String projectDir, GradleConfig gradleConfig, Class<?> type, GradleOperation operation) {
+      this.projectDir = projectDir;
+      this.gradleConfig = gradleConfig;
+      this.type = type;
+      this.operation = operation;
+    }
+
+    public String getProjectDir() {
+      return projectDir;
+    }
+
+    public GradleConfig getGradleConfig() {
+      return gradleConfig;
+    }
+
+    // The model type, the build action class, or BuildLauncher for builds
+    public Class<?> getType() {
+      return type;
+    }
+
+    public GradleOperation getOperation() {
+      return operation;
+    }
+  }
+
+  public List<Invocation> getInvocations() {
+    return invocations;
+  }
+
+  public List<Invocation> getInvocations(Class<?> type) {
+    List<Invocation> matching = new ArrayList<>();
+    for (Invocation invocation : invocations) {
+      if (invocation.getType() == type) {
+        matching.add(invocation);
+      }
+    }
+    return matching;
+  }
+
+  @Override
+  public GradleSession connect(String projectDir, GradleConfig config) {
+    File rootDir = new File(projectDir);
+    return new GradleSession() {
+      @Override
+      public <T> T getModel(Class<T> modelType, GradleOperation operation) {
+        record(modelType, operation);
+        return modelType.cast(call(() -> new Operation(rootDir, operation).getModel(modelType)));
+      }
+
+      @Override
+      public <T> T run(BuildAction<T> buildAction, GradleOperation operation) {
+        record(buildAction.getClass(), operation);
+        Map<String, String> failedBuilds = failedIncludedBuilds;
+        if (failedBuilds == null || !(buildAction instanceof CompositeBuildAction)) {
+          throw new UnsupportedVersionException("Build actions are not supported by the fake");
+        }
+        Object rootProject =
+            call(() -> new Operation(rootDir, operation).getModel(GradleProject.class));
+        @SuppressWarnings("unchecked")
+        T result =
+            (T)
+                new CompositeBuildAction.Result(
+                    (GradleProject) rootProject, Collections.emptyMap(), failedBuilds);
+        return result;
+      }
+
+      @Override
+      public void runBuild(GradleOperation operation) {
+        record(BuildLauncher.class, operation);
+        Build testBuild = build;
+        call(
+            () -> {
+              if (testBuild != null) {
+                testBuild.run(operation);
+              } else {
+                new Operation(rootDir, operation).runBuild();
+              }
+              return null;
+            });
+      }
+
+      @Override
+      public void close() {
+        // Nothing to release
+      }
+
+      private void record(Class<?> type, GradleOperation operation) {
+        invocations.add(new Invocation(projectDir, config, type, operation));
+      }
+    };
+  }
+
+  private interface Call<T> {
+    T call() throws Exception;
+  }
+
+  // Rethrows like the Tooling API, which only throws unchecked exceptions
+  private static <T> T call(Call<T> call) {
+    try {
+      return call.call();
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new BuildCancelledException("Interrupted", e);
+    } catch (Exception e) {
+      throw new GradleConnectionException("Fake build failed", e);
+    }
+  }
+
+  // A model request or build, as described by its operation
+  private class Operation {
+    private final File rootDir;
+    private final GradleOperation operation;
+
+    Operation(File rootDir, GradleOperation operation) {
+      this.rootDir = rootDir;
+      this.operation = operation;
+    }
+
+    private Object getModel(Class<?> modelType) throws InterruptedException {
+      if (modelType == BuildEnvironment.class) {
+        return buildEnvironment();
+      }
+      if (modelType == GradleProject.class) {
+        return configureProjects();
+      }
+      throw new UnsupportedVersionException("Model is not supported by the fake: " + modelType);
+    }
+
+    private Object buildEnvironment() {
+      Map<String, Object> gradle = new HashMap<>();
+      gradle.put("getGradleUserHome", new File(rootDir, ".gradle-user-home"));
+      gradle.put("getGradleVersion", "6.4");
+      Map<String, Object> java = new HashMap<>();
+      java.put("getJavaHome", new File(System.getProperty("java.home")));
+      java.put("getJvmArguments", Collections.emptyList());
+      Map<String, Object> environment = new HashMap<>();
+      environment.put("getGradle", bean(GradleEnvironment.class, gradle));
+      environment.put("getJava", bean(JavaEnvironment.class, java));
+      return bean(BuildEnvironment.class, environment);
+    }
+
+    private GradleProject configureProjects() throws InterruptedException {
+      GradleProject root = project(null, ":", rootDir.getName());
+      List<GradleProject> children = new ArrayList<>();
+      for (int i = 0; i < projects; i++) {
+        children.add(project(root, ":project" + i, "project" + i));
+      }
+      setChildren(root, children);
+      long projectMillis = configurationMillis / (projects + 1);
+      configure(":", projectMillis);
+      for (int i = 0; i < projects; i++) {
+        configure(":project" + i, projectMillis);
+      }
+      return root;
+    }
+
+    private void configure(String projectPath, long durationMillis) throws InterruptedException {
+      long startTime = System.currentTimeMillis();
+      sleep(durationMillis);
+      Map<String, Object> buildIdentifier = new HashMap<>();
+      buildIdentifier.put("getRootDir", rootDir);
+      Map<String, Object> project = new HashMap<>();
+      project.put("getProjectPath", projectPath);
+      project.put("getBuildIdentifier", bean(BuildIdentifier.class, buildIdentifier));
+      Map<String, Object> descriptor = new HashMap<>();
+      descriptor.put("getProject", bean(ProjectIdentifier.class, project));
+      descriptor.put("getDisplayName", "Configure project " + projectPath);
+      Map<String, Object> result = new HashMap<>();
+      result.put("getStartTime", startTime);
+      result.put("getEndTime", System.currentTimeMillis());
+      Map<String, Object> event = new HashMap<>();
+      event.put("getDisplayName", "Configure project " + projectPath + " SUCCESS");
+      event.put("getEventTime", System.currentTimeMillis());
+      event.put(
+          "getDescriptor", bean(ProjectConfigurationOperationDescriptor.class, descriptor));
+      event.put("getResult", bean(ProjectConfigurationOperationResult.class, result));
+      emit(OperationType.PROJECT_CONFIGURATION, bean(ProjectConfigurationFinishEvent.class, event));
+    }
+
+    // Writes output and progress at the configured rates, starting the requested tasks one after
+    // the other, until the build time is up or the build is cancelled
+    private void runBuild() throws IOException, InterruptedException {
+      List<String> tasks = new ArrayList<>();
+      for (String argument : operation.getArguments()) {
+        if (!argument.startsWith("-")) {
+          tasks.add(argument.startsWith(":") ? argument : ":" + argument);
+        }
+      }
+      List<String> buildTasks = tasks.isEmpty() ? Collections.singletonList(":help") : tasks;
+      CancellationToken cancellationToken = operation.getCancellationToken();
+      OutputStream standardOutput = operation.getStandardOutput();
+      long taskMillis = Math.max(1, buildMillis / buildTasks.size());
+      long startMillis = System.currentTimeMillis();
+      long outputBytes = 0;
+      long progressEvents = 0;
+      int startedTasks = 0;
+      long taskStartTime = 0;
+      while (true) {
+        if (cancellationToken != null && cancellationToken.isCancellationRequested()) {
+          throw new BuildCancelledException("Build cancelled");
+        }
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+        int currentTask = (int) Math.min(buildTasks.size(), elapsedMillis / taskMillis);
+        while (startedTasks > 0 && startedTasks <= currentTask) {
+          finishTask(buildTasks.get(startedTasks - 1), taskStartTime);
+          if (startedTasks == buildTasks.size()) {
+            return;
+          }
+          taskStartTime = startTask(buildTasks.get(startedTasks++));
+        }
+        if (startedTasks == 0) {
+          taskStartTime = startTask(buildTasks.get(startedTasks++));
+        }
+        for (; progressEvents < progressEventsPerSecond * elapsedMillis / 1000; progressEvents++) {
+          emit(OperationType.TRANSFORM, progressEvent("Transform fake-" + progressEvents + ".jar"));
+        }
+        long dueBytes = outputBytesPerSecond * elapsedMillis / 1000;
+        if (standardOutput != null && outputBytes < dueBytes) {
+          for (; outputBytes < dueBytes; outputBytes += OUTPUT_LINE.length) {
+            standardOutput.write(OUTPUT_LINE);
+          }
+          standardOutput.flush();
+        }
+        sleep(TICK_MILLIS);
+      }
+    }
+
+    private long startTask(String taskPath) {
+      long startTime = System.currentTimeMillis();
+      Map<String, Object> event = new HashMap<>();
+      event.put("getDisplayName", "Task " + taskPath + " started");
+      event.put("getEventTime", startTime);
+      event.put("getDescriptor", taskDescriptor(taskPath));
+      emit(OperationType.TASK, bean(TaskStartEvent.class, event));
+      return startTime;
+    }
+
+    private void finishTask(String taskPath, long startTime) {
+      Map<String, Object> result = new HashMap<>();
+      result.put("getStartTime", startTime);
+      result.put("getEndTime", System.currentTimeMillis());
+      Map<String, Object> event = new HashMap<>();
+      event.put("getDisplayName", "Task " + taskPath + " SUCCESS");
+      event.put("getEventTime", System.currentTimeMillis());
+      event.put("getDescriptor", taskDescriptor(taskPath));
+      event.put("getResult", bean(TaskSuccessResult.class, result));
+      emit(OperationType.TASK, bean(TaskFinishEvent.class, event));
+    }
+
+    private void emit(OperationType type, ProgressEvent event) {
+      for (Map.Entry<ProgressListener, Set<OperationType>> listener :
+          operation.getProgressListeners().entrySet()) {
+        if (listener.getValue().contains(type)) {
+          listener.getKey().statusChanged(event);
+        }
+      }
+    }
+
+    private GradleProject project(GradleProject parent, String path, String name) {
+      Map<String, Object> buildScript = new HashMap<>();
+      buildScript.put("getSourceFile", new File(rootDir, "build.gradle"));
+      Map<String, Object> values = new HashMap<>();
+      values.put("getName", name);
+      values.put("getPath", path);
+      values.put("getParent", parent);
+      values.put("getBuildScript", bean(GradleScript.class, buildScript));
+      values.put("getChildren", domainObjectSet(Collections.emptyList()));
+      GradleProject project = bean(GradleProject.class, values);
+      List<GradleTask> projectTasks = new ArrayList<>();
+      String pathPrefix = path.equals(":") ? ":" : path + ":";
+      for (int i = 0; i < tasksPerProject; i++) {
+        Map<String, Object> task = new HashMap<>();
+        task.put("getName", "task" + i);
+        task.put("getPath", pathPrefix + "task" + i);
+        task.put("getProject", project);
+        task.put("getGroup", "fake");
+        task.put("getDescription", "Fake task " + i + " of " + path);
+        projectTasks.add(bean(GradleTask.class, task));
+      }
+      values.put("getTasks", domainObjectSet(projectTasks));
+      return project;
+    }
+
+    private void setChildren(GradleProject root, List<GradleProject> children) {
+      ((BeanHandler) Proxy.getInvocationHandler(root))
+          .values
+          .put("getChildren", domainObjectSet(children));
+    }
+
+    private Object taskDescriptor(String taskPath) {
+      Map<String, Object> descriptor = new HashMap<>();
+      descriptor.put("getTaskPath", taskPath);
+      descriptor.put("getName", taskPath);
+      descriptor.put("getDisplayName", "Task " + taskPath);
+      descriptor.put("getDependencies", Collections.emptySet());
+      return bean(TaskOperationDescriptor.class, descriptor);
+    }
+
+    private ProgressEvent progressEvent(String displayName) {
+      Map<String, Object> descriptor = new HashMap<>();
+      descriptor.put("getDisplayName", displayName);
+      descriptor.put("getName", displayName);
+      Map<String, Object> event = new HashMap<>();
+      event.put("getDisplayName", displayName);
+      event.put("getEventTime", System.currentTimeMillis());
+      event.put("getDescriptor", bean(OperationDescriptor.class, descriptor));
+      return bean(ProgressEvent.class, event);
+    }
+  }
+
+  private static void sleep(long millis) throws InterruptedException {
+    if (millis > 0) {
+      Thread.sleep(millis);
+    }
+  }
+
+  // A read-only object whose methods return the given values, by method name
+  private static class BeanHandler implements InvocationHandler {
+    private final Map<String, Object> values;
+
+    BeanHandler(Map<String, Object> values) {
+      this.values = values;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (values.containsKey(method.getName())) {
+        return values.get(method.getName());
+      }
+      return answerDefault(proxy, method, args);
+    }
+  }
+
+  static <T> T bean(Class<T> type, Map<String, Object> values) {
+    return proxy(type, new BeanHandler(values));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> DomainObjectSet<T> domainObjectSet(List<T> items) {
+    Set<T> set = new LinkedHashSet<>(items);
+    return proxy(
+        DomainObjectSet.class,
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getAll":
+              return new ArrayList<>(items);
+            case "getAt":
+              return items.get((Integer) args[0]);
+            default:
+              if (method.getDeclaringClass().isInstance(set)) {
+                try {
+                  return method.invoke(set, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              }
+              return answerDefault(proxy, method, args);
+          }
+        });
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<?> type, InvocationHandler handler) {
+    return (T)
+        Proxy.newProxyInstance(
+            FakeGradleBackend.class.getClassLoader(), new Class<?>[] {type}, handler);
+  }
+
+  // Identity for Object methods, the proxy itself for fluent setters, and empty values for
+  // everything else, including getters like getParent that return their own type
+  private static Object answerDefault(Object proxy, Method method, Object[] args) {
+    switch (method.getName()) {
+      case "equals":
+        return proxy == args[0];
+      case "hashCode":
+        return System.identityHashCode(proxy);
+      case "toString":
+        return "Fake " + proxy.getClass().getInterfaces()[0].getSimpleName();
+      default:
+        break;
+    }
+    Class<?> returnType = method.getReturnType();
+    if (returnType.isInstance(proxy) && !method.getName().startsWith("get")) {
+      return proxy;
+    }
+    if (returnType == boolean.class) {
+      return false;
+    }
+    if (returnType == int.class) {
+      return 0;
+    }
+    if (returnType == long.class) {
+      return 0L;
+    }
+    if (Set.class.isAssignableFrom(returnType)) {
+      return Collections.emptySet();
+    }
+    if (Collection.class.isAssignableFrom(returnType)) {
+      return Collections.emptyList();
+    }
+    return null;
+  }
+}
@@ -0,0 +1,143 @@
+package com.github.badsyntax.gradle;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import java.util.ArrayList;
+import java.util.List;
+
+// The observer of a server call, which records what the server sends and lets tests control
+// readiness and cancellation
+public class FakeServerCallStreamObserver<T> extends ServerCallStreamObserver<T> {
+  private final List<T> values = new ArrayList<>();
+  private Throwable error;
+  private boolean completed;
+  private boolean ready = true;
+  private boolean cancelled;
+  private Runnable onReadyHandler;
+  private Runnable onCancelHandler;
+  private String compression;
+  private boolean messageCompression = true;
+  private final List<Boolean> messageCompressions = new ArrayList<>();
+  private int requested;
+
+  @Override
+  public synchronized void onNext(T value) {
+    if (completed || error != null) {
+      throw new IllegalStateException("call already closed");
+    }
+    values.add(value);
+    messageCompressions.add(messageCompression);
+  }
+
+  @Override
+  public synchronized void onError(Throwable t) {
+    if (completed || error != null) {
+      throw new IllegalStateException("call already closed");
+    }
+    error = t;
+  }
+
+  @Override
+  public synchronized void onCompleted() {
+    if (completed || error != null) {
+      throw new IllegalStateException("call already closed");
+    }
+    completed = true;
+  }
+
+  @Override
+  public synchronized boolean isReady() {
+    return ready;
+  }
+
+  @Override
+  public synchronized void setOnReadyHandler(Runnable onReadyHandler) {
+    this.onReadyHandler = onReadyHandler;
+  }
+
+  @Override
+  public void disableAutoInboundFlowControl() {
+    // Inbound messages are not simulated
+  }
+
+  // Inbound messages are not simulated, only how many were requested
+  @Override
+  public synchronized void request(int count) {
+    requested += count;
+  }
+
+  @Override
+  public synchronized void setMessageCompression(boolean enable) {
+    messageCompression = enable;
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public synchronized void setOnCancelHandler(Runnable onCancelHandler) {
+    this.onCancelHandler = onCancelHandler;
+  }
+
+  @Override
+  public synchronized void setCompression(String compression) {
+    this.compression = compression;
+  }
+
+  // Makes the call ready or not, and runs the ready handler when it becomes ready
+  public void setReady(boolean ready) {
+    Runnable handler;
+    synchronized (this) {
+      this.ready = ready;
+      handler = ready ? onReadyHandler : null;
+    }
+    if (handler != null) {
+      handler.run();
+    }
+  }
+
+  public void cancel() {
+    Runnable handler;
+    synchronized (this) {
+      cancelled = true;
+      handler = onCancelHandler;
+    }
+    if (handler != null) {
+      handler.run();
+    }
+  }
+
+  public synchronized List<T> getValues() {
+    return new ArrayList<>(values);
+  }
+
+  // Whether message compression was enabled for each value sent
+  public synchronized List<Boolean> getMessageCompressions() {
+    return new ArrayList<>(messageCompressions);
+  }
+
+  public synchronized int getRequested() {
+    return requested;
+  }
+
+  public synchronized Throwable getError() {
+    return error;
+  }
+
+  public synchronized boolean isCompleted() {
+    return completed;
+  }
+
+  public synchronized String getCompression() {
+    return compression;
+  }
+
+  public synchronized Runnable getOnReadyHandler() {
+    return onReadyHandler;
+  }
+
+  public synchronized Runnable getOnCancelHandler() {
+    return onCancelHandler;
+  }
+}
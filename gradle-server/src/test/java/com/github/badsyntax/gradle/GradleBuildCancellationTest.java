@@ -0,0 +1,88 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.exceptions.GradleCancellationException;
+import org.junit.Test;
+
+public class GradleBuildCancellationTest {
+  private static final String PROJECT_DIR = "/project";
+
+  // Finishes the build once it has been asked to cancel, like a daemon acknowledging it
+  private static Thread acknowledgeCancellation(CancellableBuild build) {
+    Thread thread =
+        new Thread(
+            () -> {
+              while (!build.getToken().isCancellationRequested()) {
+                Thread.yield();
+              }
+              build.finish();
+            });
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void cancelBuild_shouldReportAcknowledgedCancellation()
+      throws GradleCancellationException, InterruptedException {
+    CancellableBuild build = GradleBuildCancellation.register("acknowledged", PROJECT_DIR);
+    Thread daemon = acknowledgeCancellation(build);
+
+    CancellationResult result = GradleBuildCancellation.cancelBuild("acknowledged", 5000);
+    daemon.join();
+
+    assertEquals(1, result.getCancelledCount());
+    assertEquals(1, result.getAcknowledgedCount());
+    assertTrue(result.getAckMillis() < 5000);
+  }
+
+  @Test
+  public void cancelBuild_shouldStopWaitingAfterTimeout() throws GradleCancellationException {
+    CancellableBuild build = GradleBuildCancellation.register("unacknowledged", PROJECT_DIR);
+
+    CancellationResult result = GradleBuildCancellation.cancelBuild("unacknowledged", 100);
+    build.finish();
+
+    assertTrue(build.getToken().isCancellationRequested());
+    assertEquals(1, result.getCancelledCount());
+    assertEquals(0, result.getAcknowledgedCount());
+    assertTrue(result.getAckMillis() >= 100);
+  }
+
+  @Test
+  public void cancelBuild_shouldNotWaitWithoutTimeout() throws GradleCancellationException {
+    CancellableBuild build = GradleBuildCancellation.register("nowait", PROJECT_DIR);
+
+    CancellationResult result = GradleBuildCancellation.cancelBuild("nowait", 0);
+    build.finish();
+
+    assertEquals(1, result.getCancelledCount());
+    assertEquals(0, result.getAcknowledgedCount());
+    assertTrue(result.getAckMillis() < 100);
+  }
+
+  @Test
+  public void cancelBuildsForProject_shouldWaitForEveryBuild() throws InterruptedException {
+    CancellableBuild first = GradleBuildCancellation.register("first", "/other/../project");
+    CancellableBuild second = GradleBuildCancellation.register("second", PROJECT_DIR);
+    CancellableBuild unrelated = GradleBuildCancellation.register("unrelated", "/unrelated");
+    Thread firstDaemon = acknowledgeCancellation(first);
+    Thread secondDaemon = acknowledgeCancellation(second);
+
+    CancellationResult result = GradleBuildCancellation.cancelBuildsForProject(PROJECT_DIR, 5000);
+    firstDaemon.join();
+    secondDaemon.join();
+    unrelated.finish();
+
+    assertEquals(2, result.getCancelledCount());
+    assertEquals(2, result.getAcknowledgedCount());
+    assertFalse(unrelated.getToken().isCancellationRequested());
+  }
+
+  @Test(expected = GradleCancellationException.class)
+  public void cancelBuild_shouldThrowWhenBuildIsNotRunning() throws GradleCancellationException {
+    GradleBuildCancellation.cancelBuild("missing", 0);
+  }
+}
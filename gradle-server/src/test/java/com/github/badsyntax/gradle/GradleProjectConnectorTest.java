@@ -0,0 +1,69 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.github.badsyntax.gradle.exceptions.GradleConnectionException;
+import java.io.File;
+import org.gradle.tooling.GradleConnector;
+import org.junit.Test;
+
+public class GradleProjectConnectorTest {
+  private static final String PROJECT_DIR = new File("/path/to/project").getAbsolutePath();
+
+  @Test
+  public void configure_shouldSetProjectDirectory() {
+    GradleConnector connector = mock(GradleConnector.class);
+    GradleProjectConnector.configure(
+        connector, PROJECT_DIR, GradleConfig.newBuilder().setWrapperEnabled(true).build());
+    verify(connector).forProjectDirectory(new File(PROJECT_DIR));
+    verify(connector, never()).useGradleUserHomeDir(any());
+    verify(connector, never()).useGradleVersion(any());
+  }
+
+  @Test
+  public void configure_shouldUseGradleUserHome() {
+    GradleConnector connector = mock(GradleConnector.class);
+    String gradleUserHome = new File("/path/to/gradle-user-home").getAbsolutePath();
+    GradleProjectConnector.configure(
+        connector,
+        PROJECT_DIR,
+        GradleConfig.newBuilder().setUserHome(gradleUserHome).setWrapperEnabled(true).build());
+    verify(connector).useGradleUserHomeDir(new File(gradleUserHome));
+  }
+
+  @Test
+  public void configure_shouldResolveRelativeGradleUserHomeFromProjectDirectory() {
+    GradleConnector connector = mock(GradleConnector.class);
+    GradleProjectConnector.configure(
+        connector,
+        PROJECT_DIR,
+        GradleConfig.newBuilder().setUserHome(".gradle-home").setWrapperEnabled(true).build());
+    verify(connector).useGradleUserHomeDir(new File(PROJECT_DIR, ".gradle-home"));
+  }
+
+  @Test
+  public void configure_shouldSetGradleVersion() {
+    GradleConnector connector = mock(GradleConnector.class);
+    GradleProjectConnector.configure(
+        connector,
+        PROJECT_DIR,
+        GradleConfig.newBuilder().setWrapperEnabled(false).setVersion("6.3").build());
+    verify(connector).useGradleVersion("6.3");
+  }
+
+  @Test
+  public void connect_shouldThrowIfWrapperNotEnabledAndNoVersionSpecified() {
+    GradleConnectionException exception =
+        assertThrows(
+            GradleConnectionException.class,
+            () ->
+                GradleProjectConnector.connect(
+                    PROJECT_DIR, GradleConfig.newBuilder().setWrapperEnabled(false).build()));
+    assertEquals("Gradle version is required", exception.getMessage());
+  }
+}
@@ -1,43 +1,50 @@
 package com.github.badsyntax.gradle;
 
+import static java.util.stream.Collectors.toList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
-import static org.powermock.api.mockito.PowerMockito.*;
 
+import com.google.protobuf.ByteString;
+import io.grpc.Context;
 import io.grpc.ManagedChannel;
+import io.grpc.Status;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
 import io.grpc.testing.GrpcCleanupRule;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.gradle.tooling.BuildLauncher;
 import org.gradle.tooling.events.OperationType;
+import org.gradle.tooling.events.ProgressListener;
+import org.gradle.tooling.model.GradleProject;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
-import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.ArgumentMatchers;
-import org.mockito.Mock;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.PowerMockRunner;
 
-@RunWith(PowerMockRunner.class)
-@PrepareForTest(org.gradle.tooling.GradleConnector.class)
 @SuppressWarnings(value = "unchecked")
 public class GradleServerTest {
   @Rule public final GrpcCleanupRule grpcCleanup = new GrpcCleanupRule();
@@ -45,16 +52,23 @@ public class GradleServerTest {
   private GradleServer server;
   private GradleGrpc.GradleStub stub;
   private ManagedChannel inProcessChannel;
+  private FakeGradleBackend gradle;
   private File mockProjectDir;
+  private Path mockHistoryDir;
   private File mockGradleUserHome;
-  private File mockJavaHome;
-  private List<String> mockJvmArgs;
   private List<String> mockBuildArgs;
 
   @Before
   public void setUp() throws Exception {
     String serverName = InProcessServerBuilder.generateName();
-    server = new GradleServer(InProcessServerBuilder.forName(serverName).directExecutor(), 0);
+    mockHistoryDir = Files.createTempDirectory("mockHistoryDir");
+    server =
+        new GradleServer(
+            InProcessServerBuilder.forName(serverName).directExecutor(),
+            new GradleServerOptions()
+                .setPort(0)
+                .setHistoryDir(mockHistoryDir)
+                .setExecutorMode(RpcExecutors.Mode.DIRECT));
     server.start();
     inProcessChannel =
         grpcCleanup.register(InProcessChannelBuilder.forName(serverName).directExecutor().build());
@@ -62,108 +76,51 @@ public class GradleServerTest {
         new File(Files.createTempDirectory("mockProjectDir").toAbsolutePath().toString());
     mockGradleUserHome =
         new File(Files.createTempDirectory("mockGradleUserHome").toAbsolutePath().toString());
-    mockJavaHome = new File("/path/to/jdk");
-    mockJvmArgs = new ArrayList<>();
-    mockBuildArgs = new ArrayList<>();
-    mockBuildArgs.add("test");
+    mockBuildArgs = Arrays.asList("test");
     stub = GradleGrpc.newStub(inProcessChannel);
-    setupMocks();
-  }
-
-  @Mock
-  org.gradle.tooling.ModelBuilder<org.gradle.tooling.model.GradleProject> mockGradleProjectBuilder;
-
-  @Mock
-  org.gradle.tooling.ModelBuilder<org.gradle.tooling.model.build.BuildEnvironment>
-      mockBuildEnvironmentBuilder;
-
-  @Mock
-  org.gradle.tooling.model.DomainObjectSet<? extends org.gradle.tooling.model.GradleProject>
-      mockChildProjects;
-
-  @Mock
-  org.gradle.tooling.model.DomainObjectSet<? extends org.gradle.tooling.model.GradleTask> mockTasks;
-
-  @Mock org.gradle.tooling.model.GradleProject mockGradleProject;
-  @Mock org.gradle.tooling.model.build.BuildEnvironment mockBuildEnvironment;
-  @Mock org.gradle.tooling.GradleConnector mockConnector;
-  @Mock org.gradle.tooling.ProjectConnection mockConnection;
-  @Mock org.gradle.tooling.CancellationTokenSource mockCancellationTokenSource;
-  @Mock org.gradle.tooling.CancellationToken mockCancellationToken;
-  @Mock org.gradle.tooling.model.build.BuildEnvironment mockEnvironment;
-  @Mock org.gradle.tooling.model.build.GradleEnvironment mockGradleEnvironment;
-  @Mock org.gradle.tooling.model.build.JavaEnvironment mockJavaEnvironment;
-  @Mock org.gradle.tooling.BuildLauncher mockBuildLauncher;
-
-  private void setupMocks() {
-    mockStatic(org.gradle.tooling.GradleConnector.class);
-    when(org.gradle.tooling.GradleConnector.newConnector()).thenReturn(mockConnector);
-    when(org.gradle.tooling.GradleConnector.newCancellationTokenSource())
-        .thenReturn(mockCancellationTokenSource);
-    when(mockCancellationTokenSource.token()).thenReturn(mockCancellationToken);
-    when(mockConnector.forProjectDirectory(mockProjectDir)).thenReturn(mockConnector);
-    when(mockConnector.connect()).thenReturn(mockConnection);
-
-    // Project build (getBuild) mocks
-    when(mockGradleEnvironment.getGradleUserHome()).thenReturn(mockGradleUserHome);
-    when(mockGradleEnvironment.getGradleVersion()).thenReturn("6.3");
-    when(mockJavaEnvironment.getJavaHome()).thenReturn(mockJavaHome);
-    when(mockJavaEnvironment.getJvmArguments()).thenReturn(mockJvmArgs);
-    when(mockEnvironment.getGradle()).thenReturn(mockGradleEnvironment);
-    when(mockEnvironment.getJava()).thenReturn(mockJavaEnvironment);
-    when(mockBuildEnvironmentBuilder.get()).thenReturn(mockEnvironment);
-    doReturn(mockChildProjects).when(mockGradleProject).getChildren();
-    doReturn(mockTasks).when(mockGradleProject).getTasks();
-    when(mockGradleProjectBuilder.get()).thenReturn(mockGradleProject);
-    when(mockGradleProjectBuilder.withCancellationToken(any()))
-        .thenReturn(mockGradleProjectBuilder);
-    when(mockBuildEnvironmentBuilder.withCancellationToken(any()))
-        .thenReturn(mockBuildEnvironmentBuilder);
-    when(mockGradleProjectBuilder.addProgressListener(
-            any(org.gradle.tooling.events.ProgressListener.class),
-            ArgumentMatchers.<Set<OperationType>>any()))
-        .thenReturn(mockGradleProjectBuilder);
-    when(mockBuildEnvironmentBuilder.addProgressListener(
-            any(org.gradle.tooling.events.ProgressListener.class),
-            ArgumentMatchers.<Set<OperationType>>any()))
-        .thenReturn(mockBuildEnvironmentBuilder);
-    when(mockGradleProjectBuilder.setStandardOutput(any(OutputStream.class)))
-        .thenReturn(mockGradleProjectBuilder);
-    when(mockGradleProjectBuilder.setStandardError(any(OutputStream.class)))
-        .thenReturn(mockGradleProjectBuilder);
-    when(mockBuildEnvironmentBuilder.setStandardOutput(any(OutputStream.class)))
-        .thenReturn(mockBuildEnvironmentBuilder);
-    when(mockBuildEnvironmentBuilder.setStandardError(any(OutputStream.class)))
-        .thenReturn(mockBuildEnvironmentBuilder);
-    when(mockGradleProjectBuilder.setColorOutput(any(Boolean.class)))
-        .thenReturn(mockGradleProjectBuilder);
-    when(mockConnection.model(org.gradle.tooling.model.GradleProject.class))
-        .thenReturn(mockGradleProjectBuilder);
-    when(mockConnection.model(org.gradle.tooling.model.build.BuildEnvironment.class))
-        .thenReturn(mockBuildEnvironmentBuilder);
-
-    // Build launcher (run build) mocks
-    when(mockBuildLauncher.withCancellationToken(any())).thenReturn(mockBuildLauncher);
-    when(mockBuildLauncher.addProgressListener(
-            any(org.gradle.tooling.events.ProgressListener.class),
-            ArgumentMatchers.<Set<OperationType>>any()))
-        .thenReturn(mockBuildLauncher);
-    when(mockBuildLauncher.setStandardOutput(any(OutputStream.class)))
-        .thenReturn(mockBuildLauncher);
-    when(mockBuildLauncher.setStandardError(any(OutputStream.class))).thenReturn(mockBuildLauncher);
-    when(mockBuildLauncher.setColorOutput(any(Boolean.class))).thenReturn(mockBuildLauncher);
-    when(mockBuildLauncher.withArguments(any(List.class))).thenReturn(mockBuildLauncher);
-    when(mockBuildLauncher.forTasks(any(String.class))).thenReturn(mockBuildLauncher);
-    when(mockConnection.newBuild()).thenReturn(mockBuildLauncher);
+    gradle =
+        new FakeGradleBackend()
+            .setProjects(1)
+            .setTasksPerProject(2)
+            .setConfigurationMillis(0)
+            .setBuildMillis(0);
+    GradleProjectConnector.setBackend(gradle);
   }
 
   @After
   public void tearDown() throws Exception {
     server.stop();
+    GradleProjectConnector.setBackend(new ToolingApiBackend());
     mockProjectDir.delete();
     mockGradleUserHome.delete();
   }
 
+  private FakeGradleBackend.Invocation getProjectInvocation() {
+    return gradle.getInvocations(GradleProject.class).get(0);
+  }
+
+  private FakeGradleBackend.Invocation getBuildInvocation() {
+    return gradle.getInvocations(BuildLauncher.class).get(0);
+  }
+
+  private void awaitBuildInvocations(int count) throws InterruptedException {
+    long deadlineMillis = System.currentTimeMillis() + 5000;
+    while (gradle.getInvocations(BuildLauncher.class).size() < count) {
+      assertTrue(System.currentTimeMillis() < deadlineMillis);
+      Thread.sleep(10);
+    }
+  }
+
+  private GetServerStatsReply getServerStats() {
+    StreamObserver<GetServerStatsReply> mockStatsObserver =
+        (StreamObserver<GetServerStatsReply>) mock(StreamObserver.class);
+    ArgumentCaptor<GetServerStatsReply> onNext =
+        ArgumentCaptor.forClass(GetServerStatsReply.class);
+    stub.getServerStats(GetServerStatsRequest.newBuilder().build(), mockStatsObserver);
+    verify(mockStatsObserver).onNext(onNext.capture());
+    return onNext.getValue();
+  }
+
   @Test
   public void getBuild_shouldSetProjectDirectory() throws IOException {
     StreamObserver<GetBuildReply> mockResponseObserver =
@@ -177,7 +134,8 @@ public class GradleServerTest {
 
     stub.getBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockConnector).forProjectDirectory(mockProjectDir);
+    verify(mockResponseObserver).onCompleted();
+    assertEquals(mockProjectDir.getAbsolutePath(), getProjectInvocation().getProjectDir());
   }
 
   @Test
@@ -196,7 +154,9 @@ public class GradleServerTest {
 
     stub.getBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockConnector).useGradleUserHomeDir(mockGradleUserHome);
+    assertEquals(
+        mockGradleUserHome.getAbsolutePath(),
+        getProjectInvocation().getGradleConfig().getUserHome());
   }
 
   @Test
@@ -214,6 +174,7 @@ public class GradleServerTest {
     stub.getBuild(req, mockResponseObserver);
     verify(mockResponseObserver).onError(onError.capture());
     assertEquals("INTERNAL: Gradle version is required", onError.getValue().getMessage());
+    assertTrue(gradle.getInvocations().isEmpty());
   }
 
   @Test
@@ -228,9 +189,8 @@ public class GradleServerTest {
             .build();
 
     stub.getBuild(req, mockResponseObserver);
-    mockResponseObserver.onCompleted();
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockConnector).useGradleVersion("6.3");
+    assertEquals("6.3", getProjectInvocation().getGradleConfig().getVersion());
   }
 
   @Test
@@ -249,7 +209,9 @@ public class GradleServerTest {
 
     stub.getBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockGradleProjectBuilder).setJvmArguments(jvmArgs);
+    assertEquals(
+        Arrays.asList("-Xmx64m", "-Xms64m"),
+        getProjectInvocation().getOperation().getJvmArguments());
   }
 
   @Test
@@ -266,7 +228,6 @@ public class GradleServerTest {
 
     stub.getBuild(req1, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockGradleProjectBuilder).setColorOutput(false);
 
     GetBuildRequest req2 =
         GetBuildRequest.newBuilder()
@@ -276,7 +237,10 @@ public class GradleServerTest {
             .build();
     stub.getBuild(req2, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockGradleProjectBuilder).setColorOutput(true);
+
+    List<FakeGradleBackend.Invocation> invocations = gradle.getInvocations(GradleProject.class);
+    assertEquals(false, invocations.get(0).getOperation().getColorOutput());
+    assertEquals(true, invocations.get(1).getOperation().getColorOutput());
   }
 
   @Test
@@ -291,17 +255,47 @@ public class GradleServerTest {
             .setShowOutputColors(true)
             .build();
 
-    ArgumentCaptor<Set<OperationType>> onAddProgressListener = ArgumentCaptor.forClass(Set.class);
+    ArgumentCaptor<GetBuildReply> onNext = ArgumentCaptor.forClass(GetBuildReply.class);
 
     stub.getBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
+    verify(mockResponseObserver, times(4)).onNext(onNext.capture());
+
+    Map<ProgressListener, Set<OperationType>> progressListeners =
+        getProjectInvocation().getOperation().getProgressListeners();
+    assertEquals(1, progressListeners.size());
+    Set<OperationType> operationTypes = progressListeners.values().iterator().next();
+    assertEquals(1, operationTypes.size());
+    assertTrue(operationTypes.contains(OperationType.PROJECT_CONFIGURATION));
+    // The root project and its one child report their configuration
+    assertEquals(
+        "Configure project : SUCCESS", onNext.getAllValues().get(1).getProgress().getMessage());
+    assertEquals(
+        "Configure project :project0 SUCCESS",
+        onNext.getAllValues().get(2).getProgress().getMessage());
+  }
 
-    verify(mockGradleProjectBuilder)
-        .addProgressListener(
-            any(org.gradle.tooling.events.ProgressListener.class), onAddProgressListener.capture());
+  @Test
+  public void getBuilds_shouldTagRepliesWithProjectDir() throws IOException {
+    StreamObserver<GetBuildsReply> mockResponseObserver =
+        (StreamObserver<GetBuildsReply>) mock(StreamObserver.class);
+
+    GetBuildsRequest req =
+        GetBuildsRequest.newBuilder()
+            .addBuilds(
+                GetBuildRequest.newBuilder()
+                    .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+                    .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(false)))
+            .setMaxParallelism(2)
+            .build();
 
-    assertEquals(1, onAddProgressListener.getValue().size());
-    assertTrue(onAddProgressListener.getValue().contains(OperationType.PROJECT_CONFIGURATION));
+    ArgumentCaptor<GetBuildsReply> onNext = ArgumentCaptor.forClass(GetBuildsReply.class);
+    stub.getBuilds(req, mockResponseObserver);
+    verify(mockResponseObserver, never()).onError(any());
+    verify(mockResponseObserver).onNext(onNext.capture());
+    verify(mockResponseObserver).onCompleted();
+    assertEquals(mockProjectDir.getAbsolutePath().toString(), onNext.getValue().getProjectDir());
+    assertEquals("INTERNAL: Gradle version is required", onNext.getValue().getError());
   }
 
   @Test
@@ -318,7 +312,9 @@ public class GradleServerTest {
 
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockConnector).forProjectDirectory(mockProjectDir);
+    verify(mockResponseObserver).onCompleted();
+    assertEquals(mockProjectDir.getAbsolutePath(), getBuildInvocation().getProjectDir());
+    assertEquals(mockBuildArgs, getBuildInvocation().getOperation().getArguments());
   }
 
   @Test
@@ -338,7 +334,9 @@ public class GradleServerTest {
 
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockConnector).useGradleUserHomeDir(mockGradleUserHome);
+    assertEquals(
+        mockGradleUserHome.getAbsolutePath(),
+        getBuildInvocation().getGradleConfig().getUserHome());
   }
 
   @Test
@@ -357,6 +355,7 @@ public class GradleServerTest {
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver).onError(onError.capture());
     assertEquals("INTERNAL: Gradle version is required", onError.getValue().getMessage());
+    assertTrue(gradle.getInvocations().isEmpty());
   }
 
   @Test
@@ -372,9 +371,8 @@ public class GradleServerTest {
             .build();
 
     stub.runBuild(req, mockResponseObserver);
-    mockResponseObserver.onCompleted();
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockConnector).useGradleVersion("6.3");
+    assertEquals("6.3", getBuildInvocation().getGradleConfig().getVersion());
   }
 
   @Test
@@ -394,7 +392,65 @@ public class GradleServerTest {
 
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockBuildLauncher).setJvmArguments(jvmArgs);
+    assertEquals(
+        Arrays.asList("-Xmx64m", "-Xms64m"),
+        getBuildInvocation().getOperation().getJvmArguments());
+  }
+
+  @Test
+  public void runBuild_shouldReuseDaemonForEquivalentJvmArgs() throws IOException {
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    List<String> equivalentJvmArgs =
+        Arrays.asList("-Xmx64m -Dfoo='a b' -Xms64m", " -Xmx32m  -Dfoo=\"a b\" -Xms64m -Xmx64m");
+    for (String jvmArgs : equivalentJvmArgs) {
+      RunBuildRequest req =
+          RunBuildRequest.newBuilder()
+              .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+              .addAllArgs(mockBuildArgs)
+              .setGradleConfig(
+                  GradleConfig.newBuilder().setJvmArguments(jvmArgs).setWrapperEnabled(true))
+              .build();
+      stub.runBuild(req, mockResponseObserver);
+    }
+    verify(mockResponseObserver, never()).onError(any());
+    for (FakeGradleBackend.Invocation invocation : gradle.getInvocations(BuildLauncher.class)) {
+      assertEquals(
+          Arrays.asList("-Xmx64m", "-Dfoo=a b", "-Xms64m"),
+          invocation.getOperation().getJvmArguments());
+    }
+
+    GetServerStatsReply stats = getServerStats();
+    assertEquals(1, stats.getCountersOrThrow("daemon_spawns"));
+    assertEquals(1, stats.getCountersOrThrow("daemon_reuses"));
+  }
+
+  @Test
+  public void runBuild_shouldWarnWhenChangedJvmArgsStartANewDaemon() throws IOException {
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    for (String jvmArgs : Arrays.asList("-Xmx64m", "-Xmx64m", "-Xmx128m")) {
+      RunBuildRequest req =
+          RunBuildRequest.newBuilder()
+              .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+              .addAllArgs(mockBuildArgs)
+              .setGradleConfig(
+                  GradleConfig.newBuilder().setJvmArguments(jvmArgs).setWrapperEnabled(true))
+              .build();
+      stub.runBuild(req, mockResponseObserver);
+    }
+    verify(mockResponseObserver, never()).onError(any());
+    ArgumentCaptor<RunBuildReply> onNext = ArgumentCaptor.forClass(RunBuildReply.class);
+    verify(mockResponseObserver, atLeastOnce()).onNext(onNext.capture());
+    List<String> warnings =
+        onNext.getAllValues().stream()
+            .filter(reply -> reply.hasProgress() && reply.getProgress().getWarning())
+            .map(reply -> reply.getProgress().getMessage())
+            .collect(toList());
+    assertEquals(1, warnings.size());
+    assertTrue(warnings.get(0).contains("added [-Xmx128m], removed [-Xmx64m]"));
   }
 
   @Test
@@ -410,15 +466,11 @@ public class GradleServerTest {
             .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
             .build();
 
-    ArgumentCaptor<HashMap<String, String>> setEnvironmentVariables =
-        ArgumentCaptor.forClass(HashMap.class);
-
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockBuildLauncher).setEnvironmentVariables(setEnvironmentVariables.capture());
     assertEquals(
         "-agentlib:jdwp=transport=dt_socket,server=y,suspend=y,address=localhost:1111",
-        setEnvironmentVariables.getValue().get("JAVA_TOOL_OPTIONS"));
+        getBuildInvocation().getOperation().getEnvironmentVariables().get("JAVA_TOOL_OPTIONS"));
   }
 
   @Test
@@ -434,12 +486,10 @@ public class GradleServerTest {
             .setInput("An input string")
             .build();
 
-    ArgumentCaptor<InputStream> inputStream = ArgumentCaptor.forClass(InputStream.class);
-
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockBuildLauncher).setStandardInput(inputStream.capture());
-    InputStreamReader isReader = new InputStreamReader(inputStream.getValue());
+    InputStreamReader isReader =
+        new InputStreamReader(getBuildInvocation().getOperation().getStandardInput());
     BufferedReader reader = new BufferedReader(isReader);
     StringBuffer sb = new StringBuffer();
     String str;
@@ -449,6 +499,43 @@ public class GradleServerTest {
     assertEquals("An input string", sb.toString());
   }
 
+  @Test
+  public void runBuildWithInput_shouldStreamStandardInput() throws IOException {
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .build();
+
+    ByteArrayOutputStream readInput = new ByteArrayOutputStream();
+    gradle.setBuild(
+        operation -> {
+          InputStream standardInput = operation.getStandardInput();
+          int next;
+          while ((next = standardInput.read()) != -1) {
+            readInput.write(next);
+          }
+        });
+
+    // The build reads its input on a thread of its own, even with direct execution
+    StreamObserver<RunBuildInput> inputObserver = stub.runBuildWithInput(mockResponseObserver);
+    inputObserver.onNext(RunBuildInput.newBuilder().setRunBuildRequest(req).build());
+    inputObserver.onNext(
+        RunBuildInput.newBuilder().setStandardInput(ByteString.copyFromUtf8("first\n")).build());
+    inputObserver.onNext(
+        RunBuildInput.newBuilder().setStandardInput(ByteString.copyFromUtf8("second\n")).build());
+    inputObserver.onCompleted();
+    verify(mockResponseObserver, timeout(5000)).onCompleted();
+    verify(mockResponseObserver, never()).onError(any());
+    assertTrue(
+        getBuildInvocation().getOperation().getStandardInput() instanceof StandardInputPipe);
+    assertEquals("first\nsecond\n", new String(readInput.toByteArray(), StandardCharsets.UTF_8));
+  }
+
   @Test
   public void runBuild_shouldSetColorOutput() throws IOException {
     StreamObserver<RunBuildReply> mockResponseObserver =
@@ -464,7 +551,6 @@ public class GradleServerTest {
 
     stub.runBuild(req1, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockBuildLauncher).setColorOutput(false);
 
     RunBuildRequest req2 =
         RunBuildRequest.newBuilder()
@@ -476,7 +562,10 @@ public class GradleServerTest {
 
     stub.runBuild(req2, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockBuildLauncher).setColorOutput(true);
+
+    List<FakeGradleBackend.Invocation> invocations = gradle.getInvocations(BuildLauncher.class);
+    assertEquals(false, invocations.get(0).getOperation().getColorOutput());
+    assertEquals(true, invocations.get(1).getOperation().getColorOutput());
   }
 
   @Test
@@ -492,17 +581,335 @@ public class GradleServerTest {
             .setShowOutputColors(true)
             .build();
 
-    ArgumentCaptor<Set<OperationType>> onAddProgressListener = ArgumentCaptor.forClass(Set.class);
+    stub.runBuild(req, mockResponseObserver);
+    verify(mockResponseObserver, never()).onError(any());
+
+    Map<ProgressListener, Set<OperationType>> progressListeners =
+        getBuildInvocation().getOperation().getProgressListeners();
+    assertEquals(1, progressListeners.size());
+    Set<OperationType> operationTypes = progressListeners.values().iterator().next();
+    assertEquals(3, operationTypes.size());
+    assertTrue(operationTypes.contains(OperationType.PROJECT_CONFIGURATION));
+    assertTrue(operationTypes.contains(OperationType.TASK));
+    assertTrue(operationTypes.contains(OperationType.TRANSFORM));
+  }
+
+  @Test
+  public void runBuild_shouldStreamTestResultsWhenRequested() throws IOException {
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .setStreamTestResults(true)
+            .build();
 
     stub.runBuild(req, mockResponseObserver);
     verify(mockResponseObserver, never()).onError(any());
-    verify(mockBuildLauncher)
-        .addProgressListener(
-            any(org.gradle.tooling.events.ProgressListener.class), onAddProgressListener.capture());
-
-    assertEquals(3, onAddProgressListener.getValue().size());
-    assertTrue(onAddProgressListener.getValue().contains(OperationType.PROJECT_CONFIGURATION));
-    assertTrue(onAddProgressListener.getValue().contains(OperationType.TASK));
-    assertTrue(onAddProgressListener.getValue().contains(OperationType.TRANSFORM));
+
+    Map<ProgressListener, Set<OperationType>> progressListeners =
+        getBuildInvocation().getOperation().getProgressListeners();
+    assertEquals(2, progressListeners.size());
+    assertTrue(progressListeners.containsValue(EnumSet.of(OperationType.TEST)));
+  }
+
+  @Test
+  public void runBuild_shouldReplyWithDiagnosticsWhenRequested() throws IOException {
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .setExtractDiagnostics(true)
+            .build();
+
+    gradle.setBuild(
+        operation -> {
+          OutputStream standardOutput = operation.getStandardOutput();
+          standardOutput.write(
+              "/p/A.java:12: error: cannot find symbol\n    foo();\n    ^\n".getBytes());
+          standardOutput.flush();
+        });
+
+    ArgumentCaptor<RunBuildReply> onNext = ArgumentCaptor.forClass(RunBuildReply.class);
+
+    stub.runBuild(req, mockResponseObserver);
+    verify(mockResponseObserver, never()).onError(any());
+    verify(mockResponseObserver, times(3)).onNext(onNext.capture());
+
+    Diagnostic diagnostic = onNext.getAllValues().get(1).getDiagnostics().getDiagnostics(0);
+    assertEquals(Diagnostic.Severity.ERROR, diagnostic.getSeverity());
+    assertEquals("/p/A.java", diagnostic.getFile());
+    assertEquals(12, diagnostic.getLine());
+    assertEquals(5, diagnostic.getColumn());
+    assertEquals("cannot find symbol", diagnostic.getMessage());
+    assertEquals("javac", diagnostic.getSource());
+  }
+
+  @Test
+  public void runBuild_shouldSendEstimatesWhileTasksAreQuiet() throws IOException {
+    StreamObserver<RunBuildReply> mockPreviousObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .build();
+
+    gradle.setBuild(operation -> Thread.sleep(200));
+    stub.runBuild(req, mockPreviousObserver);
+    verify(mockPreviousObserver).onCompleted();
+
+    ArgumentCaptor<RunBuildReply> onNext = ArgumentCaptor.forClass(RunBuildReply.class);
+
+    gradle.setBuild(operation -> Thread.sleep(1200));
+    stub.runBuild(req, mockResponseObserver);
+    verify(mockResponseObserver, never()).onError(any());
+    verify(mockResponseObserver, atLeastOnce()).onNext(onNext.capture());
+
+    List<RunBuildReply> estimates =
+        onNext.getAllValues().stream().filter(RunBuildReply::hasEstimate).collect(toList());
+    assertTrue(estimates.size() >= 2);
+    assertEquals(1, estimates.get(0).getEstimate().getSampleRuns());
+    assertEquals(99, estimates.get(estimates.size() - 1).getEstimate().getPercent());
+  }
+
+  @Test
+  public void runBuild_shouldCancelBuildWhenDeadlineExpires() throws IOException {
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .build();
+
+    gradle.setBuild(FakeGradleBackend::awaitCancellation);
+
+    stub.withDeadlineAfter(100, TimeUnit.MILLISECONDS).runBuild(req, mockResponseObserver);
+    assertTrue(
+        getBuildInvocation().getOperation().getCancellationToken().isCancellationRequested());
+    assertEquals(1, getServerStats().getCountersOrThrow("orphaned_build_cancellations"));
+  }
+
+  @Test
+  public void cancelBuild_shouldStayFastWhileBuildLaneIsSaturated() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    GradleServer poolServer =
+        new GradleServer(
+            InProcessServerBuilder.forName(serverName).directExecutor(),
+            new GradleServerOptions()
+                .setPort(0)
+                .setHistoryDir(mockHistoryDir)
+                .setBuildThreads(1));
+    poolServer.start();
+    try {
+      GradleGrpc.GradleStub poolStub =
+          GradleGrpc.newStub(
+              grpcCleanup.register(
+                  InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+      StreamObserver<RunBuildReply> mockRunningObserver =
+          (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+      StreamObserver<RunBuildReply> mockQueuedObserver =
+          (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+      StreamObserver<CancelBuildReply> mockCancelObserver =
+          (StreamObserver<CancelBuildReply>) mock(StreamObserver.class);
+      RunBuildRequest.Builder req =
+          RunBuildRequest.newBuilder()
+              .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+              .addAllArgs(mockBuildArgs)
+              .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true));
+
+      // The only build thread runs the first build, and the second build waits for it
+      gradle.setBuild(FakeGradleBackend::awaitCancellation);
+      poolStub.runBuild(req.setCancellationKey("running").build(), mockRunningObserver);
+      awaitBuildInvocations(1);
+      poolStub.runBuild(req.setCancellationKey("queued").build(), mockQueuedObserver);
+
+      long startMillis = System.currentTimeMillis();
+      poolStub.cancelBuild(
+          CancelBuildRequest.newBuilder().setCancellationKey("running").build(),
+          mockCancelObserver);
+      ArgumentCaptor<CancelBuildReply> onNext = ArgumentCaptor.forClass(CancelBuildReply.class);
+      verify(mockCancelObserver, timeout(1000)).onCompleted();
+      assertTrue(System.currentTimeMillis() - startMillis < 1000);
+      verify(mockCancelObserver).onNext(onNext.capture());
+      assertEquals(1, onNext.getValue().getCancelledCount());
+
+      // The queued build starts once the cancelled build has finished
+      awaitBuildInvocations(2);
+      poolStub.cancelBuild(
+          CancelBuildRequest.newBuilder().setCancellationKey("queued").build(),
+          (StreamObserver<CancelBuildReply>) mock(StreamObserver.class));
+      verify(mockQueuedObserver, timeout(5000)).onCompleted();
+    } finally {
+      poolServer.stop();
+    }
+  }
+
+  @Test
+  public void stop_shouldCancelBuildsAndReturnWithinItsBudget() throws Exception {
+    String serverName = InProcessServerBuilder.generateName();
+    GradleServer stoppingServer =
+        new GradleServer(
+            InProcessServerBuilder.forName(serverName).directExecutor(),
+            new GradleServerOptions()
+                .setPort(0)
+                .setHistoryDir(mockHistoryDir)
+                .setShutdownBudgetMillis(500));
+    stoppingServer.start();
+    GradleGrpc.GradleStub stoppingStub =
+        GradleGrpc.newStub(
+            grpcCleanup.register(
+                InProcessChannelBuilder.forName(serverName).directExecutor().build()));
+    StreamObserver<RunBuildReply> mockResponseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+
+    // A daemon that never acknowledges the cancellation
+    gradle.setBuild(operation -> Thread.sleep(10000));
+    stoppingStub.runBuild(
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .setCancellationKey("blocking")
+            .build(),
+        mockResponseObserver);
+    awaitBuildInvocations(1);
+
+    long startMillis = System.currentTimeMillis();
+    stoppingServer.stop();
+
+    assertTrue(System.currentTimeMillis() - startMillis < 1000);
+    assertTrue(
+        getBuildInvocation().getOperation().getCancellationToken().isCancellationRequested());
+  }
+
+  @Test
+  public void continuousBuild_shouldRerunBuildWhenProjectChanges() throws Exception {
+    StreamObserver<ContinuousBuildReply> mockResponseObserver =
+        (StreamObserver<ContinuousBuildReply>) mock(StreamObserver.class);
+
+    ContinuousBuildRequest req =
+        ContinuousBuildRequest.newBuilder()
+            .setRunBuildRequest(
+                RunBuildRequest.newBuilder()
+                    .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+                    .addAllArgs(mockBuildArgs)
+                    .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)))
+            .setDebounceMillis(100)
+            .build();
+
+    Context.CancellableContext context = Context.current().withCancellation();
+    Thread client =
+        new Thread(() -> context.run(() -> stub.continuousBuild(req, mockResponseObserver)));
+    client.start();
+    awaitBuildInvocations(1);
+    Files.write(mockProjectDir.toPath().resolve("Changed.java"), "class Changed {}".getBytes());
+    awaitBuildInvocations(2);
+    context.cancel(null);
+    client.join();
+
+    ArgumentCaptor<ContinuousBuildReply> onNext =
+        ArgumentCaptor.forClass(ContinuousBuildReply.class);
+    verify(mockResponseObserver, atLeastOnce()).onNext(onNext.capture());
+    List<IterationStarted> started =
+        onNext.getAllValues().stream()
+            .filter(ContinuousBuildReply::hasIterationStarted)
+            .map(ContinuousBuildReply::getIterationStarted)
+            .collect(toList());
+    assertEquals(2, started.size());
+    assertEquals(Arrays.asList("Changed.java"), started.get(1).getChangedPathsList());
+    assertTrue(
+        onNext.getAllValues().stream()
+            .filter(ContinuousBuildReply::hasIterationFinished)
+            .allMatch(reply -> reply.getIterationFinished().getSuccess()));
+  }
+
+  @Test
+  public void attachBuild_shouldReplayRepliesFromOffset() throws IOException {
+    StreamObserver<RunBuildReply> mockRunBuildObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+    StreamObserver<AttachBuildReply> mockResponseObserver =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .setProjectDir(mockProjectDir.getAbsolutePath().toString())
+            .addAllArgs(mockBuildArgs)
+            .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+            .setCancellationKey("attach")
+            .build();
+
+    gradle.setBuild(
+        operation -> {
+          OutputStream standardOutput = operation.getStandardOutput();
+          standardOutput.write("first\n".getBytes());
+          standardOutput.flush();
+          standardOutput.write("second\n".getBytes());
+          standardOutput.flush();
+        });
+
+    ArgumentCaptor<RunBuildReply> runBuildReplies = ArgumentCaptor.forClass(RunBuildReply.class);
+    stub.runBuild(req, mockRunBuildObserver);
+    verify(mockRunBuildObserver, atLeastOnce()).onNext(runBuildReplies.capture());
+    verify(mockRunBuildObserver).onCompleted();
+    List<RunBuildReply> replies = runBuildReplies.getAllValues();
+
+    ArgumentCaptor<AttachBuildReply> onNext = ArgumentCaptor.forClass(AttachBuildReply.class);
+    stub.attachBuild(
+        AttachBuildRequest.newBuilder().setCancellationKey("attach").setFromOffset(1).build(),
+        mockResponseObserver);
+    verify(mockResponseObserver, never()).onError(any());
+    verify(mockResponseObserver, times(replies.size() - 1)).onNext(onNext.capture());
+    verify(mockResponseObserver).onCompleted();
+    for (int i = 1; i < replies.size(); i++) {
+      AttachBuildReply reply = onNext.getAllValues().get(i - 1);
+      assertEquals(i, reply.getOffset());
+      assertEquals(replies.get(i), reply.getReply());
+    }
+  }
+
+  @Test
+  public void attachBuild_shouldFailForUnknownKey() {
+    StreamObserver<AttachBuildReply> mockResponseObserver =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+
+    ArgumentCaptor<Throwable> onError = ArgumentCaptor.forClass(Throwable.class);
+    stub.attachBuild(
+        AttachBuildRequest.newBuilder().setCancellationKey("unknown").build(),
+        mockResponseObserver);
+    verify(mockResponseObserver).onError(onError.capture());
+    assertEquals(Status.Code.NOT_FOUND, Status.fromThrowable(onError.getValue()).getCode());
+  }
+
+  @Test
+  public void cancelBuilds_shouldCompleteWhenNoBuildsAreRunning() {
+    StreamObserver<CancelBuildsReply> mockResponseObserver =
+        (StreamObserver<CancelBuildsReply>) mock(StreamObserver.class);
+
+    ArgumentCaptor<CancelBuildsReply> onNext = ArgumentCaptor.forClass(CancelBuildsReply.class);
+
+    stub.cancelBuilds(CancelBuildsRequest.newBuilder().build(), mockResponseObserver);
+    verify(mockResponseObserver, never()).onError(any());
+    verify(mockResponseObserver).onNext(onNext.capture());
+    assertEquals(0, onNext.getValue().getCancelledCount());
+  }
+
+  @Test
+  public void getServerStats_shouldReportCompressionSavings() {
+    assertTrue(getServerStats().containsCounters("compression_saved_bytes"));
   }
 }
@@ -0,0 +1,121 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Test;
+
+public class IdleReclaimerTest {
+  private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+  private final AtomicLong clock = new AtomicLong(1000);
+  private final AtomicInteger releases = new AtomicInteger();
+  private final ServerStats serverStats = new ServerStats();
+  private final AtomicLong heapInUse = new AtomicLong(100 * 1024);
+  private final AtomicLong collections = new AtomicLong();
+  private final IdleReclaimer idleReclaimer =
+      new IdleReclaimer(IDLE_MILLIS, serverStats, clock::get, releases::incrementAndGet)
+          .setHeap(heapInUse::get, collections::get);
+
+  @After
+  public void tearDown() {
+    idleReclaimer.close();
+  }
+
+  private void runCall() {
+    idleReclaimer.enter();
+    idleReclaimer.exit();
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldNotReleaseBeforeIdleTime() {
+    runCall();
+    clock.addAndGet(IDLE_MILLIS - 1);
+    idleReclaimer.reclaimIfIdle();
+    assertEquals(0, releases.get());
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldReleaseOnceWhenIdle() {
+    runCall();
+    clock.addAndGet(IDLE_MILLIS);
+    idleReclaimer.reclaimIfIdle();
+    clock.addAndGet(IDLE_MILLIS);
+    idleReclaimer.reclaimIfIdle();
+    assertEquals(1, releases.get());
+    assertEquals(1, serverStats.get(IdleReclaimer.IDLE_RECLAIMS));
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldReleaseAgainAfterNewActivity() {
+    clock.addAndGet(IDLE_MILLIS);
+    idleReclaimer.reclaimIfIdle();
+    runCall();
+    idleReclaimer.reclaimIfIdle();
+    assertEquals(1, releases.get());
+    clock.addAndGet(IDLE_MILLIS);
+    idleReclaimer.reclaimIfIdle();
+    assertEquals(2, releases.get());
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldNotReleaseWhileCallIsRunning() {
+    idleReclaimer.enter();
+    clock.addAndGet(IDLE_MILLIS * 2);
+    idleReclaimer.reclaimIfIdle();
+    assertEquals(0, releases.get());
+    idleReclaimer.exit();
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldRunOtherReleasersWhenOneFails() {
+    IdleReclaimer failingReclaimer =
+        new IdleReclaimer(
+            IDLE_MILLIS,
+            serverStats,
+            clock::get,
+            () -> {
+              throw new IllegalStateException("Release failed");
+            },
+            releases::incrementAndGet);
+    try {
+      clock.addAndGet(IDLE_MILLIS);
+      failingReclaimer.reclaimIfIdle();
+      assertEquals(1, releases.get());
+      assertEquals(1, serverStats.get(IdleReclaimer.IDLE_RECLAIMS));
+    } finally {
+      failingReclaimer.close();
+    }
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldReportReclaimedBytesOnceCollected() {
+    clock.addAndGet(IDLE_MILLIS);
+    idleReclaimer.reclaimIfIdle();
+    heapInUse.set(40 * 1024);
+    idleReclaimer.reclaimIfIdle();
+    assertEquals(0, serverStats.get(IdleReclaimer.IDLE_RECLAIMED_BYTES));
+
+    collections.incrementAndGet();
+    idleReclaimer.reclaimIfIdle();
+    idleReclaimer.reclaimIfIdle();
+
+    assertEquals(60 * 1024, serverStats.get(IdleReclaimer.IDLE_RECLAIMED_BYTES));
+  }
+
+  @Test
+  public void reclaimIfIdle_shouldNotMeasureReleaseAfterNewActivity() {
+    clock.addAndGet(IDLE_MILLIS);
+    idleReclaimer.reclaimIfIdle();
+    runCall();
+    heapInUse.set(40 * 1024);
+    collections.incrementAndGet();
+    idleReclaimer.reclaimIfIdle();
+
+    assertEquals(0, serverStats.get(IdleReclaimer.IDLE_RECLAIMED_BYTES));
+  }
+}
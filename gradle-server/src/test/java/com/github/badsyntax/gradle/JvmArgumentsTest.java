@@ -0,0 +1,58 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class JvmArgumentsTest {
+
+  @Test
+  public void canonicalize_shouldKeepTheOrderOfFirstOccurrence() {
+    assertEquals(
+        Arrays.asList(
+            "-XX:+UnlockExperimentalVMOptions",
+            "-XX:+UseZGC",
+            "-Xmx1g",
+            "-javaagent:agent.jar",
+            "-Dfoo=bar"),
+        JvmArguments.canonicalize(
+            "-XX:+UnlockExperimentalVMOptions -XX:+UseZGC -Xmx1g -javaagent:agent.jar -Dfoo=bar"));
+  }
+
+  @Test
+  public void canonicalize_shouldKeepTheLastValueOfRepeatedOptions() {
+    assertEquals(
+        Arrays.asList("-Xmx2g", "-Dfoo=baz", "-XX:-UseG1GC", "-ea"),
+        JvmArguments.canonicalize(
+            "-Xmx1g -Dfoo=bar -XX:+UseG1GC -ea -Xmx2g -XX:-UseG1GC -Dfoo=baz"));
+  }
+
+  @Test
+  public void canonicalize_shouldIgnoreWhitespaceAndQuotes() {
+    assertEquals(
+        JvmArguments.canonicalize("-Dfoo='a b' -Xmx1g"),
+        JvmArguments.canonicalize("  -Dfoo=\"a b\"\t -Xmx1g "));
+    assertTrue(JvmArguments.canonicalize("").isEmpty());
+  }
+
+  @Test
+  public void canonicalize_shouldKeepRepeatedArgumentsThatAreNotOptions() {
+    assertEquals(
+        Arrays.asList("-javaagent:a.jar", "-javaagent:a.jar"),
+        JvmArguments.canonicalize("-javaagent:a.jar -javaagent:a.jar"));
+  }
+
+  @Test
+  public void describeDifference_shouldListAddedAndRemovedArguments() {
+    assertEquals(
+        "added [-Xmx2g], removed [-Xmx1g]",
+        JvmArguments.describeDifference(
+            Arrays.asList("-Xmx1g", "-ea"), Arrays.asList("-Xmx2g", "-ea")));
+    assertEquals(
+        "arguments are in a different order",
+        JvmArguments.describeDifference(
+            Arrays.asList("-Xmx1g", "-ea"), Arrays.asList("-ea", "-Xmx1g")));
+  }
+}
@@ -0,0 +1,104 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class LineFramerTest {
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  // Frames the text in chunks of the given size, then drains the last line like a closed stream
+  private static List<String> frameInChunks(LineFramer framer, byte[] text, int chunkBytes) {
+    List<String> lines = new ArrayList<>();
+    for (int offset = 0; offset < text.length; offset += chunkBytes) {
+      int end = Math.min(text.length, offset + chunkBytes);
+      lines.addAll(framer.frame(Arrays.copyOfRange(text, offset, end)));
+    }
+    String lastLine = framer.drain();
+    if (lastLine != null) {
+      lines.add(lastLine);
+    }
+    return lines;
+  }
+
+  @Test
+  public void frame_shouldRemoveCarriageReturnOfCrlf() {
+    assertEquals(
+        Arrays.asList("first", "", "second"),
+        new LineFramer().frame(bytes("first\r\n\r\nsecond\r\n")));
+  }
+
+  @Test
+  public void frame_shouldKeepCarriageReturnInsideLine() {
+    assertEquals(
+        Collections.singletonList("10%\r20%"), new LineFramer().frame(bytes("10%\r20%\n")));
+  }
+
+  @Test
+  public void frame_shouldJoinLinesSplitAcrossChunks() {
+    LineFramer framer = new LineFramer();
+    assertEquals(Collections.emptyList(), framer.frame(bytes("> Task :app:comp")));
+    assertEquals(
+        Arrays.asList("> Task :app:compileJava", "BUILD"),
+        framer.frame(bytes("ileJava\nBUILD\nSUCC")));
+    assertEquals(Collections.singletonList("SUCCESSFUL"), framer.frame(bytes("ESSFUL\n")));
+  }
+
+  @Test
+  public void frame_shouldRemoveCarriageReturnSplitFromNewline() {
+    LineFramer framer = new LineFramer();
+    assertEquals(Collections.emptyList(), framer.frame(bytes("done\r")));
+    assertEquals(Collections.singletonList("done"), framer.frame(bytes("\n")));
+  }
+
+  @Test
+  public void frame_shouldDecodeCharactersSplitAcrossChunks() {
+    byte[] text = bytes("caf\u00e9 \u2713\n");
+    for (int chunkBytes = 1; chunkBytes <= text.length; chunkBytes++) {
+      assertEquals(
+          Collections.singletonList("caf\u00e9 \u2713"),
+          frameInChunks(new LineFramer(), text, chunkBytes));
+    }
+  }
+
+  @Test
+  public void drain_shouldFlushLastLineOnClose() {
+    LineFramer framer = new LineFramer();
+    assertEquals(Collections.singletonList("first"), framer.frame(bytes("first\nlast\r")));
+    assertEquals("last", framer.drain());
+    assertNull(framer.drain());
+  }
+
+  @Test
+  public void frame_shouldSplitLongLinesWhateverTheChunks() {
+    byte[] text = bytes("abcdefghij\nab\r\nabcd\r\nabcde\n");
+    List<String> expected = Arrays.asList("abcd", "efgh", "ij", "ab", "abcd", "abcd", "e");
+    for (int chunkBytes = 1; chunkBytes <= text.length; chunkBytes++) {
+      assertEquals(expected, frameInChunks(new LineFramer(4), text, chunkBytes));
+    }
+  }
+
+  @Test
+  public void frame_shouldCapPartialLine() {
+    LineFramer framer = new LineFramer(4);
+    assertEquals(Arrays.asList("abcd", "efgh"), framer.frame(bytes("abcdefghij")));
+    assertEquals("ij", framer.drain());
+  }
+
+  @Test
+  public void frame_shouldNotSplitCharacterOfLongLine() {
+    byte[] text = bytes("aaa\u00e9\u00e9\n");
+    List<String> expected = Arrays.asList("aaa", "\u00e9\u00e9");
+    for (int chunkBytes = 1; chunkBytes <= text.length; chunkBytes++) {
+      assertEquals(expected, frameInChunks(new LineFramer(4), text, chunkBytes));
+    }
+  }
+}
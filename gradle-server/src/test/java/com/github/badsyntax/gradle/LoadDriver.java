@@ -0,0 +1,192 @@
+package com.github.badsyntax.gradle;
+
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.NettyChannelBuilder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Drives concurrent GetBuild and RunBuild calls at a server backed by FakeGradleBackend, and
+// reports throughput and latency percentiles per RPC. No Gradle distribution or network is
+// needed, so a run is repeatable on any machine. Run with
+// ./gradlew :gradle-server:loadTest [-Pargs="--clients=8 --calls=50 --transport=tcp"]
+@SuppressWarnings("java:S106")
+public class LoadDriver {
+  private static final int PORT = 8898;
+
+  private final Map<String, String> options = new HashMap<>();
+
+  LoadDriver(String[] args) {
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value but got " + arg);
+      }
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new LoadDriver(args).run();
+  }
+
+  private String option(String name, String defaultValue) {
+    return options.getOrDefault(name, defaultValue);
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+  }
+
+  private void run() throws Exception {
+    int clients = intOption("clients", 4);
+    int calls = intOption("calls", 25);
+    String transport = option("transport", "in-process");
+    String rpc = option("rpc", "mixed");
+    GradleProjectConnector.setBackend(
+        new FakeGradleBackend()
+            .setProjects(intOption("projects", 10))
+            .setTasksPerProject(intOption("tasks-per-project", 20))
+            .setConfigurationMillis(intOption("configuration-millis", 100))
+            .setBuildMillis(intOption("build-millis", 200))
+            .setOutputBytesPerSecond(intOption("output-bytes-per-second", 64 * 1024))
+            .setProgressEventsPerSecond(intOption("progress-events-per-second", 100)));
+
+    Path historyDir = Files.createTempDirectory("load-driver-history");
+    Path projectDir = Files.createTempDirectory("load-driver-project");
+    GradleServerOptions serverOptions =
+        new GradleServerOptions().setPort(PORT).setHistoryDir(historyDir);
+    GradleServer server;
+    ManagedChannel channel;
+    if (transport.equals("in-process")) {
+      String serverName = InProcessServerBuilder.generateName();
+      server = new GradleServer(InProcessServerBuilder.forName(serverName), serverOptions);
+      channel = InProcessChannelBuilder.forName(serverName).build();
+    } else if (transport.equals("tcp")) {
+      server = new GradleServer(serverOptions);
+      channel = NettyChannelBuilder.forAddress("localhost", PORT).usePlaintext().build();
+    } else {
+      throw new IllegalArgumentException("Unknown transport: " + transport);
+    }
+    server.start();
+
+    System.out.printf(
+        "%d clients, %d calls each, %s transport, %s%n", clients, calls, transport, rpc);
+    Map<String, List<Long>> latencies = new HashMap<>();
+    latencies.put("GetBuild", Collections.synchronizedList(new ArrayList<>()));
+    latencies.put("RunBuild", Collections.synchronizedList(new ArrayList<>()));
+    AtomicInteger failures = new AtomicInteger();
+    ExecutorService clientExecutor = Executors.newFixedThreadPool(clients);
+    long startNanos = System.nanoTime();
+    try {
+      GradleGrpc.GradleBlockingStub stub = GradleGrpc.newBlockingStub(channel);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int client = 0; client < clients; client++) {
+        int clientIndex = client;
+        futures.add(
+            clientExecutor.submit(
+                () -> {
+                  for (int call = 0; call < calls; call++) {
+                    boolean getBuild =
+                        rpc.equals("get-build")
+                            || (rpc.equals("mixed") && (clientIndex + call) % 2 == 0);
+                    long callStartNanos = System.nanoTime();
+                    try {
+                      if (getBuild) {
+                        getBuild(stub, projectDir, clientIndex, call);
+                      } else {
+                        runBuild(stub, projectDir, clientIndex, call);
+                      }
+                      latencies
+                          .get(getBuild ? "GetBuild" : "RunBuild")
+                          .add(System.nanoTime() - callStartNanos);
+                    } catch (RuntimeException e) {
+                      failures.incrementAndGet();
+                    }
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      long elapsedNanos = System.nanoTime() - startNanos;
+      clientExecutor.shutdown();
+      channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+      server.stop();
+      report(latencies, elapsedNanos, failures.get());
+    }
+  }
+
+  private static void getBuild(
+      GradleGrpc.GradleBlockingStub stub, Path projectDir, int client, int call) {
+    Iterator<GetBuildReply> replies =
+        stub.getBuild(
+            GetBuildRequest.newBuilder()
+                .setProjectDir(projectDir.toString())
+                .setCancellationKey("load-get-build-" + client + "-" + call)
+                .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+                .build());
+    drain(replies);
+  }
+
+  private static void runBuild(
+      GradleGrpc.GradleBlockingStub stub, Path projectDir, int client, int call) {
+    Iterator<RunBuildReply> replies =
+        stub.runBuild(
+            RunBuildRequest.newBuilder()
+                .setProjectDir(projectDir.toString())
+                .setCancellationKey("load-run-build-" + client + "-" + call)
+                .addAllArgs(Arrays.asList(":project" + (call % 10) + ":task1", "--offline"))
+                .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+                .build());
+    drain(replies);
+  }
+
+  private static void drain(Iterator<?> replies) {
+    while (replies.hasNext()) {
+      replies.next();
+    }
+  }
+
+  private static void report(Map<String, List<Long>> latencies, long elapsedNanos, int failures) {
+    double elapsedSeconds = elapsedNanos / 1e9;
+    System.out.printf(
+        "%-10s %8s %10s %10s %10s %10s %10s%n",
+        "", "calls", "calls/s", "p50 (ms)", "p90 (ms)", "p99 (ms)", "max (ms)");
+    for (Map.Entry<String, List<Long>> entry : latencies.entrySet()) {
+      List<Long> sorted = new ArrayList<>(entry.getValue());
+      if (sorted.isEmpty()) {
+        continue;
+      }
+      Collections.sort(sorted);
+      System.out.printf(
+          "%-10s %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+          entry.getKey(),
+          sorted.size(),
+          sorted.size() / elapsedSeconds,
+          percentile(sorted, 0.50),
+          percentile(sorted, 0.90),
+          percentile(sorted, 0.99),
+          sorted.get(sorted.size() - 1) / 1e6);
+    }
+    System.out.printf("%d failed calls in %.1fs%n", failures, elapsedSeconds);
+  }
+
+  private static double percentile(List<Long> sorted, double percentile) {
+    int index = (int) Math.ceil(percentile * sorted.size()) - 1;
+    return sorted.get(Math.max(0, index)) / 1e6;
+  }
+}
@@ -0,0 +1,218 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.stats.ServerStats;
+import com.google.protobuf.ByteString;
+import io.grpc.DecompressorRegistry;
+import io.grpc.ManagedChannel;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageCompressionTest {
+  private static final int MIN_BYTES = 1024;
+  private static final int OUTPUT_LINES = 4096;
+  private static final byte[] OUTPUT_LINE = "> Task :app:compileJava UP-TO-DATE\n".getBytes();
+
+  private final ServerStats serverStats = new ServerStats();
+  private final MessageCompression messageCompression =
+      new MessageCompression(MIN_BYTES, serverStats);
+  private final FakeServerCallStreamObserver<RunBuildReply> call =
+      new FakeServerCallStreamObserver<>();
+  private Path historyDir;
+  private Path projectDir;
+
+  @Before
+  public void setUp() throws Exception {
+    historyDir = Files.createTempDirectory("historyDir");
+    projectDir = Files.createTempDirectory("projectDir");
+    GradleProjectConnector.setBackend(
+        new FakeGradleBackend()
+            .setBuild(
+                operation -> {
+                  OutputStream standardOutput = operation.getStandardOutput();
+                  for (int i = 0; i < OUTPUT_LINES; i++) {
+                    standardOutput.write(OUTPUT_LINE);
+                  }
+                  standardOutput.flush();
+                }));
+  }
+
+  @After
+  public void tearDown() {
+    GradleProjectConnector.setBackend(new ToolingApiBackend());
+  }
+
+  private static RunBuildReply outputReply(int bytes) {
+    byte[] output = new byte[bytes];
+    Arrays.fill(output, (byte) 'x');
+    return RunBuildReply.newBuilder()
+        .setOutput(Output.newBuilder().setOutputBytes(ByteString.copyFrom(output)))
+        .build();
+  }
+
+  @Test
+  public void wrap_shouldAskForGzipAndOnlyCompressLargeReplies() {
+    StreamObserver<RunBuildReply> responseObserver = messageCompression.wrap(call);
+
+    responseObserver.onNext(outputReply(MIN_BYTES * 4));
+    responseObserver.onNext(outputReply(16));
+    responseObserver.onNext(outputReply(MIN_BYTES * 2));
+    responseObserver.onCompleted();
+
+    assertEquals("gzip", call.getCompression());
+    assertEquals(Arrays.asList(true, false, true), call.getMessageCompressions());
+    assertEquals(2, serverStats.get(ServerStats.COMPRESSED_MESSAGES));
+    assertTrue(call.isCompleted());
+  }
+
+  @Test
+  public void wrap_shouldKeepFlowControlAndCancellation() {
+    StreamObserver<RunBuildReply> responseObserver = messageCompression.wrap(call);
+    assertTrue(responseObserver instanceof ServerCallStreamObserver);
+    ServerCallStreamObserver<RunBuildReply> serverCallObserver =
+        (ServerCallStreamObserver<RunBuildReply>) responseObserver;
+    Runnable onReady = () -> {};
+    Runnable onCancel = () -> {};
+
+    serverCallObserver.setOnReadyHandler(onReady);
+    serverCallObserver.setOnCancelHandler(onCancel);
+    call.setReady(false);
+    call.cancel();
+
+    assertFalse(serverCallObserver.isReady());
+    assertTrue(serverCallObserver.isCancelled());
+    assertSame(onReady, call.getOnReadyHandler());
+    assertSame(onCancel, call.getOnCancelHandler());
+  }
+
+  @Test
+  public void wrap_shouldNotWrapWhenDisabled() {
+    assertSame(call, new MessageCompression(0, serverStats).wrap(call));
+  }
+
+  @Test
+  public void runBuild_shouldOnlyCompressRepliesOverTheThresholdInProcess() throws Exception {
+    GradleProjectConnector.setBackend(
+        new FakeGradleBackend()
+            .setBuild(
+                operation -> {
+                  OutputStream standardOutput = operation.getStandardOutput();
+                  standardOutput.write(OUTPUT_LINE);
+                  standardOutput.flush();
+                  for (int i = 0; i < OUTPUT_LINES; i++) {
+                    standardOutput.write(OUTPUT_LINE);
+                  }
+                  standardOutput.flush();
+                }));
+    String serverName = InProcessServerBuilder.generateName();
+    GradleServer server =
+        new GradleServer(
+            InProcessServerBuilder.forName(serverName).directExecutor(),
+            new GradleServerOptions()
+                .setPort(0)
+                .setHistoryDir(historyDir)
+                .setExecutorMode(RpcExecutors.Mode.DIRECT)
+                .setCompressMinBytes(MIN_BYTES));
+    server.start();
+    ManagedChannel channel = InProcessChannelBuilder.forName(serverName).directExecutor().build();
+    try {
+      GradleGrpc.GradleBlockingStub stub = GradleGrpc.newBlockingStub(channel);
+      Iterator<RunBuildReply> replies =
+          stub.runBuild(
+              RunBuildRequest.newBuilder()
+                  .setProjectDir(projectDir.toString())
+                  .addArgs("build")
+                  .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+                  .build());
+      int largeReplies = 0;
+      int smallReplies = 0;
+      while (replies.hasNext()) {
+        if (replies.next().getSerializedSize() >= MIN_BYTES) {
+          largeReplies++;
+        } else {
+          smallReplies++;
+        }
+      }
+
+      assertEquals(1, largeReplies);
+      assertTrue(smallReplies > 0);
+      assertEquals(
+          largeReplies,
+          stub.getServerStats(GetServerStatsRequest.getDefaultInstance())
+              .getCountersOrThrow(ServerStats.COMPRESSED_MESSAGES));
+    } finally {
+      channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+      server.stop();
+    }
+  }
+
+  @Test
+  public void runBuild_shouldSaveBytesWhenClientAcceptsGzip() throws Exception {
+    long savedBytes = runBuildOverTcp(DecompressorRegistry.getDefaultInstance());
+    // The output is one line repeated, so it compresses to a small fraction of its size
+    assertTrue(savedBytes > OUTPUT_LINES * OUTPUT_LINE.length / 2);
+  }
+
+  @Test
+  public void runBuild_shouldNotCompressWhenClientDoesNotAcceptGzip() throws Exception {
+    assertEquals(0, runBuildOverTcp(DecompressorRegistry.emptyInstance()));
+  }
+
+  // Compression is only negotiated by a real transport, so the build runs over TCP. Returns the
+  // bytes saved by compression, after checking the client decoded all the output.
+  private long runBuildOverTcp(DecompressorRegistry decompressorRegistry) throws Exception {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    GradleServer server =
+        new GradleServer(
+            new GradleServerOptions()
+                .setPort(port)
+                .setHistoryDir(historyDir)
+                .setCompressMinBytes(MIN_BYTES));
+    server.start();
+    ManagedChannel channel =
+        NettyChannelBuilder.forAddress("localhost", port)
+            .usePlaintext()
+            .decompressorRegistry(decompressorRegistry)
+            .build();
+    try {
+      GradleGrpc.GradleBlockingStub stub = GradleGrpc.newBlockingStub(channel);
+      Iterator<RunBuildReply> replies =
+          stub.runBuild(
+              RunBuildRequest.newBuilder()
+                  .setProjectDir(projectDir.toString())
+                  .addArgs("build")
+                  .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+                  .build());
+      long outputBytes = 0;
+      while (replies.hasNext()) {
+        outputBytes += replies.next().getOutput().getOutputBytes().size();
+      }
+      assertEquals(OUTPUT_LINES * OUTPUT_LINE.length, outputBytes);
+      return stub.getServerStats(GetServerStatsRequest.getDefaultInstance())
+          .getCountersOrThrow(ServerStats.COMPRESSION_SAVED_BYTES);
+    } finally {
+      channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+      server.stop();
+    }
+  }
+}
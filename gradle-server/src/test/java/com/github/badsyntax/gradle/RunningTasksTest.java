@@ -0,0 +1,29 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RunningTasksTest {
+
+  @Test
+  public void getOutputTaskPath_shouldReturnTheOnlyRunningTask() {
+    RunningTasks runningTasks = new RunningTasks();
+    assertNull(runningTasks.getOutputTaskPath());
+    runningTasks.started(":compileJava");
+    assertEquals(":compileJava", runningTasks.getOutputTaskPath());
+    runningTasks.finished(":compileJava");
+    assertNull(runningTasks.getOutputTaskPath());
+  }
+
+  @Test
+  public void getOutputTaskPath_shouldNotGuessWhileTasksOverlap() {
+    RunningTasks runningTasks = new RunningTasks();
+    runningTasks.started(":a:compileJava");
+    runningTasks.started(":b:compileJava");
+    assertNull(runningTasks.getOutputTaskPath());
+    runningTasks.finished(":b:compileJava");
+    assertEquals(":a:compileJava", runningTasks.getOutputTaskPath());
+  }
+}
@@ -0,0 +1,125 @@
+package com.github.badsyntax.gradle;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class StandardInputPipeTest {
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String readAll(StandardInputPipe pipe) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    byte[] buffer = new byte[3];
+    int count;
+    while ((count = pipe.read(buffer, 0, buffer.length)) != -1) {
+      output.write(buffer, 0, count);
+    }
+    return new String(output.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void read_shouldReturnChunksInTheOrderTheyWereWritten() throws IOException {
+    StandardInputPipe pipe = new StandardInputPipe(4, () -> {});
+    pipe.write(bytes("first\n"));
+    pipe.write(bytes("second\n"));
+    pipe.write(bytes("third\n"));
+    pipe.closeInput();
+
+    assertEquals("first\nsecond\nthird\n", readAll(pipe));
+    assertEquals(-1, pipe.read());
+  }
+
+  @Test
+  public void read_shouldReadSingleBytes() throws IOException {
+    StandardInputPipe pipe = new StandardInputPipe(4, () -> {});
+    pipe.write(new byte[] {(byte) 0xff, 1});
+    pipe.closeInput();
+
+    assertEquals(0xff, pipe.read());
+    assertEquals(1, pipe.available());
+    assertEquals(1, pipe.read());
+    assertEquals(-1, pipe.read());
+  }
+
+  @Test
+  public void read_shouldRequestTheNextChunkOnlyOnceAChunkIsRead() throws IOException {
+    AtomicInteger readChunks = new AtomicInteger();
+    StandardInputPipe pipe = new StandardInputPipe(4, readChunks::incrementAndGet);
+    pipe.write(bytes("abcde"));
+    pipe.write(bytes("fg"));
+    pipe.closeInput();
+
+    byte[] buffer = new byte[3];
+    assertEquals(3, pipe.read(buffer, 0, 3));
+    assertEquals(0, readChunks.get());
+    assertEquals(2, pipe.read(buffer, 0, 3));
+    assertEquals(0, readChunks.get());
+    assertEquals(2, pipe.read(buffer, 0, 3));
+    assertEquals(1, readChunks.get());
+    assertEquals(-1, pipe.read(buffer, 0, 3));
+    assertEquals(2, readChunks.get());
+  }
+
+  @Test(expected = IOException.class)
+  public void write_shouldFailWhenMoreThanTheCapacityIsBuffered() throws IOException {
+    StandardInputPipe pipe = new StandardInputPipe(2, () -> {});
+    pipe.write(bytes("a"));
+    pipe.write(bytes("b"));
+    pipe.write(bytes("c"));
+    pipe.write(bytes("d"));
+  }
+
+  @Test
+  public void closeInput_shouldEndTheInputAfterWhatIsBuffered() throws IOException {
+    StandardInputPipe pipe = new StandardInputPipe(2, () -> {});
+    pipe.write(bytes("a"));
+    pipe.write(bytes("b"));
+    pipe.closeInput();
+
+    assertEquals("ab", readAll(pipe));
+  }
+
+  @Test
+  public void close_shouldDropBufferedInputAndIgnoreLaterWrites() throws IOException {
+    StandardInputPipe pipe = new StandardInputPipe(2, () -> {});
+    pipe.write(bytes("a"));
+    pipe.close();
+    pipe.write(bytes("b"));
+
+    assertEquals(-1, pipe.read());
+  }
+
+  @Test
+  public void close_shouldEndTheInputForAWaitingReader() throws Exception {
+    StandardInputPipe pipe = new StandardInputPipe(2, () -> {});
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<byte[]> read =
+          executor.submit(
+              () -> {
+                byte[] buffer = new byte[4];
+                int count = pipe.read(buffer, 0, buffer.length);
+                return count == -1 ? new byte[0] : buffer;
+              });
+      Thread.sleep(50);
+      assertTrue(!read.isDone());
+      pipe.close();
+      assertArrayEquals(new byte[0], read.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
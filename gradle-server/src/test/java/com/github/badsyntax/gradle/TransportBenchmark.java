@@ -0,0 +1,187 @@
+package com.github.badsyntax.gradle;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.netty.NettyChannelBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+// Compares TCP and Unix domain socket transports for output-heavy RunBuild streams. Run with
+// ./gradlew :gradle-server:transportBenchmark [-Pargs="messages payloadBytes iterations"], and
+// see CONTRIBUTING.md for how results are recorded
+@SuppressWarnings("java:S106")
+public class TransportBenchmark {
+  private static final int PORT = 8897;
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int LATENCY_CALLS = 2000;
+
+  private final int messages;
+  private final int payloadBytes;
+  private final int iterations;
+
+  TransportBenchmark(int messages, int payloadBytes, int iterations) {
+    this.messages = messages;
+    this.payloadBytes = payloadBytes;
+    this.iterations = iterations;
+  }
+
+  public static void main(String[] args) throws Exception {
+    TransportBenchmark benchmark =
+        new TransportBenchmark(
+            args.length > 0 ? Integer.parseInt(args[0]) : 20000,
+            args.length > 1 ? Integer.parseInt(args[1]) : 1024,
+            args.length > 2 ? Integer.parseInt(args[2]) : 10);
+    System.out.printf(
+        "%d output replies of %d bytes, %d iterations, %s %s, Java %s, %d cores%n",
+        benchmark.messages,
+        benchmark.payloadBytes,
+        benchmark.iterations,
+        System.getProperty("os.name"),
+        System.getProperty("os.arch"),
+        System.getProperty("java.version"),
+        Runtime.getRuntime().availableProcessors());
+    System.out.printf(
+        "%-8s %12s %12s %14s %14s%n", "", "MB/s", "replies/s", "p50 call (us)", "p99 call (us)");
+
+    benchmark.run("tcp", new GradleServerOptions().setPort(PORT));
+    if (Epoll.isAvailable()) {
+      Path socketDir = Files.createTempDirectory("gradle-server");
+      benchmark.run(
+          "socket",
+          new GradleServerOptions().setSocket(socketDir.resolve("benchmark.sock").toString()));
+    } else {
+      System.out.println("socket skipped, epoll is not available: " + Epoll.unavailabilityCause());
+    }
+  }
+
+  private void run(String name, GradleServerOptions options) throws Exception {
+    ServerTransport transport = ServerTransport.create(options);
+    Server server = transport.getServerBuilder().addService(new OutputService()).build().start();
+    EventLoopGroup clientEventLoopGroup = null;
+    ManagedChannel channel;
+    if (transport.isDomainSocket()) {
+      clientEventLoopGroup = new EpollEventLoopGroup();
+      channel =
+          NettyChannelBuilder.forAddress(new DomainSocketAddress(options.getSocket()))
+              .eventLoopGroup(clientEventLoopGroup)
+              .channelType(EpollDomainSocketChannel.class)
+              .usePlaintext()
+              .build();
+    } else {
+      channel =
+          NettyChannelBuilder.forAddress("localhost", options.getPort()).usePlaintext().build();
+    }
+    try {
+      GradleGrpc.GradleBlockingStub stub = GradleGrpc.newBlockingStub(channel);
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        stream(stub, messages);
+      }
+      long totalNanos = 0;
+      for (int i = 0; i < iterations; i++) {
+        totalNanos += stream(stub, messages);
+      }
+      double seconds = totalNanos / 1e9;
+      double megabytes = (double) messages * payloadBytes * iterations / (1024 * 1024);
+
+      long[] callNanos = new long[LATENCY_CALLS];
+      for (int i = 0; i < LATENCY_CALLS; i++) {
+        callNanos[i] = stream(stub, 1);
+      }
+      Arrays.sort(callNanos);
+
+      System.out.printf(
+          "%-8s %12.1f %12.0f %14d %14d%n",
+          name,
+          megabytes / seconds,
+          messages * iterations / seconds,
+          TimeUnit.NANOSECONDS.toMicros(callNanos[LATENCY_CALLS / 2]),
+          TimeUnit.NANOSECONDS.toMicros(callNanos[LATENCY_CALLS * 99 / 100]));
+    } finally {
+      channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+      server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+      if (clientEventLoopGroup != null) {
+        clientEventLoopGroup.shutdownGracefully();
+      }
+      transport.close();
+    }
+  }
+
+  private long stream(GradleGrpc.GradleBlockingStub stub, int count) {
+    RunBuildRequest req =
+        RunBuildRequest.newBuilder()
+            .addArgs(String.valueOf(count))
+            .addArgs(String.valueOf(payloadBytes))
+            .build();
+    long startNanos = System.nanoTime();
+    Iterator<RunBuildReply> replies = stub.runBuild(req);
+    while (replies.hasNext()) {
+      replies.next();
+    }
+    return System.nanoTime() - startNanos;
+  }
+
+  // Streams build output like a chatty build would, without running Gradle. Replies are only sent
+  // while the call is ready, so a slow client applies back-pressure instead of the replies being
+  // buffered, as they are by the real server.
+  private static class OutputService extends GradleGrpc.GradleImplBase {
+    @Override
+    public void runBuild(RunBuildRequest req, StreamObserver<RunBuildReply> responseObserver) {
+      byte[] payload = new byte[Integer.parseInt(req.getArgs(1))];
+      Arrays.fill(payload, (byte) 'x');
+      ServerCallStreamObserver<RunBuildReply> serverCallObserver =
+          (ServerCallStreamObserver<RunBuildReply>) responseObserver;
+      serverCallObserver.setOnReadyHandler(
+          new ReplySender(
+              serverCallObserver, Integer.parseInt(req.getArgs(0)), ByteString.copyFrom(payload)));
+    }
+  }
+
+  // gRPC runs the ready handler serially, so the counters don't need to be synchronized
+  private static class ReplySender implements Runnable {
+    private final ServerCallStreamObserver<RunBuildReply> responseObserver;
+    private final int count;
+    private final RunBuildReply outputReply;
+    private int sent;
+    private boolean completed;
+
+    ReplySender(
+        ServerCallStreamObserver<RunBuildReply> responseObserver, int count, ByteString output) {
+      this.responseObserver = responseObserver;
+      this.count = count;
+      this.outputReply =
+          RunBuildReply.newBuilder()
+              .setOutput(
+                  Output.newBuilder()
+                      .setOutputType(Output.OutputType.STDOUT)
+                      .setOutputBytes(output))
+              .build();
+    }
+
+    @Override
+    public void run() {
+      while (sent < count && responseObserver.isReady()) {
+        responseObserver.onNext(outputReply);
+        sent++;
+      }
+      if (sent == count && !completed) {
+        completed = true;
+        responseObserver.onNext(
+            RunBuildReply.newBuilder()
+                .setRunBuildResult(RunBuildResult.newBuilder().setMessage("Successfully run build"))
+                .build());
+        responseObserver.onCompleted();
+      }
+    }
+  }
+}
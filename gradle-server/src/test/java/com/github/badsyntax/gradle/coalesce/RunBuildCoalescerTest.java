@@ -0,0 +1,343 @@
+package com.github.badsyntax.gradle.coalesce;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.FakeGradleBackend;
+import com.github.badsyntax.gradle.GradleBuildCancellation;
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.GradleProjectConnector;
+import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.ToolingApiBackend;
+import com.github.badsyntax.gradle.history.BuildHistory;
+import com.github.badsyntax.gradle.history.BuildOutcome;
+import com.github.badsyntax.gradle.history.BuildRecord;
+import com.github.badsyntax.gradle.stats.ServerStats;
+import io.grpc.stub.StreamObserver;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.gradle.tooling.BuildLauncher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+@SuppressWarnings(value = "unchecked")
+public class RunBuildCoalescerTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final ExecutorService requestExecutor = Executors.newCachedThreadPool();
+  // The build lane
+  private final ExecutorService buildExecutor = Executors.newFixedThreadPool(2);
+  private final AtomicInteger buildLaneTasks = new AtomicInteger();
+  private FakeGradleBackend gradle;
+  private File projectDir;
+  private BuildHistory buildHistory;
+  private RunBuildCoalescer runBuildCoalescer;
+
+  @Before
+  public void setUp() throws Exception {
+    projectDir = temporaryFolder.newFolder("project");
+    buildHistory = new BuildHistory(temporaryFolder.newFolder("history").toPath(), 1024 * 1024);
+    runBuildCoalescer =
+        new RunBuildCoalescer(
+            200,
+            buildHistory,
+            new DaemonReuseTracker(new ServerStats()),
+            task -> {
+              buildLaneTasks.incrementAndGet();
+              buildExecutor.execute(task);
+            });
+    gradle = new FakeGradleBackend().setConfigurationMillis(0).setBuildMillis(400);
+    GradleProjectConnector.setBackend(gradle);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    requestExecutor.shutdownNow();
+    runBuildCoalescer.close();
+    buildExecutor.shutdownNow();
+    buildHistory.close();
+    GradleProjectConnector.setBackend(new ToolingApiBackend());
+  }
+
+  private RunBuildRequest request(String cancellationKey, String task) {
+    return RunBuildRequest.newBuilder()
+        .setProjectDir(projectDir.getAbsolutePath())
+        .setCancellationKey(cancellationKey)
+        .addArgs(task)
+        .setLineFramedOutput(true)
+        .setGradleConfig(GradleConfig.newBuilder().setVersion("6.4"))
+        .build();
+  }
+
+  private Future<?> run(RunBuildRequest req, StreamObserver<RunBuildReply> responseObserver) {
+    return requestExecutor.submit(() -> runBuildCoalescer.run(req, responseObserver, null));
+  }
+
+  private static List<RunBuildReply> replies(StreamObserver<RunBuildReply> responseObserver) {
+    ArgumentCaptor<RunBuildReply> replies = ArgumentCaptor.forClass(RunBuildReply.class);
+    verify(responseObserver, atLeastOnce()).onNext(replies.capture());
+    return replies.getAllValues();
+  }
+
+  private static List<String> outputTaskPaths(List<RunBuildReply> replies) {
+    return replies.stream()
+        .filter(RunBuildReply::hasOutput)
+        .map(reply -> reply.getOutput().getTaskPath())
+        .distinct()
+        .collect(Collectors.toList());
+  }
+
+  private static List<String> progressMessages(List<RunBuildReply> replies) {
+    return replies.stream()
+        .filter(RunBuildReply::hasProgress)
+        .map(reply -> reply.getProgress().getMessage())
+        .collect(Collectors.toList());
+  }
+
+  private void awaitBuildInvocations(int count) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (gradle.getInvocations(BuildLauncher.class).size() < count) {
+      assertTrue("Timed out waiting for the build", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void run_shouldMergeRequestsIntoOneBuild() throws Exception {
+    StreamObserver<RunBuildReply> firstObserver = mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> secondObserver = mock(StreamObserver.class);
+
+    Future<?> first = run(request("first", ":project0:task0"), firstObserver);
+    Future<?> second = run(request("second", ":project0:task1"), secondObserver);
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    verify(firstObserver, timeout(5000)).onCompleted();
+    verify(secondObserver, timeout(5000)).onCompleted();
+
+    List<FakeGradleBackend.Invocation> invocations = gradle.getInvocations(BuildLauncher.class);
+    assertEquals(1, invocations.size());
+    // The requests race each other into the build, so the order of their tasks isn't known
+    assertEquals(
+        new HashSet<>(Arrays.asList(":project0:task0", ":project0:task1", "--continue")),
+        new HashSet<>(invocations.get(0).getOperation().getArguments()));
+    assertEquals(1, buildLaneTasks.get());
+    assertTrue(replies(firstObserver).stream().anyMatch(RunBuildReply::hasRunBuildResult));
+    assertTrue(replies(secondObserver).stream().anyMatch(RunBuildReply::hasRunBuildResult));
+  }
+
+  @Test
+  public void run_shouldRouteTaskOutputAndProgressToTheRequestingMember() throws Exception {
+    StreamObserver<RunBuildReply> firstObserver = mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> secondObserver = mock(StreamObserver.class);
+
+    Future<?> first = run(request("first", ":project0:task0"), firstObserver);
+    Future<?> second = run(request("second", "project0:task1"), secondObserver);
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+    verify(firstObserver, timeout(5000)).onCompleted();
+    verify(secondObserver, timeout(5000)).onCompleted();
+
+    List<RunBuildReply> firstReplies = replies(firstObserver);
+    List<RunBuildReply> secondReplies = replies(secondObserver);
+    assertEquals(Arrays.asList(":project0:task0"), outputTaskPaths(firstReplies));
+    assertEquals(Arrays.asList(":project0:task1"), outputTaskPaths(secondReplies));
+    assertTrue(progressMessages(firstReplies).contains("Task :project0:task0 started"));
+    assertFalse(progressMessages(firstReplies).contains("Task :project0:task1 started"));
+    assertTrue(progressMessages(secondReplies).contains("Task :project0:task1 started"));
+    assertFalse(progressMessages(secondReplies).contains("Task :project0:task0 started"));
+    for (RunBuildReply reply : firstReplies) {
+      if (reply.hasOutput()) {
+        assertEquals(Output.OutputType.STDOUT, reply.getOutput().getOutputType());
+        assertFalse(reply.getOutput().getLinesList().isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void run_shouldSendOutputAsWrittenToMembersWithoutLineFraming() throws Exception {
+    String written = "Downloading 10%\rDownloading 100%\nfirst line\r\npartial";
+    gradle.setBuild(
+        operation -> {
+          OutputStream standardOutput = operation.getStandardOutput();
+          standardOutput.write(written.substring(0, 20).getBytes(StandardCharsets.UTF_8));
+          standardOutput.flush();
+          standardOutput.write(written.substring(20).getBytes(StandardCharsets.UTF_8));
+          standardOutput.flush();
+        });
+    StreamObserver<RunBuildReply> framedObserver = mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> rawObserver = mock(StreamObserver.class);
+
+    Future<?> framed = run(request("framed", ":project0:task0"), framedObserver);
+    Future<?> raw =
+        run(
+            request("raw", ":project0:task1").toBuilder().setLineFramedOutput(false).build(),
+            rawObserver);
+    framed.get(5, TimeUnit.SECONDS);
+    raw.get(5, TimeUnit.SECONDS);
+    verify(framedObserver, timeout(5000)).onCompleted();
+    verify(rawObserver, timeout(5000)).onCompleted();
+
+    String rawOutput =
+        replies(rawObserver).stream()
+            .filter(RunBuildReply::hasOutput)
+            .map(reply -> reply.getOutput().getOutputBytes().toStringUtf8())
+            .collect(Collectors.joining());
+    assertEquals(written, rawOutput);
+    List<String> framedLines =
+        replies(framedObserver).stream()
+            .filter(RunBuildReply::hasOutput)
+            .flatMap(reply -> reply.getOutput().getLinesList().stream())
+            .collect(Collectors.toList());
+    assertTrue(framedLines.contains("partial"));
+  }
+
+  @Test
+  public void run_shouldOnlyCancelTheBuildWithItsLastMember() throws Exception {
+    gradle.setBuild(FakeGradleBackend::awaitCancellation);
+    StreamObserver<RunBuildReply> firstObserver = mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> secondObserver = mock(StreamObserver.class);
+
+    Future<?> first = run(request("first", ":project0:task0"), firstObserver);
+    Future<?> second = run(request("second", ":project0:task1"), secondObserver);
+    awaitBuildInvocations(1);
+
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    GradleBuildCancellation.cancelBuild("first", 0);
+    verify(firstObserver, timeout(5000)).onCompleted();
+    assertTrue(replies(firstObserver).stream().anyMatch(RunBuildReply::hasCancelled));
+    Thread.sleep(100);
+    verify(secondObserver, never()).onCompleted();
+    assertFalse(
+        gradle
+            .getInvocations(BuildLauncher.class)
+            .get(0)
+            .getOperation()
+            .getCancellationToken()
+            .isCancellationRequested());
+
+    GradleBuildCancellation.cancelBuild("second", 0);
+    verify(secondObserver, timeout(5000)).onCompleted();
+    assertTrue(replies(secondObserver).stream().anyMatch(RunBuildReply::hasCancelled));
+    assertTrue(
+        gradle
+            .getInvocations(BuildLauncher.class)
+            .get(0)
+            .getOperation()
+            .getCancellationToken()
+            .isCancellationRequested());
+  }
+
+  @Test
+  public void run_shouldCompleteEveryMemberWhenOneCannotBeCompleted() throws Exception {
+    StreamObserver<RunBuildReply> failingObserver =
+        new StreamObserver<RunBuildReply>() {
+          @Override
+          public void onNext(RunBuildReply reply) {}
+
+          @Override
+          public void onError(Throwable t) {}
+
+          @Override
+          public void onCompleted() {
+            throw new IllegalStateException("Call already closed");
+          }
+        };
+    StreamObserver<RunBuildReply> secondObserver = mock(StreamObserver.class);
+
+    Future<?> first = run(request("first", ":project0:task0"), failingObserver);
+    Future<?> second = run(request("second", ":project0:task1"), secondObserver);
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    verify(secondObserver, timeout(5000)).onCompleted();
+  }
+
+  @Test
+  public void run_shouldFailTheMembersOfABuildThatThrows() throws Exception {
+    gradle.setBuild(
+        operation -> {
+          throw new NullPointerException("Unexpected");
+        });
+    StreamObserver<RunBuildReply> firstObserver = mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> secondObserver = mock(StreamObserver.class);
+
+    Future<?> first = run(request("first", ":project0:task0"), firstObserver);
+    Future<?> second = run(request("second", ":project0:task1"), secondObserver);
+    first.get(5, TimeUnit.SECONDS);
+    second.get(5, TimeUnit.SECONDS);
+
+    verify(firstObserver, timeout(5000)).onError(any());
+    verify(secondObserver, timeout(5000)).onError(any());
+  }
+
+  @Test
+  public void run_shouldReturnOnceTheRequestHasJoinedTheBuild() throws Exception {
+    gradle.setBuild(FakeGradleBackend::awaitCancellation);
+    StreamObserver<RunBuildReply> responseObserver = mock(StreamObserver.class);
+
+    run(request("first", ":project0:task0"), responseObserver).get(5, TimeUnit.SECONDS);
+    awaitBuildInvocations(1);
+
+    verify(responseObserver, never()).onCompleted();
+    GradleBuildCancellation.cancelBuild("first", 0);
+    verify(responseObserver, timeout(5000)).onCompleted();
+  }
+
+  @Test
+  public void run_shouldSendEachMemberTheEstimateOfItsTasks() throws Exception {
+    List<String> args = Arrays.asList(":project0:task0");
+    buildHistory.record(
+        new BuildRecord(
+            projectDir.getAbsolutePath(),
+            args,
+            BuildOutcome.SUCCESS,
+            0,
+            10000,
+            1,
+            new HashMap<>()));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (buildHistory.lookup(projectDir.getAbsolutePath(), args) == null) {
+      assertTrue("Timed out waiting for the history", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    gradle.setBuildMillis(1500);
+    StreamObserver<RunBuildReply> firstObserver = mock(StreamObserver.class);
+    StreamObserver<RunBuildReply> secondObserver = mock(StreamObserver.class);
+
+    run(request("first", ":project0:task0"), firstObserver);
+    run(request("second", ":project0:task1"), secondObserver);
+    verify(firstObserver, timeout(5000)).onCompleted();
+    verify(secondObserver, timeout(5000)).onCompleted();
+
+    assertTrue(replies(firstObserver).stream().anyMatch(RunBuildReply::hasEstimate));
+    // Without history of its own, the second member has nothing to estimate from
+    assertFalse(replies(secondObserver).stream().anyMatch(RunBuildReply::hasEstimate));
+  }
+}
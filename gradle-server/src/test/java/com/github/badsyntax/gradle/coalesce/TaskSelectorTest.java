@@ -0,0 +1,39 @@
+package com.github.badsyntax.gradle.coalesce;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TaskSelectorTest {
+
+  @Test
+  public void matches_shouldMatchPaths() {
+    assertTrue(new TaskSelector(":sub:build").matches(":sub:build"));
+    assertTrue(new TaskSelector("sub:build").matches(":sub:build"));
+    assertTrue(new TaskSelector(":build").matches(":build"));
+    assertFalse(new TaskSelector(":build").matches(":sub:build"));
+    assertFalse(new TaskSelector(":sub:build").matches(":sub:nested:build"));
+  }
+
+  @Test
+  public void matches_shouldMatchNamesInEveryProject() {
+    TaskSelector selector = new TaskSelector("build");
+    assertTrue(selector.matches(":build"));
+    assertTrue(selector.matches(":sub:build"));
+    assertFalse(selector.matches(":sub:buildEnvironment"));
+    assertFalse(selector.matches(":sub:assemble"));
+  }
+
+  @Test
+  public void matches_shouldMatchCamelCaseAbbreviations() {
+    assertTrue(new TaskSelector("cT").matches(":compileTest"));
+    assertTrue(new TaskSelector("compTJ").matches(":sub:compileTestJava"));
+    assertTrue(new TaskSelector(":s:cT").matches(":sub:compileTest"));
+    assertTrue(new TaskSelector("sub:cTJ").matches(":sub:compileTestJava"));
+    assertTrue(new TaskSelector("t0").matches(":task0"));
+    assertFalse(new TaskSelector("cT").matches(":compileTestJava"));
+    assertFalse(new TaskSelector("cT").matches(":checkstyle"));
+    assertFalse(new TaskSelector(":s:cT").matches(":other:compileTest"));
+  }
+}
@@ -0,0 +1,227 @@
+package com.github.badsyntax.gradle.diagnostics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.Diagnostic;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class DiagnosticExtractorTest {
+
+  private static List<Diagnostic> extract(String output) {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    DiagnosticExtractor extractor = new DiagnosticExtractor(d -> diagnostics.add(d.build()));
+    extractor.write(output.getBytes(StandardCharsets.UTF_8));
+    extractor.finish();
+    return diagnostics;
+  }
+
+  // The output is written a byte at a time, so every keyword and line spans writes
+  private static List<Diagnostic> extractByteByByte(String output) {
+    List<Diagnostic> diagnostics = new ArrayList<>();
+    DiagnosticExtractor extractor = new DiagnosticExtractor(d -> diagnostics.add(d.build()));
+    for (byte b : output.getBytes(StandardCharsets.UTF_8)) {
+      extractor.write(new byte[] {b});
+    }
+    extractor.finish();
+    return diagnostics;
+  }
+
+  private static void assertDiagnostic(
+      Diagnostic diagnostic,
+      Diagnostic.Severity severity,
+      String source,
+      String file,
+      int line,
+      int column,
+      String message) {
+    assertEquals(severity, diagnostic.getSeverity());
+    assertEquals(source, diagnostic.getSource());
+    assertEquals(file, diagnostic.getFile());
+    assertEquals(line, diagnostic.getLine());
+    assertEquals(column, diagnostic.getColumn());
+    assertEquals(message, diagnostic.getMessage());
+  }
+
+  @Test
+  public void write_shouldExtractJavacDiagnosticsWithTheCaretColumn() {
+    String output =
+        "/src/A.java:12: error: cannot find symbol\n"
+            + "        helper.run();\n"
+            + "              ^\r\n"
+            + "/src/B.java:3: warning: [deprecation] old() has been deprecated\n"
+            + "> Task :compileJava FAILED\n";
+
+    List<Diagnostic> diagnostics = extract(output);
+
+    assertEquals(2, diagnostics.size());
+    assertDiagnostic(
+        diagnostics.get(0),
+        Diagnostic.Severity.ERROR,
+        "javac",
+        "/src/A.java",
+        12,
+        15,
+        "cannot find symbol");
+    assertDiagnostic(
+        diagnostics.get(1),
+        Diagnostic.Severity.WARNING,
+        "javac",
+        "/src/B.java",
+        3,
+        0,
+        "[deprecation] old() has been deprecated");
+    assertEquals(diagnostics, extractByteByByte(output));
+  }
+
+  @Test
+  public void write_shouldExtractKotlincDiagnosticsInBothFormats() {
+    String output =
+        "e: file:///src/Util.kt:10:5 Unresolved reference: helper\n"
+            + "w: /src/Build.kts: (3, 7): Parameter 'x' is never used\n"
+            + "e: java.lang.OutOfMemoryError: Java heap space\n"
+            + "Type: unused\n";
+
+    List<Diagnostic> diagnostics = extract(output);
+
+    assertEquals(3, diagnostics.size());
+    assertDiagnostic(
+        diagnostics.get(0),
+        Diagnostic.Severity.ERROR,
+        "kotlinc",
+        "/src/Util.kt",
+        10,
+        5,
+        "Unresolved reference: helper");
+    assertDiagnostic(
+        diagnostics.get(1),
+        Diagnostic.Severity.WARNING,
+        "kotlinc",
+        "/src/Build.kts",
+        3,
+        7,
+        "Parameter 'x' is never used");
+    assertDiagnostic(
+        diagnostics.get(2),
+        Diagnostic.Severity.ERROR,
+        "kotlinc",
+        "",
+        0,
+        0,
+        "java.lang.OutOfMemoryError: Java heap space");
+    assertEquals(diagnostics, extractByteByByte(output));
+  }
+
+  @Test
+  public void write_shouldExtractGradleFailuresWithTheirLocation() {
+    String output =
+        "FAILURE: Build failed with an exception.\n"
+            + "\n"
+            + "* Where:\n"
+            + "Build file '/project/build.gradle' line: 7\n"
+            + "\n"
+            + "\u001B[31m* What went wrong:\u001B[0m\n"
+            + "A problem occurred evaluating root project 'project'.\n"
+            + "> Could not find method implementation() for arguments [foo]\n"
+            + "\n"
+            + "* Try:\n"
+            + "Run with --stacktrace option to get the stack trace.\n";
+
+    List<Diagnostic> diagnostics = extract(output);
+
+    assertEquals(1, diagnostics.size());
+    assertDiagnostic(
+        diagnostics.get(0),
+        Diagnostic.Severity.ERROR,
+        "gradle",
+        "/project/build.gradle",
+        7,
+        0,
+        "A problem occurred evaluating root project 'project'.\n"
+            + "> Could not find method implementation() for arguments [foo]");
+    assertEquals(diagnostics, extractByteByByte(output));
+  }
+
+  @Test
+  public void finish_shouldEmitAFailureThatTheOutputEndsIn() {
+    List<Diagnostic> diagnostics =
+        extract("* What went wrong:\nExecution failed for task ':app:test'.");
+
+    assertEquals(1, diagnostics.size());
+    assertEquals("Execution failed for task ':app:test'.", diagnostics.get(0).getMessage());
+    assertEquals("", diagnostics.get(0).getFile());
+  }
+
+  @Test
+  public void write_shouldExtractFailedTestsWithTheirAssertion() {
+    String output =
+        "ServiceTest > handlesRequest FAILED\n"
+            + "    java.lang.AssertionError at ServiceTest.java:42\n"
+            + "\n"
+            + "ServiceTest > timesOut FAILED\n"
+            + "3 tests completed, 2 failed\n"
+            + "> Task :test FAILED\n";
+
+    List<Diagnostic> diagnostics = extract(output);
+
+    assertEquals(2, diagnostics.size());
+    assertDiagnostic(
+        diagnostics.get(0),
+        Diagnostic.Severity.ERROR,
+        "test",
+        "ServiceTest.java",
+        42,
+        0,
+        "ServiceTest > handlesRequest FAILED\njava.lang.AssertionError at ServiceTest.java:42");
+    assertDiagnostic(
+        diagnostics.get(1),
+        Diagnostic.Severity.ERROR,
+        "test",
+        "",
+        0,
+        0,
+        "ServiceTest > timesOut FAILED");
+    assertEquals(diagnostics, extractByteByByte(output));
+  }
+
+  @Test
+  public void write_shouldExtractTheDeprecationSummary() {
+    List<Diagnostic> diagnostics =
+        extract(
+            "BUILD SUCCESSFUL in 2s\n"
+                + "Deprecated Gradle features were used in this build, making it incompatible"
+                + " with Gradle 8.0.\n");
+
+    assertEquals(1, diagnostics.size());
+    assertEquals(Diagnostic.Severity.WARNING, diagnostics.get(0).getSeverity());
+    assertEquals("gradle", diagnostics.get(0).getSource());
+    assertTrue(diagnostics.get(0).getMessage().startsWith("Deprecated Gradle features"));
+  }
+
+  @Test
+  public void write_shouldParseTheStartOfLinesOverTheLimit() {
+    StringBuilder output = new StringBuilder("/src/A.java:1: error: ");
+    while (output.length() < 10000) {
+      output.append("very long message ");
+    }
+    output.append("\n");
+
+    List<Diagnostic> diagnostics = extract(output.toString());
+
+    assertEquals(1, diagnostics.size());
+    assertEquals("/src/A.java", diagnostics.get(0).getFile());
+    assertTrue(diagnostics.get(0).getMessage().length() < 4096);
+  }
+
+  @Test
+  public void write_shouldIgnoreKeywordsOutsideTheirPlace() {
+    assertTrue(
+        extract("  ordinary: error: handling is fine\nsee e: and w: later\nDONE FAILED\n")
+            .stream()
+            .noneMatch(diagnostic -> diagnostic.getSource().equals("kotlinc")));
+    assertTrue(extract("note: nothing to report\n> Task :compileJava\n").isEmpty());
+  }
+}
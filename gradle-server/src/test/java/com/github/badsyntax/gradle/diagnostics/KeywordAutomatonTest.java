@@ -0,0 +1,62 @@
+package com.github.badsyntax.gradle.diagnostics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class KeywordAutomatonTest {
+  private static final int HE = 1;
+  private static final int SHE = 1 << 1;
+  private static final int HIS = 1 << 2;
+  private static final int HERS = 1 << 3;
+
+  // The keywords matched at each byte of the text, 0 where none ends
+  private static List<Integer> scan(KeywordAutomaton automaton, String text) {
+    List<Integer> matches = new ArrayList<>();
+    int state = automaton.start();
+    for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+      state = automaton.next(state, b);
+      matches.add(automaton.matches(state));
+    }
+    return matches;
+  }
+
+  @Test
+  public void next_shouldFindOverlappingKeywords() {
+    KeywordAutomaton automaton = new KeywordAutomaton(Arrays.asList("he", "she", "his", "hers"));
+
+    // "he" is a suffix of "she", and "hers" starts inside "she"
+    assertEquals(Arrays.asList(0, 0, 0, SHE | HE, 0, HERS), scan(automaton, "ushers"));
+    assertEquals(Arrays.asList(0, 0, HIS, 0, SHE | HE), scan(automaton, "hishe"));
+  }
+
+  @Test
+  public void next_shouldFindRepeatedKeywords() {
+    KeywordAutomaton automaton = new KeywordAutomaton(Collections.singletonList("aa"));
+
+    assertEquals(Arrays.asList(0, 1, 1, 1), scan(automaton, "aaaa"));
+  }
+
+  @Test
+  public void next_shouldMatchBytesOfMultibyteCharacters() {
+    KeywordAutomaton automaton = new KeywordAutomaton(Collections.singletonList("\u00e9t\u00e9"));
+
+    List<Integer> matches = scan(automaton, "l'\u00e9t\u00e9");
+    assertEquals(1, (int) matches.get(matches.size() - 1));
+    assertEquals(0, (int) matches.get(matches.size() - 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_shouldRejectMoreThan32Keywords() {
+    List<String> keywords = new ArrayList<>();
+    for (int i = 0; i < 33; i++) {
+      keywords.add("keyword" + i);
+    }
+    new KeywordAutomaton(keywords);
+  }
+}
@@ -0,0 +1,78 @@
+package com.github.badsyntax.gradle.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.TaskGraph;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+
+public class TaskGraphCacheTest {
+  private static final GradleConfig CONFIG = GradleConfig.newBuilder().setVersion("6.4").build();
+
+  private static TaskGraphCache.Entry entry() {
+    return new TaskGraphCache.Entry(
+        TaskGraph.getDefaultInstance(), Collections.singletonList("build.gradle"), "fingerprint");
+  }
+
+  @Test
+  public void key_shouldNormalizeTheProjectDir() {
+    assertEquals(
+        TaskGraphCache.key("/project/app", Arrays.asList("build"), CONFIG),
+        TaskGraphCache.key("/project/other/../app/.", Arrays.asList("build"), CONFIG));
+  }
+
+  @Test
+  public void key_shouldDependOnTasksAndConfig() {
+    String key = TaskGraphCache.key("/project", Arrays.asList("build"), CONFIG);
+    assertNotEquals(key, TaskGraphCache.key("/project", Arrays.asList("test"), CONFIG));
+    assertNotEquals(
+        key,
+        TaskGraphCache.key(
+            "/project", Arrays.asList("build"), CONFIG.toBuilder().setVersion("6.5").build()));
+    assertNotEquals(
+        key,
+        TaskGraphCache.key(
+            "/project",
+            Arrays.asList("build"),
+            CONFIG.toBuilder().setJvmArguments("-Xmx1g").build()));
+  }
+
+  @Test
+  public void put_shouldReplaceTheEntryOfTheKey() {
+    TaskGraphCache taskGraphCache = new TaskGraphCache();
+    TaskGraphCache.Entry first = entry();
+    TaskGraphCache.Entry second = entry();
+    taskGraphCache.put("key", first);
+    taskGraphCache.put("key", second);
+    assertSame(second, taskGraphCache.get("key"));
+    assertNull(taskGraphCache.get("other"));
+  }
+
+  @Test
+  public void put_shouldEvictTheLeastRecentlyUsedEntry() {
+    TaskGraphCache taskGraphCache = new TaskGraphCache();
+    for (int i = 0; i < 64; i++) {
+      taskGraphCache.put("key" + i, entry());
+    }
+    // Reading the first entry makes the second one the least recently used
+    assertNotNull(taskGraphCache.get("key0"));
+    taskGraphCache.put("key64", entry());
+    assertNotNull(taskGraphCache.get("key0"));
+    assertNull(taskGraphCache.get("key1"));
+    assertNotNull(taskGraphCache.get("key64"));
+  }
+
+  @Test
+  public void clear_shouldRemoveAllEntries() {
+    TaskGraphCache taskGraphCache = new TaskGraphCache();
+    taskGraphCache.put("key", entry());
+    taskGraphCache.clear();
+    assertNull(taskGraphCache.get("key"));
+  }
+}
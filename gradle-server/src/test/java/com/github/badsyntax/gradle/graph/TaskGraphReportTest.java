@@ -0,0 +1,114 @@
+package com.github.badsyntax.gradle.graph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+import com.github.badsyntax.gradle.TaskGraph;
+import com.github.badsyntax.gradle.TaskNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.tooling.GradleConnector;
+import org.gradle.tooling.ProjectConnection;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TaskGraphReportTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static void write(Path file, String... lines) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> paths(TaskGraph graph) {
+    List<String> paths = new ArrayList<>();
+    for (TaskNode task : graph.getTasksList()) {
+      paths.add(task.getPath());
+    }
+    return paths;
+  }
+
+  @Test
+  public void read_shouldIndexDependenciesAndSkipUnknownTasks() throws IOException {
+    Path reportFile = temporaryFolder.newFile().toPath();
+    write(
+        reportFile,
+        "input\t/project/build.gradle",
+        "task\t:compile",
+        "task\t:compile",
+        "task\t:test\t:compile\t:included:jar",
+        "");
+
+    TaskGraphReport report = TaskGraphReport.read(reportFile);
+
+    assertEquals(Arrays.asList("/project/build.gradle"), report.getBuildFiles());
+    assertEquals(Arrays.asList(":compile", ":test"), paths(report.getGraph()));
+    assertEquals(Arrays.asList(0), report.getGraph().getTasks(1).getDependenciesList());
+  }
+
+  // Runs the init script in a real dry run, using the Gradle installation in GRADLE_HOME
+  @Test
+  public void writeInitScript_shouldReportTheGraphOfTheRootBuild() throws IOException {
+    String gradleHome = System.getenv("GRADLE_HOME");
+    assumeNotNull(gradleHome);
+    Path projectDir = temporaryFolder.newFolder("project").toPath();
+    write(
+        projectDir.resolve("settings.gradle"),
+        "rootProject.name = 'root'",
+        "include 'app'",
+        "includeBuild 'library'");
+    write(projectDir.resolve("build.gradle"), "task check");
+    write(
+        projectDir.resolve("app/build.gradle"),
+        "task compile",
+        "task test(dependsOn: compile)",
+        "rootProject.tasks.check.dependsOn test",
+        "evaluationDependsOn(':')");
+    write(projectDir.resolve("library/settings.gradle"), "rootProject.name = 'library'");
+    write(projectDir.resolve("library/build.gradle"), "task jar");
+    Path initScript = temporaryFolder.newFile("init.gradle").toPath();
+    Path reportFile = temporaryFolder.getRoot().toPath().resolve("report");
+    TaskGraphReport.writeInitScript(initScript);
+
+    // The daemon stops soon after the test instead of idling next to the other tests
+    File gradleUserHome = temporaryFolder.newFolder("gradle-user-home");
+    write(
+        gradleUserHome.toPath().resolve("gradle.properties"), "org.gradle.daemon.idletimeout=1000");
+    GradleConnector connector =
+        GradleConnector.newConnector()
+            .useInstallation(new File(gradleHome))
+            .useGradleUserHomeDir(gradleUserHome)
+            .forProjectDirectory(projectDir.toFile());
+    try (ProjectConnection connection = connector.connect()) {
+      connection
+          .newBuild()
+          .forTasks("check")
+          .withArguments(
+              "--dry-run",
+              "--offline",
+              "--init-script",
+              initScript.toString(),
+              "-P" + TaskGraphReport.OUTPUT_PROPERTY + "=" + reportFile)
+          .run();
+    }
+    TaskGraphReport report = TaskGraphReport.read(reportFile);
+
+    TaskGraph graph = report.getGraph();
+    assertEquals(Arrays.asList(":app:compile", ":app:test", ":check"), paths(graph));
+    assertEquals(Arrays.asList(0), graph.getTasks(1).getDependenciesList());
+    assertEquals(Arrays.asList(1), graph.getTasks(2).getDependenciesList());
+    // Included builds don't write a report of their own
+    assertEquals(2, report.getBuildFiles().size());
+    for (String buildFile : report.getBuildFiles()) {
+      assertTrue(buildFile, !buildFile.contains("library"));
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package com.github.badsyntax.gradle.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.ExportTraceReply;
+import com.github.badsyntax.gradle.ExportTraceRequest;
+import com.github.badsyntax.gradle.FakeServerCallStreamObserver;
+import com.github.badsyntax.gradle.trace.Tracer;
+import io.grpc.Status;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportTraceHandlerTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path historyDir;
+  private FakeServerCallStreamObserver<ExportTraceReply> responseObserver;
+
+  @Before
+  public void setUp() throws IOException {
+    historyDir = temporaryFolder.newFolder("history").toPath();
+    responseObserver = new FakeServerCallStreamObserver<>();
+    Tracer.setBufferSize(16);
+  }
+
+  @After
+  public void tearDown() {
+    Tracer.setBufferSize(0);
+  }
+
+  private void run(String path) {
+    new ExportTraceHandler(
+            ExportTraceRequest.newBuilder().setPath(path).build(), responseObserver, historyDir)
+        .run();
+  }
+
+  private void assertRejected() {
+    assertEquals(
+        Status.Code.INVALID_ARGUMENT, Status.fromThrowable(responseObserver.getError()).getCode());
+  }
+
+  @Test
+  public void run_shouldWriteARelativePathInsideTheHistoryDir() {
+    run("traces/../traces/build.json");
+
+    assertNull(responseObserver.getError());
+    Path file = historyDir.resolve("traces/build.json").toAbsolutePath();
+    assertEquals(file.toString(), responseObserver.getValues().get(0).getPath());
+    assertTrue(Files.exists(file));
+  }
+
+  @Test
+  public void run_shouldCreateAFileWhenNoPathIsSent() {
+    run("");
+
+    assertNull(responseObserver.getError());
+    Path file = Paths.get(responseObserver.getValues().get(0).getPath());
+    assertEquals(historyDir.toAbsolutePath().normalize(), file.getParent());
+  }
+
+  @Test
+  public void run_shouldRejectAnAbsolutePath() throws IOException {
+    Path outside = temporaryFolder.newFolder("outside").toPath().resolve("trace.json");
+    run(outside.toAbsolutePath().toString());
+
+    assertRejected();
+    assertFalse(Files.exists(outside));
+  }
+
+  @Test
+  public void run_shouldRejectAPathLeadingOutOfTheHistoryDir() {
+    run("../trace.json");
+
+    assertRejected();
+    assertFalse(Files.exists(historyDir.resolveSibling("trace.json")));
+  }
+
+  @Test
+  public void run_shouldRejectTheHistoryDirItself() {
+    run("traces/..");
+
+    assertRejected();
+  }
+}
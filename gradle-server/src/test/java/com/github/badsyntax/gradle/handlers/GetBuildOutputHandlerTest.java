@@ -0,0 +1,98 @@
+package com.github.badsyntax.gradle.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.FakeServerCallStreamObserver;
+import com.github.badsyntax.gradle.GetBuildOutputReply;
+import com.github.badsyntax.gradle.GetBuildOutputRequest;
+import com.github.badsyntax.gradle.OnReadySignal;
+import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.output.OutputLogStore;
+import com.github.badsyntax.gradle.output.OutputLogWriter;
+import io.grpc.Status;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GetBuildOutputHandlerTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private FakeServerCallStreamObserver<GetBuildOutputReply> responseObserver;
+  private OutputLogStore outputLogStore;
+
+  @Before
+  public void setUp() throws InterruptedException {
+    responseObserver = new FakeServerCallStreamObserver<>();
+    outputLogStore = new OutputLogStore(temporaryFolder.getRoot().toPath(), 1024 * 1024);
+    try (OutputLogWriter writer = outputLogStore.create("build")) {
+      for (int i = 0; i < 600; i++) {
+        writer.write(
+            Output.OutputType.STDOUT, ("line " + i + "\n").getBytes(StandardCharsets.UTF_8), null);
+      }
+    }
+    // Closing the store waits for the output to be written
+    outputLogStore.close();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    outputLogStore.close();
+  }
+
+  private Thread start(String cancellationKey) {
+    GetBuildOutputHandler handler =
+        new GetBuildOutputHandler(
+                GetBuildOutputRequest.newBuilder().setCancellationKey(cancellationKey).build(),
+                responseObserver,
+                outputLogStore)
+            .setOnReadySignal(new OnReadySignal(responseObserver));
+    Thread thread = new Thread(handler::run);
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void run_shouldWaitForTheClientToBeReady() throws InterruptedException {
+    responseObserver.setReady(false);
+    Thread thread = start("build");
+    thread.join(200);
+
+    assertTrue(thread.isAlive());
+    assertTrue(responseObserver.getValues().isEmpty());
+
+    responseObserver.setReady(true);
+    thread.join(5000);
+
+    assertFalse(thread.isAlive());
+    assertTrue(responseObserver.isCompleted());
+    // 256 lines a reply
+    assertEquals(3, responseObserver.getValues().size());
+    assertEquals(600, responseObserver.getValues().get(2).getTotalLines());
+  }
+
+  @Test
+  public void run_shouldStopWhenCancelledBeforeTheClientIsReady() throws InterruptedException {
+    responseObserver.setReady(false);
+    Thread thread = start("build");
+    thread.join(200);
+    responseObserver.cancel();
+    thread.join(5000);
+
+    assertFalse(thread.isAlive());
+    assertTrue(responseObserver.getValues().isEmpty());
+    assertFalse(responseObserver.isCompleted());
+  }
+
+  @Test
+  public void run_shouldReplyNotFoundForAnUnknownBuild() throws InterruptedException {
+    start("unknown").join(5000);
+
+    assertEquals(
+        Status.Code.NOT_FOUND, Status.fromThrowable(responseObserver.getError()).getCode());
+  }
+}
@@ -0,0 +1,176 @@
+package com.github.badsyntax.gradle.handlers;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.FakeGradleBackend;
+import com.github.badsyntax.gradle.FakeServerCallStreamObserver;
+import com.github.badsyntax.gradle.GetBuildRequest;
+import com.github.badsyntax.gradle.GetBuildsReply;
+import com.github.badsyntax.gradle.GetBuildsRequest;
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.GradleProjectConnector;
+import com.github.badsyntax.gradle.IncludedBuild;
+import com.github.badsyntax.gradle.ToolingApiBackend;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import com.github.badsyntax.gradle.index.TaskIndex;
+import com.github.badsyntax.gradle.stats.ServerStats;
+import io.grpc.stub.StreamObserver;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings(value = "unchecked")
+public class GetBuildsHandlerTest {
+  private final AtomicInteger lanes = new AtomicInteger();
+  private final Executor countingExecutor =
+      runnable -> {
+        lanes.incrementAndGet();
+        runnable.run();
+      };
+  private Path historyDir;
+
+  @Before
+  public void setUp() throws Exception {
+    historyDir = Files.createTempDirectory("historyDir");
+    GradleProjectConnector.setBackend(new FakeGradleBackend().setConfigurationMillis(0));
+  }
+
+  @After
+  public void tearDown() {
+    GradleProjectConnector.setBackend(new ToolingApiBackend());
+  }
+
+  private GetBuildsRequest.Builder newRequest(int builds) {
+    GetBuildsRequest.Builder req = GetBuildsRequest.newBuilder();
+    for (int i = 0; i < builds; i++) {
+      req.addBuilds(
+          GetBuildRequest.newBuilder()
+              .setProjectDir(historyDir.resolve("project" + i).toString())
+              .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true)));
+    }
+    return req;
+  }
+
+  private StreamObserver<GetBuildsReply> run(GetBuildsRequest req, int serverParallelism) {
+    return run(req, (StreamObserver<GetBuildsReply>) mock(StreamObserver.class), serverParallelism);
+  }
+
+  private StreamObserver<GetBuildsReply> run(
+      GetBuildsRequest req,
+      StreamObserver<GetBuildsReply> responseObserver,
+      int serverParallelism) {
+    new GetBuildsHandler(
+            req,
+            responseObserver,
+            new TaskIndex(),
+            new ConfigurationProfileLog(historyDir, 1024 * 1024),
+            new DaemonReuseTracker(new ServerStats()),
+            countingExecutor,
+            serverParallelism)
+        .run();
+    return responseObserver;
+  }
+
+  @Test
+  public void run_shouldCapClientParallelismAtServerParallelism() {
+    StreamObserver<GetBuildsReply> responseObserver =
+        run(newRequest(6).setMaxParallelism(16).build(), 2);
+    assertEquals(2, lanes.get());
+    verify(responseObserver, atLeast(6)).onNext(any());
+    verify(responseObserver, never()).onError(any());
+    verify(responseObserver).onCompleted();
+  }
+
+  @Test
+  public void run_shouldUseLowerClientParallelism() {
+    run(newRequest(6).setMaxParallelism(1).build(), 4);
+    assertEquals(1, lanes.get());
+  }
+
+  @Test
+  public void run_shouldUseServerParallelismWhenClientSetsNone() {
+    run(newRequest(6).build(), 3);
+    assertEquals(3, lanes.get());
+  }
+
+  private GradleBuild getCompositeBuild() {
+    GetBuildsRequest.Builder req = newRequest(1);
+    req.setBuilds(0, req.getBuilds(0).toBuilder().setIncludeCompositeBuilds(true).build());
+    FakeServerCallStreamObserver<GetBuildsReply> responseObserver =
+        new FakeServerCallStreamObserver<>();
+    run(req.build(), responseObserver, 1);
+    for (GetBuildsReply reply : responseObserver.getValues()) {
+      if (reply.getReply().hasGetBuildResult()) {
+        return reply.getReply().getGetBuildResult().getBuild();
+      }
+    }
+    throw new AssertionError("No build in " + responseObserver.getValues());
+  }
+
+  @Test
+  public void run_shouldReportIncludedBuildsThatFailed() {
+    String includedDir = historyDir.resolve("included").toString();
+    GradleProjectConnector.setBackend(
+        new FakeGradleBackend()
+            .setConfigurationMillis(0)
+            .setFailedIncludedBuilds(Collections.singletonMap(includedDir, "Broken build script")));
+
+    GradleBuild build = getCompositeBuild();
+
+    assertTrue(build.hasProject());
+    assertEquals(1, build.getIncludedBuildsCount());
+    IncludedBuild includedBuild = build.getIncludedBuilds(0);
+    assertEquals(includedDir, includedBuild.getProjectDir());
+    assertEquals("included", includedBuild.getName());
+    assertEquals("Broken build script", includedBuild.getError());
+    assertFalse(includedBuild.hasProject());
+    assertEquals("", build.getIncludedBuildsError());
+  }
+
+  @Test
+  public void run_shouldReportWhenIncludedBuildsAreUnsupported() {
+    GradleBuild build = getCompositeBuild();
+
+    assertTrue(build.hasProject());
+    assertEquals(0, build.getIncludedBuildsCount());
+    assertEquals("Build actions are not supported by the fake", build.getIncludedBuildsError());
+  }
+
+  @Test
+  public void buildLanes_shouldNotExceedParallelism() {
+    // Every root has its own wrapper, so none of them can share a daemon
+    assertEquals(2, GetBuildsHandler.buildLanes(newRequest(5).getBuildsList(), 2).size());
+    assertEquals(5, GetBuildsHandler.buildLanes(newRequest(5).getBuildsList(), 8).size());
+  }
+
+  @Test
+  public void buildLanes_shouldSplitGroupsAcrossSpareLanes() {
+    GetBuildsRequest.Builder req = GetBuildsRequest.newBuilder();
+    for (int i = 0; i < 6; i++) {
+      req.addBuilds(
+          GetBuildRequest.newBuilder()
+              .setProjectDir(historyDir.resolve("project" + i).toString())
+              .setGradleConfig(GradleConfig.newBuilder().setVersion("6.4")));
+    }
+    List<List<GetBuildRequest>> lanes = GetBuildsHandler.buildLanes(req.getBuildsList(), 3);
+    assertEquals(3, lanes.size());
+    assertEquals(Arrays.asList(2, 2, 2), lanes.stream().map(List::size).collect(toList()));
+  }
+}
@@ -0,0 +1,109 @@
+package com.github.badsyntax.gradle.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.github.badsyntax.gradle.FakeServerCallStreamObserver;
+import com.github.badsyntax.gradle.GetConfigurationProfilesReply;
+import com.github.badsyntax.gradle.GetConfigurationProfilesRequest;
+import com.github.badsyntax.gradle.ProjectConfigurationTime;
+import com.github.badsyntax.gradle.history.ConfigurationProfileLog;
+import io.grpc.Status;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GetConfigurationProfilesHandlerTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private ConfigurationProfileLog configurationProfileLog;
+  private FakeServerCallStreamObserver<GetConfigurationProfilesReply> responseObserver;
+
+  @Before
+  public void setUp() throws Exception {
+    configurationProfileLog =
+        new ConfigurationProfileLog(temporaryFolder.newFolder("history").toPath(), 1024 * 1024);
+    responseObserver = new FakeServerCallStreamObserver<>();
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    configurationProfileLog.close();
+  }
+
+  private void record(String commit, long appMillis) {
+    configurationProfileLog.record(
+        ConfigurationProfile.newBuilder()
+            .setProjectDir("/project")
+            .setCommit(commit)
+            .setTotalMillis(appMillis)
+            .addProjects(
+                ProjectConfigurationTime.newBuilder()
+                    .setProjectPath(":app")
+                    .setDurationMillis(appMillis))
+            .build());
+  }
+
+  private GetConfigurationProfilesReply run(GetConfigurationProfilesRequest.Builder req) {
+    new GetConfigurationProfilesHandler(
+            req.setProjectDir("/project").build(), responseObserver, configurationProfileLog)
+        .run();
+    assertNull(responseObserver.getError());
+    assertTrue(responseObserver.isCompleted());
+    return responseObserver.getValues().get(0);
+  }
+
+  @Test
+  public void run_shouldCompareTheLatestProfilesAtTheLastTwoCommits() {
+    record("aaa", 100);
+    record("bbb", 150);
+    record("bbb", 300);
+
+    GetConfigurationProfilesReply reply = run(GetConfigurationProfilesRequest.newBuilder());
+    assertEquals(3, reply.getProfilesCount());
+    assertEquals("aaa", reply.getComparison().getBase().getCommit());
+    assertEquals("bbb", reply.getComparison().getHead().getCommit());
+    assertEquals(200, reply.getComparison().getProjects(0).getDeltaMillis());
+  }
+
+  @Test
+  public void run_shouldCompareTheRequestedCommits() {
+    record("aaa", 100);
+    record("bbb", 150);
+    record("ccc", 400);
+
+    GetConfigurationProfilesReply reply =
+        run(GetConfigurationProfilesRequest.newBuilder().setBaseCommit("a").setHeadCommit("bb"));
+    assertEquals(50, reply.getComparison().getTotalDeltaMillis());
+  }
+
+  @Test
+  public void run_shouldNotCompareProfilesOfASingleCommit() {
+    record("aaa", 100);
+
+    GetConfigurationProfilesReply reply = run(GetConfigurationProfilesRequest.newBuilder());
+    assertEquals(1, reply.getProfilesCount());
+    assertFalse(reply.hasComparison());
+  }
+
+  @Test
+  public void run_shouldFailForACommitWithoutProfiles() {
+    record("aaa", 100);
+
+    new GetConfigurationProfilesHandler(
+            GetConfigurationProfilesRequest.newBuilder()
+                .setProjectDir("/project")
+                .setHeadCommit("fff")
+                .build(),
+            responseObserver,
+            configurationProfileLog)
+        .run();
+    assertEquals(
+        Status.Code.NOT_FOUND, Status.fromThrowable(responseObserver.getError()).getCode());
+  }
+}
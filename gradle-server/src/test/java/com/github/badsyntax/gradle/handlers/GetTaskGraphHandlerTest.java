@@ -0,0 +1,188 @@
+package com.github.badsyntax.gradle.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.github.badsyntax.gradle.DaemonReuseTracker;
+import com.github.badsyntax.gradle.FakeGradleBackend;
+import com.github.badsyntax.gradle.GetTaskGraphReply;
+import com.github.badsyntax.gradle.GetTaskGraphRequest;
+import com.github.badsyntax.gradle.GradleConfig;
+import com.github.badsyntax.gradle.GradleOperation;
+import com.github.badsyntax.gradle.GradleProjectConnector;
+import com.github.badsyntax.gradle.TaskGraph;
+import com.github.badsyntax.gradle.ToolingApiBackend;
+import com.github.badsyntax.gradle.graph.TaskGraphCache;
+import com.github.badsyntax.gradle.graph.TaskGraphReport;
+import com.github.badsyntax.gradle.stats.ServerStats;
+import io.grpc.Context;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import org.gradle.tooling.BuildCancelledException;
+import org.gradle.tooling.BuildLauncher;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+@SuppressWarnings(value = "unchecked")
+public class GetTaskGraphHandlerTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final TaskGraphCache taskGraphCache = new TaskGraphCache();
+  private FakeGradleBackend gradle;
+  private Path projectDir;
+  private Path buildFile;
+  private List<String> report;
+
+  @Before
+  public void setUp() throws IOException {
+    projectDir = temporaryFolder.newFolder("project").toPath();
+    buildFile = projectDir.resolve("build.gradle");
+    write(buildFile, "apply plugin: 'java'");
+    report =
+        Arrays.asList(
+            "input\t" + buildFile,
+            "task\t:compileJava",
+            "task\t:classes\t:compileJava",
+            "task\t:jar\t:classes\t:included:jar");
+    gradle = new FakeGradleBackend().setBuild(this::writeReport);
+    GradleProjectConnector.setBackend(gradle);
+  }
+
+  @After
+  public void tearDown() {
+    GradleProjectConnector.setBackend(new ToolingApiBackend());
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Writes the report like the init script does once the dry run has calculated the graph
+  private void writeReport(GradleOperation operation) throws IOException {
+    String prefix = "-P" + TaskGraphReport.OUTPUT_PROPERTY + "=";
+    for (String argument : operation.getArguments()) {
+      if (argument.startsWith(prefix)) {
+        Files.write(Paths.get(argument.substring(prefix.length())), report);
+      }
+    }
+  }
+
+  private GetTaskGraphReply run() {
+    StreamObserver<GetTaskGraphReply> responseObserver =
+        (StreamObserver<GetTaskGraphReply>) mock(StreamObserver.class);
+    new GetTaskGraphHandler(
+            GetTaskGraphRequest.newBuilder()
+                .setProjectDir(projectDir.toString())
+                .addTasks("jar")
+                .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+                .build(),
+            responseObserver,
+            taskGraphCache,
+            new DaemonReuseTracker(new ServerStats()))
+        .run();
+    ArgumentCaptor<GetTaskGraphReply> onNext = ArgumentCaptor.forClass(GetTaskGraphReply.class);
+    verify(responseObserver, never()).onError(any());
+    verify(responseObserver).onNext(onNext.capture());
+    verify(responseObserver).onCompleted();
+    return onNext.getValue();
+  }
+
+  @Test
+  public void run_shouldReadTheGraphFromTheDryRunReport() {
+    GetTaskGraphReply reply = run();
+
+    assertFalse(reply.getCached());
+    TaskGraph graph = reply.getGraph();
+    assertEquals(3, graph.getTasksCount());
+    assertEquals(":compileJava", graph.getTasks(0).getPath());
+    assertEquals(0, graph.getTasks(0).getDependenciesCount());
+    assertEquals(Arrays.asList(0), graph.getTasks(1).getDependenciesList());
+    // Dependencies outside the graph are left out
+    assertEquals(":jar", graph.getTasks(2).getPath());
+    assertEquals(Arrays.asList(1), graph.getTasks(2).getDependenciesList());
+
+    List<String> arguments =
+        gradle.getInvocations(BuildLauncher.class).get(0).getOperation().getArguments();
+    assertEquals("jar", arguments.get(0));
+    assertTrue(arguments.contains("--dry-run"));
+    Path initScript = Paths.get(arguments.get(arguments.indexOf("--init-script") + 1));
+    // The init script and report are deleted once they have been read
+    assertFalse(Files.exists(initScript.getParent()));
+  }
+
+  @Test
+  public void run_shouldServeTheCachedGraphUntilABuildFileChanges() throws IOException {
+    run();
+    write(projectDir.resolve("src/main/java/Main.java"), "class Main {}");
+    GetTaskGraphReply cachedReply = run();
+    assertTrue(cachedReply.getCached());
+    assertEquals(3, cachedReply.getGraph().getTasksCount());
+    assertEquals(1, gradle.getInvocations(BuildLauncher.class).size());
+
+    write(buildFile, "apply plugin: 'java-library'");
+    assertFalse(run().getCached());
+    assertEquals(2, gradle.getInvocations(BuildLauncher.class).size());
+  }
+
+  @Test
+  public void run_shouldReplyWithCancelledWhenTheDryRunIsCancelled() {
+    gradle.setBuild(
+        operation -> {
+          throw new BuildCancelledException("Build cancelled");
+        });
+
+    GetTaskGraphReply reply = run();
+    assertTrue(reply.hasCancelled());
+    assertEquals(projectDir.toString(), reply.getCancelled().getProjectDir());
+    assertEquals(0, reply.getGraph().getTasksCount());
+  }
+
+  @Test
+  public void run_shouldCancelTheDryRunWithItsCall() {
+    gradle.setBuild(FakeGradleBackend::awaitCancellation);
+    Context.CancellableContext context = Context.current().withCancellation();
+    context.cancel(null);
+
+    GetTaskGraphReply[] reply = new GetTaskGraphReply[1];
+    context.run(() -> reply[0] = run());
+    assertTrue(reply[0].hasCancelled());
+  }
+
+  @Test
+  public void run_shouldFailWhenTheDryRunReportsNoGraph() {
+    gradle.setBuild(operation -> {});
+    StreamObserver<GetTaskGraphReply> responseObserver =
+        (StreamObserver<GetTaskGraphReply>) mock(StreamObserver.class);
+    new GetTaskGraphHandler(
+            GetTaskGraphRequest.newBuilder()
+                .setProjectDir(projectDir.toString())
+                .addTasks("jar")
+                .setGradleConfig(GradleConfig.newBuilder().setWrapperEnabled(true))
+                .build(),
+            responseObserver,
+            taskGraphCache,
+            new DaemonReuseTracker(new ServerStats()))
+        .run();
+
+    ArgumentCaptor<Throwable> onError = ArgumentCaptor.forClass(Throwable.class);
+    verify(responseObserver).onError(onError.capture());
+    assertTrue(onError.getValue().getMessage().contains("did not report a task graph"));
+    verify(responseObserver, never()).onNext(any());
+  }
+}
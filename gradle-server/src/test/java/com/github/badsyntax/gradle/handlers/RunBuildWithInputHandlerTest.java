@@ -0,0 +1,76 @@
+package com.github.badsyntax.gradle.handlers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.FakeServerCallStreamObserver;
+import com.github.badsyntax.gradle.RunBuildInput;
+import com.github.badsyntax.gradle.RunBuildReply;
+import com.github.badsyntax.gradle.RunBuildRequest;
+import com.github.badsyntax.gradle.StandardInputPipe;
+import com.google.protobuf.ByteString;
+import io.grpc.Status;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class RunBuildWithInputHandlerTest {
+  private final FakeServerCallStreamObserver<RunBuildReply> responseObserver =
+      new FakeServerCallStreamObserver<>();
+  private final List<StandardInputPipe> pipes = new ArrayList<>();
+  private final RunBuildWithInputHandler handler =
+      new RunBuildWithInputHandler(responseObserver, (req, pipe) -> pipes.add(pipe));
+
+  private static RunBuildInput request() {
+    return RunBuildInput.newBuilder()
+        .setRunBuildRequest(RunBuildRequest.newBuilder().setProjectDir("/project").addArgs("run"))
+        .build();
+  }
+
+  private static RunBuildInput standardInput(String text) {
+    return RunBuildInput.newBuilder().setStandardInput(ByteString.copyFromUtf8(text)).build();
+  }
+
+  @Test
+  public void onNext_shouldRequestInputAsTheBuildReadsIt() throws IOException {
+    assertEquals(1, responseObserver.getRequested());
+    handler.onNext(request());
+    assertEquals(1, pipes.size());
+    assertEquals(9, responseObserver.getRequested());
+
+    handler.onNext(standardInput("ab"));
+    handler.onNext(standardInput("c"));
+    handler.onNext(RunBuildInput.newBuilder().setCloseStandardInput(true).build());
+    StandardInputPipe pipe = pipes.get(0);
+    assertEquals('a', pipe.read());
+    assertEquals('b', pipe.read());
+    assertEquals(9, responseObserver.getRequested());
+    assertEquals('c', pipe.read());
+    assertEquals(10, responseObserver.getRequested());
+    assertEquals(-1, pipe.read());
+    assertNull(responseObserver.getError());
+  }
+
+  @Test
+  public void onNext_shouldFailTheCallWhenTooMuchInputIsSent() {
+    handler.onNext(request());
+    for (int i = 0; i < 16; i++) {
+      handler.onNext(standardInput("input"));
+    }
+
+    assertEquals(
+        Status.Code.RESOURCE_EXHAUSTED,
+        Status.fromThrowable(responseObserver.getError()).getCode());
+  }
+
+  @Test
+  public void onNext_shouldFailTheCallWhenTheFirstMessageIsNotARequest() {
+    handler.onNext(standardInput("input"));
+
+    assertTrue(pipes.isEmpty());
+    assertEquals(
+        Status.Code.INVALID_ARGUMENT, Status.fromThrowable(responseObserver.getError()).getCode());
+  }
+}
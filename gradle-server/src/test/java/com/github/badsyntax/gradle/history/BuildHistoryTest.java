@@ -0,0 +1,135 @@
+package com.github.badsyntax.gradle.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildHistoryTest {
+  private static final String PROJECT_DIR = "/project";
+  private static final List<String> ARGS = Arrays.asList("build");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path historyDir;
+
+  @Before
+  public void setUp() throws IOException {
+    historyDir = temporaryFolder.newFolder("history").toPath();
+  }
+
+  private static BuildRecord record(
+      List<String> args, long startTimeMillis, long durationMillis, Map<String, Long> tasks) {
+    return new BuildRecord(
+        PROJECT_DIR, args, BuildOutcome.SUCCESS, startTimeMillis, durationMillis, 1, tasks);
+  }
+
+  private BuildHistory load(long maxBytes) throws InterruptedException {
+    BuildHistory buildHistory = new BuildHistory(historyDir, maxBytes);
+    buildHistory.load();
+    buildHistory.close();
+    return buildHistory;
+  }
+
+  @Test
+  public void load_shouldRestoreRecordedBuilds() throws InterruptedException {
+    BuildHistory buildHistory = new BuildHistory(historyDir, 1024 * 1024);
+    buildHistory.record(record(ARGS, 1000, 1000, Collections.singletonMap(":compile", 600L)));
+    buildHistory.record(record(ARGS, 2000, 2000, Collections.singletonMap(":compile", 1600L)));
+    buildHistory.record(
+        new BuildRecord(
+            PROJECT_DIR, ARGS, BuildOutcome.FAILED, 3000, 9000, 1, Collections.emptyMap()));
+    buildHistory.close();
+
+    BuildHistoryEntry entry = load(1024 * 1024).lookup(PROJECT_DIR, ARGS);
+    assertNotNull(entry);
+    assertEquals(2, entry.getRuns());
+    assertEquals(1300, entry.getDurationMillis());
+    assertEquals(Long.valueOf(900), entry.getTaskDuration(":compile"));
+    assertEquals(2000, entry.getLastRunMillis());
+  }
+
+  @Test
+  public void load_shouldMergeRecordsMadeWhileLoadingAfterTheFile() throws InterruptedException {
+    BuildHistory previous = new BuildHistory(historyDir, 1024 * 1024);
+    previous.record(record(ARGS, 1000, 1000, Collections.emptyMap()));
+    previous.close();
+
+    BuildHistory buildHistory = new BuildHistory(historyDir, 1024 * 1024);
+    buildHistory.load();
+    buildHistory.record(record(ARGS, 2000, 2000, Collections.emptyMap()));
+    buildHistory.close();
+
+    assertEquals(1300, buildHistory.lookup(PROJECT_DIR, ARGS).getDurationMillis());
+  }
+
+  @Test
+  public void load_shouldTruncatePartiallyWrittenRecord()
+      throws IOException, InterruptedException {
+    BuildHistory buildHistory = new BuildHistory(historyDir, 1024 * 1024);
+    buildHistory.record(record(ARGS, 1000, 1000, Collections.emptyMap()));
+    buildHistory.close();
+    Path historyFile = historyDir.resolve("build-history.bin");
+    long validBytes = Files.size(historyFile);
+    try (DataOutputStream output =
+        new DataOutputStream(Files.newOutputStream(historyFile, StandardOpenOption.APPEND))) {
+      output.writeInt(100);
+      output.write(new byte[] {1, 2, 3});
+    }
+
+    BuildHistory reloaded = new BuildHistory(historyDir, 1024 * 1024);
+    reloaded.load();
+    reloaded.record(record(ARGS, 2000, 2000, Collections.emptyMap()));
+    reloaded.close();
+
+    assertTrue(Files.size(historyFile) > validBytes);
+    BuildHistoryEntry entry = load(1024 * 1024).lookup(PROJECT_DIR, ARGS);
+    assertEquals(2, entry.getRuns());
+    assertEquals(1300, entry.getDurationMillis());
+  }
+
+  @Test
+  public void load_shouldDiscardUnrecognisedFile() throws IOException, InterruptedException {
+    Files.write(historyDir.resolve("build-history.bin"), new byte[] {0, 1, 2, 3, 4, 5, 6, 7});
+
+    assertNull(load(1024 * 1024).lookup(PROJECT_DIR, ARGS));
+    assertFalse(Files.exists(historyDir.resolve("build-history.bin")));
+  }
+
+  @Test
+  public void record_shouldCompactToMostRecentlyRunBuilds()
+      throws IOException, InterruptedException {
+    long maxBytes = 2048;
+    BuildHistory buildHistory = new BuildHistory(historyDir, maxBytes);
+    for (int i = 0; i < 100; i++) {
+      buildHistory.record(
+          record(Arrays.asList("task" + i), i, 1000, Collections.singletonMap(":task" + i, 10L)));
+    }
+    buildHistory.close();
+
+    assertTrue(Files.size(historyDir.resolve("build-history.bin")) <= maxBytes);
+    assertNull(buildHistory.lookup(PROJECT_DIR, Arrays.asList("task0")));
+    assertNotNull(buildHistory.lookup(PROJECT_DIR, Arrays.asList("task99")));
+
+    BuildHistory reloaded = load(maxBytes);
+    assertNull(reloaded.lookup(PROJECT_DIR, Arrays.asList("task0")));
+    assertEquals(
+        Long.valueOf(10),
+        reloaded.lookup(PROJECT_DIR, Arrays.asList("task99")).getTaskDuration(":task99"));
+  }
+}
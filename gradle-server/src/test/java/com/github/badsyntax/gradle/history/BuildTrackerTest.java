@@ -0,0 +1,80 @@
+package com.github.badsyntax.gradle.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.github.badsyntax.gradle.BuildEstimate;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildTrackerTest {
+  private static final String PROJECT_DIR = "/project";
+  private static final List<String> ARGS = Arrays.asList("build");
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private BuildHistory buildHistory;
+  private final AtomicLong clock = new AtomicLong(100_000);
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    buildHistory = new BuildHistory(temporaryFolder.newFolder("history").toPath(), 1024 * 1024);
+    Map<String, Long> taskDurations = new HashMap<>();
+    taskDurations.put(":compile", 4000L);
+    taskDurations.put(":test", 6000L);
+    buildHistory.record(
+        new BuildRecord(PROJECT_DIR, ARGS, BuildOutcome.SUCCESS, 0, 10000, 1, taskDurations));
+    buildHistory.close();
+  }
+
+  @Test
+  public void estimate_shouldFollowElapsedTime() {
+    BuildTracker buildTracker = new BuildTracker(buildHistory, PROJECT_DIR, ARGS, clock::get);
+    clock.addAndGet(2000);
+
+    BuildEstimate estimate = buildTracker.estimate();
+    assertEquals(2000, estimate.getElapsedMillis());
+    assertEquals(20, estimate.getPercent());
+    assertEquals(8000, estimate.getRemainingMillis());
+    assertEquals(1, estimate.getSampleRuns());
+  }
+
+  @Test
+  public void estimate_shouldPreferTaskProgressWhenAhead() {
+    BuildTracker buildTracker = new BuildTracker(buildHistory, PROJECT_DIR, ARGS, clock::get);
+    clock.addAndGet(1000);
+    buildTracker.onTaskFinished(":test", 50);
+    buildTracker.onTaskFinished(":unknown", 50);
+
+    BuildEstimate estimate = buildTracker.estimate();
+    assertEquals(60, estimate.getPercent());
+    assertEquals(4000, estimate.getRemainingMillis());
+  }
+
+  @Test
+  public void estimate_shouldNotReachCompletionBeforeTheBuildFinishes() {
+    BuildTracker buildTracker = new BuildTracker(buildHistory, PROJECT_DIR, ARGS, clock::get);
+    clock.addAndGet(25000);
+
+    BuildEstimate estimate = buildTracker.estimate();
+    assertEquals(99, estimate.getPercent());
+    assertEquals(0, estimate.getRemainingMillis());
+  }
+
+  @Test
+  public void estimate_shouldBeNullWithoutHistory() {
+    BuildTracker buildTracker =
+        new BuildTracker(buildHistory, PROJECT_DIR, Arrays.asList("clean"), clock::get);
+    clock.addAndGet(2000);
+
+    assertNull(buildTracker.estimate());
+  }
+}
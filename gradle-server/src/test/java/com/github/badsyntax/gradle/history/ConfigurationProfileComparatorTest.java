@@ -0,0 +1,77 @@
+package com.github.badsyntax.gradle.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.github.badsyntax.gradle.ConfigurationProfileComparison;
+import com.github.badsyntax.gradle.ProjectConfigurationDelta;
+import com.github.badsyntax.gradle.ProjectConfigurationTime;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ConfigurationProfileComparatorTest {
+
+  private static ConfigurationProfile profile(String commit, Object... projects) {
+    ConfigurationProfile.Builder profile = ConfigurationProfile.newBuilder().setCommit(commit);
+    long total = 0;
+    for (int i = 0; i < projects.length; i += 2) {
+      long durationMillis = (Integer) projects[i + 1];
+      profile.addProjects(
+          ProjectConfigurationTime.newBuilder()
+              .setRootDir("/project")
+              .setProjectPath((String) projects[i])
+              .setDurationMillis(durationMillis));
+      total += durationMillis;
+    }
+    return profile.setTotalMillis(total).build();
+  }
+
+  @Test
+  public void compare_shouldRankTheBiggestRegressionFirst() {
+    ConfigurationProfileComparison comparison =
+        ConfigurationProfileComparator.compare(
+            profile("base", ":", 100, ":app", 200, ":removed", 50),
+            profile("head", ":", 90, ":app", 500, ":added", 70));
+
+    assertEquals(310, comparison.getTotalDeltaMillis());
+    assertEquals("base", comparison.getBase().getCommit());
+    assertEquals("head", comparison.getHead().getCommit());
+    List<ProjectConfigurationDelta> projects = comparison.getProjectsList();
+    assertEquals(":app", projects.get(0).getProjectPath());
+    assertEquals(200, projects.get(0).getBaseMillis());
+    assertEquals(500, projects.get(0).getHeadMillis());
+    assertEquals(300, projects.get(0).getDeltaMillis());
+    assertEquals(":added", projects.get(1).getProjectPath());
+    assertEquals(0, projects.get(1).getBaseMillis());
+    assertEquals(":", projects.get(2).getProjectPath());
+    assertEquals(":removed", projects.get(3).getProjectPath());
+    assertEquals(-50, projects.get(3).getDeltaMillis());
+  }
+
+  @Test
+  public void findLatest_shouldMatchAbbreviatedCommits() {
+    List<ConfigurationProfile> profiles =
+        Arrays.asList(
+            profile("abc123", ":", 1), profile("def456", ":", 2), profile("abc123", ":", 3));
+
+    assertEquals(3, ConfigurationProfileComparator.findLatest(profiles, "abc").getTotalMillis());
+    assertEquals(2, ConfigurationProfileComparator.findLatest(profiles, "def456").getTotalMillis());
+    assertNull(ConfigurationProfileComparator.findLatest(profiles, "fff"));
+    assertNull(ConfigurationProfileComparator.findLatest(profiles, ""));
+  }
+
+  @Test
+  public void findLatestBefore_shouldSkipProfilesAtTheSameCommit() {
+    List<ConfigurationProfile> profiles =
+        Arrays.asList(
+            profile("abc123", ":", 1), profile("def456", ":", 2), profile("def456", ":", 3));
+
+    assertEquals(
+        1, ConfigurationProfileComparator.findLatestBefore(profiles, "def456").getTotalMillis());
+    assertNull(
+        ConfigurationProfileComparator.findLatestBefore(
+            Arrays.asList(profile("abc123", ":", 1)), "abc123"));
+  }
+}
@@ -0,0 +1,86 @@
+package com.github.badsyntax.gradle.history;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.ConfigurationProfile;
+import com.github.badsyntax.gradle.ProjectConfigurationTime;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ConfigurationProfileLogTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path historyDir;
+
+  @Before
+  public void setUp() throws IOException {
+    historyDir = temporaryFolder.newFolder("history").toPath();
+  }
+
+  private static ConfigurationProfile profile(String projectDir, String commit) {
+    return ConfigurationProfile.newBuilder()
+        .setProjectDir(projectDir)
+        .setCommit(commit)
+        .setTotalMillis(100)
+        .addProjects(
+            ProjectConfigurationTime.newBuilder().setProjectPath(":").setDurationMillis(100))
+        .build();
+  }
+
+  private static List<String> commits(List<ConfigurationProfile> profiles) {
+    return profiles.stream().map(ConfigurationProfile::getCommit).collect(Collectors.toList());
+  }
+
+  @Test
+  public void read_shouldReturnTheProfilesOfTheProjectOldestFirst() throws Exception {
+    try (ConfigurationProfileLog log = new ConfigurationProfileLog(historyDir, 1024 * 1024)) {
+      log.record(profile("/project", "a"));
+      log.record(profile("/other", "b"));
+      log.record(profile("/project/", "c"));
+
+      assertEquals(Arrays.asList("a", "c"), commits(log.read("/project")));
+    }
+  }
+
+  @Test
+  public void read_shouldIncludeTheRotatedFile() throws Exception {
+    try (ConfigurationProfileLog log = new ConfigurationProfileLog(historyDir, 1)) {
+      log.record(profile("/project", "a"));
+      log.record(profile("/project", "b"));
+      log.record(profile("/project", "c"));
+
+      // Every profile fills the file, and only the previous file is kept
+      assertEquals(Arrays.asList("b", "c"), commits(log.read("/project")));
+    }
+  }
+
+  @Test
+  public void read_shouldSkipAProfileThatWasCutShort() throws Exception {
+    try (ConfigurationProfileLog log = new ConfigurationProfileLog(historyDir, 1024 * 1024)) {
+      log.record(profile("/project", "a"));
+      log.record(profile("/project", "b"));
+      log.read("/project");
+      Path profileFile = historyDir.resolve("configuration-profiles.bin");
+      byte[] bytes = Files.readAllBytes(profileFile);
+      Files.write(profileFile, Arrays.copyOf(bytes, bytes.length - 4));
+
+      assertEquals(Arrays.asList("a"), commits(log.read("/project")));
+    }
+  }
+
+  @Test
+  public void read_shouldReturnNothingWithoutProfiles() throws Exception {
+    try (ConfigurationProfileLog log = new ConfigurationProfileLog(historyDir, 1024 * 1024)) {
+      assertTrue(log.read("/project").isEmpty());
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package com.github.badsyntax.gradle.history;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitHeadTest {
+  private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+  private static final String OTHER_COMMIT = "fedcba9876543210fedcba9876543210fedcba98";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path repoDir;
+  private Path gitDir;
+
+  @Before
+  public void setUp() throws IOException {
+    repoDir = temporaryFolder.newFolder("repo").toPath();
+    gitDir = repoDir.resolve(".git");
+    Files.createDirectories(gitDir.resolve("refs/heads"));
+  }
+
+  private static void write(Path file, String text) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void read_shouldResolveALooseRef() throws IOException {
+    write(gitDir.resolve("HEAD"), "ref: refs/heads/main\n");
+    write(gitDir.resolve("refs/heads/main"), COMMIT + "\n");
+
+    assertEquals(COMMIT, GitHead.read(repoDir));
+  }
+
+  @Test
+  public void read_shouldResolveAPackedRef() throws IOException {
+    write(gitDir.resolve("HEAD"), "ref: refs/heads/main\n");
+    write(
+        gitDir.resolve("packed-refs"),
+        "# pack-refs with: peeled fully-peeled sorted \n"
+            + OTHER_COMMIT
+            + " refs/heads/feature\n"
+            + COMMIT
+            + " refs/heads/main\n"
+            + OTHER_COMMIT
+            + " refs/tags/v1.0\n"
+            + "^"
+            + COMMIT
+            + "\n");
+
+    assertEquals(COMMIT, GitHead.read(repoDir));
+  }
+
+  @Test
+  public void read_shouldPreferALooseRefOverAPackedRef() throws IOException {
+    write(gitDir.resolve("HEAD"), "ref: refs/heads/main\n");
+    write(gitDir.resolve("refs/heads/main"), COMMIT + "\n");
+    write(gitDir.resolve("packed-refs"), OTHER_COMMIT + " refs/heads/main\n");
+
+    assertEquals(COMMIT, GitHead.read(repoDir));
+  }
+
+  @Test
+  public void read_shouldReturnTheCommitOfADetachedHead() throws IOException {
+    write(gitDir.resolve("HEAD"), COMMIT + "\n");
+
+    assertEquals(COMMIT, GitHead.read(repoDir));
+  }
+
+  @Test
+  public void read_shouldFindTheRepositoryOfANestedProject() throws IOException {
+    write(gitDir.resolve("HEAD"), COMMIT + "\n");
+    Path projectDir = Files.createDirectories(repoDir.resolve("sub/project"));
+
+    assertEquals(COMMIT, GitHead.read(projectDir));
+  }
+
+  @Test
+  public void read_shouldFollowTheGitFileOfALinkedWorktree() throws IOException {
+    write(gitDir.resolve("packed-refs"), COMMIT + " refs/heads/feature\n");
+    Path worktreeGitDir = gitDir.resolve("worktrees/feature");
+    write(worktreeGitDir.resolve("HEAD"), "ref: refs/heads/feature\n");
+    write(worktreeGitDir.resolve("commondir"), "../..\n");
+    Path worktreeDir = temporaryFolder.newFolder("feature").toPath();
+    write(worktreeDir.resolve(".git"), "gitdir: " + worktreeGitDir + "\n");
+
+    assertEquals(COMMIT, GitHead.read(worktreeDir));
+  }
+
+  @Test
+  public void read_shouldFollowARelativeGitFile() throws IOException {
+    Path moduleGitDir = gitDir.resolve("modules/library");
+    write(moduleGitDir.resolve("HEAD"), OTHER_COMMIT + "\n");
+    Path moduleDir = Files.createDirectories(repoDir.resolve("library"));
+    write(moduleDir.resolve(".git"), "gitdir: ../.git/modules/library\n");
+
+    assertEquals(OTHER_COMMIT, GitHead.read(moduleDir));
+  }
+
+  @Test
+  public void read_shouldReturnEmptyForABranchWithoutCommits() throws IOException {
+    write(gitDir.resolve("HEAD"), "ref: refs/heads/main\n");
+
+    assertEquals("", GitHead.read(repoDir));
+  }
+
+  @Test
+  public void read_shouldReturnEmptyOutsideOfARepository() throws IOException {
+    assertEquals("", GitHead.read(temporaryFolder.newFolder("elsewhere").toPath()));
+  }
+}
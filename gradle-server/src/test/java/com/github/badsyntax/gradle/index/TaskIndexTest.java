@@ -0,0 +1,187 @@
+package com.github.badsyntax.gradle.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.GradleBuild;
+import com.github.badsyntax.gradle.GradleProject;
+import com.github.badsyntax.gradle.GradleTask;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TaskIndexTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private String projectDir;
+
+  @Before
+  public void setUp() throws IOException {
+    projectDir = temporaryFolder.newFolder("project").getAbsolutePath();
+  }
+
+  private static GradleTask task(String path, String description) {
+    String name = path.substring(path.lastIndexOf(':') + 1);
+    return GradleTask.newBuilder()
+        .setName(name)
+        .setPath(path)
+        .setDescription(description)
+        .build();
+  }
+
+  private static GradleBuild build(GradleTask... tasks) {
+    GradleProject.Builder project = GradleProject.newBuilder().setIsRoot(true);
+    for (GradleTask task : tasks) {
+      project.addTasks(task);
+    }
+    return GradleBuild.newBuilder().setProject(project).build();
+  }
+
+  private static GradleBuild javaBuild() {
+    return build(
+        task(":app:compileJava", "Compiles main Java source."),
+        task(":app:compileTestJava", "Compiles test Java source."),
+        task(":app:build", "Assembles and tests this project."),
+        task(":app:buildDependents", "Assembles and tests this project and its dependents."),
+        task(":app:javadoc", "Generates Javadoc API documentation for the main source code."),
+        task(":app:jar", "Assembles a jar archive containing the main classes."));
+  }
+
+  private static List<String> paths(List<ScoredTask> results) {
+    return results.stream()
+        .map(scoredTask -> scoredTask.getTask().getPath())
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  public void find_shouldRankExactNamesAbovePrefixes() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+
+    List<ScoredTask> results = taskIndex.find("Build", 10, projectDir);
+    assertEquals(2, results.size());
+    assertEquals(":app:build", results.get(0).getTask().getPath());
+    assertEquals(":app:buildDependents", results.get(1).getTask().getPath());
+    assertTrue(results.get(0).getScore() > results.get(1).getScore());
+  }
+
+  @Test
+  public void find_shouldRankShorterNamesFirstForTheSamePrefix() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+
+    List<String> paths = paths(taskIndex.find("comp", 10, projectDir));
+    assertEquals(":app:compileJava", paths.get(0));
+    assertEquals(":app:compileTestJava", paths.get(1));
+  }
+
+  @Test
+  public void find_shouldUseTrigramsForSubstrings() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+
+    assertEquals(
+        ":app:compileTestJava", paths(taskIndex.find("testjava", 10, projectDir)).get(0));
+    // The name matches outrank the description match
+    List<ScoredTask> results = taskIndex.find("javadoc", 10, projectDir);
+    assertEquals(":app:javadoc", results.get(0).getTask().getPath());
+    assertEquals(1, results.size());
+    // Only descriptions contain "archive"
+    assertEquals(":app:jar", paths(taskIndex.find("archive", 10, projectDir)).get(0));
+    assertTrue(taskIndex.find("xyzzy", 10, projectDir).isEmpty());
+  }
+
+  @Test
+  public void find_shouldMatchExactPaths() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+
+    assertEquals(":app:jar", paths(taskIndex.find(":app:jar", 10, projectDir)).get(0));
+  }
+
+  @Test
+  public void find_shouldRankFuzzyMatchesByGaps() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+
+    List<ScoredTask> results = taskIndex.find("cJ", 10, projectDir);
+    assertEquals(":app:compileJava", results.get(0).getTask().getPath());
+    assertEquals(":app:compileTestJava", results.get(1).getTask().getPath());
+    assertTrue(results.get(0).getScore() > results.get(1).getScore());
+  }
+
+  @Test
+  public void find_shouldHonourTheLimit() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+
+    assertEquals(1, taskIndex.find("comp", 1, projectDir).size());
+    assertTrue(taskIndex.find("comp", 0, projectDir).isEmpty());
+  }
+
+  @Test
+  public void update_shouldReplaceThePreviousIndexOfTheRoot() {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(projectDir, javaBuild());
+    taskIndex.update(projectDir + File.separator + ".", build(task(":lint", "Runs lint.")));
+
+    assertEquals(1, taskIndex.getTaskCount());
+    assertTrue(taskIndex.find("comp", 10, projectDir).isEmpty());
+  }
+
+  @Test
+  public void update_shouldEvictTheLeastRecentlyUsedRoot() throws IOException {
+    String otherDir = temporaryFolder.newFolder("other").getAbsolutePath();
+    String thirdDir = temporaryFolder.newFolder("third").getAbsolutePath();
+    TaskIndex taskIndex = new TaskIndex(2);
+    taskIndex.update(projectDir, javaBuild());
+    taskIndex.update(otherDir, build(task(":lint", "Runs lint.")));
+    // Searching the first root makes the other one the least recently used
+    taskIndex.find("jar", 10, projectDir);
+    taskIndex.update(thirdDir, build(task(":check", "Runs all checks.")));
+
+    assertEquals(6 + 1, taskIndex.getTaskCount());
+    assertTrue(taskIndex.find("lint", 10, otherDir).isEmpty());
+    assertEquals(1, taskIndex.find("jar", 10, projectDir).size());
+  }
+
+  @Test
+  public void update_shouldEvictDeletedRoots() throws IOException {
+    File deletedDir = temporaryFolder.newFolder("deleted");
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.update(deletedDir.getAbsolutePath(), build(task(":lint", "Runs lint.")));
+    assertTrue(deletedDir.delete());
+    taskIndex.update(projectDir, javaBuild());
+
+    assertEquals(6, taskIndex.getTaskCount());
+    assertTrue(taskIndex.find("lint", 10, null).isEmpty());
+  }
+
+  @Test
+  public void updateLater_shouldIndexOffTheCallingThread() throws InterruptedException {
+    TaskIndex taskIndex = new TaskIndex();
+    taskIndex.updateLater(projectDir, javaBuild());
+    awaitTaskCount(taskIndex, 6);
+
+    taskIndex.updateLater(projectDir, build(task(":lint", "Runs lint.")));
+    awaitTaskCount(taskIndex, 1);
+    taskIndex.close();
+    // Builds synced after the server stopped are dropped
+    taskIndex.updateLater(projectDir, javaBuild());
+    assertEquals(1, taskIndex.getTaskCount());
+  }
+
+  private static void awaitTaskCount(TaskIndex taskIndex, int taskCount)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (taskIndex.getTaskCount() != taskCount && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(taskCount, taskIndex.getTaskCount());
+  }
+}
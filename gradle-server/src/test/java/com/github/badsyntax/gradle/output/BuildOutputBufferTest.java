@@ -0,0 +1,214 @@
+package com.github.badsyntax.gradle.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.github.badsyntax.gradle.AttachBuildReply;
+import com.github.badsyntax.gradle.FakeServerCallStreamObserver;
+import com.github.badsyntax.gradle.OnReadySignal;
+import com.github.badsyntax.gradle.Progress;
+import com.github.badsyntax.gradle.RunBuildReply;
+import io.grpc.stub.StreamObserver;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+@SuppressWarnings(value = "unchecked")
+public class BuildOutputBufferTest {
+  private static RunBuildReply reply(int index) {
+    return RunBuildReply.newBuilder()
+        .setProgress(Progress.newBuilder().setMessage(String.format("line %02d", index)))
+        .build();
+  }
+
+  private static BuildOutputBuffer buffer(int replies, int spillBytes) {
+    // Keeps a single reply in memory, so every other reply is read back from the spill file
+    BuildOutputBuffer buffer = new BuildOutputBuffer("key", 1, spillBytes);
+    for (int i = 0; i < replies; i++) {
+      buffer.append(reply(i));
+    }
+    return buffer;
+  }
+
+  private static List<Long> offsets(ArgumentCaptor<AttachBuildReply> onNext) {
+    return onNext.getAllValues().stream()
+        .map(AttachBuildReply::getOffset)
+        .collect(Collectors.toList());
+  }
+
+  private static List<Long> range(long from, long to) {
+    return LongStream.range(from, to).boxed().collect(Collectors.toList());
+  }
+
+  private static void attach(
+      BuildOutputBuffer buffer, long fromOffset, StreamObserver<AttachBuildReply> subscriber) {
+    buffer.subscribe(subscriber);
+    buffer.drain(fromOffset, subscriber, null);
+  }
+
+  // Drains on a thread of its own, like the call of an attached client
+  private static Thread attachInBackground(
+      BuildOutputBuffer buffer,
+      long fromOffset,
+      StreamObserver<AttachBuildReply> subscriber,
+      OnReadySignal onReadySignal) {
+    buffer.subscribe(subscriber);
+    Thread thread = new Thread(() -> buffer.drain(fromOffset, subscriber, onReadySignal));
+    thread.start();
+    return thread;
+  }
+
+  @Test
+  public void attach_shouldReplayFromSpillFileAndMemory() {
+    BuildOutputBuffer buffer = buffer(600, 1024 * 1024);
+    buffer.complete();
+    StreamObserver<AttachBuildReply> subscriber =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+    ArgumentCaptor<AttachBuildReply> onNext = ArgumentCaptor.forClass(AttachBuildReply.class);
+
+    attach(buffer, 0, subscriber);
+
+    verify(subscriber, times(600)).onNext(onNext.capture());
+    verify(subscriber).onCompleted();
+    assertEquals(range(0, 600), offsets(onNext));
+    assertEquals(reply(599), onNext.getValue().getReply());
+    buffer.close();
+  }
+
+  @Test
+  public void attach_shouldReplayFromRequestedOffset() {
+    BuildOutputBuffer buffer = buffer(10, 1024 * 1024);
+    buffer.complete();
+    StreamObserver<AttachBuildReply> subscriber =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+    ArgumentCaptor<AttachBuildReply> onNext = ArgumentCaptor.forClass(AttachBuildReply.class);
+
+    attach(buffer, 7, subscriber);
+
+    verify(subscriber, times(3)).onNext(onNext.capture());
+    assertEquals(range(7, 10), offsets(onNext));
+    assertEquals(reply(7), onNext.getAllValues().get(0).getReply());
+    buffer.close();
+  }
+
+  @Test
+  public void attach_shouldSkipRepliesOverwrittenInTheSpillRing() {
+    int replyBytes = reply(0).toByteArray().length;
+    // Room for three spilled replies
+    BuildOutputBuffer buffer = buffer(10, replyBytes * 3 + replyBytes / 2);
+    buffer.complete();
+    StreamObserver<AttachBuildReply> subscriber =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+    ArgumentCaptor<AttachBuildReply> onNext = ArgumentCaptor.forClass(AttachBuildReply.class);
+
+    attach(buffer, 0, subscriber);
+
+    verify(subscriber, times(4)).onNext(onNext.capture());
+    assertEquals(range(6, 10), offsets(onNext));
+    buffer.close();
+  }
+
+  @Test
+  public void attach_shouldStreamRepliesOfRunningBuild() throws InterruptedException {
+    BuildOutputBuffer buffer = buffer(3, 1024 * 1024);
+    FakeServerCallStreamObserver<AttachBuildReply> subscriber =
+        new FakeServerCallStreamObserver<>();
+
+    Thread drain = attachInBackground(buffer, 1, subscriber, null);
+    assertTrue(buffer.hasSubscribers());
+    buffer.append(reply(3));
+    buffer.complete();
+    drain.join(5000);
+
+    assertEquals(
+        range(1, 4),
+        subscriber.getValues().stream()
+            .map(AttachBuildReply::getOffset)
+            .collect(Collectors.toList()));
+    assertTrue(subscriber.isCompleted());
+    assertFalse(buffer.hasSubscribers());
+    buffer.close();
+  }
+
+  @Test
+  public void append_shouldNotWaitForSubscriberThatIsNotReady() throws InterruptedException {
+    BuildOutputBuffer buffer = buffer(0, 1024 * 1024);
+    FakeServerCallStreamObserver<AttachBuildReply> subscriber =
+        new FakeServerCallStreamObserver<>();
+    subscriber.setReady(false);
+
+    Thread drain = attachInBackground(buffer, 0, subscriber, new OnReadySignal(subscriber));
+    for (int i = 0; i < 100; i++) {
+      buffer.append(reply(i));
+    }
+    buffer.complete();
+    Thread.sleep(100);
+    assertTrue(subscriber.getValues().isEmpty());
+
+    subscriber.setReady(true);
+    drain.join(5000);
+
+    assertEquals(100, subscriber.getValues().size());
+    assertTrue(subscriber.isCompleted());
+    buffer.close();
+  }
+
+  @Test
+  public void append_shouldNotFailWhenSubscriberFails() throws InterruptedException {
+    BuildOutputBuffer buffer = buffer(0, 1024 * 1024);
+    FakeServerCallStreamObserver<AttachBuildReply> subscriber =
+        new FakeServerCallStreamObserver<>();
+    // The call is closed, so every reply sent to it throws
+    subscriber.onCompleted();
+
+    Thread drain = attachInBackground(buffer, 0, subscriber, null);
+    buffer.append(reply(0));
+    drain.join(5000);
+    buffer.append(reply(1));
+
+    assertFalse(buffer.hasSubscribers());
+    buffer.close();
+  }
+
+  @Test
+  public void detach_shouldStopStreaming() throws InterruptedException {
+    BuildOutputBuffer buffer = buffer(1, 1024 * 1024);
+    StreamObserver<AttachBuildReply> subscriber =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+
+    Thread drain = attachInBackground(buffer, 1, subscriber, null);
+    buffer.detach(subscriber);
+    drain.join(5000);
+    buffer.append(reply(1));
+    buffer.complete();
+
+    assertFalse(drain.isAlive());
+    verify(subscriber, never()).onNext(any());
+    verify(subscriber, never()).onCompleted();
+    assertFalse(buffer.hasSubscribers());
+    buffer.close();
+  }
+
+  @Test
+  public void attach_shouldReplayErrorOfFailedBuild() {
+    BuildOutputBuffer buffer = buffer(2, 1024 * 1024);
+    RuntimeException error = new RuntimeException("failed");
+    buffer.fail(error);
+    StreamObserver<AttachBuildReply> subscriber =
+        (StreamObserver<AttachBuildReply>) mock(StreamObserver.class);
+
+    attach(buffer, 0, subscriber);
+
+    verify(subscriber, times(2)).onNext(any());
+    verify(subscriber).onError(error);
+    buffer.close();
+  }
+}
@@ -0,0 +1,46 @@
+package com.github.badsyntax.gradle.output;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.github.badsyntax.gradle.RunBuildReply;
+import io.grpc.stub.StreamObserver;
+import org.junit.Test;
+
+@SuppressWarnings(value = "unchecked")
+public class BuildOutputBuffersTest {
+  private final BuildOutputBuffers buildOutputBuffers = new BuildOutputBuffers(1024, 0);
+
+  @Test
+  public void open_shouldKeepRunningBuildsWithTheSameKey() {
+    BuildOutputBuffer first = buildOutputBuffers.open("key");
+    BuildOutputBuffer second = buildOutputBuffers.open("key");
+
+    assertNotSame(first, second);
+    assertFalse(first.isCompleted());
+    assertSame(second, buildOutputBuffers.get("key"));
+  }
+
+  @Test
+  public void open_shouldReplaceCompletedBuild() {
+    StreamObserver<RunBuildReply> responseObserver =
+        (StreamObserver<RunBuildReply>) mock(StreamObserver.class);
+    BuildOutputBuffer completed = buildOutputBuffers.open("key");
+    completed.track(responseObserver).onCompleted();
+    verify(responseObserver).onCompleted();
+
+    BuildOutputBuffer running = buildOutputBuffers.open("key");
+
+    assertSame(running, buildOutputBuffers.get("key"));
+  }
+
+  @Test
+  public void open_shouldNotBufferBuildsWithoutKey() {
+    assertNull(buildOutputBuffers.open(""));
+    assertNull(buildOutputBuffers.get(""));
+  }
+}
@@ -0,0 +1,82 @@
+package com.github.badsyntax.gradle.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputLogIndexTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static OutputLogIndex index() {
+    OutputLogIndex index = new OutputLogIndex();
+    // Line lengths over 63 need a second varint byte
+    index.addBlock(
+        new OutputLogIndex.Block(
+            0, 40, 0, new int[] {0, 10, 210, 211}, new boolean[] {false, true, false}));
+    index.addBlock(
+        new OutputLogIndex.Block(40, 25, 3, new int[] {0, 5, 100000}, new boolean[] {true, false}));
+    index.addLine(0, ":compileJava");
+    index.addLine(1, ":compileJava");
+    index.addLine(3, ":test");
+    index.addLine(4, ":test");
+    return index;
+  }
+
+  @Test
+  public void readFrom_shouldReadWhatWasWritten() throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("build.idx");
+    index().writeTo(file);
+
+    OutputLogIndex index = OutputLogIndex.readFrom(file);
+    assertEquals(5, index.lineCount);
+    assertEquals(2, index.blocks.size());
+    OutputLogIndex.Block second = index.blocks.get(1);
+    assertEquals(40, second.fileOffset);
+    assertEquals(25, second.compressedLength);
+    assertEquals(3, second.firstLine);
+    assertArrayEquals(new int[] {0, 5, 100000}, second.lineStarts);
+    assertTrue(Arrays.equals(new boolean[] {true, false}, second.standardError));
+    assertArrayEquals(new int[] {0, 10, 210, 211}, index.blocks.get(0).lineStarts);
+    assertEquals(2, index.taskRanges.size());
+    assertEquals(":test", index.taskRanges.get(1).taskPath);
+    assertEquals(3, index.taskRanges.get(1).firstLine);
+    assertEquals(5, index.taskRanges.get(1).endLine);
+  }
+
+  @Test
+  public void taskOf_shouldFindTheTaskOfALine() {
+    OutputLogIndex index = index();
+
+    assertEquals(":compileJava", index.taskOf(1));
+    assertNull(index.taskOf(2));
+    assertEquals(":test", index.taskOf(4));
+    assertNull(index.taskOf(5));
+  }
+
+  @Test
+  public void blockOf_shouldFindTheBlockOfALine() {
+    OutputLogIndex index = index();
+
+    assertEquals(0, index.blockOf(0));
+    assertEquals(0, index.blockOf(2));
+    assertEquals(1, index.blockOf(3));
+    assertEquals(1, index.blockOf(4));
+  }
+
+  @Test(expected = IOException.class)
+  public void readFrom_shouldRejectAnotherFile() throws IOException {
+    Path file = temporaryFolder.newFile("other.idx").toPath();
+    Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+
+    OutputLogIndex.readFrom(file);
+  }
+}
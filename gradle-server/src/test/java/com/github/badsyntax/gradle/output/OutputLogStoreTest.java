@@ -0,0 +1,234 @@
+package com.github.badsyntax.gradle.output;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.badsyntax.gradle.Output;
+import com.github.badsyntax.gradle.OutputLine;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class OutputLogStoreTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private OutputLogStore store;
+
+  @Before
+  public void setUp() {
+    store = new OutputLogStore(temporaryFolder.getRoot().toPath(), 1024 * 1024);
+  }
+
+  @After
+  public void tearDown() throws InterruptedException {
+    store.close();
+  }
+
+  private static void write(OutputLogWriter writer, String text, String taskPath) {
+    writer.write(Output.OutputType.STDOUT, text.getBytes(StandardCharsets.UTF_8), taskPath);
+  }
+
+  private static void awaitWrites(OutputLogStore store) throws InterruptedException {
+    CountDownLatch written = new CountDownLatch(1);
+    assertTrue(store.execute(written::countDown));
+    assertTrue(written.await(5, TimeUnit.SECONDS));
+  }
+
+  private static List<OutputLine> read(
+      OutputLog outputLog, int fromLine, int toLine, String taskPath, String pattern)
+      throws IOException {
+    List<OutputLine> lines = new ArrayList<>();
+    outputLog.read(
+        fromLine,
+        toLine,
+        taskPath == null ? null : taskPath::equals,
+        pattern == null ? null : Pattern.compile(pattern),
+        lines::add);
+    return lines;
+  }
+
+  // About 100 bytes a line, so a few hundred lines fill a block
+  private static String line(int number) {
+    return String.format("line %05d %090d%n", number, number);
+  }
+
+  private static String randomHex(Random random, int length) {
+    StringBuilder hex = new StringBuilder(length);
+    while (hex.length() < length) {
+      hex.append(Integer.toHexString(random.nextInt(16)));
+    }
+    return hex.toString();
+  }
+
+  @Test
+  public void read_shouldReadLinesAcrossBlocks() throws IOException, InterruptedException {
+    try (OutputLogWriter writer = store.create("build")) {
+      for (int i = 0; i < 3000; i++) {
+        write(writer, line(i), null);
+      }
+    }
+    awaitWrites(store);
+
+    try (OutputLog outputLog = store.open("build")) {
+      assertEquals(3000, outputLog.getLineCount());
+      List<OutputLine> lines = read(outputLog, 1000, 2500, null, null);
+      assertEquals(1500, lines.size());
+      for (int i = 0; i < lines.size(); i++) {
+        assertEquals(1000 + i, lines.get(i).getLine());
+        assertEquals(line(1000 + i).trim(), lines.get(i).getText());
+      }
+    }
+  }
+
+  @Test
+  public void read_shouldFilterByTaskAndKeepStreams() throws IOException, InterruptedException {
+    try (OutputLogWriter writer = store.create("build")) {
+      write(writer, "configuring\n", null);
+      write(writer, "compiling\n", ":compileJava");
+      writer.write(
+          Output.OutputType.STDERR,
+          "warning: unchecked\r\n".getBytes(StandardCharsets.UTF_8),
+          ":compileJava");
+      write(writer, "testing\n", ":test");
+    }
+    awaitWrites(store);
+
+    try (OutputLog outputLog = store.open("build")) {
+      List<OutputLine> lines = read(outputLog, 0, 0, ":compileJava", null);
+      assertEquals(2, lines.size());
+      assertEquals("compiling", lines.get(0).getText());
+      assertEquals(Output.OutputType.STDOUT, lines.get(0).getOutputType());
+      assertEquals("warning: unchecked", lines.get(1).getText());
+      assertEquals(Output.OutputType.STDERR, lines.get(1).getOutputType());
+      assertEquals(":compileJava", lines.get(1).getTaskPath());
+      assertEquals("", read(outputLog, 0, 1, null, null).get(0).getTaskPath());
+    }
+  }
+
+  @Test
+  public void read_shouldMatchThePatternWithoutEscapes() throws IOException, InterruptedException {
+    try (OutputLogWriter writer = store.create("build")) {
+      write(writer, "\u001B[31mFAILURE\u001B[0m: Build failed\n", null);
+      write(writer, "BUILD SUCCESSFUL\n", null);
+    }
+    awaitWrites(store);
+
+    try (OutputLog outputLog = store.open("build")) {
+      List<OutputLine> lines = read(outputLog, 0, 0, null, "FAILURE: Build");
+      assertEquals(1, lines.size());
+      assertEquals("\u001B[31mFAILURE\u001B[0m: Build failed", lines.get(0).getText());
+      assertTrue(read(outputLog, 0, 0, null, "31m").isEmpty());
+    }
+  }
+
+  @Test
+  public void open_shouldReturnTheLatestBuildWithTheKey() throws IOException, InterruptedException {
+    try (OutputLogWriter writer = store.create("build")) {
+      write(writer, "first\n", null);
+    }
+    try (OutputLogWriter writer = store.create("build")) {
+      write(writer, "second\n", null);
+    }
+    awaitWrites(store);
+
+    try (OutputLog outputLog = store.open("build")) {
+      assertEquals("second", read(outputLog, 0, 0, null, null).get(0).getText());
+    }
+    assertNull(store.open("other"));
+  }
+
+  @Test
+  public void onStored_shouldEvictTheOldestBuilds() throws IOException, InterruptedException {
+    store.close();
+    store = new OutputLogStore(temporaryFolder.getRoot().toPath(), 150 * 1024);
+    Random random = new Random(42);
+    for (String key : new String[] {"first", "second", "third"}) {
+      try (OutputLogWriter writer = store.create(key)) {
+        // Random hex only compresses to half, so every build stores about 60KB
+        for (int i = 0; i < 1200; i++) {
+          write(writer, randomHex(random, 96) + "\n", null);
+        }
+      }
+      awaitWrites(store);
+    }
+
+    assertNull(store.open("first"));
+    try (OutputLog second = store.open("second");
+        OutputLog third = store.open("third")) {
+      assertNotNull(second);
+      assertNotNull(third);
+    }
+  }
+
+  @Test
+  public void read_shouldKeepReadingAnEvictedBuild() throws IOException, InterruptedException {
+    try (OutputLogWriter writer = store.create("build")) {
+      for (int i = 0; i < 1000; i++) {
+        write(writer, line(i), null);
+      }
+    }
+    awaitWrites(store);
+
+    try (OutputLog outputLog = store.open("build")) {
+      for (File file : new File(temporaryFolder.getRoot(), "build-output").listFiles()) {
+        assertTrue(file.delete());
+      }
+      assertNull(store.open("build"));
+      assertEquals(1000, read(outputLog, 0, 0, null, null).size());
+    }
+  }
+
+  @Test
+  public void write_shouldDropTheBuildWhenTheStoreIsBehind()
+      throws IOException, InterruptedException {
+    store.close();
+    store = new OutputLogStore(temporaryFolder.getRoot().toPath(), 1024 * 1024, 100 * 1024);
+    CountDownLatch release = new CountDownLatch(1);
+    store.execute(
+        () -> {
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    try (OutputLogWriter writer = store.create("behind")) {
+      for (int i = 0; i < 3000; i++) {
+        write(writer, line(i), null);
+      }
+    }
+    release.countDown();
+    try (OutputLogWriter writer = store.create("caught-up")) {
+      write(writer, "stored\n", null);
+    }
+    awaitWrites(store);
+
+    assertNull(store.open("behind"));
+    try (OutputLog outputLog = store.open("caught-up")) {
+      assertEquals(1, outputLog.getLineCount());
+    }
+  }
+
+  @Test
+  public void create_shouldReturnNullWhenDisabled() throws InterruptedException {
+    store.close();
+    store = new OutputLogStore(temporaryFolder.getRoot().toPath(), 0);
+
+    assertNull(store.create("build"));
+    assertFalse(new File(temporaryFolder.getRoot(), "build-output").exists());
+  }
+}
@@ -0,0 +1,86 @@
+package com.github.badsyntax.gradle.output;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import org.junit.Test;
+
+public class SpillFileTest {
+  private static byte[] record(int offset, int length) {
+    byte[] bytes = new byte[length];
+    Arrays.fill(bytes, (byte) offset);
+    return bytes;
+  }
+
+  @Test
+  public void read_shouldReturnRecordsInOffsetOrder() throws IOException {
+    try (SpillFile spillFile = new SpillFile(100)) {
+      for (int offset = 0; offset < 3; offset++) {
+        spillFile.write(offset, record(offset, 30));
+      }
+
+      Map<Long, byte[]> records = spillFile.read(1, 10);
+      assertEquals(Arrays.asList(1L, 2L), new ArrayList<>(records.keySet()));
+      assertArrayEquals(record(1, 30), records.get(1L));
+      assertArrayEquals(record(2, 30), records.get(2L));
+      assertEquals(1, spillFile.read(0, 1).size());
+    }
+  }
+
+  @Test
+  public void write_shouldOverwriteOldestRecordsWhenWrappingAround() throws IOException {
+    try (SpillFile spillFile = new SpillFile(100)) {
+      for (int offset = 0; offset < 10; offset++) {
+        spillFile.write(offset, record(offset, 30));
+      }
+
+      assertEquals(7, spillFile.firstOffset());
+      Map<Long, byte[]> records = spillFile.read(0, 10);
+      assertEquals(Arrays.asList(7L, 8L, 9L), new ArrayList<>(records.keySet()));
+      for (Map.Entry<Long, byte[]> entry : records.entrySet()) {
+        assertArrayEquals(record(entry.getKey().intValue(), 30), entry.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void write_shouldDropRecordsInTheSkippedTail() throws IOException {
+    try (SpillFile spillFile = new SpillFile(100)) {
+      spillFile.write(0, record(0, 40));
+      spillFile.write(1, record(1, 40));
+      spillFile.write(2, record(2, 10));
+      spillFile.write(3, record(3, 40));
+
+      assertEquals(Arrays.asList(1L, 2L, 3L), new ArrayList<>(spillFile.read(0, 10).keySet()));
+      spillFile.write(4, record(4, 40));
+      spillFile.write(5, record(5, 40));
+      assertEquals(Arrays.asList(4L, 5L), new ArrayList<>(spillFile.read(0, 10).keySet()));
+      assertArrayEquals(record(5, 40), spillFile.read(5, 1).get(5L));
+    }
+  }
+
+  @Test
+  public void write_shouldIgnoreRecordsLargerThanTheFile() throws IOException {
+    try (SpillFile spillFile = new SpillFile(100)) {
+      spillFile.write(0, record(0, 101));
+
+      assertEquals(-1, spillFile.firstOffset());
+    }
+  }
+
+  @Test
+  public void close_shouldReleaseTheFile() throws IOException {
+    SpillFile spillFile = new SpillFile(100);
+    spillFile.write(0, record(0, 30));
+    spillFile.close();
+
+    assertTrue(spillFile.read(0, 10).isEmpty());
+    spillFile.write(1, record(1, 30));
+    assertEquals(-1, spillFile.firstOffset());
+  }
+}
@@ -0,0 +1,153 @@
+package com.github.badsyntax.gradle.process;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+// Samples a /proc made of fixture files
+public class ProcessSamplerTest {
+  private static final String DAEMON_MAIN_CLASS =
+      "org.gradle.launcher.daemon.bootstrap.GradleDaemon";
+  private static final String TCP_HEADER =
+      "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout"
+          + " inode\n";
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path procDir;
+
+  @Before
+  public void setUp() throws IOException {
+    procDir = temporaryFolder.getRoot().toPath();
+    write("uptime", "1000.50 4000.00\n");
+    Files.createDirectories(procDir.resolve("self"));
+  }
+
+  private void write(String file, String content) throws IOException {
+    Path path = procDir.resolve(file);
+    Files.createDirectories(path.getParent());
+    Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // The auxiliary vector of a 64 bit process
+  private void writeAuxv(long... entries) throws IOException {
+    ByteBuffer auxv = ByteBuffer.allocate(entries.length * 8).order(ByteOrder.nativeOrder());
+    for (long entry : entries) {
+      auxv.putLong(entry);
+    }
+    Files.write(procDir.resolve("self/auxv"), auxv.array());
+  }
+
+  // utime and stime are the 14th and 15th fields, starttime the 22nd
+  private void writeProcess(String pid, long utime, long stime, long starttime, long rssKb)
+      throws IOException {
+    write(
+        pid + "/stat",
+        pid
+            + " (java (daemon)) S 1 2 3 0 -1 4 5 6 7 8 "
+            + utime
+            + " "
+            + stime
+            + " 0 0 20 0 30 0 "
+            + starttime
+            + " 123456 789\n");
+    write(pid + "/status", "Name:\tjava\nVmPeak:\t  900000 kB\nVmRSS:\t  " + rssKb + " kB\n");
+  }
+
+  private void writeDaemon(String pid, String version, String... sockets) throws IOException {
+    write(
+        pid + "/cmdline",
+        "/usr/bin/java\0-Xmx512m\0" + DAEMON_MAIN_CLASS + "\0" + version + "\0");
+    Path fdDir = procDir.resolve(pid).resolve("fd");
+    Files.createDirectories(fdDir);
+    Files.createSymbolicLink(fdDir.resolve("0"), Paths.get("/dev/null"));
+    for (int i = 0; i < sockets.length; i++) {
+      Files.createSymbolicLink(
+          fdDir.resolve(String.valueOf(i + 1)), Paths.get("socket:[" + sockets[i] + "]"));
+    }
+  }
+
+  @Test
+  public void sample_shouldUseTheClockTickRateOfTheKernel() throws IOException {
+    writeAuxv(6, 4096, 17, 250, 0, 0);
+    writeProcess("42", 500, 250, 25000, 2048);
+
+    ProcessSampler.Sample sample = new ProcessSampler(procDir).sample("42");
+
+    assertEquals(2048 * 1024, sample.getRssBytes());
+    assertEquals(3000, sample.getCpuMillis());
+    assertEquals(1000500 - 100000, sample.getUptimeMillis());
+  }
+
+  @Test
+  public void sample_shouldAssume100TicksPerSecondWithoutAnAuxiliaryVector() throws IOException {
+    writeProcess("42", 500, 250, 25000, 2048);
+
+    ProcessSampler.Sample sample = new ProcessSampler(procDir).sample("42");
+
+    assertEquals(7500, sample.getCpuMillis());
+    assertEquals(1000500 - 250000, sample.getUptimeMillis());
+  }
+
+  @Test
+  public void sample_shouldReturnNullForAMissingProcess() {
+    ProcessSampler processSampler = new ProcessSampler(procDir);
+
+    assertNull(processSampler.sample("42"));
+    assertNull(processSampler.sample("../42"));
+  }
+
+  @Test
+  public void findDaemons_shouldFindDaemonsAndWhetherAClientIsConnected() throws IOException {
+    // An idle daemon only listens, a busy one has a connection on its listening port too
+    writeDaemon("200", "6.5", "1001", "1002");
+    writeDaemon("1000", "6.4", "2001", "2002", "2003");
+    write(
+        "200/net/tcp",
+        TCP_HEADER
+            + "   0: 0100007F:A3F1 00000000:0000 0A 00000000:00000000 00:00000000 00000000  1000"
+            + "        0 1001 1 0000000000000000 100 0 0 10 0\n"
+            + "   1: 0100007F:C000 0100007F:0050 01 00000000:00000000 00:00000000 00000000  1000"
+            + "        0 1002 1 0000000000000000 20 4 30 10 -1\n");
+    write(
+        "1000/net/tcp6",
+        TCP_HEADER
+            + "   0: 00000000000000000000000001000000:B0B0 00000000000000000000000000000000:0000"
+            + " 0A 00000000:00000000 00:00000000 00000000  1000        0 2001 1 0 100 0 0 10 0\n"
+            + "   1: 00000000000000000000000001000000:B0B0 00000000000000000000000001000000:D00D"
+            + " 01 00000000:00000000 00:00000000 00000000  1000        0 2003 1 0 20 4 30 10 -1\n");
+    write("300/cmdline", "/usr/bin/java\0-jar\0app.jar\0");
+    write("net/tcp", TCP_HEADER);
+
+    List<ProcessSampler.Daemon> daemons = new ProcessSampler(procDir).findDaemons();
+
+    assertEquals(2, daemons.size());
+    assertEquals("200", daemons.get(0).getPid());
+    assertEquals("6.5", daemons.get(0).getVersion());
+    assertFalse(daemons.get(0).isBusy());
+    assertEquals("1000", daemons.get(1).getPid());
+    assertEquals("6.4", daemons.get(1).getVersion());
+    assertTrue(daemons.get(1).isBusy());
+  }
+
+  @Test
+  public void findDaemons_shouldReturnNullWithoutProc() throws IOException {
+    Files.delete(procDir.resolve("uptime"));
+
+    assertNull(new ProcessSampler(procDir).findDaemons());
+  }
+}
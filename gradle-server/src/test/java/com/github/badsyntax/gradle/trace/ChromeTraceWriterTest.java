@@ -0,0 +1,82 @@
+package com.github.badsyntax.gradle.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ChromeTraceWriterTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private List<String> write(List<TraceEvent> events) throws IOException {
+    Path file = temporaryFolder.getRoot().toPath().resolve("traces/trace.json");
+    ChromeTraceWriter.write(file, events);
+    return Files.readAllLines(file, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void write_shouldWriteCompleteEventsWithProcessAndThreadNames() throws IOException {
+    List<String> lines =
+        write(
+            Arrays.asList(
+                new TraceEvent("run", "handler", 100, 50, Tracer.SERVER_PROCESS_ID, 7, "t", null),
+                new TraceEvent(
+                    "Task :jar", "task", 120, 20, Tracer.GRADLE_PROCESS_ID, 0, "lane", "Run")));
+
+    assertEquals("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[", lines.get(0));
+    assertEquals(
+        "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"args\":{\"name\":\"gradle-server\"}},",
+        lines.get(1));
+    assertEquals(
+        "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":7,\"args\":{\"name\":\"t\"}},",
+        lines.get(4));
+    assertEquals(
+        "{\"name\":\"run\",\"cat\":\"handler\",\"ph\":\"X\",\"ts\":100,\"dur\":50,\"pid\":1,"
+            + "\"tid\":7},",
+        lines.get(5));
+    assertEquals(
+        "{\"name\":\"Task :jar\",\"cat\":\"task\",\"ph\":\"X\",\"ts\":120,\"dur\":20,\"pid\":3,"
+            + "\"tid\":0,\"args\":{\"parent\":\"Run\"}}",
+        lines.get(7));
+    assertEquals("]}", lines.get(8));
+  }
+
+  @Test
+  public void write_shouldEscapeStrings() throws IOException {
+    List<String> lines =
+        write(
+            Collections.singletonList(
+                new TraceEvent(
+                    "say \"hi\" \\ to\n\ttab\u0001 caf\u00e9",
+                    "test",
+                    0,
+                    1,
+                    Tracer.SERVER_PROCESS_ID,
+                    1,
+                    "thread",
+                    null)));
+
+    String event = lines.get(5);
+    assertTrue(
+        event,
+        event.startsWith(
+            "{\"name\":\"say \\\"hi\\\" \\\\ to\\u000a\\u0009tab\\u0001 caf\u00e9\","));
+  }
+
+  @Test
+  public void write_shouldWriteAnEmptyTrace() throws IOException {
+    List<String> lines = write(Collections.emptyList());
+
+    assertEquals(5, lines.size());
+    assertEquals("]}", lines.get(4));
+  }
+}
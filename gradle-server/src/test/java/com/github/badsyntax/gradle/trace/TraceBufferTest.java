@@ -0,0 +1,41 @@
+package com.github.badsyntax.gradle.trace;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class TraceBufferTest {
+
+  private static TraceEvent event(String name, long startMicros) {
+    return new TraceEvent(name, "test", startMicros, 1, Tracer.SERVER_PROCESS_ID, 1, "main", null);
+  }
+
+  private static List<String> names(List<TraceEvent> events) {
+    return events.stream().map(TraceEvent::getName).collect(Collectors.toList());
+  }
+
+  @Test
+  public void snapshot_shouldReturnEventsInStartOrder() {
+    TraceBuffer buffer = new TraceBuffer(4);
+    buffer.add(event("second", 20));
+    buffer.add(event("first", 10));
+    buffer.add(event("third", 30));
+
+    assertEquals(Arrays.asList("first", "second", "third"), names(buffer.snapshot()));
+    assertEquals(0, buffer.getDroppedEvents());
+  }
+
+  @Test
+  public void add_shouldOverwriteTheOldestEventsOnceFull() {
+    TraceBuffer buffer = new TraceBuffer(3);
+    for (int i = 0; i < 7; i++) {
+      buffer.add(event("event" + i, i));
+    }
+
+    assertEquals(Arrays.asList("event4", "event5", "event6"), names(buffer.snapshot()));
+    assertEquals(4, buffer.getDroppedEvents());
+  }
+}
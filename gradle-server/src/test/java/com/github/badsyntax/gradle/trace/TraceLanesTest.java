@@ -0,0 +1,47 @@
+package com.github.badsyntax.gradle.trace;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TraceLanesTest {
+
+  @Test
+  public void place_shouldKeepDisjointAndNestedSpansOnOneLane() {
+    TraceLanes lanes = new TraceLanes();
+    assertEquals(0, lanes.place(0, 10));
+    assertEquals(0, lanes.place(10, 20));
+    assertEquals(0, lanes.place(12, 18));
+    // A parent is reported after its children
+    assertEquals(0, lanes.place(0, 30));
+  }
+
+  @Test
+  public void place_shouldMoveOverlappingSpansToTheirOwnLane() {
+    TraceLanes lanes = new TraceLanes();
+    assertEquals(0, lanes.place(0, 10));
+    assertEquals(1, lanes.place(5, 15));
+    assertEquals(2, lanes.place(8, 20));
+    // The first lane is free again once its span has ended
+    assertEquals(0, lanes.place(10, 25));
+  }
+
+  @Test
+  public void place_shouldShareTheLastLaneOnceEveryLaneIsTaken() {
+    TraceLanes lanes = new TraceLanes();
+    for (int i = 0; i < 64; i++) {
+      assertEquals(i, lanes.place(i, 1000 + i));
+    }
+    assertEquals(63, lanes.place(100, 2000));
+  }
+
+  @Test
+  public void clear_shouldForgetTheLanes() {
+    TraceLanes lanes = new TraceLanes();
+    lanes.place(0, 10);
+    lanes.place(5, 15);
+    lanes.clear();
+
+    assertEquals(0, lanes.place(5, 15));
+  }
+}
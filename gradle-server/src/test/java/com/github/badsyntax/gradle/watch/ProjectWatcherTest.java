@@ -0,0 +1,145 @@
+package com.github.badsyntax.gradle.watch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ProjectWatcherTest {
+  private static final long DEBOUNCE_MILLIS = 200;
+
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = temporaryFolder.getRoot().toPath();
+    write("settings.gradle");
+    write("build/classes/A.class");
+    write("app/build.gradle");
+    write("app/build/libs/app.jar");
+    write("app/src/main/java/com/example/build/A.java");
+    write(".gradle/cache.bin");
+  }
+
+  private void write(String path) throws IOException {
+    Path file = root.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, path.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String path(String path) {
+    return Paths.get(path).toString();
+  }
+
+  private static Set<String> paths(String... paths) {
+    Set<String> result = new HashSet<>();
+    for (String path : paths) {
+      result.add(path(path));
+    }
+    return result;
+  }
+
+  @Test
+  public void awaitChanges_shouldIgnoreOutputAndToolDirs()
+      throws IOException, InterruptedException {
+    try (ProjectWatcher watcher = new ProjectWatcher(root)) {
+      write("build/classes/B.class");
+      write("app/build/libs/other.jar");
+      write(".gradle/other.bin");
+      write("app/src/main/java/com/example/build/A.java");
+
+      Set<String> changedPaths =
+          watcher.awaitChanges(DEBOUNCE_MILLIS, DEBOUNCE_MILLIS, () -> false);
+      assertEquals(paths("app/src/main/java/com/example/build/A.java"), changedPaths);
+    }
+  }
+
+  @Test
+  public void awaitChanges_shouldWatchDirectoriesCreatedWhileWatching()
+      throws IOException, InterruptedException {
+    try (ProjectWatcher watcher = new ProjectWatcher(root)) {
+      Files.createDirectories(root.resolve("lib/src"));
+      assertTrue(
+          watcher
+              .awaitChanges(DEBOUNCE_MILLIS, DEBOUNCE_MILLIS, () -> false)
+              .contains(path("lib")));
+
+      write("lib/src/B.java");
+      assertTrue(
+          watcher
+              .awaitChanges(DEBOUNCE_MILLIS, DEBOUNCE_MILLIS, () -> false)
+              .contains(path("lib/src/B.java")));
+    }
+  }
+
+  @Test
+  public void awaitChanges_shouldReturnBurstOnceSettled()
+      throws IOException, InterruptedException {
+    try (ProjectWatcher watcher = new ProjectWatcher(root)) {
+      Thread writer =
+          new Thread(
+              () -> {
+                try {
+                  for (int i = 0; i < 5; i++) {
+                    write("app/src/main/java/com/example/B" + i + ".java");
+                    Thread.sleep(DEBOUNCE_MILLIS / 4);
+                  }
+                } catch (IOException | InterruptedException e) {
+                  throw new RuntimeException(e);
+                }
+              });
+      writer.start();
+
+      Set<String> changedPaths =
+          watcher.awaitChanges(DEBOUNCE_MILLIS, DEBOUNCE_MILLIS, () -> false);
+      writer.join();
+
+      for (int i = 0; i < 5; i++) {
+        assertTrue(changedPaths.contains(path("app/src/main/java/com/example/B" + i + ".java")));
+      }
+    }
+  }
+
+  @Test
+  public void awaitChanges_shouldReturnNothingOnceStopped()
+      throws IOException, InterruptedException {
+    try (ProjectWatcher watcher = new ProjectWatcher(root)) {
+      long startMillis = System.currentTimeMillis();
+      boolean[] stopped = {false};
+
+      Set<String> changedPaths =
+          watcher.awaitChanges(
+              DEBOUNCE_MILLIS,
+              50,
+              () -> {
+                boolean wasStopped = stopped[0];
+                stopped[0] = true;
+                return wasStopped;
+              });
+
+      assertEquals(Collections.emptySet(), changedPaths);
+      assertTrue(System.currentTimeMillis() - startMillis < DEBOUNCE_MILLIS);
+    }
+  }
+
+  @Test
+  public void getWatchedDirectoryCount_shouldNotCountExcludedDirs() throws IOException {
+    try (ProjectWatcher watcher = new ProjectWatcher(root)) {
+      // The root, and app/src/main/java/com/example/build with its parents
+      assertEquals(8, watcher.getWatchedDirectoryCount());
+    }
+  }
+}